@@ -0,0 +1,85 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ic.kyoto.annex1reduce.CountrySimulator.ActionList;
+import uk.ac.ic.kyoto.countries.BenchmarkCountries;
+import uk.ac.ic.kyoto.countries.FractionSearch;
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+/**
+ * Times a full CountrySimulator.simulate call of an AnnexOneReduce
+ * country, with the absorb/reduce split made by ReductionAllocator
+ * or by the fraction search it replaced.
+ *
+ * mvn -P benchmark compile exec:exec -Dbenchmark=SimulateBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimulateBenchmark {
+
+	/* landArea, arableLandArea, GDP, GDPRate, energyOutput, carbonOutput */
+	private final static double[][] COUNTRIES = {
+		{640427, 182711, 1309583456588.0, 0.0297, 703718793, 409094000},
+		{1000000, 500000, 10000000, 0.03, 1000000, 900000},
+	};
+
+	/**
+	 * Index in COUNTRIES
+	 */
+	@Param({"0", "1"})
+	public int country;
+
+	/**
+	 * allocator for ReductionAllocator, search for the fraction search
+	 */
+	@Param({"allocator", "search"})
+	public String solver;
+
+	private double[] c;
+	private CountrySimulator simulator;
+
+	@Setup
+	public void setUp() {
+		BenchmarkCountries.setUpContext(1);
+		c = COUNTRIES[country];
+		AnnexOneReduce annexOne = BenchmarkCountries.withHandlers(new AnnexOneReduce(UUID.randomUUID(),
+				"Benchmark", "BMK", c[0], c[1], c[2], c[3], c[4], c[5]));
+		annexOne.initialiseCountry();
+		if (solver.equals("search")) {
+			annexOne.setAllocator(new FractionSearch(annexOne));
+		}
+		simulator = new CountrySimulator(annexOne);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	@Benchmark
+	public ActionList simulate() {
+		return simulator.simulate(c[5], c[4], c[4], 0, 0, 0.99 * c[5], c[2] * GameConst.getPercentageOfGdp(),
+				c[2], c[3], c[1], 3, 1);
+	}
+
+}
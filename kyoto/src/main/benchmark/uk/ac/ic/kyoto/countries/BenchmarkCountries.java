@@ -0,0 +1,51 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.List;
+
+import uk.ac.ic.kyoto.singletonfactory.ConcurrentTradeHistory;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.TokenGenerator;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+
+/**
+ * Sets up simulation contexts and countries for benchmarks,
+ * without a running simulation.
+ */
+public final class BenchmarkCountries {
+
+	private BenchmarkCountries() {}
+
+	/**
+	 * Makes a new context that does not store trades, with
+	 * the game constants of the simulation configuration, and
+	 * makes it current. Undo with SimulationContext.setCurrent(null)
+	 * @param seed
+	 * @return the context
+	 */
+	public static SimulationContext setUpContext(long seed) {
+		SimulationContext context = new SimulationContext(new TokenGenerator(),
+				new ConcurrentTradeHistory(new TradeDataStore() {
+					@Override
+					public void storeTradeData(List<String> jsonObjects) {
+					}
+				}));
+		context.setGameConst(new GameConst(1, 0.5, 0.1, 0.1, 0.8, 0.1, 7, 0.00025, 0.0025, 847, 10, 0.95, 4, 10, 12,
+				200, 0.25, 0.005, 60, 1200, 10, 750, 0.0156));
+		context.setSeed(seed);
+		SimulationContext.setCurrent(context);
+		return context;
+	}
+
+	/**
+	 * Gives country the handlers AbstractCountry.initialise
+	 * would create, without registering it anywhere
+	 * @return country
+	 */
+	public static <T extends AbstractCountry> T withHandlers(T country) {
+		country.carbonAbsorptionHandler = new CarbonAbsorptionHandler(country);
+		country.carbonReductionHandler = new CarbonReductionHandler(country);
+		country.energyUsageHandler = new EnergyUsageHandler(country);
+		return country;
+	}
+
+}
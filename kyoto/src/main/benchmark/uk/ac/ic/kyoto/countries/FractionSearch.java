@@ -0,0 +1,66 @@
+package uk.ac.ic.kyoto.countries;
+
+import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
+
+/**
+ * The search over the absorb/reduce fraction AnnexOneReduce made
+ * before ReductionAllocator, followed by the inversions
+ * CountrySimulator then made to turn the investments back into
+ * carbon. Kept to compare against the allocator in benchmarks.
+ */
+public class FractionSearch extends ReductionAllocator {
+
+	private final CarbonAbsorptionHandler absorptionHandler;
+	private final CarbonReductionHandler reductionHandler;
+
+	/**
+	 * @param country with the handlers initialise makes
+	 */
+	public FractionSearch(AbstractCountry country) {
+		super(country.carbonAbsorptionHandler, country.carbonReductionHandler);
+		this.absorptionHandler = country.carbonAbsorptionHandler;
+		this.reductionHandler = country.carbonReductionHandler;
+	}
+
+	@Override
+	public double allocate(double carbon, double arableLandArea, double carbonOutput,
+			double energyOutput, double[] split, double[] investments) {
+		double onlyReductionCost = reductionHandler.getInvestmentRequired(carbon,
+				carbonOutput, energyOutput);
+		double prevCost = onlyReductionCost;
+		double absorbFrac = 0.5;
+		double reduceFrac = 0.5;
+		double fracDiff = 0.25;
+		double absorbCost = 9999999999999999.0;
+		double reduceCost = 9999999999999999.0;
+		for (int i = 0; i < 20; i++) {
+			try {
+				absorbCost = absorptionHandler.getInvestmentRequired(absorbFrac * carbon, arableLandArea);
+			} catch (NotEnoughLandException e) {
+				absorbCost = 999999999999999999.0;
+			}
+			reduceCost = reductionHandler.getInvestmentRequired(reduceFrac * carbon,
+					carbonOutput, energyOutput);
+			double totalCost = absorbCost + reduceCost;
+			if (totalCost > prevCost) {
+				reduceFrac += fracDiff;
+				absorbFrac -= fracDiff;
+			} else {
+				reduceFrac -= fracDiff;
+				absorbFrac += fracDiff;
+			}
+			prevCost = totalCost;
+			fracDiff /= 2;
+		}
+		try {
+			split[ABSORB] = absorptionHandler.getCarbonAbsorptionChange(absorbCost, arableLandArea);
+		} catch (NotEnoughLandException e) {
+			split[ABSORB] = 0;
+		}
+		split[REDUCE] = reductionHandler.getCarbonOutputChange(reduceCost, carbonOutput, energyOutput);
+		investments[ABSORB] = absorbCost;
+		investments[REDUCE] = reduceCost;
+		return absorbCost + reduceCost;
+	}
+
+}
@@ -3,19 +3,33 @@ package uk.ac.ic.kyoto;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+/**
+ * 1990 carbon output of each country, used for the initial
+ * targets. Each simulation has its own data, the static methods
+ * use the one of the current SimulationContext.
+ */
 public class CarbonData1990 {
 
-	private static Map<String, Double> output1990Data = new ConcurrentHashMap<String, Double>();
+	private final Map<String, Double> output1990Data = new ConcurrentHashMap<String, Double>();
+	
+	/**
+	 * Creates an empty data set. Used by SimulationContext.
+	 */
+	public CarbonData1990(){
+		
+	}
   
 	/**
 	 * Adds 1990 output data to carbon target service (used for initial targets)
 	 */
 	public static void addCountry(String ISO, double outputData){
-		output1990Data.put(ISO, outputData);
+		SimulationContext.current().getCarbonData1990().output1990Data.put(ISO, outputData);
 	}
 	
 	public static double get(String ISO){
-		return output1990Data.get(ISO).doubleValue();
+		return SimulationContext.current().getCarbonData1990().output1990Data.get(ISO).doubleValue();
 	}
 	
 }
@@ -0,0 +1,45 @@
+package uk.ac.ic.kyoto.actions;
+
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.countries.AbstractCountry;
+import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.imperial.presage2.core.Action;
+
+/**
+ * Action object for placing an order in, or cancelling an
+ * order from, the CarbonMarket order book
+ */
+public class MarketOrder implements Action {
+
+	public enum orderType { PLACE, CANCEL };
+
+	final public AbstractCountry country;
+	final public orderType actionToImplement;
+	final public OfferMessage offerMessage;
+	final public UUID orderID;
+
+	/**
+	 * Places the offer of offerMessage in the order book
+	 * @param country
+	 * @param offerMessage
+	 */
+	public MarketOrder(AbstractCountry country, OfferMessage offerMessage) {
+		this.country = country;
+		this.actionToImplement = orderType.PLACE;
+		this.offerMessage = offerMessage;
+		this.orderID = offerMessage.getTradeID();
+	}
+
+	/**
+	 * Cancels the order with the given id
+	 * @param country
+	 * @param orderID
+	 */
+	public MarketOrder(AbstractCountry country, UUID orderID) {
+		this.country = country;
+		this.actionToImplement = orderType.CANCEL;
+		this.offerMessage = null;
+		this.orderID = orderID;
+	}
+}
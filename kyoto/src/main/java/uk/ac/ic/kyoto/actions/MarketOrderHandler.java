@@ -0,0 +1,54 @@
+package uk.ac.ic.kyoto.actions;
+
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.countries.CarbonMarket;
+import uk.ac.imperial.presage2.core.Action;
+import uk.ac.imperial.presage2.core.environment.ActionHandler;
+import uk.ac.imperial.presage2.core.environment.ActionHandlingException;
+import uk.ac.imperial.presage2.core.environment.EnvironmentServiceProvider;
+import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
+import uk.ac.imperial.presage2.core.environment.UnavailableServiceException;
+import uk.ac.imperial.presage2.core.messaging.Input;
+import com.google.inject.Inject;
+
+/**
+ * Action object handler for placing and cancelling
+ * orders in the CarbonMarket
+ */
+public class MarketOrderHandler implements ActionHandler {
+
+	final protected CarbonMarket market;
+
+	@Inject
+	public MarketOrderHandler(EnvironmentSharedStateAccess sharedState, EnvironmentServiceProvider environment) throws UnavailableServiceException {
+		this.market = environment.getEnvironmentService(CarbonMarket.class);
+	}
+
+	@Override
+	public boolean canHandle(Action action) {
+		return action instanceof MarketOrder;
+	}
+
+	@Override
+	public Input handle(Action action, UUID actor) throws ActionHandlingException {
+		MarketOrder obj = (MarketOrder) action;
+		if (!obj.country.getID().equals(actor)) {
+			throw new ActionHandlingException("Participant " + actor + " cannot trade on behalf of " + obj.country.getID());
+		}
+		switch (obj.actionToImplement) {
+		case PLACE:
+			try {
+				market.placeOrder(obj.country, obj.offerMessage);
+			} catch (IllegalArgumentException e) {
+				throw new ActionHandlingException(e);
+			}
+			break;
+		case CANCEL:
+			market.cancelOrder(obj.country, obj.orderID);
+			break;
+		}
+		return null;
+	}
+
+}
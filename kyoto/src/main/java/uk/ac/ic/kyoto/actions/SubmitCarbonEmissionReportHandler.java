@@ -4,6 +4,7 @@ import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
+import uk.ac.ic.kyoto.countries.CarbonTarget;
 import uk.ac.ic.kyoto.services.CarbonReportingService;
 import uk.ac.imperial.presage2.core.Action;
 import uk.ac.imperial.presage2.core.environment.ActionHandler;
@@ -20,15 +21,17 @@ import com.google.inject.Inject;
  * 
  * @author farhanrahman
  */
-@ServiceDependencies({CarbonReportingService.class})
+@ServiceDependencies({CarbonReportingService.class, CarbonTarget.class})
 public class SubmitCarbonEmissionReportHandler implements ActionHandler{
 	private Logger logger = Logger.getLogger(SubmitCarbonEmissionReportHandler.class);
 	final protected CarbonReportingService crs;
+	final protected CarbonTarget carbonTarget;
 	
 	@Inject
 	public SubmitCarbonEmissionReportHandler(EnvironmentSharedStateAccess sharedState, EnvironmentServiceProvider environment) throws UnavailableServiceException{
 		//this.sharedState = sharedState;
 		this.crs = environment.getEnvironmentService(CarbonReportingService.class);
+		this.carbonTarget = environment.getEnvironmentService(CarbonTarget.class);
 	}
 	
 	@Override
@@ -44,6 +47,7 @@ public class SubmitCarbonEmissionReportHandler implements ActionHandler{
 			synchronized(crs){
 				this.crs.updateReport(actor, reportAction.getCarbonEmission(), reportAction.getSimTime());
 			}
+			this.carbonTarget.reportReceived(actor, reportAction.getSimTime().intValue(), reportAction.getCarbonEmission());
 			logger.info("REPORT HERE, TIME: " + reportAction.getSimTime() + " AND EMISSION: " + reportAction.getCarbonEmission());
 			return null;
 		}
@@ -7,6 +7,7 @@ import uk.ac.ic.kyoto.countries.AbstractCountry;
 import uk.ac.ic.kyoto.countries.GameConst;
 import uk.ac.ic.kyoto.countries.Offer;
 import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.countries.ReductionAllocator;
 import uk.ac.ic.kyoto.exceptions.NotEnoughCarbonOutputException;
 import uk.ac.ic.kyoto.exceptions.NotEnoughCashException;
 import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
@@ -31,11 +32,33 @@ public class AnnexOneReduce extends AbstractCountry {
 		simulator = new CountrySimulator(this);
 	}
 
+	/**
+	 * @param mergeTolerance
+	 *            Relative tolerance under which the planner treats two
+	 *            states of the same year and phase as one, 0 turns merging
+	 *            off
+	 */
+	public void setMergeTolerance(double mergeTolerance) {
+		simulator.setMergeTolerance(mergeTolerance);
+	}
+
 	MarketData marketData;
 
+	private ReductionAllocator allocator;
+
 	@Override
 	public void initialiseCountry() {
-		marketData = new MarketData();
+		marketData = new MarketData(getRandom(MarketData.class.getName()));
+		allocator = new ReductionAllocator(carbonAbsorptionHandler,
+				carbonReductionHandler);
+	}
+
+	/**
+	 * Replaces the allocator initialiseCountry made, for benchmarks
+	 * @param allocator
+	 */
+	void setAllocator(ReductionAllocator allocator) {
+		this.allocator = allocator;
 	}
 
 	@Override
@@ -69,6 +92,13 @@ public class AnnexOneReduce extends AbstractCountry {
 	 */
 	private double sellCarbonUnitPrice = 0;
 
+	/**
+	 * Our bid and ask in the CarbonMarket order book, null when we have
+	 * none waiting for its result
+	 */
+	private UUID buyOrder = null;
+	private UUID sellOrder = null;
+
 	@Override
 	protected void behaviour() {
 
@@ -106,18 +136,46 @@ public class AnnexOneReduce extends AbstractCountry {
 		}
 
 		/*
-		 * Now, send out buy and sell offers for the tick
+		 * Now, post buy and sell orders for the tick. Only one order per
+		 * side is kept in the book, so we never buy or sell more than we
+		 * want before hearing back. If there is no market, broadcast.
 		 */
 		if (buyCarbonQuantity > 100) {
-			logger.info(getName() + " is sending out a buy offer. Quantity = "
-					+ buyCarbonQuantity / 2 + ", Unit Price = "
-					+ buyCarbonUnitPrice);
-			broadcastBuyOffer(buyCarbonQuantity / 2, buyCarbonUnitPrice);
+			if (buyOrder == null) {
+				logger.info(getName() + " is posting a buy order. Quantity = "
+						+ buyCarbonQuantity / 2 + ", Unit Price = "
+						+ buyCarbonUnitPrice);
+				OfferMessage order = postBuyOrder(buyCarbonQuantity / 2, buyCarbonUnitPrice);
+				if (order != null) {
+					buyOrder = order.getTradeID();
+				} else {
+					broadcastBuyOffer(buyCarbonQuantity / 2, buyCarbonUnitPrice);
+				}
+			}
 		} else if (sellCarbonQuantity > 100) {
-			logger.info(getName() + " is sending out a sell offer. Quantity = "
-					+ sellCarbonQuantity / 2 + ", Unit Price = "
-					+ sellCarbonUnitPrice);
-			broadcastSellOffer(sellCarbonQuantity / 2, sellCarbonUnitPrice);
+			if (sellOrder == null) {
+				logger.info(getName() + " is posting a sell order. Quantity = "
+						+ sellCarbonQuantity / 2 + ", Unit Price = "
+						+ sellCarbonUnitPrice);
+				OfferMessage order = postSellOrder(sellCarbonQuantity / 2, sellCarbonUnitPrice);
+				if (order != null) {
+					sellOrder = order.getTradeID();
+				} else {
+					broadcastSellOffer(sellCarbonQuantity / 2, sellCarbonUnitPrice);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets our order in the book once its result came back
+	 * @param offer
+	 */
+	private void orderResultReceived(OfferMessage offer) {
+		if (offer.getTradeID().equals(buyOrder)) {
+			buyOrder = null;
+		} else if (offer.getTradeID().equals(sellOrder)) {
+			sellOrder = null;
 		}
 	}
 
@@ -284,6 +342,8 @@ public class AnnexOneReduce extends AbstractCountry {
 	@Override
 	protected void tradeWasSuccessful(NetworkAddress from, OfferMessage offer) {
 
+		orderResultReceived(offer);
+
 		TradeType type = offer.getOfferType();
 
 		double quantity = offer.getOfferQuantity();
@@ -311,6 +371,11 @@ public class AnnexOneReduce extends AbstractCountry {
 		needToSimulate = true;
 	}
 
+	@Override
+	protected void tradeHasFailed(NetworkAddress from, OfferMessage offer) {
+		orderResultReceived(offer);
+	}
+
 	private boolean marketEnabled = true;
 
 	private void disableMarket() {
@@ -578,73 +643,55 @@ public class AnnexOneReduce extends AbstractCountry {
 				state.carbonOutput, state.energyOutput, investments);
 	}
 
+	/**
+	 * For a given amount of carbon to reduce, return the amount of money we
+	 * should invest in Absorption and Reduction, and the carbon each of them
+	 * gets rid of. For safety's sake, will tend to overestimate a bit.
+	 * 
+	 * @param carbonReduction
+	 *            Amount to reduce carbon by
+	 * @param state
+	 *            A given country state
+	 * @param investments
+	 *            Pass in a double[2], returned [0] = money to invest in
+	 *            Absorption, [1] = money to invest in Reduction
+	 * @param carbon
+	 *            Pass in a double[2], returned [0] = carbon absorbed, [1] =
+	 *            carbon reduced
+	 * @return Total Cost
+	 */
+	public double getAbsorbReduceInvestment(double carbonReduction,
+			CountrySimulator.CountryState state, double[] investments,
+			double[] carbon) {
+		return getAbsorbReduceInvestment(carbonReduction, state.arableLandArea,
+				state.carbonOutput, state.energyOutput, investments, carbon);
+	}
+
 	private double getAbsorbReduceInvestment(double carbonReduction,
 			double arableLandArea, double carbonOutput, double energyOutput,
 			double[] investments) {
+		return getAbsorbReduceInvestment(carbonReduction, arableLandArea,
+				carbonOutput, energyOutput, investments, new double[2]);
+	}
+
+	private double getAbsorbReduceInvestment(double carbonReduction,
+			double arableLandArea, double carbonOutput, double energyOutput,
+			double[] investments, double[] carbon) {
 
 		if (carbonReduction <= 0) {
 			investments[0] = 0;
 			investments[1] = 0;
+			carbon[0] = 0;
+			carbon[1] = 0;
 			return 0;
 		}
 
 		// Overestimate a bit
 		carbonReduction *= 1.01;
 
-		double onlyReductionCost = this.carbonReductionHandler
-				.getInvestmentRequired(carbonReduction, carbonOutput,
-						energyOutput);
-
-		double prevCost = onlyReductionCost;
-
-		double absorbFrac = 0.5;
-		double reduceFrac = 0.5;
-
-		double fracDiff = 0.25;
-
-		double absorbCost = 9999999999999999.0;
-		double reduceCost = 9999999999999999.0;
-
-		// Attempt to minimise cost for a given amount of carbon
-		for (int i = 0; i < 20; i++) {
-
-			try {
-				absorbCost = this.carbonAbsorptionHandler
-						.getInvestmentRequired(absorbFrac * carbonReduction,
-								arableLandArea);
-			} catch (NotEnoughLandException e) {
-				absorbCost = 999999999999999999.0;
-			}
-
-			reduceCost = this.carbonReductionHandler.getInvestmentRequired(
-					reduceFrac * carbonReduction, carbonOutput, energyOutput);
-
-			double totalCost = absorbCost + reduceCost;
-
-			if (totalCost > prevCost) {
-				reduceFrac += fracDiff;
-				absorbFrac -= fracDiff;
-			} else {
-				reduceFrac -= fracDiff;
-				absorbFrac += fracDiff;
-			}
-			prevCost = totalCost;
-			fracDiff /= 2;
-		}
-
-		if (prevCost > onlyReductionCost) {
-			absorbFrac = 0;
-			reduceFrac = 1;
-		} else {
-
-			absorbFrac = ((double) Math.round(1000 * absorbFrac)) / 1000;
-			reduceFrac = ((double) Math.round(1000 * reduceFrac)) / 1000;
-		}
-
-		investments[0] = absorbCost;
-		investments[1] = reduceCost;
-
-		return (investments[0] + investments[1]);
+		// The split where absorbing and reducing one more ton cost the same
+		return allocator.allocate(carbonReduction, arableLandArea,
+				carbonOutput, energyOutput, carbon, investments);
 	}
 
 	/**
@@ -658,76 +705,23 @@ public class AnnexOneReduce extends AbstractCountry {
 
 		double[] carbon = new double[2];
 
-		double arableLandArea = getArableLandArea();
-		double carbonOutput = getCarbonOutput();
-		double energyOutput = getEnergyOutput();
-
-		if (carbonReduction <= 0) {
-			carbon[0] = 0;
-			carbon[1] = 0;
-			return carbon;
-		}
-
-		// Overestimate a bit
-		carbonReduction *= 1.01;
-
-		double onlyReductionCost = this.carbonReductionHandler
-				.getInvestmentRequired(carbonReduction, carbonOutput,
-						energyOutput);
-
-		double prevCost = this.carbonReductionHandler.getInvestmentRequired(
-				carbonReduction, carbonOutput, energyOutput);
-
-		double absorbFrac = 0.5;
-		double reduceFrac = 0.5;
-
-		double fracDiff = 0.25;
-
-		// Attempt to minimise cost for a given amount of carbon
-		for (int i = 0; i < 10; i++) {
-
-			double absorbCost;
-			double reduceCost;
-
-			try {
-				absorbCost = this.carbonAbsorptionHandler
-						.getInvestmentRequired(absorbFrac * carbonReduction,
-								arableLandArea);
-			} catch (NotEnoughLandException e) {
-				absorbCost = 99999999999999999999999.0;
-			}
-
-			reduceCost = this.carbonReductionHandler.getInvestmentRequired(
-					reduceFrac * carbonReduction, carbonOutput, energyOutput);
-
-			double totalCost = absorbCost + reduceCost;
-
-			if (totalCost > prevCost) {
-				reduceFrac += fracDiff;
-				absorbFrac -= fracDiff;
-			} else {
-				reduceFrac -= fracDiff;
-				absorbFrac += fracDiff;
-			}
-			prevCost = totalCost;
-			fracDiff /= 2;
-		}
-
-		if (prevCost > onlyReductionCost) {
-			absorbFrac = 0;
-			reduceFrac = 1;
-		} else {
-
-			absorbFrac = ((double) Math.round(1000 * absorbFrac)) / 1000;
-			reduceFrac = ((double) Math.round(1000 * reduceFrac)) / 1000;
-		}
-
-		carbon[0] = absorbFrac * carbonReduction;
-		carbon[1] = reduceFrac * carbonReduction;
+		getAbsorbReduceInvestment(carbonReduction, getArableLandArea(),
+				getCarbonOutput(), getEnergyOutput(), new double[2], carbon);
 
 		return carbon;
 	}
 
+	/**
+	 * Returns the forest area needed to absorb a given amount of carbon
+	 * 
+	 * @param carbonAbsorptionChange
+	 * @return
+	 */
+	public double getForestAreaRequired(double carbonAbsorptionChange) {
+		return carbonAbsorptionHandler
+				.getForestAreaRequired(carbonAbsorptionChange);
+	}
+
 	/**
 	 * Returns the amount of arable land taken up by invest a certain amount of
 	 * money into absorption
@@ -1,12 +1,21 @@
 package uk.ac.ic.kyoto.annex1reduce;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 
 import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 
 /**
  * 
@@ -20,12 +29,90 @@ class CountrySimulator {
 	private int LOOK_AHEAD_YEARS;
 	private int SANCTION_YEAR;
 
+	/**
+	 * Threads a simulation uses by default
+	 */
+	static final int DEFAULT_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * Expands and culls the states of every simulation, shared by all
+	 * countries so that planning never runs more threads than there are
+	 * processors. Created on first use.
+	 */
+	private static ExecutorService pool = null;
+
+	/**
+	 * Smaller batches of parent states are not worth handing to another
+	 * thread
+	 */
+	private static final int MIN_EXPAND_BATCH = 8;
+
+	/**
+	 * Thread budget of the running simulation
+	 */
+	private int threads;
+
+	/**
+	 * States are merged by default when they differ by less than this
+	 * fraction of the starting carbon output or GDP
+	 */
+	static final double DEFAULT_MERGE_TOLERANCE = 1e-6;
+
+	private double mergeTolerance = DEFAULT_MERGE_TOLERANCE;
+
+	/**
+	 * Merges equivalent states of the running simulation, null if merging
+	 * is off
+	 */
+	private TranspositionTable transpositions;
+
+	/**
+	 * States created by the last simulation, before culling
+	 */
+	private long statesCreated;
+
+	/**
+	 * The constants of the running simulation, read once per call instead
+	 * of once per state
+	 */
+	private GameConst constants;
+
 	public CountrySimulator(AnnexOneReduce country) {
 		this.country = country;
 	}
 
 	final private AnnexOneReduce country;
 
+	/**
+	 * @param mergeTolerance
+	 *            Relative tolerance under which two states of the same year
+	 *            and phase are one state, 0 turns merging off
+	 */
+	void setMergeTolerance(double mergeTolerance) {
+		if (!(mergeTolerance >= 0)) {
+			throw new IllegalArgumentException(
+					"The merge tolerance can not be negative: "
+							+ mergeTolerance);
+		}
+		this.mergeTolerance = mergeTolerance;
+	}
+
+	/**
+	 * @return States created by the last simulation, before culling
+	 */
+	long getStatesCreated() {
+		return statesCreated;
+	}
+
+	/**
+	 * @return Sell states of the given year left by the last simulation,
+	 *         after culling
+	 */
+	List<CountryState> getSellStates(int year) {
+		return stateList[year].sellStates;
+	}
+
 	private StateList[] stateList;
 
 	private CountryState startState;
@@ -38,14 +125,38 @@ class CountrySimulator {
 			double carbonAbsorption, double emissionsTarget,
 			double availableToSpend, double GDP, double GDPRate,
 			double arableLandArea, int yearsUntilSanctions) {
+		return simulate(carbonOutput, energyOutput, prevEnergyOutput,
+				carbonOffset, carbonAbsorption, emissionsTarget,
+				availableToSpend, GDP, GDPRate, arableLandArea,
+				yearsUntilSanctions, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Same as the other simulate, on at most threads threads. The result
+	 * does not depend on the number of threads.
+	 * 
+	 * @param threads
+	 *            Thread budget of this call, 1 runs on the calling thread
+	 *            only
+	 */
+	public ActionList simulate(double carbonOutput, double energyOutput,
+			double prevEnergyOutput, double carbonOffset,
+			double carbonAbsorption, double emissionsTarget,
+			double availableToSpend, double GDP, double GDPRate,
+			double arableLandArea, int yearsUntilSanctions, int threads) {
 
 		this.SANCTION_YEAR = yearsUntilSanctions;
+		this.threads = Math.max(1, threads);
+		this.constants = GameConst.current();
 		this.LOOK_AHEAD_YEARS = 8;
 
 		// Initialise the starting point in the simulation
 		startState = new CountryState(carbonOutput, energyOutput,
 				prevEnergyOutput, carbonOffset, carbonAbsorption,
 				emissionsTarget, availableToSpend, GDP, GDPRate, arableLandArea);
+		transpositions = mergeTolerance > 0 ? new TranspositionTable(
+				startState.getMergeQuanta(mergeTolerance)) : null;
+		statesCreated = 0;
 
 		// Init the array lists
 		stateList = new StateList[LOOK_AHEAD_YEARS];
@@ -56,7 +167,8 @@ class CountrySimulator {
 		}
 
 		// Fill up the first array in the table
-		startState.reduceCarbon();
+		stateList[0].reduceStates = expand(
+				Collections.singletonList(startState), Phase.REDUCE);
 
 		// For all years to look ahead
 		for (int i = 0; i < LOOK_AHEAD_YEARS; i++) {
@@ -81,10 +193,8 @@ class CountrySimulator {
 
 			// Branch off all unculled reduce states by performing a maintain
 			// action
-			Iterator<CountryState> redIt = stateList[i].reduceStates.iterator();
-			while (redIt.hasNext()) {
-				redIt.next().maintainCarbon();
-			}
+			stateList[i].maintainStates = expand(stateList[i].reduceStates,
+					Phase.MAINTAIN);
 
 			// Cull the maintain states
 			try {
@@ -106,11 +216,8 @@ class CountrySimulator {
 
 			// Branch off all unculled maintain states by performing a sell
 			// action
-			Iterator<CountryState> mainIt = stateList[i].maintainStates
-					.iterator();
-			while (mainIt.hasNext()) {
-				mainIt.next().sellCarbon();
-			}
+			stateList[i].sellStates = expand(stateList[i].maintainStates,
+					Phase.SELL);
 
 			// Cull the sell states
 			try {
@@ -134,11 +241,8 @@ class CountrySimulator {
 			if (i != (LOOK_AHEAD_YEARS - 1)) {
 				// Branch off all unculled reduce states by performing a reduce
 				// action
-				Iterator<CountryState> sellIt = stateList[i].sellStates
-						.iterator();
-				while (sellIt.hasNext()) {
-					sellIt.next().reduceCarbon();
-				}
+				stateList[i + 1].reduceStates = expand(
+						stateList[i].sellStates, Phase.REDUCE);
 			}
 		}
 
@@ -148,6 +252,102 @@ class CountrySimulator {
 
 	}
 
+	/**
+	 * The three kinds of branching
+	 */
+	private static enum Phase {
+		REDUCE, MAINTAIN, SELL
+	}
+
+	/**
+	 * Branches off every parent state, in batches on the pool if the thread
+	 * budget allows.
+	 * 
+	 * @param parents
+	 * @param phase
+	 * @return The new states, in the order a serial expansion of parents
+	 *         creates them
+	 */
+	private ArrayList<CountryState> expand(final List<CountryState> parents,
+			final Phase phase) {
+		int batches = Math.min(threads, parents.size() / MIN_EXPAND_BATCH);
+		if (batches <= 1) {
+			ArrayList<CountryState> children = expand(parents, phase, 0,
+					parents.size());
+			statesCreated += children.size();
+			return children;
+		}
+		final SimulationContext context = SimulationContext.current();
+		List<Callable<ArrayList<CountryState>>> tasks = new ArrayList<Callable<ArrayList<CountryState>>>(
+				batches);
+		for (int b = 0; b < batches; b++) {
+			final int from = parents.size() * b / batches;
+			final int to = parents.size() * (b + 1) / batches;
+			tasks.add(new Callable<ArrayList<CountryState>>() {
+				@Override
+				public ArrayList<CountryState> call() {
+					// Pool threads are shared by simulations
+					SimulationContext previous = SimulationContext
+							.setCurrent(context);
+					try {
+						return expand(parents, phase, from, to);
+					} finally {
+						SimulationContext.setCurrent(previous);
+					}
+				}
+			});
+		}
+		ArrayList<CountryState> children = new ArrayList<CountryState>();
+		try {
+			for (Future<ArrayList<CountryState>> f : getPool().invokeAll(
+					tasks)) {
+				children.addAll(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		statesCreated += children.size();
+		return children;
+	}
+
+	private ArrayList<CountryState> expand(List<CountryState> parents,
+			Phase phase, int from, int to) {
+		ArrayList<CountryState> children = new ArrayList<CountryState>();
+		for (int i = from; i < to; i++) {
+			CountryState parent = parents.get(i);
+			switch (phase) {
+			case REDUCE:
+				parent.reduceCarbon(children);
+				break;
+			case MAINTAIN:
+				parent.maintainCarbon(children);
+				break;
+			case SELL:
+				parent.sellCarbon(children);
+				break;
+			}
+		}
+		return children;
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(DEFAULT_THREADS,
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "country-simulator");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return pool;
+	}
+
 	/**
 	 * Look at the given array of countryStates and return one of the optimal
 	 * states
@@ -278,47 +478,27 @@ class CountrySimulator {
 			throw new Exception("All states are invalid");
 		}
 
-		boolean hasBeenReplaced = true;
-
-		while (hasBeenReplaced) {
-			hasBeenReplaced = false;
-
-			ArrayList<CountryState> bestList = new ArrayList<CountryState>(
-					states.size());
-
-			bestList.add(states.get(0));
-
-			for (int i = 1; i < states.size(); i++) {
-				CountryState testState = states.get(i);
-
-				boolean needsAdding = true;
-
-				for (int j = 0; j < bestList.size(); j++) {
-					CountryState bestState = bestList.get(j);
-					Compare comparison = testState.action.isBetterOrWorseThan(
-							testState, bestState);
-					if (comparison == Compare.WORSE) {
-						needsAdding = false;
-						break;
-					} else if (comparison == Compare.BETTER) {
-						bestList.set(j, testState);
-						needsAdding = false;
-						hasBeenReplaced = true;
-						break;
-					}
-				}
-				if (needsAdding) {
-					bestList.add(testState);
-				}
+		// Then merge states that are the same up to the tolerance, before
+		// they are compared or branched off
+		if (transpositions != null) {
+			double[][] attributes = new double[states.size()][];
+			for (int i = 0; i < states.size(); i++) {
+				attributes[i] = states.get(i).getMergeAttributes();
 			}
-			states = bestList;
+			states = transpositions.merge(states, attributes);
 		}
-		return states;
 
-	}
+		// Then keep the states no other state is better than in every way
+		double[][] keys = new double[states.size()][];
+		for (int i = 0; i < states.size(); i++) {
+			CountryState state = states.get(i);
+			keys[i] = state.action.getParetoKeys(state);
+		}
+		if (threads <= 1) {
+			return Skyline.front(states, keys);
+		}
+		return Skyline.front(states, keys, getPool(), threads);
 
-	private static enum Compare {
-		BETTER, WORSE, UNKNOWN
 	}
 
 	/**
@@ -399,7 +579,6 @@ class CountrySimulator {
 			this.emissionsTarget = previousState.emissionsTarget;
 			this.GDPRate = previousState.GDPRate;
 			this.GDP = previousState.GDP;
-			stateList[this.year].addReduce(this);
 
 			double oldCarbonDifference = previousState.getCarbonDifference();
 
@@ -414,33 +593,25 @@ class CountrySimulator {
 			double carbonAbsorbedReduced = action.investFrac
 					* oldCarbonDifference;
 
+			// [0] = absorption, [1] = reduction
 			double[] investments = new double[2];
+			double[] carbon = new double[2];
 			double investmentCost;
 			if (carbonAbsorbedReduced > 0) {
 				investmentCost = country.getAbsorbReduceInvestment(
-						carbonAbsorbedReduced, previousState, investments);
+						carbonAbsorbedReduced, previousState, investments,
+						carbon);
 			} else {
 				investmentCost = 0;
-				investments[0] = 0;
-				investments[1] = 0;
 			}
 
 			this.availableToSpend = previousState.availableToSpend
 					- investmentCost - marketCost;
 
 			// Amount of arable land lost
-			double arableLandCost;
-			double absorptionIncrease;
-
-			if (investments[0] > 0) {
-				arableLandCost = country.getArableLandCost(investments[0],
-						previousState.arableLandArea);
-				absorptionIncrease = country.getCarbonAbsorptionChange(
-						investments[0], previousState.arableLandArea);
-			} else {
-				arableLandCost = 0;
-				absorptionIncrease = 0;
-			}
+			double absorptionIncrease = carbon[0];
+			double arableLandCost = country
+					.getForestAreaRequired(absorptionIncrease);
 
 			this.arableLandArea = previousState.arableLandArea - arableLandCost;
 
@@ -455,14 +626,7 @@ class CountrySimulator {
 			// Our carbon output decreased by the amount we invest in reduction
 			// plus the amount of factories we shut down
 
-			double carbonOutputReduced;
-
-			if (investments[1] > 0) {
-				carbonOutputReduced = country.getCarbonReduction(
-						investments[1], previousState);
-			} else {
-				carbonOutputReduced = 0;
-			}
+			double carbonOutputReduced = carbon[1];
 
 			this.carbonOutput = previousState.carbonOutput
 					- carbonOutputReduced - energyReduction;
@@ -491,7 +655,6 @@ class CountrySimulator {
 			this.GDP = previousState.GDP;
 			this.year = previousState.year;
 			this.emissionsTarget = previousState.emissionsTarget;
-			stateList[this.year].addMaintain(this);
 
 			// energy Increase = carbon Increase when investing in factories
 			double energyIncreasePrice = action.industryFrac
@@ -515,39 +678,24 @@ class CountrySimulator {
 			double carbonAbsorbedReduced = action.investOffsetFrac
 					* energyIncrease;
 
+			// [0] = absorption, [1] = reduction
 			double[] investments = new double[2];
+			double[] carbon = new double[2];
 			double investmentCost;
 			if (carbonAbsorbedReduced > 0) {
 				investmentCost = country.getAbsorbReduceInvestment(
-						carbonAbsorbedReduced, previousState, investments);
+						carbonAbsorbedReduced, previousState, investments,
+						carbon);
 			} else {
 				investmentCost = 0;
-				investments[0] = 0;
-				investments[1] = 0;
 			}
 
 			// Amount of arable land lost
-			double arableLandCost;
-			double absorptionIncrease;
-
-			if (investments[0] > 0) {
-				arableLandCost = country.getArableLandCost(investments[0],
-						previousState.arableLandArea);
-				absorptionIncrease = country.getCarbonAbsorptionChange(
-						investments[0], previousState.arableLandArea);
-			} else {
-				arableLandCost = 0;
-				absorptionIncrease = 0;
-			}
-
-			double carbonOutputReduced;
+			double absorptionIncrease = carbon[0];
+			double arableLandCost = country
+					.getForestAreaRequired(absorptionIncrease);
 
-			if (investments[1] > 0) {
-				carbonOutputReduced = country.getCarbonReduction(
-						investments[1], previousState);
-			} else {
-				carbonOutputReduced = 0;
-			}
+			double carbonOutputReduced = carbon[1];
 
 			this.energyOutput = previousState.energyOutput + energyIncrease;
 			this.carbonOutput = previousState.carbonOutput + energyIncrease
@@ -572,8 +720,12 @@ class CountrySimulator {
 		 * 
 		 * @param previousState
 		 * @param action
+		 * @param resetOffset
+		 *            Whether the carbon offset is reset at the end of the
+		 *            session
 		 */
-		private CountryState(CountryState previousState, SellAction action) {
+		private CountryState(CountryState previousState, SellAction action,
+				boolean resetOffset) {
 
 			this.previousEnergyOutput = previousState.previousEnergyOutput;
 
@@ -582,7 +734,6 @@ class CountrySimulator {
 			this.year = previousState.year;
 			this.emissionsTarget = country
 					.getNextEmissionTarget(previousState.emissionsTarget);
-			stateList[this.year].addSell(this);
 
 			// Our current total carbon output, including any offsets
 			double totalCarbonOutput = previousState.carbonOutput
@@ -597,39 +748,24 @@ class CountrySimulator {
 			double carbonAbsorbedReduced = totalCarbonOutput
 					* action.investFrac;
 
+			// [0] = absorption, [1] = reduction
 			double[] investments = new double[2];
+			double[] carbon = new double[2];
 			double investmentCost;
 			if (carbonAbsorbedReduced > 0) {
 				investmentCost = country.getAbsorbReduceInvestment(
-						carbonAbsorbedReduced, previousState, investments);
+						carbonAbsorbedReduced, previousState, investments,
+						carbon);
 			} else {
 				investmentCost = 0;
-				investments[0] = 0;
-				investments[1] = 0;
 			}
 
 			// Amount of arable land lost
-			double arableLandCost;
-			double absorptionIncrease;
-
-			if (investments[0] > 0) {
-				arableLandCost = country.getArableLandCost(investments[0],
-						previousState.arableLandArea);
-				absorptionIncrease = country.getCarbonAbsorptionChange(
-						investments[0], previousState.arableLandArea);
-			} else {
-				arableLandCost = 0;
-				absorptionIncrease = 0;
-			}
-
-			double carbonOutputReduced;
+			double absorptionIncrease = carbon[0];
+			double arableLandCost = country
+					.getForestAreaRequired(absorptionIncrease);
 
-			if (investments[1] > 0) {
-				carbonOutputReduced = country.getCarbonReduction(
-						investments[1], previousState);
-			} else {
-				carbonOutputReduced = 0;
-			}
+			double carbonOutputReduced = carbon[1];
 
 			// Sell additional offset over next years target
 			double newCarbonOutput = totalCarbonOutput
@@ -664,9 +800,8 @@ class CountrySimulator {
 			}
 
 			// Reset carbon offset at the end of a session
-			if (this.year == SANCTION_YEAR) {
+			if (resetOffset) {
 				this.carbonOffset = 0;
-				SANCTION_YEAR += 10;
 			} else {
 				this.carbonOffset = previousState.carbonOffset
 						- totalCreditsSold;
@@ -685,11 +820,36 @@ class CountrySimulator {
 			}
 
 			availableToSpend = tempAvailableToSpend
-					+ (GDP * GameConst.getPercentageOfGdp());
+					+ (GDP * constants.percentageOfGdp());
 
 			netCarbonOutput = this.carbonOutput - this.carbonAbsorption;
 		}
 
+		/**
+		 * @return Everything the future of this state depends on, in the
+		 *         order of getMergeQuanta
+		 */
+		double[] getMergeAttributes() {
+			return new double[] { year, action.getBranching(), carbonOutput,
+					energyOutput, previousEnergyOutput, carbonOffset,
+					carbonAbsorption, emissionsTarget, availableToSpend, GDP,
+					GDPRate, arableLandArea };
+		}
+
+		/**
+		 * @param tolerance
+		 *            Relative to this state
+		 * @return How far apart merged attributes of states simulated from
+		 *         this one can be. The year and the branching are exact.
+		 */
+		double[] getMergeQuanta(double tolerance) {
+			double carbon = tolerance * Math.max(Math.abs(carbonOutput), 1);
+			double money = tolerance * Math.max(Math.abs(GDP), 1);
+			double land = tolerance * Math.max(Math.abs(arableLandArea), 1);
+			return new double[] { 0, 0, carbon, carbon, carbon, carbon,
+					carbon, carbon, money, money, tolerance, land };
+		}
+
 		private double getCarbonDifference() {
 			double netCarbonOutput = this.carbonOutput - this.carbonAbsorption
 					- this.carbonOffset;
@@ -699,8 +859,11 @@ class CountrySimulator {
 
 		/**
 		 * Branch off for all reduce actions
+		 * 
+		 * @param children
+		 *            The list the new states are added to
 		 */
-		private void reduceCarbon() {
+		private void reduceCarbon(List<CountryState> children) {
 			float shutDown;
 			float buyCredit;
 			float invest;
@@ -712,7 +875,7 @@ class CountrySimulator {
 			float grain = 100f / numGrains;
 
 			// Default state
-			new CountryState(this, new ReduceAction(1, 0, 0));
+			children.add(new CountryState(this, new ReduceAction(1, 0, 0)));
 
 			// If we actually need to reduce our carbon
 			if (this.getCarbonDifference() > 0) {
@@ -724,28 +887,31 @@ class CountrySimulator {
 						buyCredit = j;
 
 						invest = 100 - shutDown - buyCredit;
-						new CountryState(this, new ReduceAction(shutDown / 100,
-								buyCredit / 100, invest / 100));
+						children.add(new CountryState(this, new ReduceAction(
+								shutDown / 100, buyCredit / 100, invest / 100)));
 					}
 				}
 			}
 			// Else, do nothing
 			else {
-				new CountryState(this, new ReduceAction(0, 0, 0));
+				children.add(new CountryState(this, new ReduceAction(0, 0, 0)));
 			}
 		}
 
 		/**
 		 * Branch off for all maintain actions
+		 * 
+		 * @param children
+		 *            The list the new states are added to
 		 */
-		private void maintainCarbon() {
+		private void maintainCarbon(List<CountryState> children) {
 
 			float industryFrac;
 			float investOffsetFrac;
 			float buyCreditOffsetFrac;
 
 			// Default state
-			new CountryState(this, new MaintainAction(0, 0, 0));
+			children.add(new CountryState(this, new MaintainAction(0, 0, 0)));
 
 			// If we shut down factories last phase, it's pointless to invest in
 			// factories this phase
@@ -769,8 +935,9 @@ class CountrySimulator {
 				investOffsetFrac = 100;
 				buyCreditOffsetFrac = 0;
 
-				new CountryState(this, new MaintainAction(industryFrac / 100,
-						investOffsetFrac / 100, buyCreditOffsetFrac / 100));
+				children.add(new CountryState(this, new MaintainAction(
+						industryFrac / 100, investOffsetFrac / 100,
+						buyCreditOffsetFrac / 100)));
 			}
 
 			// If last phase we didn't buy carbon, there's no point in buying
@@ -784,16 +951,21 @@ class CountrySimulator {
 				investOffsetFrac = 0;
 				buyCreditOffsetFrac = 100;
 
-				new CountryState(this, new MaintainAction(industryFrac / 100,
-						investOffsetFrac / 100, buyCreditOffsetFrac / 100));
+				children.add(new CountryState(this, new MaintainAction(
+						industryFrac / 100, investOffsetFrac / 100,
+						buyCreditOffsetFrac / 100)));
 
 			}
 		}
 
 		/**
 		 * Branch off for all sell actions
+		 * 
+		 * @param children
+		 *            The list the new states are added to. Every sell state
+		 *            of the sanction year resets its offset
 		 */
-		private void sellCarbon() {
+		private void sellCarbon(List<CountryState> children) {
 
 			float shutDownFrac;
 			float investFrac;
@@ -806,9 +978,11 @@ class CountrySimulator {
 			float max = 2f;
 			float grain = max / numGrains;
 			float min = grain;
+			boolean resetOffset = this.year == SANCTION_YEAR;
 
 			// Default state
-			new CountryState(this, new SellAction(0, 0, 0));
+			children.add(new CountryState(this, new SellAction(0, 0, 0),
+					resetOffset));
 
 			// Ensure we don't try to sell if the sell price is 0
 			if (country.getMarketSellUnitPrice(this.year) < 1) {
@@ -819,8 +993,9 @@ class CountrySimulator {
 				shutDownFrac = 0;
 				investFrac = i;
 				sellFrac = 100;
-				new CountryState(this, new SellAction(shutDownFrac / 100,
-						investFrac / 100, sellFrac / 100));
+				children.add(new CountryState(this, new SellAction(
+						shutDownFrac / 100, investFrac / 100, sellFrac / 100),
+						resetOffset));
 			}
 
 			// If we've invested in factories last phase, shutting them down
@@ -833,8 +1008,9 @@ class CountrySimulator {
 				shutDownFrac = i;
 				investFrac = 0;
 				sellFrac = 100;
-				new CountryState(this, new SellAction(shutDownFrac / 100,
-						investFrac / 100, sellFrac / 100));
+				children.add(new CountryState(this, new SellAction(
+						shutDownFrac / 100, investFrac / 100, sellFrac / 100),
+						resetOffset));
 			}
 
 		}
@@ -884,7 +1060,7 @@ class CountrySimulator {
 
 	}
 
-	private static double calculateGDPRate(double oldGDPRate,
+	private double calculateGDPRate(double oldGDPRate,
 			double energyOutput, double prevEnergyOutput) {
 
 		double sum;
@@ -892,16 +1068,15 @@ class CountrySimulator {
 		double GDPRate = oldGDPRate;
 		if (energyOutput - prevEnergyOutput >= 0) {
 			sum = (((energyOutput - prevEnergyOutput) / prevEnergyOutput)
-					* GameConst.getEnergyGrowthScaler() * marketStateFactor + GDPRate * 100) / 2;
-			GDPRate = GameConst.getMaxGDPGrowth() - GameConst.getMaxGDPGrowth()
-					* Math.exp(-sum * GameConst.getGrowthScaler());
+					* constants.energyGrowthScaler() * marketStateFactor + GDPRate * 100) / 2;
+			GDPRate = constants.maxGDPGrowth() - constants.maxGDPGrowth()
+					* Math.exp(-sum * constants.growthScaler());
 		} else {
 			sum = ((energyOutput - prevEnergyOutput) / prevEnergyOutput)
-					* GameConst.getEnergyGrowthScaler();
+					* constants.energyGrowthScaler();
 			sum = Math.abs(sum);
-			GDPRate = -(GameConst.getMaxGDPGrowth() - GameConst
-					.getMaxGDPGrowth()
-					* Math.exp(-sum * GameConst.getGrowthScaler()));
+			GDPRate = -(constants.maxGDPGrowth() - constants.maxGDPGrowth()
+					* Math.exp(-sum * constants.growthScaler()));
 		}
 
 		GDPRate /= 100; // Needs to be a % for rate formula
@@ -920,19 +1095,6 @@ class CountrySimulator {
 		private ArrayList<CountryState> reduceStates = new ArrayList<CountryState>();
 		private ArrayList<CountryState> maintainStates = new ArrayList<CountryState>();
 		private ArrayList<CountryState> sellStates = new ArrayList<CountryState>();
-
-		public void addReduce(CountryState countryState) {
-			reduceStates.add(countryState);
-		}
-
-		public void addSell(CountryState countryState) {
-			sellStates.add(countryState);
-
-		}
-
-		public void addMaintain(CountryState countryState) {
-			maintainStates.add(countryState);
-		}
 	}
 
 	/**
@@ -954,56 +1116,22 @@ class CountrySimulator {
 		final float investFrac;
 
 		/**
-		 * Compare two states that have just had a reduce action applied
+		 * Maintain branches depend on whether factories were shut down and
+		 * credits bought
 		 */
 		@Override
-		Compare isBetterOrWorseThan(CountryState state1, CountryState state2) {
-
-			boolean isBetter = true;
-			boolean isWorse = true;
-
-			// If we have more money
-			if (state1.availableToSpend > state2.availableToSpend) {
-				isWorse = false;
-			} else if (state1.availableToSpend < state2.availableToSpend) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDP > state2.GDP) {
-				isWorse = false;
-			} else if (state1.GDP < state2.GDP) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDPRate > state2.GDPRate) {
-				isWorse = false;
-			} else if (state1.GDPRate < state2.GDPRate) {
-				isBetter = false;
-			}
-
-			// If we make more energy
-			if (state1.energyOutput > state2.energyOutput) {
-				isWorse = false;
-			} else if (state1.energyOutput < state2.energyOutput) {
-				isBetter = false;
-			}
-
-			// If we have less carbon output
-			if (state1.netCarbonOutput < state2.netCarbonOutput) {
-				isWorse = false;
-			} else if (state1.netCarbonOutput > state2.netCarbonOutput) {
-				isBetter = false;
-			}
+		int getBranching() {
+			return (shutDownFrac != 0 ? 1 : 0) | (buyCreditFrac == 0 ? 2 : 0);
+		}
 
-			if (isBetter) {
-				return Compare.BETTER;
-			}
-			if (isWorse) {
-				return Compare.WORSE;
-			}
-			return Compare.UNKNOWN;
+		/**
+		 * Compare states that have just had a reduce action applied on these
+		 */
+		@Override
+		double[] getParetoKeys(CountryState state) {
+			// More money, GDP, GDP rate and energy, less carbon output
+			return new double[] { state.availableToSpend, state.GDP,
+					state.GDPRate, state.energyOutput, -state.netCarbonOutput };
 		}
 
 		@Override
@@ -1047,56 +1175,21 @@ class CountrySimulator {
 		final float buyCreditOffsetFrac;
 
 		/**
-		 * Compare two states that have just had a maintain action applied
+		 * Sell branches depend on whether factories were invested in
 		 */
 		@Override
-		Compare isBetterOrWorseThan(CountryState state1, CountryState state2) {
-
-			boolean isBetter = true;
-			boolean isWorse = true;
-
-			// If we have more money
-			if (state1.availableToSpend > state2.availableToSpend) {
-				isWorse = false;
-			} else if (state1.availableToSpend < state2.availableToSpend) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDP > state2.GDP) {
-				isWorse = false;
-			} else if (state1.GDP < state2.GDP) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDPRate > state2.GDPRate) {
-				isWorse = false;
-			} else if (state1.GDPRate < state2.GDPRate) {
-				isBetter = false;
-			}
-
-			// If we make more energy
-			if (state1.energyOutput > state2.energyOutput) {
-				isWorse = false;
-			} else if (state1.energyOutput < state2.energyOutput) {
-				isBetter = false;
-			}
-
-			// If we have less carbon output
-			if (state1.netCarbonOutput < state2.netCarbonOutput) {
-				isWorse = false;
-			} else if (state1.netCarbonOutput > state2.netCarbonOutput) {
-				isBetter = false;
-			}
+		int getBranching() {
+			return industryFrac != 0 ? 1 : 0;
+		}
 
-			if (isBetter) {
-				return Compare.BETTER;
-			}
-			if (isWorse) {
-				return Compare.WORSE;
-			}
-			return Compare.UNKNOWN;
+		/**
+		 * Compare states that have just had a maintain action applied on these
+		 */
+		@Override
+		double[] getParetoKeys(CountryState state) {
+			// More money, GDP, GDP rate and energy, less carbon output
+			return new double[] { state.availableToSpend, state.GDP,
+					state.GDPRate, state.energyOutput, -state.netCarbonOutput };
 		}
 
 		@Override
@@ -1135,42 +1228,13 @@ class CountrySimulator {
 		final float sellFrac;
 
 		/**
-		 * Compare two states that have just had a sell action applied
+		 * Compare states that have just had a sell action applied on these
 		 */
 		@Override
-		Compare isBetterOrWorseThan(CountryState state1, CountryState state2) {
-
-			boolean isBetter = true;
-			boolean isWorse = true;
-
-			// If we have more money
-			if (state1.availableToSpend > state2.availableToSpend) {
-				isWorse = false;
-			} else if (state1.availableToSpend < state2.availableToSpend) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDP > state2.GDP) {
-				isWorse = false;
-			} else if (state1.GDP < state2.GDP) {
-				isBetter = false;
-			}
-
-			// If we have a higher GDP
-			if (state1.GDPRate > state2.GDPRate) {
-				isWorse = false;
-			} else if (state1.GDPRate < state2.GDPRate) {
-				isBetter = false;
-			}
-
-			if (isBetter) {
-				return Compare.BETTER;
-			}
-			if (isWorse) {
-				return Compare.WORSE;
-			}
-			return Compare.UNKNOWN;
+		double[] getParetoKeys(CountryState state) {
+			// More money, GDP and GDP rate
+			return new double[] { state.availableToSpend, state.GDP,
+					state.GDPRate };
 		}
 
 		@Override
@@ -1190,8 +1254,19 @@ class CountrySimulator {
 	 * 
 	 */
 	private static abstract class Action {
-		abstract Compare isBetterOrWorseThan(CountryState state1,
-				CountryState state2);
+		/**
+		 * @return the attributes states that have just had this kind of
+		 *         action applied are compared on, higher is better
+		 */
+		abstract double[] getParetoKeys(CountryState state);
+
+		/**
+		 * @return What the branches off states that have just had this
+		 *         action applied depend on besides the state
+		 */
+		int getBranching() {
+			return 0;
+		}
 
 		public abstract void printDetails();
 	}
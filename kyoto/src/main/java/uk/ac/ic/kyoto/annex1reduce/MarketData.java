@@ -13,20 +13,26 @@ public class MarketData {
 
 	private OfferHistory offerHistory;
 
-	final private int TRADE_DATA_TICKS = (new Random().nextInt(6)+2);
+	final private int TRADE_DATA_TICKS;
 	
 	/**
 	 * Struct with info about how much other people are buying for
 	 */
-	private BuyStruct[] buyArray = new BuyStruct[TRADE_DATA_TICKS];
+	private BuyStruct[] buyArray;
 	
 	/**
 	 * Struct with info about how much other people are selling for
 	 */
-	private SellStruct[] sellArray = new SellStruct[TRADE_DATA_TICKS];
+	private SellStruct[] sellArray;
 
-	public MarketData() {
+	/**
+	 * @param random stream that picks how many ticks of offers are kept
+	 */
+	public MarketData(Random random) {
 		offerHistory = new OfferHistory();
+		TRADE_DATA_TICKS = random.nextInt(6)+2;
+		buyArray = new BuyStruct[TRADE_DATA_TICKS];
+		sellArray = new SellStruct[TRADE_DATA_TICKS];
 
 		for (int i = 0; i < TRADE_DATA_TICKS; i++) {
 			buyArray[i] = new BuyStruct(0, 0, 0);
@@ -0,0 +1,161 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Pareto front of a list of items, each described by a few attributes
+ * where higher is better. Sort and sweep: sorted by their attributes,
+ * most significant first, an item can only be dominated by one before
+ * it, so a single pass against the front built so far finds it.
+ * O(n log n + n * front size) instead of comparing every pair until
+ * nothing changes.
+ *
+ * Large lists can be split in parts whose fronts are found in parallel.
+ * Every item of the front is on the front of its part, so the front of
+ * what the parts keep is the same front, in the same order.
+ */
+final class Skyline {
+
+	/* Smaller parts are not worth handing to another thread */
+	private static final int MIN_PART = 256;
+
+	private Skyline() {
+	}
+
+	/**
+	 * @param items
+	 * @param keys keys[i] are the attributes of items.get(i), higher is
+	 * better, all of the same length
+	 * @return the items no other item is at least as good as in every
+	 * attribute and better in one, in their input order. Of items with
+	 * equal attributes only the last one is kept.
+	 */
+	static <T> ArrayList<T> front(List<T> items, double[][] keys) {
+		return select(items, front(keys, range(0, items.size())));
+	}
+
+	/**
+	 * Same as front(items, keys), finding the fronts of up to parts parts
+	 * of items on pool first
+	 * @param items
+	 * @param keys
+	 * @param pool
+	 * @param parts
+	 * @return the same list as front(items, keys)
+	 */
+	static <T> ArrayList<T> front(List<T> items, final double[][] keys, ExecutorService pool, int parts) {
+		int n = items.size();
+		parts = Math.min(parts, n / MIN_PART);
+		if (parts <= 1) {
+			return front(items, keys);
+		}
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(parts);
+		for (int p = 0; p < parts; p++) {
+			final int from = n * p / parts;
+			final int to = n * (p + 1) / parts;
+			tasks.add(new Callable<int[]>() {
+				@Override
+				public int[] call() {
+					return front(keys, range(from, to));
+				}
+			});
+		}
+		int[] merged = new int[n];
+		int size = 0;
+		try {
+			for (Future<int[]> f : pool.invokeAll(tasks)) {
+				int[] part = f.get();
+				System.arraycopy(part, 0, merged, size, part.length);
+				size += part.length;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return select(items, front(keys, Arrays.copyOf(merged, size)));
+	}
+
+	/**
+	 * @param keys
+	 * @param candidates indices into keys, ascending
+	 * @return the indices of the front of candidates, ascending
+	 */
+	private static int[] front(final double[][] keys, int[] candidates) {
+		int n = candidates.length;
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = candidates[i];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				double[] x = keys[a];
+				double[] y = keys[b];
+				for (int d = 0; d < x.length; d++) {
+					if (x[d] > y[d]) {
+						return -1;
+					}
+					if (x[d] < y[d]) {
+						return 1;
+					}
+				}
+				/* Of equal items the last one comes first, and is kept */
+				return b - a;
+			}
+		});
+
+		int[] front = new int[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			double[] candidate = keys[order[i]];
+			boolean dominated = false;
+			for (int f = 0; f < size && !dominated; f++) {
+				dominated = covers(keys[front[f]], candidate);
+			}
+			if (!dominated) {
+				front[size++] = order[i];
+			}
+		}
+
+		Arrays.sort(front, 0, size);
+		return Arrays.copyOf(front, size);
+	}
+
+	private static int[] range(int from, int to) {
+		int[] range = new int[to - from];
+		for (int i = 0; i < range.length; i++) {
+			range[i] = from + i;
+		}
+		return range;
+	}
+
+	private static <T> ArrayList<T> select(List<T> items, int[] indices) {
+		ArrayList<T> result = new ArrayList<T>(indices.length);
+		for (int i : indices) {
+			result.add(items.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return whether a is at least as good as b in every attribute
+	 */
+	private static boolean covers(double[] a, double[] b) {
+		for (int d = 0; d < a.length; d++) {
+			if (a[d] < b[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,78 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Merges items that are the same up to a tolerance. Every attribute
+ * is divided by its quantum and rounded, items whose rounded
+ * attributes are all equal are one item. A quantum of 0 only merges
+ * equal values.
+ */
+final class TranspositionTable {
+
+	private final double[] quanta;
+
+	/**
+	 * @param quanta quantum of every attribute, not negative
+	 */
+	TranspositionTable(double[] quanta) {
+		for (double q : quanta) {
+			if (!(q >= 0)) {
+				throw new IllegalArgumentException("A quantum can not be negative: " + q);
+			}
+		}
+		this.quanta = quanta.clone();
+	}
+
+	/**
+	 * @param items
+	 * @param attributes attributes[i] are the attributes of items.get(i),
+	 * in the order of the quanta
+	 * @return the first item of every group of items that are the same,
+	 * in their input order
+	 */
+	<T> ArrayList<T> merge(List<T> items, double[][] attributes) {
+		HashSet<Key> seen = new HashSet<Key>(items.size() * 2);
+		ArrayList<T> merged = new ArrayList<T>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			if (seen.add(key(attributes[i]))) {
+				merged.add(items.get(i));
+			}
+		}
+		return merged;
+	}
+
+	private Key key(double[] attributes) {
+		long[] key = new long[quanta.length];
+		for (int d = 0; d < quanta.length; d++) {
+			key[d] = quanta[d] > 0
+					? Math.round(attributes[d] / quanta[d])
+					: Double.doubleToLongBits(attributes[d] + 0.0);
+		}
+		return new Key(key);
+	}
+
+	private static final class Key {
+		private final long[] values;
+		private final int hash;
+
+		Key(long[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+		}
+	}
+
+}
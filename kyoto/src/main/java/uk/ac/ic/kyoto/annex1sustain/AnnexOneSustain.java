@@ -66,7 +66,7 @@ public class AnnexOneSustain extends AbstractCountry {
 		setKyotoMemberLevel(KyotoMember.ANNEXONE);
 		this.tradeSemaphore = new Semaphore(1);
 		
-		Random generator = new Random();
+		Random generator = getRandom("cheater");
 		double cheaterDecider = generator.nextDouble();
 		if (cheaterDecider < Constants.CHEATERS_PERCENTAGE) {
 			cheater = true;
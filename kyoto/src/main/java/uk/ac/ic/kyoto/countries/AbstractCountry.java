@@ -2,6 +2,7 @@ package uk.ac.ic.kyoto.countries;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
@@ -9,6 +10,7 @@ import uk.ac.ic.kyoto.actions.AddRemoveFromMonitor;
 import uk.ac.ic.kyoto.actions.AddRemoveFromMonitor.addRemoveType;
 import uk.ac.ic.kyoto.actions.AddToCarbonTarget;
 import uk.ac.ic.kyoto.actions.ApplyMonitorTax;
+import uk.ac.ic.kyoto.actions.MarketOrder;
 import uk.ac.ic.kyoto.actions.RejoinKyoto;
 import uk.ac.ic.kyoto.actions.SubmitCarbonEmissionReport;
 import uk.ac.ic.kyoto.countries.OfferMessage.OfferMessageType;
@@ -18,9 +20,12 @@ import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
 import uk.ac.ic.kyoto.services.Economy;
 import uk.ac.ic.kyoto.services.ParticipantCarbonReportingService;
 import uk.ac.ic.kyoto.services.ParticipantTimeService;
+import uk.ac.ic.kyoto.services.RandomService;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 import uk.ac.ic.kyoto.trade.InvestmentType;
 import uk.ac.ic.kyoto.trade.TradeType;
 import uk.ac.imperial.presage2.core.Time;
+import uk.ac.imperial.presage2.core.db.persistent.TransientAgentState;
 import uk.ac.imperial.presage2.core.environment.ActionHandlingException;
 import uk.ac.imperial.presage2.core.environment.ParticipantSharedState;
 import uk.ac.imperial.presage2.core.environment.UnavailableServiceException;
@@ -28,6 +33,7 @@ import uk.ac.imperial.presage2.core.messaging.Input;
 import uk.ac.imperial.presage2.core.messaging.Performative;
 import uk.ac.imperial.presage2.core.network.MulticastMessage;
 import uk.ac.imperial.presage2.core.network.NetworkAddress;
+import uk.ac.imperial.presage2.core.network.UnicastMessage;
 import uk.ac.imperial.presage2.core.simulator.SimTime;
 import uk.ac.imperial.presage2.util.fsm.FSMException;
 import uk.ac.imperial.presage2.util.participant.AbstractParticipant;
@@ -100,6 +106,10 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	protected CarbonAbsorptionHandler 	carbonAbsorptionHandler;
 	protected EnergyUsageHandler		energyUsageHandler;
 	
+	/*Context of the simulation the country was created in. The simulator
+	 * threads do not inherit it, so it is made current whenever they call the country*/
+	private final SimulationContext context = SimulationContext.current();
+	
 	/*Flag for single initialisation of AbstractCountry*/
 	private boolean initialised = false;
 
@@ -107,6 +117,9 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	
 	private DataStore dataStore = new DataStore();
 	
+	private TickDataDelta tickData = null;
+	private final Object persistLock = new Object(); /*Guards persist, the Monitor makes the emission reports outside of execute*/
+	
 	private boolean executeLock = false; /*Lock for stopping multiple execution of the execute block*/
 	
 	//================================================================================
@@ -142,6 +155,7 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	
 	@Override
 	final public void initialise(){
+		SimulationContext.setCurrent(context);
 		try{
 			this.persist.setProperty("ISO", this.getISO());
 			// Check if the initialised function has already been called.
@@ -205,6 +219,8 @@ public abstract class AbstractCountry extends AbstractParticipant {
 				
 			};
 			
+			tickData = new TickDataDelta(timeService.getTicksInYear());
+			
 			initialiseCountry();
 			
 		} catch (FSMException e) {
@@ -224,6 +240,7 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	
 	@Override
 	final public void execute() {
+		SimulationContext.setCurrent(context);
 //		try{
 				super.execute();
 //				if(!this.isExecuteLocked()){
@@ -276,6 +293,16 @@ public abstract class AbstractCountry extends AbstractParticipant {
 //		}
 	}
 	
+	/**
+	 * Closes the history of the country, deleting its spill file if any
+	 */
+	@Override
+	public void onSimulationComplete() {
+		SimulationContext.setCurrent(context);
+		super.onSimulationComplete();
+		this.dataStore.close();
+	}
+	
 	/**
 	 * function to set executeLock to true.
 	 */
@@ -526,6 +553,9 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	 * @author waffles
 	 */
 	private final void logSimulationData() {
+		if (!this.dataStore.isEnabled()) {
+			return;
+		}
 		this.dataStore.addGdp(this.getGDP());
 		this.dataStore.addGdpRate(this.getGDPRate());
 		this.dataStore.addAvailableToSpend(this.getAvailableToSpend());
@@ -546,33 +576,52 @@ public abstract class AbstractCountry extends AbstractParticipant {
 	}
 	
 	/**
-	 * Dumps the data into the database for current tick
+	 * Dumps the data into the database for current tick. Only the
+	 * properties that changed since the last tick are written, in
+	 * one getState per tick, with a full snapshot at the start of
+	 * every year. Use TickDataDelta.reconstruct to read back the
+	 * full series. Whether the country cheated is not part of it,
+	 * see dumpCheatingData.
 	 */
 	private final void dumpCurrentTickData(){
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.gdpKey, Double.toString(this.getGDP()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.gdpRateKey, Double.toString(this.getGDPRate()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.availableToSpendKey, Double.toString(this.getAvailableToSpend()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.emissionTargetKey, Double.toString(this.getEmissionsTarget()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.carbonOffsetKey, Double.toString(this.getCarbonOffset()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.carbonOutputKey, Double.toString(this.getCarbonOutput()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.energyOutputKey, Double.toString(this.getEnergyOutput()));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.landAreaKey,Double.toString(this.landArea));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.arableLandAreaKey,Double.toString(this.arableLandArea));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.carbonAbsorptionKey,Double.toString(this.carbonAbsorption));
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.isKyotoMemberKey, this.isKyotoMember().name());
-		this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.cheated, "n/a");
+		tickData.set(DataStore.gdpKey, Double.toString(this.getGDP()));
+		tickData.set(DataStore.gdpRateKey, Double.toString(this.getGDPRate()));
+		tickData.set(DataStore.availableToSpendKey, Double.toString(this.getAvailableToSpend()));
+		tickData.set(DataStore.emissionTargetKey, Double.toString(this.getEmissionsTarget()));
+		tickData.set(DataStore.carbonOffsetKey, Double.toString(this.getCarbonOffset()));
+		tickData.set(DataStore.carbonOutputKey, Double.toString(this.getCarbonOutput()));
+		tickData.set(DataStore.energyOutputKey, Double.toString(this.getEnergyOutput()));
+		tickData.set(DataStore.landAreaKey,Double.toString(this.landArea));
+		tickData.set(DataStore.arableLandAreaKey,Double.toString(this.arableLandArea));
+		tickData.set(DataStore.carbonAbsorptionKey,Double.toString(this.carbonAbsorption));
+		tickData.set(DataStore.isKyotoMemberKey, this.isKyotoMember().name());
+		
+		int tick = SimTime.get().intValue();
+		Map<String, String> changes = tickData.drain(tick);
+		if(!changes.isEmpty()){
+			synchronized(persistLock){
+				TransientAgentState state = this.persist.getState(tick);
+				for(Map.Entry<String, String> e : changes.entrySet()){
+					state.setProperty(e.getKey(), e.getValue());
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Dumps whether the participant was cheating or not for the current simulation tick
+	 * Dumps whether the participant was cheating or not into the state of
+	 * the tick of its report. Nothing is written in the other ticks
 	 * @param reportedValue
 	 * @param originalOutput
 	 */
 	public final void dumpCheatingData(Double reportedValue, Double originalOutput){
-		if(reportedValue.equals(originalOutput)){
-			this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.cheated, "reported true emission");
-		}else{
-			this.persist.getState(SimTime.get().intValue()).setProperty(DataStore.cheated, "cheated");
+		int tick = SimTime.get().intValue();
+		synchronized(persistLock){
+			if(reportedValue.equals(originalOutput)){
+				this.persist.getState(tick).setProperty(DataStore.cheated, "reported true emission");
+			}else{
+				this.persist.getState(tick).setProperty(DataStore.cheated, "cheated");
+			}
 		}
 	}
 	
@@ -673,6 +722,80 @@ public abstract class AbstractCountry extends AbstractParticipant {
 			return returnObject;
 	}
 	
+	/**
+	 * Places a bid for quantity carbon credits at up to unitCost each
+	 * in the CarbonMarket order book. Matching happens at the end of
+	 * the tick and the order stays in the book for
+	 * CarbonMarket.ORDER_LIFETIME ticks. Once the order leaves the
+	 * book its result is reported once, through tradeWasSuccessful
+	 * if any of it was traded, through tradeHasFailed otherwise.
+	 * @see CarbonMarket.OrderResult
+	 * @param quantity
+	 * @param unitCost
+	 * @return the order, null if the market refused it
+	 */
+	protected final OfferMessage postBuyOrder(double quantity, double unitCost){
+		return postOrder(new Offer(quantity, unitCost, TradeType.BUY));
+	}
+
+	/**
+	 * Places an ask for quantity carbon credits at no less than unitCost
+	 * each in the CarbonMarket order book.
+	 * @see #postBuyOrder(double, double)
+	 * @param quantity
+	 * @param unitCost
+	 * @return the order, null if the market refused it
+	 */
+	protected final OfferMessage postSellOrder(double quantity, double unitCost){
+		return postOrder(new Offer(quantity, unitCost, TradeType.SELL));
+	}
+
+	/**
+	 * Removes whatever is left of an order posted with postBuyOrder
+	 * or postSellOrder from the order book
+	 * @param orderID trade id of the OfferMessage of the order
+	 */
+	protected final void cancelOrder(UUID orderID){
+		try {
+			environment.act(new MarketOrder(this, orderID), getID(), authkey);
+		} catch (ActionHandlingException e) {
+			logger.warn("Unable to cancel order " + orderID + ": " + e);
+		}
+	}
+
+	/**
+	 * Queues the result of an order of this country as an input, the
+	 * TradeProtocol reports it on the next call to execute()
+	 * @param result
+	 * @param offerMessage
+	 */
+	final void orderClosed(CarbonMarket.OrderResult result, OfferMessage offerMessage){
+		this.enqueueInput(
+				new UnicastMessage<OfferMessage>(
+						Performative.INFORM,
+						result.name(),
+						SimTime.get(),
+						this.network.getAddress(),
+						this.network.getAddress(),
+						offerMessage));
+	}
+
+	private OfferMessage postOrder(Offer trade){
+		OfferMessage returnObject = new OfferMessage(
+				trade,
+				this.tradeProtocol.tradeToken.generate(),
+				OfferMessageType.ORDER_BOOK,
+				this.getID());
+		try {
+			environment.act(new MarketOrder(this, returnObject), getID(), authkey);
+		} catch (ActionHandlingException e) {
+			logger.warn("Unable to place order " + trade + ": " + e);
+			return null;
+		}
+		tradeProtocol.offerHistory.addToHistory(SimTime.get(), returnObject.getTradeID(), returnObject);
+		return returnObject;
+	}
+	
 	//================================================================================
     // Kyoto membership functions
     //================================================================================
@@ -722,6 +845,17 @@ public abstract class AbstractCountry extends AbstractParticipant {
 		}
 	}
 	
+	/**
+	 * Use this instead of new Random() so runs can be reproduced
+	 * from the simulation seed.
+	 * @param purpose what the numbers are used for, each purpose
+	 * gets its own stream
+	 * @return the random stream of this country for purpose
+	 */
+	protected final Random getRandom(String purpose) {
+		return RandomService.getStream(context.getSeed(), ISO, purpose);
+	}
+	
 	//================================================================================
     // Public getters
     //================================================================================
@@ -0,0 +1,124 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks the countries the Monitor audits when it cannot
+ * afford to audit all of them.
+ *
+ * Usage:
+ *
+ * monitor.setAuditStrategy(AuditStrategy.riskWeighted());
+ *
+ * An instance keeps scratch space between audits and
+ * belongs to a single Monitor.
+ */
+public abstract class AuditStrategy {
+
+	/**
+	 * @return strategy that gives every member the same chance.
+	 * Partial Fisher-Yates shuffle, O(k) once the member count is stable.
+	 */
+	public static AuditStrategy uniform() {
+		return new Uniform();
+	}
+
+	/**
+	 * @return strategy that picks a member with a chance proportional to
+	 * one plus the number of times it was caught cheating.
+	 * O(n + k log n).
+	 */
+	public static AuditStrategy riskWeighted() {
+		return new RiskWeighted();
+	}
+
+	/**
+	 * @param members candidates, in a stable order so a seeded random
+	 * picks the same members
+	 * @param k number of members to pick
+	 * @param sins number of times a member was caught cheating, members
+	 * that are not in the map never were
+	 * @param random
+	 * @return min(k, members.size()) distinct members
+	 */
+	public abstract <T> List<T> select(List<T> members, int k, Map<? super T, Integer> sins, Random random);
+
+	private static class Uniform extends AuditStrategy {
+
+		/* Permutation of 0..n-1, shuffled in place by every audit and
+		 * never reset: a partial Fisher-Yates over any permutation is
+		 * still uniform */
+		private int[] order = new int[0];
+
+		@Override
+		public <T> List<T> select(List<T> members, int k, Map<? super T, Integer> sins, Random random) {
+			int n = members.size();
+			k = Math.min(k, n);
+			if (order.length != n) {
+				order = new int[n];
+				for (int i = 0; i < n; i++) {
+					order[i] = i;
+				}
+			}
+			List<T> picked = new ArrayList<T>(k);
+			for (int i = 0; i < k; i++) {
+				int j = i + random.nextInt(n - i);
+				int o = order[j];
+				order[j] = order[i];
+				order[i] = o;
+				picked.add(members.get(o));
+			}
+			return picked;
+		}
+	}
+
+	private static class RiskWeighted extends AuditStrategy {
+
+		@Override
+		public <T> List<T> select(List<T> members, int k, Map<? super T, Integer> sins, Random random) {
+			int n = members.size();
+			k = Math.min(k, n);
+			/* Fenwick tree over the weights, 1-based */
+			long[] tree = new long[n + 1];
+			long[] weights = new long[n];
+			long total = 0;
+			for (int i = 0; i < n; i++) {
+				Integer s = sins.get(members.get(i));
+				weights[i] = 1 + (s == null ? 0 : Math.max(0, s));
+				total += weights[i];
+				tree[i + 1] += weights[i];
+				int parent = (i + 1) + ((i + 1) & -(i + 1));
+				if (parent <= n) {
+					tree[parent] += tree[i + 1];
+				}
+			}
+			int top = Integer.highestOneBit(Math.max(1, n));
+
+			List<T> picked = new ArrayList<T>(k);
+			for (int p = 0; p < k; p++) {
+				long target = (long) (random.nextDouble() * total);
+				/* Find the smallest index whose prefix sum exceeds target */
+				int pos = 0;
+				for (int step = top; step > 0; step >>= 1) {
+					int next = pos + step;
+					if (next <= n && tree[next] <= target) {
+						pos = next;
+						target -= tree[next];
+					}
+				}
+				picked.add(members.get(pos));
+				long w = weights[pos];
+				weights[pos] = 0;
+				total -= w;
+				for (int i = pos + 1; i <= n; i += i & -i) {
+					tree[i] -= w;
+				}
+			}
+			return picked;
+		}
+	}
+
+}
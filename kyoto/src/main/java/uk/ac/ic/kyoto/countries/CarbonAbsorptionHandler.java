@@ -10,6 +10,8 @@ import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
 public final class CarbonAbsorptionHandler {
 	
 	private final AbstractCountry country;
+	/* The constants of the simulation the country is in */
+	private final GameConst constants;
 
 	/**
 	 * Create instance of CarbonAbsorbtionHandler.
@@ -19,6 +21,7 @@ public final class CarbonAbsorptionHandler {
 	 */
 	CarbonAbsorptionHandler(AbstractCountry abstractCountry) {
 		this.country = abstractCountry;
+		this.constants = GameConst.current();
 	}
 	
 	/**
@@ -65,8 +68,8 @@ public final class CarbonAbsorptionHandler {
 		double occupiedAreaMeasureAfter = calculateOccupiedAreaMeasure((arableLandArea - forestArea), country.landArea);
 		
 		// Get average price of single ton of additional carbon absorption
-		double averageUnitPrice = (GameConst.getCarbonAbsorptionPriceMin() +
-									( (GameConst.getCarbonAbsorptionPriceMax() - GameConst.getCarbonAbsorptionPriceMin()) *
+		double averageUnitPrice = (constants.carbonAbsorptionPriceMin() +
+									( (constants.carbonAbsorptionPriceMax() - constants.carbonAbsorptionPriceMin()) *
 									  (occupiedAreaMeasureBefore + occupiedAreaMeasureAfter) /
 									  (2) ) );
 		
@@ -76,6 +79,32 @@ public final class CarbonAbsorptionHandler {
 		return investmentRequired;
 	}
 	
+	/**
+	 * Prices several absorption increases at once, with the actual arableLandArea of the country.
+	 * 
+	 * @param carbonAbsorptionChanges
+	 * The amounts of carbon absorption which we want to price.
+	 * 
+	 * @return
+	 * Cost of each increase, in the same order.
+	 * @throws NotEnoughLandException
+	 * If any of the increases needs more forest than the arable land.
+	 */
+	public final double[] getInvestmentRequired(double[] carbonAbsorptionChanges) throws NotEnoughLandException {
+		double arableLandArea = country.arableLandArea;
+		double linear = linearCoefficient(arableLandArea);
+		double quadratic = quadraticCoefficient();
+		double[] investments = new double[carbonAbsorptionChanges.length];
+		for (int i = 0; i < carbonAbsorptionChanges.length; i++) {
+			double change = carbonAbsorptionChanges[i];
+			if (getForestAreaRequired(change) > arableLandArea) {
+				throw new NotEnoughLandException();
+			}
+			investments[i] = change * (linear + quadratic * change);
+		}
+		return investments;
+	}
+	
 	
 	/**
 	 * Calls getCarbonAbsorptionChange with actual arableLandArea of the country.
@@ -93,8 +122,9 @@ public final class CarbonAbsorptionHandler {
 	
 	/**
 	 * Returns the additional carbon absorption for given investment amount, given arable land.
-	 * Uses binary search, which is efficient.
-	 * The result might not be 100% accurate - this is only an approximation function.
+	 * The cost is quadratic in the absorption, see getInvestmentRequired, so this
+	 * solves it exactly. The result is never more than the net carbon output of the
+	 * country, nor more than the arable land can absorb.
 	 * 
 	 * @param investmentAmount
 	 * Amount of money that we want to spend on investment.
@@ -107,32 +137,53 @@ public final class CarbonAbsorptionHandler {
 	 * @throws NotEnoughLandException 
 	 */
 	public final double getCarbonAbsorptionChange(double investmentAmount, double arableLandArea) throws NotEnoughLandException {
-		double carbonAbsorptionChange;
-		
-		double carbonDiff = (country.carbonOutput - country.carbonAbsorption) / 2;
+		return CarbonReductionHandler.invert(investmentAmount,
+				linearCoefficient(arableLandArea),
+				quadraticCoefficient(),
+				getMaximumAbsorptionChange(arableLandArea));
+	}
 		
-		while (getForestAreaRequired(carbonDiff) > arableLandArea) {
-			carbonDiff*=0.9;
+	/**
+	 * Returns the additional carbon absorption for each of the given investment amounts,
+	 * with the actual arableLandArea of the country.
+	 * 
+	 * @param investmentAmounts
+	 * Amounts of money that we want to spend on investment.
+	 * 
+	 * @return
+	 * Change in carbon absorption achieved with each investment, in the same order.
+	 */
+	public final double[] getCarbonAbsorptionChange(double[] investmentAmounts) {
+		double arableLandArea = country.arableLandArea;
+		double linear = linearCoefficient(arableLandArea);
+		double quadratic = quadraticCoefficient();
+		double max = getMaximumAbsorptionChange(arableLandArea);
+		double[] changes = new double[investmentAmounts.length];
+		for (int i = 0; i < investmentAmounts.length; i++) {
+			changes[i] = CarbonReductionHandler.invert(investmentAmounts[i], linear, quadratic, max);
 		}
+		return changes;
+	}
 		
-		carbonAbsorptionChange = carbonDiff;
+	/*
+	 * getInvestmentRequired(x) = x * (linear + quadratic * x), where
+	 * linear = min + (max - min) * occupiedAreaMeasureBefore and
+	 * quadratic = (max - min) * forestCarbonAbsorption / (2 * landArea)
+	 */
+	double linearCoefficient(double arableLandArea) {
+		return constants.carbonAbsorptionPriceMin() +
+				(constants.carbonAbsorptionPriceMax() - constants.carbonAbsorptionPriceMin()) *
+				calculateOccupiedAreaMeasure(arableLandArea, country.landArea);
+	}
 		
-		double tempInvestmentAmount = getInvestmentRequired(carbonAbsorptionChange, arableLandArea);
-
-		for (int i = 0; i < 30; i++) {
-			carbonDiff /= 2;
-			
-			//If value is higher, lower our estimate, else increase it
-			if (tempInvestmentAmount < investmentAmount) {
-				carbonAbsorptionChange += carbonDiff;
-			}
-			else if (tempInvestmentAmount > investmentAmount) {
-				carbonAbsorptionChange -= carbonDiff;
-			}
-			tempInvestmentAmount = getInvestmentRequired(carbonAbsorptionChange, arableLandArea);
-		}
+	double quadraticCoefficient() {
+		return (constants.carbonAbsorptionPriceMax() - constants.carbonAbsorptionPriceMin()) *
+				constants.forestCarbonAbsorption() / (2 * country.landArea);
+	}
 		
-		return carbonAbsorptionChange;
+	private double getMaximumAbsorptionChange(double arableLandArea) {
+		double netOutput = Math.max(0, country.carbonOutput - country.carbonAbsorption);
+		return Math.min(netOutput, arableLandArea / constants.forestCarbonAbsorption());
 	}
 	
 	/**
@@ -145,7 +196,7 @@ public final class CarbonAbsorptionHandler {
 	 * Forest area required.
 	 */
 	public final double getForestAreaRequired(double carbonAbsorptionChange){		
-		return (carbonAbsorptionChange * GameConst.getForestCarbonAbsorption());
+		return (carbonAbsorptionChange * constants.forestCarbonAbsorption());
 	}
 	
 	/**
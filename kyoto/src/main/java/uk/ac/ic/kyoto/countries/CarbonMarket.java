@@ -0,0 +1,274 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ic.kyoto.countries.OfferMessage.OfferMessageType;
+import uk.ac.ic.kyoto.countries.OrderBook.Order;
+import uk.ac.ic.kyoto.singletonfactory.SingletonProvider;
+import uk.ac.ic.kyoto.tokengen.Token;
+import uk.ac.ic.kyoto.trade.TradeType;
+import uk.ac.ic.kyoto.tradehistory.TradeHistory;
+import uk.ac.imperial.presage2.core.environment.EnvironmentService;
+import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
+import uk.ac.imperial.presage2.core.simulator.SimTime;
+
+import com.google.inject.Inject;
+
+/**
+ * Environment service holding the carbon credit order book.
+ * Countries post bids and asks through the MarketOrder action
+ * instead of broadcasting them to every other agent, and the
+ * book is cleared once at the end of every tick (by the
+ * TradeHistoryService, right before the trades of the tick are
+ * written out). Matches are settled directly with payMoney,
+ * receiveOffset, sellOffset and receiveMoney and recorded in the
+ * TradeHistory. A match is only settled if the buyer can still
+ * pay for it and the seller still holds the offset, otherwise
+ * the order that cannot be settled is cancelled.
+ *
+ * Each order gets exactly one result once it leaves the book
+ * (see OrderResult), queued as an input of its owner so the
+ * TradeProtocol reports it through tradeWasSuccessful or
+ * tradeHasFailed on the owner's own thread.
+ *
+ * Each posted order costs one action, compared to a multicast
+ * to every agent not in a conversation plus up to four messages
+ * per conversation that it opens with the broadcast protocol;
+ * the per tick figures of both are logged so they can be compared.
+ */
+public class CarbonMarket extends EnvironmentService {
+
+	/**
+	 * Number of ticks an order stays in the book, the same as
+	 * the TradeProtocol timeout
+	 */
+	public static final int ORDER_LIFETIME = TradeProtocol.TIMEOUT_TICKS;
+
+	/**
+	 * How an order left the book, the type of the message
+	 * its owner receives
+	 */
+	public enum OrderResult {
+		/** the whole quantity was traded */
+		FILLED,
+		/** part of the quantity was traded before the order expired or was cancelled */
+		PARTLY_FILLED,
+		/** nothing was traded */
+		CANCELLED
+	}
+
+	private final Logger logger = Logger.getLogger(CarbonMarket.class);
+
+	private final OrderBook book = new OrderBook();
+
+	/**
+	 * country id -> country, for every country that posted an order
+	 */
+	private final Map<UUID, AbstractCountry> participants = new ConcurrentHashMap<UUID, AbstractCountry>();
+
+	private final TradeHistory tradeHistory = SingletonProvider.getTradeHistory();
+	private final Token token = SingletonProvider.getToken();
+
+	/* Statistics */
+	private int ordersThisTick = 0;
+	private int ordersLastTick = 0;
+	private int tradesLastTick = 0;
+	private long totalOrders = 0;
+	private long totalTrades = 0;
+	private long matchingNanos = 0;
+
+	@Inject
+	public CarbonMarket(EnvironmentSharedStateAccess sharedState) {
+		super(sharedState);
+	}
+
+	/**
+	 * Posts the BUY or SELL offer of offerMessage in the order book.
+	 * The order can trade from the end of the current tick until it
+	 * is filled, cancelled or ORDER_LIFETIME ticks have passed.
+	 * @param country
+	 * @param offerMessage
+	 * @throws IllegalArgumentException if the offer is not a valid BUY or SELL offer
+	 */
+	public void placeOrder(AbstractCountry country, OfferMessage offerMessage) {
+		participants.put(country.getID(), country);
+		book.submit(offerMessage.getTradeID(),
+				country.getID(),
+				offerMessage.getOfferType(),
+				offerMessage.getOfferQuantity(),
+				offerMessage.getOfferUnitCost(),
+				SimTime.get().intValue() + ORDER_LIFETIME - 1);
+		synchronized (this) {
+			ordersThisTick++;
+		}
+	}
+
+	/**
+	 * Removes the order with the given id if it belongs to country
+	 * @param country
+	 * @param orderID
+	 * @return true if the order was still live and has been removed
+	 */
+	public boolean cancelOrder(AbstractCountry country, UUID orderID) {
+		synchronized (book) {
+			Order o = book.getOrder(orderID);
+			if (o == null || !o.owner.equals(country.getID())) {
+				return false;
+			}
+			return book.cancel(orderID) != null;
+		}
+	}
+
+	/**
+	 * @param orderID
+	 * @return quantity of the order that is still waiting to be filled,
+	 * 0 if the order is no longer in the book
+	 */
+	public double getRemainingQuantity(UUID orderID) {
+		Order o = book.getOrder(orderID);
+		return o == null ? 0 : o.getRemaining();
+	}
+
+	/**
+	 * @return highest resting bid, NaN if there is none
+	 */
+	public double getBestBid() {
+		Order o = book.getBestBid();
+		return o == null ? Double.NaN : o.unitCost;
+	}
+
+	/**
+	 * @return lowest resting ask, NaN if there is none
+	 */
+	public double getBestAsk() {
+		Order o = book.getBestAsk();
+		return o == null ? Double.NaN : o.unitCost;
+	}
+
+	/**
+	 * Matches the orders posted during the current tick and
+	 * drops the orders that expired.
+	 */
+	public void clear() {
+		final int tick = SimTime.get().intValue();
+		long start = System.nanoTime();
+		int fills = book.match(tick, new OrderBook.Settlement() {
+			@Override
+			public Order settle(Order buy, Order sell, double quantity, double unitCost) {
+				return CarbonMarket.this.settle(buy, sell, quantity, unitCost);
+			}
+		});
+		long elapsed = System.nanoTime() - start;
+
+		for (Order o : book.drainClosed()) {
+			report(o);
+		}
+
+		int orders;
+		synchronized (this) {
+			orders = ordersThisTick;
+			ordersThisTick = 0;
+			ordersLastTick = orders;
+			tradesLastTick = fills;
+			totalOrders += orders;
+			totalTrades += fills;
+			matchingNanos += elapsed;
+		}
+
+		if (orders > 0 || fills > 0) {
+			logger.info("Tick " + tick + ": " + orders + " orders, " + fills + " trades, "
+					+ (orders + 2 * fills) + " market messages against "
+					+ orders * Math.max(0, participants.size() - 1) + " broadcast deliveries for the same offers, "
+					+ getTradesPerSecond() + " trades/s");
+		}
+	}
+
+	private Order settle(Order buy, Order sell, double quantity, double unitCost) {
+		AbstractCountry buyer = participants.get(buy.owner);
+		AbstractCountry seller = participants.get(sell.owner);
+
+		Offer bought = new Offer(quantity, unitCost, TradeType.BUY);
+
+		if (buyer.getAvailableToSpend() < bought.getTotalCost()) {
+			logger.info(buyer.getName() + " cannot pay " + bought.getTotalCost() + " any more, cancelling its bid");
+			return buy;
+		}
+		if (seller.getCarbonOffset() < quantity) {
+			logger.info(seller.getName() + " cannot sell " + quantity + " any more, cancelling its ask");
+			return sell;
+		}
+
+		buyer.receiveOffset(quantity);
+		buyer.payMoney(bought.getTotalCost());
+		seller.sellOffset(quantity);
+		seller.receiveMoney(bought.getTotalCost());
+
+		/* An order can be filled in several trades, each one gets its own id */
+		OfferMessage trade = new OfferMessage(bought.reverse(), token.generate(), OfferMessageType.ORDER_BOOK, seller.getID());
+		trade.setInitiator(buyer.getID());
+		tradeHistory.addToHistory(SimTime.get(), trade.getTradeID(), trade);
+
+		logger.debug(seller.getName() + " sold " + quantity + " to " + buyer.getName() + " at " + unitCost);
+		return null;
+	}
+
+	/**
+	 * Sends the owner of an order that left the book its result. The
+	 * offer of a filled or partly filled order holds the quantity
+	 * traded at its average price, the offer of a cancelled order is
+	 * the order itself.
+	 * @param o
+	 */
+	private void report(Order o) {
+		AbstractCountry owner = participants.get(o.owner);
+		OrderResult result;
+		Offer offer;
+		if (o.isFilled()) {
+			result = OrderResult.FILLED;
+			offer = new Offer(o.quantity, o.getValue() / o.quantity, o.side);
+		} else if (o.getFilled() > OrderBook.EPSILON) {
+			result = OrderResult.PARTLY_FILLED;
+			offer = new Offer(o.getFilled(), o.getValue() / o.getFilled(), o.side);
+		} else {
+			result = OrderResult.CANCELLED;
+			offer = new Offer(o.quantity, o.unitCost, o.side);
+		}
+		OfferMessage offerMessage = new OfferMessage(offer, o.id, OfferMessageType.ORDER_BOOK, owner.getID());
+		offerMessage.setInitiator(owner.getID());
+		owner.orderClosed(result, offerMessage);
+	}
+
+	/**
+	 * @return number of orders posted in the tick that was cleared last
+	 */
+	public synchronized int getOrdersInLastTick() {
+		return ordersLastTick;
+	}
+
+	/**
+	 * @return number of trades in the tick that was cleared last
+	 */
+	public synchronized int getTradesInLastTick() {
+		return tradesLastTick;
+	}
+
+	public synchronized long getTotalOrders() {
+		return totalOrders;
+	}
+
+	public synchronized long getTotalTrades() {
+		return totalTrades;
+	}
+
+	/**
+	 * @return trades settled per second of matching time
+	 */
+	public synchronized double getTradesPerSecond() {
+		return matchingNanos == 0 ? 0 : totalTrades * 1e9 / matchingNanos;
+	}
+
+}
@@ -10,6 +10,8 @@ import uk.ac.ic.kyoto.exceptions.NotEnoughCashException;
 public final class CarbonReductionHandler{
 	
 	private final AbstractCountry country;
+	/* The constants of the simulation the country is in */
+	private final GameConst constants;
 
 	/**
 	 * Create instance of CarbonReductionHandler.
@@ -19,6 +21,7 @@ public final class CarbonReductionHandler{
 	 */
 	CarbonReductionHandler(AbstractCountry abstractCountry) {
 		this.country = abstractCountry;
+		this.constants = GameConst.current();
 	}
 	
 	/**
@@ -58,8 +61,8 @@ public final class CarbonReductionHandler{
 			double cleanIndustryAfter = calculateCleanIndustryMeasure((carbonOutput - carbonOutputChange), energyOutput);
 			
 			// Get average price of single ton of carbon output reduction
-			double averageUnitPrice = (GameConst.getCarbonReductionPriceMin() +
-									    ( (GameConst.getCarbonReductionPriceMax() - GameConst.getCarbonReductionPriceMin()) * 
+			double averageUnitPrice = (constants.carbonReductionPriceMin() +
+									    ( (constants.carbonReductionPriceMax() - constants.carbonReductionPriceMin()) * 
 									      (cleanIndustryBefore + cleanIndustryAfter) /
 									      (2) ) ); 
 			
@@ -69,6 +72,32 @@ public final class CarbonReductionHandler{
 		return investmentRequired;
 	}
 	
+	/**
+	 * Prices several reductions at once, with the actual carbonOutput and energyOutput of the country.
+	 * 
+	 * @param carbonOutputChanges
+	 * The amounts of carbon reduction which we want to price.
+	 * 
+	 * @return
+	 * Cost of each reduction, in the same order.
+	 */
+	public final double[] getInvestmentRequired(double[] carbonOutputChanges) {
+		double carbonOutput = country.carbonOutput;
+		double energyOutput = country.energyOutput;
+		double linear = linearCoefficient(carbonOutput, energyOutput);
+		double quadratic = quadraticCoefficient(energyOutput);
+		double[] investments = new double[carbonOutputChanges.length];
+		for (int i = 0; i < carbonOutputChanges.length; i++) {
+			double change = carbonOutputChanges[i];
+			// Same check as calculateCleanIndustryMeasure for the output after the investment
+			if (carbonOutput - change > energyOutput) {
+				throw new RuntimeException("calculateCleanIndustryMeasure function error: carbonOutput is greater than energyOutput");
+			}
+			investments[i] = change * (linear + quadratic * change);
+		}
+		return investments;
+	}
+	
 	/**
 	 * Calls getCarbonAbsorptionChange with actual carbonOutput and energyOutput of the country.
 	 * 
@@ -85,8 +114,8 @@ public final class CarbonReductionHandler{
 	
 	/**
 	 * Returns the reduction of carbon output for given investment amount.
-	 * Uses binary search, which is efficient.
-	 * The result might not be 100% accurate - this is only an approximation function.
+	 * The cost is quadratic in the reduction, see getInvestmentRequired, so
+	 * this solves it exactly. The result is between 0 and carbonOutput.
 	 * 
 	 * @param investmentAmount
 	 * Amount of money that we want to spend on investment.
@@ -101,29 +130,59 @@ public final class CarbonReductionHandler{
 	 * Change in carbon output achieved with specified investment.
 	 */
 	public final double getCarbonOutputChange(double investmentAmount, double carbonOutput, double energyOutput) {
-		double carbonOutputChange;
+		return invert(investmentAmount,
+				linearCoefficient(carbonOutput, energyOutput),
+				quadraticCoefficient(energyOutput),
+				carbonOutput);
+	}
 
-		double carbonDiff = carbonOutput / 2;
+	/**
+	 * Returns the reduction of carbon output for each of the given investment amounts,
+	 * with the actual carbonOutput and energyOutput of the country.
+	 * 
+	 * @param investmentAmounts
+	 * Amounts of money that we want to spend on investment.
+	 * 
+	 * @return
+	 * Change in carbon output achieved with each investment, in the same order.
+	 */
+	public final double[] getCarbonOutputChange(double[] investmentAmounts) {
+		double carbonOutput = country.carbonOutput;
+		double energyOutput = country.energyOutput;
+		double linear = linearCoefficient(carbonOutput, energyOutput);
+		double quadratic = quadraticCoefficient(energyOutput);
+		double[] changes = new double[investmentAmounts.length];
+		for (int i = 0; i < investmentAmounts.length; i++) {
+			changes[i] = invert(investmentAmounts[i], linear, quadratic, carbonOutput);
+		}
+		return changes;
+	}
 		
-		carbonOutputChange = carbonDiff;
+	/*
+	 * getInvestmentRequired(x) = x * (linear + quadratic * x), where
+	 * linear = min + (max - min) * cleanIndustryBefore and
+	 * quadratic = (max - min) / (2 * energyOutput)
+	 */
+	double linearCoefficient(double carbonOutput, double energyOutput) {
+		return constants.carbonReductionPriceMin() +
+				(constants.carbonReductionPriceMax() - constants.carbonReductionPriceMin()) *
+				calculateCleanIndustryMeasure(carbonOutput, energyOutput);
+	}
 		
-		double tempInvestmentAmount = getInvestmentRequired(carbonOutputChange, carbonOutput, energyOutput);
+	double quadraticCoefficient(double energyOutput) {
+		return (constants.carbonReductionPriceMax() - constants.carbonReductionPriceMin()) / (2 * energyOutput);
+	}
 		
-		for (int i = 0; i < 30; i++) {
-			carbonDiff /= 2;
-			
-			// If value is higher, lower our estimate, else increase it
-			if (tempInvestmentAmount < investmentAmount) {
-				carbonOutputChange += carbonDiff;
-				tempInvestmentAmount = getInvestmentRequired(carbonOutputChange,carbonOutput,energyOutput);
-			}
-			else if (tempInvestmentAmount > investmentAmount) {
-				carbonOutputChange -= carbonDiff;
-				tempInvestmentAmount = getInvestmentRequired(carbonOutputChange,carbonOutput,energyOutput);
-			}
+	/**
+	 * Positive root of quadratic * x^2 + linear * x = investment, in the
+	 * form that does not cancel when quadratic is small, clamped to [0, max]
+	 */
+	static double invert(double investment, double linear, double quadratic, double max) {
+		if (investment <= 0) {
+			return 0;
 		}
-		
-		return carbonOutputChange;
+		double change = 2 * investment / (linear + Math.sqrt(linear * linear + 4 * quadratic * investment));
+		return Math.min(change, max);
 	}
 		
 	/**
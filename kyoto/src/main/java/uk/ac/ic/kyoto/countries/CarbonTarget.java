@@ -1,7 +1,12 @@
 package uk.ac.ic.kyoto.countries;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -38,7 +43,12 @@ public class CarbonTarget extends EnvironmentService {
 		public double lastSessionTarget = 0;
 		public double currentSessionTarget = 0;
 		
-		public Map<Integer, Double> yearTargets = new ConcurrentHashMap<Integer, Double>();
+		public final YearValues yearTargets = new YearValues();
+		
+		/* Emissions reported at the end of every year, and whether the
+		 * country was a Kyoto member when it reported the last one */
+		public final YearValues yearReports = new YearValues();
+		public boolean reportedAsMember = false;
 		
 		public double proportion = 0;
 		public double penalty = 0;
@@ -48,10 +58,53 @@ public class CarbonTarget extends EnvironmentService {
 		}
 	}
 	
+	/**
+	 * A value for every year, indexed by year. NaN for years without a value.
+	 */
+	private static class YearValues {
+		/* Replaced, never resized in place, so readers see a complete array */
+		private volatile double[] targets = new double[0];
+		
+		void put(int year, double target) {
+			double[] t = targets;
+			if (year >= t.length) {
+				int length = Math.max(year + 1, t.length * 2);
+				double[] grown = Arrays.copyOf(t, length);
+				Arrays.fill(grown, t.length, length, Double.NaN);
+				t = grown;
+			}
+			t[year] = target;
+			targets = t;
+		}
+		
+		double get(int year) {
+			double[] t = targets;
+			if (year < 0 || year >= t.length || Double.isNaN(t[year])) {
+				throw new NullPointerException("No value for year " + year);
+			}
+			return t[year];
+		}
+		
+		double get(int year, double otherwise) {
+			double[] t = targets;
+			return year < 0 || year >= t.length || Double.isNaN(t[year]) ? otherwise : t[year];
+		}
+		
+		void add(int year, double delta) {
+			put(year, get(year, 0) + delta);
+		}
+	}
+	
+	/* In the order the countries were added, the index below points into it */
 	private ArrayList<countryObject> participantCountries= new ArrayList<countryObject>();
-	private ArrayList<UUID> cheatersList = new ArrayList<UUID>();
+	private Map<UUID, countryObject> participantIndex = new ConcurrentHashMap<UUID, countryObject>();
+	private Set<UUID> cheatersList = new HashSet<UUID>();
 	public ArrayList<UUID> queueToJoin = new ArrayList<UUID>();
 	
+	/* Running totals of the yearly reports, by membership at the time of reporting */
+	private final YearValues worldReported = new YearValues();
+	private final YearValues memberReported = new YearValues();
+	
 	private double worldLastSessionTarget = 0;
 	private double worldCurrentSessionTarget = 0;
 	
@@ -79,16 +132,49 @@ public class CarbonTarget extends EnvironmentService {
 	/**
 	 * Adds states to the service
 	 */
-	public void addMemberState(AbstractCountry state) {
-		countryObject memberState = new countryObject(state);
-		if (!participantCountries.contains(memberState))
+	public synchronized void addMemberState(AbstractCountry state) {
+		if (!participantIndex.containsKey(state.getID())) {
+			countryObject memberState = new countryObject(state);
 			participantCountries.add(memberState);
+			participantIndex.put(state.getID(), memberState);
+		}
+	}
+	
+	/**
+	 * Called for every report submitted to the CarbonReportingService,
+	 * keeps the yearly report totals up to date
+	 * @param countryID
+	 * @param tick tick the report was made at, only reports at the end
+	 * of a year are counted
+	 * @param emission
+	 */
+	public synchronized void reportReceived(UUID countryID, int tick, double emission) {
+		int ticksInYear = GameConst.getTicksInYear();
+		countryObject country = participantIndex.get(countryID);
+		if (country == null || tick <= 0 || tick % ticksInYear != 0) {
+			return;
+		}
+		int year = tick / ticksInYear - 1;
+		/* A second report in the same year replaces the first */
+		double previous = country.yearReports.get(year, Double.NaN);
+		if (!Double.isNaN(previous)) {
+			worldReported.add(year, -previous);
+			if (country.reportedAsMember) {
+				memberReported.add(year, -previous);
+			}
+		}
+		country.yearReports.put(year, emission);
+		country.reportedAsMember = country.obj.isKyotoMember() == KyotoMember.ANNEXONE;
+		worldReported.add(year, emission);
+		if (country.reportedAsMember) {
+			memberReported.add(year, emission);
+		}
 	}
 	
 	private void addRejoiningCountries() {
 		for (UUID  countryID : queueToJoin) {
 			countryObject ref = findCountryObject(countryID);
-			ref.currentSessionTarget = getReportedCarbonOutput(countryID, (timeService.getCurrentYear() - 1));
+			ref.currentSessionTarget = getReportedCarbonOutput(ref, (timeService.getCurrentYear() - 1));
 			ref.obj.kyotoMemberLevel = KyotoMember.ANNEXONE;
 			monitor.addMemberState(ref.obj);
 		}
@@ -162,33 +248,102 @@ public class CarbonTarget extends EnvironmentService {
 		updateYearTargets();
 	}
 	
-	private double getReportedCarbonOutput(UUID countryID, int year){
+	private double getReportedCarbonOutput(countryObject country, int year){
 		double result;
-		if (cheatersList.contains(countryID)){
-			countryObject ref = findCountryObject(countryID);
-			result = ref.obj.getCarbonOutput() - ref.obj.getCarbonAbsorption();
+		if (cheatersList.contains(country.obj.getID())){
+			result = country.obj.getCarbonOutput() - country.obj.getCarbonAbsorption();
 		} else {
 			if (year < 0) {
-				result = CarbonData1990.get(findCountryObject(countryID).obj.getISO());
+				result = CarbonData1990.get(country.obj.getISO());
 			} else {
-				Map<Integer, Double> reports = reportingService.getReport(countryID);
-				int simTime = (timeService.getTicksInYear() * (year +1));
-				result = reports.get(simTime);
+				result = country.yearReports.get(year);
 			}
 		}
 		return result;
 	}
 	
-	private countryObject findCountryObject(UUID countryID){
+	/*
+	 * The real output of a cheater, the report of everyone else. A country
+	 * that has not reported counts as 0, see getMissingReports
+	 */
+	private double getCountedOutput(countryObject country, int year) {
+		if (cheatersList.contains(country.obj.getID())) {
+			return getReportedCarbonOutput(country, year);
+		}
+		return country.yearReports.get(year, 0);
+	}
+	
+	/**
+	 * @param year
+	 * @return the countries that did not report their emissions for year
+	 * and are not known cheaters, they are counted as 0 in the totals
+	 */
+	synchronized List<AbstractCountry> getMissingReports(int year) {
+		List<AbstractCountry> missing = new ArrayList<AbstractCountry>();
 		for (countryObject country : participantCountries) {
-			if (country.obj.getID() == countryID) {
-				return country;
+			if (Double.isNaN(country.yearReports.get(year, Double.NaN))
+					&& !cheatersList.contains(country.obj.getID())) {
+				missing.add(country.obj);
+			}
+		}
+		return missing;
+	}
+	
+	/**
+	 * @param year
+	 * @return the emissions of all the countries in year, from the
+	 * total of the reports corrected for the cheaters
+	 */
+	synchronized double getWorldOutput(int year) {
+		double worldOutput = worldReported.get(year, 0);
+		for (UUID cheater : cheatersList) {
+			countryObject country = participantIndex.get(cheater);
+			if (country != null) {
+				worldOutput += getCountedOutput(country, year) - country.yearReports.get(year, 0);
 			}
 		}
+		return worldOutput;
+	}
+	
+	/**
+	 * @param year
+	 * @return the emissions of the current Kyoto members in year, from
+	 * the total of the reports corrected for the cheaters and the countries
+	 * that joined or left since they reported
+	 */
+	synchronized double getMemberOutput(int year) {
+		double memberOutput = memberReported.get(year, 0);
+		for (countryObject country : participantCountries) {
+			boolean member = country.obj.isKyotoMember() == KyotoMember.ANNEXONE;
+			double reported = country.yearReports.get(year, 0);
+			double output = getCountedOutput(country, year);
+			if (country.reportedAsMember) {
+				memberOutput += output - reported;
+			}
+			if (member != country.reportedAsMember) {
+				memberOutput += member ? output : -output;
+			}
+		}
+		return memberOutput;
+	}
+	
+	private countryObject findCountryObject(UUID countryID){
+		countryObject country = participantIndex.get(countryID);
+		if (country != null) {
+			return country;
+		}
 		
 		throw new NullPointerException("countryID " + countryID + " does not exist in list of carbon target participants");
 	}
 	
+	/**
+	 * @param theCheaters the countries caught cheating in the last audit,
+	 * their real emissions are counted instead of their reports
+	 */
+	synchronized void setCheaters(Collection<UUID> theCheaters) {
+		cheatersList = new HashSet<UUID>(theCheaters);
+	}
+	
 	@EventListener
 	public void onTimeCycle(EndOfTimeCycle e) {
 		if (SimTime.get().intValue() == 1) {
@@ -197,7 +352,7 @@ public class CarbonTarget extends EnvironmentService {
 	}
 	
 	public void targetsForMonitor(ArrayList<UUID> theCheaters) {
-		cheatersList = theCheaters;
+		setCheaters(theCheaters);
 		if (timeService.getCurrentYear() != 0) {
 			if ((timeService.getCurrentYear() % timeService.getYearsInSession()) == 0)
 			{
@@ -248,25 +403,43 @@ public class CarbonTarget extends EnvironmentService {
 		int lastYear = timeService.getCurrentYear() -1;
 		int session = timeService.getCurrentSession();
 		
-		for (countryObject country : participantCountries) {
-			double output = getReportedCarbonOutput(country.obj.getID(), lastYear);
-			worldOutput += output;
-			if(country.obj.isKyotoMember() != KyotoMember.ANNEXONE){
-				rogueCarbonOutput += output ;
+		ArrayList<countryObject> members = new ArrayList<countryObject>(participantCountries.size());
+		double[] outputs = new double[participantCountries.size()];
+		if (lastYear < 0) {
+			/* Before the first year, from the 1990 data */
+			for (countryObject country : participantCountries) {
+				double output = getReportedCarbonOutput(country, lastYear);
+				worldOutput += output;
+				if(country.obj.isKyotoMember() != KyotoMember.ANNEXONE){
+					rogueCarbonOutput += output ;
+				} else {
+					outputs[members.size()] = output;
+					members.add(country);
+				}
+			}
+		} else {
+			for (AbstractCountry country : getMissingReports(lastYear)) {
+				logger.warn(country.getName() + " has not reported its emissions for year " + lastYear + ", counting them as 0");
+			}
+			worldOutput = getWorldOutput(lastYear);
+			rogueCarbonOutput = worldOutput - getMemberOutput(lastYear);
+			for (countryObject country : participantCountries) {
+				if (country.obj.isKyotoMember() == KyotoMember.ANNEXONE) {
+					outputs[members.size()] = getCountedOutput(country, lastYear);
+					members.add(country);
+				}
 			}
 		}
 		
 		double kyotoTarget = this.worldCurrentSessionTarget - rogueCarbonOutput;
 		
-		for (countryObject country : participantCountries) {
-			if (country.obj.isKyotoMember() == KyotoMember.ANNEXONE){
-				double output = getReportedCarbonOutput(country.obj.getID(), lastYear);
-				country.proportion = output / (worldOutput - rogueCarbonOutput);
-				logger.info("About to update target for session " + session);
-				generateSessionTarget(country, kyotoTarget);
-				logger.info("Just updated target for session " + session);
-				logger.info("Target = " + country.currentSessionTarget);
-			}
+		for (int i = 0; i < members.size(); i++) {
+			countryObject country = members.get(i);
+			country.proportion = outputs[i] / (worldOutput - rogueCarbonOutput);
+			logger.info("About to update target for session " + session);
+			generateSessionTarget(country, kyotoTarget);
+			logger.info("Just updated target for session " + session);
+			logger.info("Target = " + country.currentSessionTarget);
 		}
 	}
 	
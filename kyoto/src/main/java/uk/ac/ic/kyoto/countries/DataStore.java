@@ -3,31 +3,41 @@
  */
 package uk.ac.ic.kyoto.countries;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
 
 import uk.ac.ic.kyoto.countries.AbstractCountry.KyotoMember;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 import uk.ac.imperial.presage2.core.simulator.SimTime;
 
 import com.google.common.collect.ImmutableMap;
 
 /**
+ * Per tick history of a country, kept as one primitive
+ * column per value (doubles, and a byte for the kyoto
+ * membership) instead of maps of strings. Recording a tick
+ * does not allocate; memory is bounded by the Policy:
+ * everything, the last N ticks (ring buffer), the last N
+ * ticks in memory and the rest spilled to a temporary file,
+ * or nothing at all.
+ *
+ * The policy is read from the SimulationContext when the first
+ * value is recorded, see setPolicy(...).
  * @author farhanrahman
  *
  */
 public class DataStore {
-	private Map<Integer, String> gdpHistory = new TreeMap<Integer, String>();
-	private Map<Integer, String> gdpRateHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> availableToSpendHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> emissionsTargetHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> carbonOffsetHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> carbonOutputHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> energyOutputHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> landAreaHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> arableLandAreaHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> carbonAbsorptionHistory = new TreeMap<Integer,String>();
-	private Map<Integer, String> isKyotoMemberHistory = new TreeMap<Integer,String>();
-
 	
 	public static final String gdpKey = "gdp";
 	public static final String gdpRateKey = "gdp_rate";
@@ -42,6 +52,107 @@ public class DataStore {
 	public static final String isKyotoMemberKey = "is_kyoto_member";
 	public static final String cheated = "cheated";
 	
+	/**
+	 * The double valued series
+	 */
+	public enum Column {
+		GDP, GDP_RATE, AVAILABLE_TO_SPEND, EMISSIONS_TARGET, CARBON_OFFSET,
+		CARBON_OUTPUT, ENERGY_OUTPUT, LAND_AREA, ARABLE_LAND_AREA, CARBON_ABSORPTION
+	}
+
+	private static final int COLUMNS = Column.values().length;
+	private static final KyotoMember[] MEMBERS = KyotoMember.values();
+	private static final byte NO_MEMBER = -1;
+
+	/**
+	 * How much history a DataStore keeps.
+	 *
+	 * Usage:
+	 *
+	 * DataStore.setPolicy(DataStore.Policy.ring(60));
+	 */
+	public static class Policy {
+
+		private enum Mode {
+			OFF, KEEP_ALL, RING, SPILL
+		}
+
+		private final Mode mode;
+		private final int capacity;
+		private final File directory;
+
+		private Policy(Mode mode, int capacity, File directory) {
+			this.mode = mode;
+			this.capacity = capacity;
+			this.directory = directory;
+		}
+
+		/**
+		 * @return policy that records nothing, for when nothing reads the history.
+		 * This is the default.
+		 */
+		public static Policy off() {
+			return new Policy(Mode.OFF, 0, null);
+		}
+
+		/**
+		 * @return policy that keeps every tick in memory
+		 */
+		public static Policy keepAll() {
+			return new Policy(Mode.KEEP_ALL, 64, null);
+		}
+
+		/**
+		 * @param capacity
+		 * @return policy that keeps the last capacity ticks
+		 */
+		public static Policy ring(int capacity) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("must keep at least one tick");
+			}
+			return new Policy(Mode.RING, capacity, null);
+		}
+
+		/**
+		 * @param capacity number of ticks kept in memory
+		 * @param directory where the older ticks are written, null for the
+		 * default temporary directory
+		 * @return policy that keeps every tick, the older ones on disk
+		 */
+		public static Policy spillToDisk(int capacity, File directory) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("must keep at least one tick");
+			}
+			return new Policy(Mode.SPILL, capacity, directory);
+		}
+
+		public boolean isEnabled() {
+			return mode != Mode.OFF;
+		}
+	}
+
+	private final Logger logger = Logger.getLogger(DataStore.class);
+
+	/* null until the first value is recorded */
+	private Policy policy = null;
+
+	/* Row i of the buffer is (ticks[i], columns[c][i], kyoto[i]) */
+	private int[] ticks;
+	private double[][] columns;
+	private byte[] kyoto;
+
+	/* The rows in memory are [first, first + size) modulo the capacity */
+	private int first = 0;
+	private int size = 0;
+
+	private int currentTick = Integer.MIN_VALUE;
+	private int currentRow = -1;
+
+	/* Rows written to disk by the SPILL policy, all older than the rows in memory */
+	private File spillFile = null;
+	private DataOutputStream spill = null;
+	private int spilled = 0;
+
 	/**
 	 * 
 	 */
@@ -49,12 +160,136 @@ public class DataStore {
 
 	}
 
+	/**
+	 * @param policy history policy of this store, overrides the
+	 * policy of the SimulationContext
+	 */
+	public DataStore(Policy policy) {
+		init(policy);
+	}
+
+	/**
+	 * Sets the policy of the DataStores that have not recorded
+	 * anything yet in the current simulation
+	 * @param policy
+	 */
+	public static void setPolicy(Policy policy) {
+		SimulationContext.current().setDataStorePolicy(policy);
+	}
+
+	private void init(Policy policy) {
+		this.policy = policy;
+		int capacity = policy.isEnabled() ? policy.capacity : 0;
+		this.ticks = new int[capacity];
+		this.columns = new double[COLUMNS][capacity];
+		this.kyoto = new byte[capacity];
+	}
+
+	/**
+	 * @return false if this store does not record anything
+	 */
+	public boolean isEnabled() {
+		if (policy == null) {
+			init(SimulationContext.current().getDataStorePolicy());
+		}
+		return policy.isEnabled();
+	}
+
+	/**
+	 * Sets a value of the current tick
+	 * @param column
+	 * @param value
+	 */
+	public void add(Column column, double value) {
+		if (isEnabled()) {
+			add(SimTime.get().intValue(), column, value);
+		}
+	}
+
+	void add(int tick, Column column, double value) {
+		if (isEnabled()) {
+			/* row(...) can replace the column arrays, call it first */
+			int row = row(tick);
+			columns[column.ordinal()][row] = value;
+		}
+	}
+
+	/**
+	 * @return buffer row of tick, starting a new one if tick is not the current tick
+	 */
+	private int row(int tick) {
+		if (tick == currentTick) {
+			return currentRow;
+		}
+		int capacity = ticks.length;
+		if (size == capacity) {
+			switch (policy.mode) {
+			case RING:
+				first = (first + 1) % capacity;
+				size--;
+				break;
+			case SPILL:
+				spillAll();
+				break;
+			default:
+				grow();
+				capacity = ticks.length;
+				break;
+			}
+		}
+		currentTick = tick;
+		currentRow = (first + size) % capacity;
+		size++;
+		ticks[currentRow] = tick;
+		for (int c = 0; c < COLUMNS; c++) {
+			columns[c][currentRow] = Double.NaN;
+		}
+		kyoto[currentRow] = NO_MEMBER;
+		return currentRow;
+	}
+
+	private void grow() {
+		int capacity = Math.max(1, ticks.length * 2);
+		/* KEEP_ALL never wraps, so first is always 0 */
+		ticks = Arrays.copyOf(ticks, capacity);
+		kyoto = Arrays.copyOf(kyoto, capacity);
+		for (int c = 0; c < COLUMNS; c++) {
+			columns[c] = Arrays.copyOf(columns[c], capacity);
+		}
+	}
+
+	/**
+	 * Moves every row in memory to the spill file
+	 */
+	private void spillAll() {
+		try {
+			if (spill == null) {
+				spillFile = File.createTempFile("datastore", ".series", policy.directory);
+				spillFile.deleteOnExit();
+				spill = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+			}
+			for (int i = 0; i < size; i++) {
+				int r = (first + i) % ticks.length;
+				spill.writeInt(ticks[r]);
+				for (int c = 0; c < COLUMNS; c++) {
+					spill.writeDouble(columns[c][r]);
+				}
+				spill.writeByte(kyoto[r]);
+			}
+			spilled += size;
+		} catch (IOException e) {
+			logger.warn("Unable to spill history to disk, dropping " + size + " ticks: " + e);
+		}
+		first = 0;
+		size = 0;
+	}
+
 	/**
 	 * Update GDP history.
 	 * @param gdp
 	 */
 	public void addGdp(double gdp){
-		this.gdpHistory.put(SimTime.get().intValue(), Double.toString(gdp));
+		add(Column.GDP, gdp);
 	}
 	
 	/**
@@ -62,15 +297,15 @@ public class DataStore {
 	 * @param gdpRate
 	 */
 	public void addGdpRate(double gdpRate){
-		this.gdpRateHistory.put(SimTime.get().intValue(), Double.toString(gdpRate));
+		add(Column.GDP_RATE, gdpRate);
 	}
 	
 	/**
 	 * Update available to spend history
 	 * @param availableToSpend
 	 */
-	public void addAvailableToSpend(double availableToSpend){;
-		this.availableToSpendHistory.put(SimTime.get().intValue(), Double.toString(availableToSpend));
+	public void addAvailableToSpend(double availableToSpend){
+		add(Column.AVAILABLE_TO_SPEND, availableToSpend);
 	}
 	
 	/**
@@ -78,7 +313,7 @@ public class DataStore {
 	 * @param emissionsTarget
 	 */
 	public void addEmissionsTarget(double emissionsTarget){
-		this.emissionsTargetHistory.put(SimTime.get().intValue(), Double.toString(emissionsTarget));
+		add(Column.EMISSIONS_TARGET, emissionsTarget);
 	}
 	
 	/**
@@ -86,7 +321,7 @@ public class DataStore {
 	 * @param carbonOffset
 	 */
 	public void addCarbonOffset(double carbonOffset){
-		this.carbonOffsetHistory.put(SimTime.get().intValue(), Double.toString(carbonOffset));
+		add(Column.CARBON_OFFSET, carbonOffset);
 	}
 	
 	/**
@@ -94,23 +329,23 @@ public class DataStore {
 	 * @param carbonOutput
 	 */
 	public void addCarbonOutput(double carbonOutput){
-		this.carbonOutputHistory.put(SimTime.get().intValue(), Double.toString(carbonOutput));
+		add(Column.CARBON_OUTPUT, carbonOutput);
 	}
 	
 	public void addEnergyOutput(double energyOutput){
-		this.energyOutputHistory.put(SimTime.get().intValue(), Double.toString(energyOutput));
+		add(Column.ENERGY_OUTPUT, energyOutput);
 	}
 	
 	public void addLandArea(double landArea){
-		this.landAreaHistory.put(SimTime.get().intValue(), Double.toString(landArea));
+		add(Column.LAND_AREA, landArea);
 	}
 	
 	public void addArableLandArea(double arableLandArea){
-		this.arableLandAreaHistory.put(SimTime.get().intValue(), Double.toString(arableLandArea));
+		add(Column.ARABLE_LAND_AREA, arableLandArea);
 	}
 	
 	public void addCarbonAbsorption(double carbonAbsorption){
-		this.carbonAbsorptionHistory.put(SimTime.get().intValue(), Double.toString(carbonAbsorption));
+		add(Column.CARBON_ABSORPTION, carbonAbsorption);
 	}
 	
 	/**
@@ -119,7 +354,134 @@ public class DataStore {
 	 * @param kyotoMember
 	 */
 	public void addIsKyotoMember(KyotoMember kyotoMember){
-		this.isKyotoMemberHistory.put(SimTime.get().intValue(), kyotoMember.name());
+		if (isEnabled()) {
+			addIsKyotoMember(SimTime.get().intValue(), kyotoMember);
+		}
+	}
+
+	void addIsKyotoMember(int tick, KyotoMember kyotoMember) {
+		if (isEnabled()) {
+			int row = row(tick);
+			kyoto[row] = (byte) kyotoMember.ordinal();
+		}
+	}
+
+	//================================================================================
+    // Reading the history back, these allocate
+    //================================================================================
+
+	/**
+	 * @return number of ticks recorded and still kept
+	 */
+	public int size() {
+		return spilled + size;
+	}
+
+	/**
+	 * @return the ticks that were recorded, oldest first
+	 */
+	public int[] getTicks() {
+		int[] result = new int[size()];
+		int i = 0;
+		for (Row r : readSpilled()) {
+			result[i++] = r.tick;
+		}
+		for (int j = 0; j < size; j++) {
+			result[i++] = ticks[(first + j) % ticks.length];
+		}
+		return result;
+	}
+
+	/**
+	 * @param column
+	 * @return the values of column, in the order of getTicks().
+	 * NaN for ticks in which the value was not recorded.
+	 */
+	public double[] getSeries(Column column) {
+		double[] result = new double[size()];
+		int i = 0;
+		for (Row r : readSpilled()) {
+			result[i++] = r.values[column.ordinal()];
+		}
+		double[] values = columns[column.ordinal()];
+		for (int j = 0; j < size; j++) {
+			result[i++] = values[(first + j) % ticks.length];
+		}
+		return result;
+	}
+
+	/**
+	 * @return kyoto membership in the order of getTicks(),
+	 * null for ticks in which it was not recorded
+	 */
+	public KyotoMember[] getKyotoMemberSeries() {
+		KyotoMember[] result = new KyotoMember[size()];
+		int i = 0;
+		for (Row r : readSpilled()) {
+			result[i++] = r.kyoto == NO_MEMBER ? null : MEMBERS[r.kyoto];
+		}
+		for (int j = 0; j < size; j++) {
+			byte k = kyoto[(first + j) % ticks.length];
+			result[i++] = k == NO_MEMBER ? null : MEMBERS[k];
+		}
+		return result;
+	}
+
+	private static class Row {
+		int tick;
+		final double[] values = new double[COLUMNS];
+		byte kyoto;
+	}
+
+	private Row[] readSpilled() {
+		if (spilled == 0) {
+			return new Row[0];
+		}
+		Row[] rows = new Row[spilled];
+		DataInputStream in = null;
+		try {
+			spill.flush();
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+			for (int i = 0; i < spilled; i++) {
+				Row r = new Row();
+				r.tick = in.readInt();
+				for (int c = 0; c < COLUMNS; c++) {
+					r.values[c] = in.readDouble();
+				}
+				r.kyoto = in.readByte();
+				rows[i] = r;
+			}
+		} catch (EOFException e) {
+			logger.warn("History file " + spillFile + " is truncated: " + e);
+		} catch (IOException e) {
+			logger.warn("Unable to read history back from " + spillFile + ": " + e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.warn(e);
+				}
+			}
+		}
+		/* Rows that could not be read are left out */
+		int read = 0;
+		while (read < rows.length && rows[read] != null) {
+			read++;
+		}
+		return read == rows.length ? rows : Arrays.copyOf(rows, read);
+	}
+
+	private Map<Integer, String> history(Column column) {
+		int[] t = getTicks();
+		double[] v = getSeries(column);
+		ImmutableMap.Builder<Integer, String> b = ImmutableMap.builder();
+		for (int i = 0; i < t.length; i++) {
+			if (!Double.isNaN(v[i])) {
+				b.put(t[i], Double.toString(v[i]));
+			}
+		}
+		return b.build();
 	}
 	
 	/**
@@ -127,7 +489,7 @@ public class DataStore {
 	 * @return map of gdp history
 	 */
 	public Map<Integer, String> getGdpHistory() {
-		return ImmutableMap.copyOf(gdpHistory);
+		return history(Column.GDP);
 	}
 
 	/**
@@ -135,7 +497,7 @@ public class DataStore {
 	 * @return map of gdp rate history
 	 */
 	public Map<Integer, String> getGdpRateHistory() {
-		return ImmutableMap.copyOf(gdpRateHistory);
+		return history(Column.GDP_RATE);
 	}
 
 	/**
@@ -143,7 +505,7 @@ public class DataStore {
 	 * @return map of available to spend history
 	 */
 	public Map<Integer, String> getAvailableToSpendHistory() {
-		return ImmutableMap.copyOf(availableToSpendHistory);
+		return history(Column.AVAILABLE_TO_SPEND);
 	}
 
 	/**
@@ -151,7 +513,7 @@ public class DataStore {
 	 * @return a map of emissions target history
 	 */
 	public Map<Integer, String> getEmissionsTargetHistory() {
-		return ImmutableMap.copyOf(emissionsTargetHistory);
+		return history(Column.EMISSIONS_TARGET);
 	}
 
 	/**
@@ -159,7 +521,7 @@ public class DataStore {
 	 * @return a map of carbon offset history
 	 */
 	public Map<Integer, String> getCarbonOffsetHistory() {
-		return ImmutableMap.copyOf(carbonOffsetHistory);
+		return history(Column.CARBON_OFFSET);
 	}
 
 	/**
@@ -167,7 +529,7 @@ public class DataStore {
 	 * @return a map of carbon output history
 	 */
 	public Map<Integer, String> getCarbonOutputHistory() {
-		return ImmutableMap.copyOf(carbonOutputHistory);
+		return history(Column.CARBON_OUTPUT);
 	}
 
 	/**
@@ -175,7 +537,7 @@ public class DataStore {
 	 * @return a map of energy output history
 	 */
 	public Map<Integer, String> getEnergyOutputHistory() {
-		return ImmutableMap.copyOf(energyOutputHistory);
+		return history(Column.ENERGY_OUTPUT);
 	}
 
 	/**
@@ -184,7 +546,7 @@ public class DataStore {
 	 */
 	
 	public Map<Integer, String> getLandAreaHistory() {
-		return ImmutableMap.copyOf(landAreaHistory);
+		return history(Column.LAND_AREA);
 	}
 	
 	/**
@@ -193,7 +555,7 @@ public class DataStore {
 	 */
 	
 	public Map<Integer, String> getArableLandAreaHistory() {
-		return ImmutableMap.copyOf(arableLandAreaHistory);
+		return history(Column.ARABLE_LAND_AREA);
 	}
 	
 	/**
@@ -202,7 +564,7 @@ public class DataStore {
 	 */
 	
 	public Map<Integer, String> getCarbonAbsorptionHistory() {
-		return ImmutableMap.copyOf(carbonAbsorptionHistory);
+		return history(Column.CARBON_ABSORPTION);
 	}
 	
 	/**
@@ -210,7 +572,33 @@ public class DataStore {
 	 * @return returns a map of kyoto member state history
 	 */
 	public Map<Integer, String> getIsKyotoMemberHistory() {
-		return ImmutableMap.copyOf(isKyotoMemberHistory);
+		int[] t = getTicks();
+		KyotoMember[] k = getKyotoMemberSeries();
+		ImmutableMap.Builder<Integer, String> b = ImmutableMap.builder();
+		for (int i = 0; i < t.length; i++) {
+			if (k[i] != null) {
+				b.put(t[i], k[i].name());
+			}
+		}
+		return b.build();
+	}
+
+	/**
+	 * Deletes the spill file, if any. The history on disk is lost.
+	 */
+	public void close() {
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				logger.warn(e);
+			}
+			spill = null;
+			if (!spillFile.delete()) {
+				logger.warn("Unable to delete " + spillFile);
+			}
+			spilled = 0;
+		}
 	}
 
 }
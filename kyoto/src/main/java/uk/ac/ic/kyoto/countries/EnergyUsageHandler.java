@@ -9,6 +9,8 @@ import uk.ac.ic.kyoto.exceptions.NotEnoughCashException;
  */
 public final class EnergyUsageHandler {
 	private final AbstractCountry country;
+	/* The constants of the simulation the country is in */
+	private final GameConst constants;
 
 	/**Create instance of EnergyUsageHandler
 	 * @param abstractCountry
@@ -16,6 +18,7 @@ public final class EnergyUsageHandler {
 	 */
 	EnergyUsageHandler(AbstractCountry abstractCountry) {
 		this.country = abstractCountry;		
+		this.constants = GameConst.current();
 	}
 	
 	/**
@@ -56,7 +59,7 @@ public final class EnergyUsageHandler {
 		
 		double cost;
 		if (growth >= 0){
-			cost = growth * GameConst.getCarbonInvestmentPrice();
+			cost = growth * constants.carbonInvestmentPrice();
 		} else {
 			throw new IllegalArgumentException("It is impossible to invest in negative carbon industry growth");
 		}
@@ -73,7 +76,7 @@ public final class EnergyUsageHandler {
 	public double calculateCarbonIndustryGrowth (double cost){
 		double growth;
 		if (cost >= 0){
-			growth = cost / GameConst.getCarbonInvestmentPrice();
+			growth = cost / constants.carbonInvestmentPrice();
 		}else{
 			throw new IllegalArgumentException("It is impossible to invest negative sum in industry growth");
 		}
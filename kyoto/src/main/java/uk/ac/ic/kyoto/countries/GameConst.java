@@ -1,108 +1,123 @@
 package uk.ac.ic.kyoto.countries;
 
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+/**
+ * Constants of one simulation. A simulation creates its
+ * GameConst from its parameters and hands it to its
+ * SimulationContext; the static getters return the values
+ * of the current simulation, or the defaults below if
+ * none has been set.
+ */
 public final class GameConst {
 	
 	// GDP Growth Values
-	private static double GROWTH_MARKET_STATE = 1;
-	private static double STABLE_MARKET_STATE = 0.5;
-	private static double RECESSION_MARKET_STATE = 0.1;
+	private double GROWTH_MARKET_STATE = 1;
+	private double STABLE_MARKET_STATE = 0.5;
+	private double RECESSION_MARKET_STATE = 0.1;
 	
-	private static double GROWTH_MARKET_CHANCE = 0.1;
-	private static double STABLE_MARKET_CHANCE = 0.8;
-	private static double RECESSION_MARKET_CHANCE = 0.1;
+	private double GROWTH_MARKET_CHANCE = 0.1;
+	private double STABLE_MARKET_CHANCE = 0.8;
+	private double RECESSION_MARKET_CHANCE = 0.1;
 	
 	/**
 	 * Normalises value of GDP rate increase
 	 */
-	private static double GROWTH_SCALER = 0.25;
+	private double GROWTH_SCALER = 0.25;
 	
-	private static double ENERGY_GROWTH_SCALER = 400;
+	private double ENERGY_GROWTH_SCALER = 400;
 	
-	private static double MAX_GDP_GROWTH = 7;
+	private double MAX_GDP_GROWTH = 7;
 	/**
 	 * Percentage of GDP available to spend on development
 	 */
-	private static double PERCENTAGE_OF_GDP = 0.005;
+	private double PERCENTAGE_OF_GDP = 0.005;
 	
 
 	/**
 	 * The cost of investment in one extra ton of carbon per year
 	 * A larger number increases the cost of carbon investment
 	 */
-	private static double CARBON_INVESTMENT_PRICE = 200;
+	private double CARBON_INVESTMENT_PRICE = 200;
 	
 	
 	/**
 	 * The price of reducing carbon reduction by one unit when we have 100% dirty industry
 	 */
-	private static double CARBON_REDUCTION_PRICE_MIN = 60;
+	private double CARBON_REDUCTION_PRICE_MIN = 60;
 	/**
 	 * The price of reducing carbon reduction by one unit when we have 0% dirty industry
 	 */
-	private static double CARBON_REDUCTION_PRICE_MAX = 1200;
+	private double CARBON_REDUCTION_PRICE_MAX = 1200;
 
 	
 	
 	/**
 	 * The price of increasing carbon absorption by one unit when we have 100% arable area
 	 */
-	private static double CARBON_ABSORPTION_PRICE_MIN = 10;
+	private double CARBON_ABSORPTION_PRICE_MIN = 10;
 	/**
 	 * The price of increasing carbon absorption by one unit when we have 0% arable area
 	 */
-	private static double CARBON_ABSORPTION_PRICE_MAX = 750;
+	private double CARBON_ABSORPTION_PRICE_MAX = 750;
 	/**
 	 * Forest area that absorbs single ton of carbon
 	 */
-	private static double FOREST_CARBON_ABSORPTION = 0.0156;
+	private double FOREST_CARBON_ABSORPTION = 0.0156;
 	
 	
 	/**
 	 * Percentage of GDP that is levied from availiableToSpend for monitoring
 	 * Currently allows for a 10th of countries to be monitored.
 	 */
-	private static double MONITOR_COST_PERCENTAGE = 0.00025;   // 2.5% of absolute cash given out
+	private double MONITOR_COST_PERCENTAGE = 0.00025;   // 2.5% of absolute cash given out
 	
 	/**
 	 * Percentage of GDP taken from country if they fail to meet their targets.  
 	 * Increases in linear amounts for each transgression.
 	 */
-	private static double SANCTION_RATE = 0.0025;
+	private double SANCTION_RATE = 0.0025;
 	
 	/**
 	 * Price for each monitor
 	 */
-	private static double MONITORING_PRICE = 847;
+	private double MONITORING_PRICE = 847;
 	
 	/**
 	 * Target penalty coefficient
 	 */
-	private static double PENALTY_COEF = 0.3;
+	private double PENALTY_COEF = 0.3;
 	
 	/**
 	 * Number of ticks in a year
 	 */
-	private static int TICKS_IN_YEAR = 20;
+	private int TICKS_IN_YEAR = 20;
 	
 	/**
 	 * Number of years in a session
 	 */
-	private static int YEARS_IN_SESSION = 10;
+	private int YEARS_IN_SESSION = 10;
 	
 	/**
 	 * Session to session world target reduction
 	 */
-	private static double TARGET_REDUCTION = 0.95;
+	private double TARGET_REDUCTION = 0.95;
 	
 	/**
 	 * The minimum amount of time, in years, that a country must wait before rejoining Kyoto after leaving
 	 */
-	private static int MINIMUM_KYOTO_REJOIN_TIME = 4;
+	private int MINIMUM_KYOTO_REJOIN_TIME = 4;
 	
 	/**
 	 * The minimum amount of time, in years, that a country must be a member of Kyoto before it can leave
 	 */
-	private static int MINIMUM_KYOTO_MEMBERSHIP_DURATION = 10;
+	private int MINIMUM_KYOTO_MEMBERSHIP_DURATION = 10;
+	
+	/**
+	 * Creates constants with the default values
+	 */
+	public GameConst() {
+	}
 	
 	public GameConst(double growths, double stables, double recs, double growthc,
 			double stablec, double recc, double maxgdp, double monitorpercent, double sancrate, 
@@ -143,103 +158,154 @@ public final class GameConst {
 		FOREST_CARBON_ABSORPTION = forestCarbonAbsorption;
 	}
 
+	/**
+	 * @return the constants of the current simulation. Code
+	 * that reads them in a loop, or for as long as the
+	 * simulation runs, keeps this instead of calling the
+	 * static getters
+	 */
+	public static GameConst current() {
+		return SimulationContext.current().getGameConst();
+	}
+
 	public static double getGrowthMarketState() {
-		return GROWTH_MARKET_STATE;
+		return current().GROWTH_MARKET_STATE;
 	}
 
 	public static double getStableMarketState() {
-		return STABLE_MARKET_STATE;
+		return current().STABLE_MARKET_STATE;
 	}
 
 	public static double getRecessionMarketState() {
-		return RECESSION_MARKET_STATE;
+		return current().RECESSION_MARKET_STATE;
 	}
 
 	public static double getGrowthMarketChance() {
-		return GROWTH_MARKET_CHANCE;
+		return current().GROWTH_MARKET_CHANCE;
 	}
 
 	public static double getStableMarketChance() {
-		return STABLE_MARKET_CHANCE;
+		return current().STABLE_MARKET_CHANCE;
 	}
 
 	public static double getRecessionMarketChance() {
-		return RECESSION_MARKET_CHANCE;
+		return current().RECESSION_MARKET_CHANCE;
 	}
 
 	public static double getCarbonInvestmentPrice() {
-		return CARBON_INVESTMENT_PRICE;
+		return current().CARBON_INVESTMENT_PRICE;
 	}
 
 	public static double getGrowthScaler() {
-		return GROWTH_SCALER;
+		return current().GROWTH_SCALER;
 	}
 	
 	public static double getEnergyGrowthScaler(){
-		return ENERGY_GROWTH_SCALER;
+		return current().ENERGY_GROWTH_SCALER;
 	}
 
 	public static double getMaxGDPGrowth() {
-		return MAX_GDP_GROWTH;
+		return current().MAX_GDP_GROWTH;
 	}
 	
 	public static double getPercentageOfGdp() {
-		return PERCENTAGE_OF_GDP;
+		return current().PERCENTAGE_OF_GDP;
 	}
 
 	public static double getCarbonReductionPriceMin() {
-		return CARBON_REDUCTION_PRICE_MIN;
+		return current().CARBON_REDUCTION_PRICE_MIN;
 	}
 
 	public static double getCarbonReductionPriceMax() {
-		return CARBON_REDUCTION_PRICE_MAX;
+		return current().CARBON_REDUCTION_PRICE_MAX;
 	}
 
 	public static double getCarbonAbsorptionPriceMin() {
-		return CARBON_ABSORPTION_PRICE_MIN;
+		return current().CARBON_ABSORPTION_PRICE_MIN;
 	}
 
 	public static double getCarbonAbsorptionPriceMax() {
-		return CARBON_ABSORPTION_PRICE_MAX;
+		return current().CARBON_ABSORPTION_PRICE_MAX;
 	}
 
 	public static double getForestCarbonAbsorption() {
-		return FOREST_CARBON_ABSORPTION;
+		return current().FOREST_CARBON_ABSORPTION;
 	}
 
 	public static double getMonitorCostPercentage() {
-		return MONITOR_COST_PERCENTAGE;
+		return current().MONITOR_COST_PERCENTAGE;
 	}
 
 	public static double getSanctionRate() {
-		return SANCTION_RATE;
+		return current().SANCTION_RATE;
 	}
 
 	public static double getMonitoringPrice() {
-		return MONITORING_PRICE;
+		return current().MONITORING_PRICE;
 	}
 	
 	public static double getPenaltyCoef() {
-		return PENALTY_COEF;
+		return current().PENALTY_COEF;
 	}
 
 	public static int getTicksInYear() {
-		return TICKS_IN_YEAR;
+		return current().TICKS_IN_YEAR;
 	}
 
 	public static int getYearsInSession() {
-		return YEARS_IN_SESSION;
+		return current().YEARS_IN_SESSION;
 	}
 
 	public static double getTargetReduction() {
-		return TARGET_REDUCTION;
+		return current().TARGET_REDUCTION;
 	}
 
 	public static int getMinimumKyotoRejoinTime() {
-		return MINIMUM_KYOTO_REJOIN_TIME;
+		return current().MINIMUM_KYOTO_REJOIN_TIME;
 	}
 
 	public static int getMinimumKyotoMembershipDuration() {
-		return MINIMUM_KYOTO_MEMBERSHIP_DURATION;
+		return current().MINIMUM_KYOTO_MEMBERSHIP_DURATION;
+	}
+
+	/* Values of this instance, for code that keeps it */
+	public double carbonInvestmentPrice() {
+		return CARBON_INVESTMENT_PRICE;
+	}
+
+	public double growthScaler() {
+		return GROWTH_SCALER;
+	}
+	
+	public double energyGrowthScaler() {
+		return ENERGY_GROWTH_SCALER;
+	}
+
+	public double maxGDPGrowth() {
+		return MAX_GDP_GROWTH;
+	}
+	
+	public double percentageOfGdp() {
+		return PERCENTAGE_OF_GDP;
+	}
+
+	public double carbonReductionPriceMin() {
+		return CARBON_REDUCTION_PRICE_MIN;
+	}
+
+	public double carbonReductionPriceMax() {
+		return CARBON_REDUCTION_PRICE_MAX;
+	}
+
+	public double carbonAbsorptionPriceMin() {
+		return CARBON_ABSORPTION_PRICE_MIN;
+	}
+
+	public double carbonAbsorptionPriceMax() {
+		return CARBON_ABSORPTION_PRICE_MAX;
+	}
+
+	public double forestCarbonAbsorption() {
+		return FOREST_CARBON_ABSORPTION;
 	}
 }
@@ -1,10 +1,21 @@
 package uk.ac.ic.kyoto.countries;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 import org.drools.command.runtime.GetCalendarsCommand;
@@ -12,6 +23,8 @@ import org.drools.command.runtime.GetCalendarsCommand;
 import uk.ac.ic.kyoto.services.CarbonReportingService;
 import uk.ac.ic.kyoto.services.GlobalTimeService;
 import uk.ac.ic.kyoto.services.GlobalTimeService.EndOfYearCycle;
+import uk.ac.ic.kyoto.services.RandomService;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 import uk.ac.imperial.presage2.core.environment.ActionHandlingException;
 import uk.ac.imperial.presage2.core.environment.EnvironmentService;
 import uk.ac.imperial.presage2.core.environment.EnvironmentServiceProvider;
@@ -21,6 +34,7 @@ import uk.ac.imperial.presage2.core.environment.UnavailableServiceException;
 import uk.ac.imperial.presage2.core.event.EventBus;
 import uk.ac.imperial.presage2.core.event.EventListener;
 import uk.ac.imperial.presage2.core.simulator.EndOfTimeCycle;
+import uk.ac.imperial.presage2.core.simulator.FinalizeEvent;
 import uk.ac.imperial.presage2.core.simulator.SimTime;
 
 import com.google.inject.Inject;
@@ -41,6 +55,28 @@ public class Monitor extends EnvironmentService {
 	/* List of all the countries registered for the service */
 	private Map<UUID, AbstractCountry> memberStates = new ConcurrentHashMap<UUID, AbstractCountry>();
 	
+	/* The member states sorted by ISO code, so the same seed audits the same countries */
+	private final ArrayList<AbstractCountry> memberList = new ArrayList<AbstractCountry>();
+	
+	private static final Comparator<AbstractCountry> byISO = new Comparator<AbstractCountry>() {
+		@Override
+		public int compare(AbstractCountry c1, AbstractCountry c2) {
+			return c1.getISO().compareTo(c2.getISO());
+		}
+	};
+	
+	/* Picks the countries to audit when there is not enough cash for all of them */
+	private AuditStrategy auditStrategy = AuditStrategy.uniform();
+	
+	/* Whether every member is monitored this year */
+	private boolean fullAudit = false;
+	
+	/* Evaluates the yearly audit in parallel, created on first use */
+	private ExecutorService auditPool = null;
+	private static final int AUDIT_THREADS = Runtime.getRuntime().availableProcessors();
+	/* Smaller batches are not worth handing to another thread */
+	private static final int MIN_AUDIT_BATCH = 16;
+	
 	/* List of all other countries which exist, but are not part of Kyoto */
 	private Map<UUID, AbstractCountry> nonSanctionedStates = new ConcurrentHashMap<UUID, AbstractCountry>();
 
@@ -57,6 +93,9 @@ public class Monitor extends EnvironmentService {
 	private CarbonReportingService carbonReportingService;
 	private CarbonTarget carbonTargetingService;
 	
+	/* Picks the countries to monitor */
+	private Random randGenerator;
+	
 	@Inject
 	public Monitor(EnvironmentSharedStateAccess sharedState, EnvironmentServiceProvider provider) {
 		super(sharedState);
@@ -72,7 +111,12 @@ public class Monitor extends EnvironmentService {
 	public void addMemberState(AbstractCountry state) {
 		/* not required: it's a map, it'll just overwrite the previous record. If we want to check, we have to throw something... */
 		//if (!memberStates.containsKey(state.getID()))
-		memberStates.put(state.getID(), state);
+		synchronized (memberList) {
+			if (memberStates.put(state.getID(), state) == null) {
+				int i = Collections.binarySearch(memberList, state, byISO);
+				memberList.add(i < 0 ? -i - 1 : i, state);
+			}
+		}
 	}
 	
 	public void addNonSanctionedState(AbstractCountry state) {
@@ -80,7 +124,28 @@ public class Monitor extends EnvironmentService {
 	}
 	
 	public void removeMemberState(AbstractCountry state) {
-		memberStates.remove(state.getID());
+		synchronized (memberList) {
+			if (memberStates.remove(state.getID()) != null) {
+				memberList.remove(state);
+			}
+		}
+	}
+	
+	/**
+	 * @return a copy of the member states, sorted by ISO code
+	 */
+	List<AbstractCountry> getMemberStates() {
+		synchronized (memberList) {
+			return new ArrayList<AbstractCountry>(memberList);
+		}
+	}
+	
+	/**
+	 * @param auditStrategy picks the countries to audit when the
+	 * Monitor cannot afford to audit all of them
+	 */
+	public void setAuditStrategy(AuditStrategy auditStrategy) {
+		this.auditStrategy = auditStrategy;
 	}
 	
 	public void removeNonSanctionedState(AbstractCountry state) {
@@ -93,21 +158,40 @@ public class Monitor extends EnvironmentService {
 		eb.subscribe(this);
 	}
 	
+	/**
+	 * The yearly audit: every country reports its emissions, the
+	 * reports and the monitored countries are checked in parallel
+	 * and the sanctions are then applied one country at a time, in
+	 * ISO order, so a run does not depend on thread scheduling.
+	 * @param e
+	 */
 	@EventListener
 	public void yearlyFunction(EndOfYearCycle e) {
 		if (e.getEndedYear() >= 0) {
-			nonSanctionedReports();
 			logger.info("Yearly monitoring starting");
-			checkReports();
-			logger.info("Checked reports");
-			monitorCountries();
-			logger.info("Monitored country");
+			List<AbstractCountry> members = collectReports();
+			logger.info("Collected reports");
+			List<Audit> audits = selectAudits(members);
+			evaluate(audits);
+			applySanctions(audits);
+			logger.info("Monitored " + audits.size() + " countries");
 			carbonTargetingService.targetsForMonitor(yearlyCheaters);
 			yearlyCheaters.clear();
 		}
 	}
 	
-	private void nonSanctionedReports() {
+	@EventListener
+	public void onSimulationComplete(FinalizeEvent e) {
+		if (auditPool != null) {
+			auditPool.shutdown();
+		}
+	}
+	
+	/**
+	 * Makes every country submit its report
+	 * @return the member states, sorted by ISO code
+	 */
+	private List<AbstractCountry> collectReports() {
 		for (AbstractCountry country: nonSanctionedStates.values()) {
 			try {
 				country.reportCarbonOutput();
@@ -115,27 +199,157 @@ public class Monitor extends EnvironmentService {
 				e.printStackTrace();
 			}
 		}
+		List<AbstractCountry> members = getMemberStates();
+		for (AbstractCountry country : members) {
+			try {
+				country.reportCarbonOutput();
+			} catch (ActionHandlingException e) {
+				e.printStackTrace();
+			}
+		}
+		return members;
 	}
 	
-	private void checkReports () {
-		for (AbstractCountry country : memberStates.values()) {
-			if(country instanceof AbstractCountry){
-				try {
-					country.reportCarbonOutput();
-					logger.info("Looking for report from this time: " + SimTime.get().intValue());
-					logger.info("Current Year: " + timeService.getCurrentYear());
-					logger.info("This Country ID: " + country.getID());
-					double reportedEmission = carbonReportingService.getReport(country.getID(), SimTime.get().intValue());
-					double emissionTarget = carbonTargetingService.queryYearTarget(country.getID(), (timeService.getCurrentYear()-1));
+	/**
+	 * One country's figures in the yearly audit
+	 */
+	private class Audit {
+		final AbstractCountry country;
+		/* Whether its real emissions are checked against the report */
+		final boolean monitored;
 					
-					if (Math.round(reportedEmission) > Math.round(emissionTarget)) {
-						targetSanction(country,  reportedEmission - emissionTarget);
+		Double reported;
+		double real;
+		double target;
+		
+		Audit(AbstractCountry country, boolean monitored) {
+			this.country = country;
+			this.monitored = monitored;
+		}
+		
+		/**
+		 * Only reads, safe to run in parallel with other audits
+		 */
+		void evaluate(int tick, int year) {
+			reported = carbonReportingService.getReport(country.getID(), tick);
+			target = carbonTargetingService.queryYearTarget(country.getID(), year);
+			real = country.getCarbonOutput() - country.getCarbonAbsorption();
+		}
+		
+		boolean overTarget() {
+			return Math.round(reported) > Math.round(target);
+		}
+		
+		boolean cheated() {
+			return monitored && Math.round(real) != Math.round(reported);
+		}
+	}
+	
+	/**
+	 * Picks the countries that are monitored this year, as many
+	 * as the cash allows
+	 * @param members
+	 * @return an audit for every member, in the order of members
+	 */
+	private List<Audit> selectAudits(List<AbstractCountry> members) {
+		// Find how many countries can be monitored with the available cash
+		int noToMonitor = (int) Math.floor(cash / GameConst.getMonitoringPrice());
+		Set<AbstractCountry> monitored = null;
+		if (noToMonitor < members.size()) {
+			monitored = Collections.newSetFromMap(new IdentityHashMap<AbstractCountry, Boolean>());
+			monitored.addAll(auditStrategy.select(members, noToMonitor, sinBin, randGenerator));
+		}
+		List<Audit> audits = new ArrayList<Audit>(members.size());
+		for (AbstractCountry country : members) {
+			audits.add(new Audit(country, monitored == null || monitored.contains(country)));
+		}
+		fullAudit = monitored == null;
+		return audits;
+	}
+	
+	/**
+	 * Reads the reports, targets and real emissions of audits,
+	 * split in one batch per processor
+	 * @param audits
+	 */
+	private void evaluate(final List<Audit> audits) {
+		final int tick = SimTime.get().intValue();
+		final int year = timeService.getCurrentYear() - 1;
+		int batches = Math.min(AUDIT_THREADS, audits.size() / MIN_AUDIT_BATCH);
+		if (batches <= 1) {
+			for (Audit audit : audits) {
+				audit.evaluate(tick, year);
+			}
+			return;
+		}
+		if (auditPool == null) {
+			auditPool = Executors.newFixedThreadPool(AUDIT_THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "monitor-audit");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		/* The audit threads do not inherit the context of the simulation */
+		final SimulationContext context = SimulationContext.current();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batches);
+		for (int b = 0; b < batches; b++) {
+			final int from = audits.size() * b / batches;
+			final int to = audits.size() * (b + 1) / batches;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					SimulationContext.setCurrent(context);
+					for (Audit audit : audits.subList(from, to)) {
+						audit.evaluate(tick, year);
 					}
-				} catch (ActionHandlingException e) {
-					e.printStackTrace();
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> f : auditPool.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Sanctions the countries over their target, then charges for
+	 * and sanctions the monitored countries that cheated
+	 * @param audits
+	 */
+	private void applySanctions(List<Audit> audits) {
+		for (Audit audit : audits) {
+			if (audit.reported == null) {
+				logger.warn(audit.country.getName() + " has not reported its emissions");
+			} else if (audit.overTarget()) {
+				targetSanction(audit.country, audit.reported - audit.target);
+			}
+		}
+		for (Audit audit : audits) {
+			if (!audit.monitored) {
+				continue;
+			}
+			cash -= GameConst.getMonitoringPrice();
+			if (audit.reported != null && audit.cheated()) {
+				yearlyCheaters.add(audit.country.getID());
+				cheatSanction(audit.country);
+				double targetDiff = audit.real - audit.target;
+				if (Math.round(targetDiff) > 0) {
+					/* The partial audit sanctions the rounded excess */
+					targetSanction(audit.country, fullAudit ? targetDiff : Math.round(targetDiff));
 				}
-			} else {
-				throw new RuntimeException("this country is not an instance of AbstractCountry");
+			}
+			if (fullAudit) {
+				audit.country.updateCarbonOffsetYearly();
 			}
 		}
 	}
@@ -172,68 +386,12 @@ public class Monitor extends EnvironmentService {
 			if (this.carbonTargetingService == null) {
 				throw new RuntimeException("Null carbonTargetingService provided");
 			}
-		}
-	}
 	
-	// TODO add logging
-	private void monitorCountries () {	
-		// Find how many countries can be monitored with the available cash
-		int noToMonitor = (int) Math.floor(cash / GameConst.getMonitoringPrice());
-		// Check if all the countries can be monitored 
-		if (noToMonitor >= memberStates.size()) {
-			// monitor all the countries
-			
-			for (AbstractCountry country: memberStates.values()) {
-				double realCarbonOutput = country.getCarbonOutput() - country.getCarbonAbsorption();
-				cash -= GameConst.getMonitoringPrice();
-				double reportedCarbonOutput = carbonReportingService.getReport(country.getID(), SimTime.get().intValue());
-				if (Math.round(realCarbonOutput) != Math.round(reportedCarbonOutput)) {
-					yearlyCheaters.add(country.getID());
-					cheatSanction(country);
-					double targetDiff = realCarbonOutput - carbonTargetingService.queryYearTarget(country.getID(), (timeService.getCurrentYear()-1));
-					if (Math.round(targetDiff) > 0) {
-						targetSanction(country, targetDiff);
-					}
-				}
-				country.updateCarbonOffsetYearly();
-			}
-			// TODO log the information about it
-		} else {
-			// Create a list of countries that were already monitored this year
-			ArrayList<AbstractCountry> monitoredCountries = new ArrayList<AbstractCountry>();
-			
-			// Instantiate random number generator that will be used to pick the countries to monitor
-			Random randGenerator = new Random();
-			
-			for (int i = 0; i < noToMonitor; i++) {
-				// Pick a country that was not yet monitored
-				AbstractCountry pickedCountry;
-				ArrayList<AbstractCountry> memberStatesArray = new ArrayList<AbstractCountry>();
-				for(UUID id : memberStates.keySet()){
-					memberStatesArray.add(memberStates.get(id));
-				}
-				do {
-					int randomCountryIndex = randGenerator.nextInt(memberStatesArray.size());
-					pickedCountry = memberStatesArray.get(randomCountryIndex);
-				} while (monitoredCountries.contains(pickedCountry));
-				
-				// Monitor the country
-				cash -= GameConst.getMonitoringPrice();
-				double realCarbonOutput = pickedCountry.getCarbonOutput() - pickedCountry.getCarbonAbsorption();
-						
-				// Note that the country was monitored
-				monitoredCountries.add(pickedCountry);
-				
-				// Apply sanctions if a country has cheated and rechecks against target
-				double reportedCarbonOutput = carbonReportingService.getReport(pickedCountry.getID(), SimTime.get());
-				if ( Math.round(realCarbonOutput) != Math.round(reportedCarbonOutput)) {
-					yearlyCheaters.add(pickedCountry.getID());
-					cheatSanction(pickedCountry);
-					double targetDiff = Math.round(realCarbonOutput - carbonTargetingService.queryYearTarget(pickedCountry.getID(), (timeService.getCurrentYear() - 1)));
-					if (targetDiff > 0) {
-						targetSanction(pickedCountry, targetDiff);
-					}
-				}
+			try {
+				this.randGenerator = provider.getEnvironmentService(RandomService.class).getStream(Monitor.class.getName());
+			} catch (UnavailableServiceException ex) {
+				ex.printStackTrace();
+				throw new RuntimeException(ex);
 			}
 		}
 	}
@@ -25,7 +25,8 @@ public class OfferMessage {
 
 	enum OfferMessageType{
 		TRADE_PROTOCOL,
-		BROADCAST_MESSAGE
+		BROADCAST_MESSAGE,
+		ORDER_BOOK
 	};
 
 	private final OfferMessageType offerMessageType;
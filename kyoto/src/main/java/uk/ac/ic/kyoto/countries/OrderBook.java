@@ -0,0 +1,354 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.trade.TradeType;
+
+/**
+ * Central limit order book for carbon credits. Orders posted
+ * during a tick are queued and matched in arrival order by
+ * match(...), which the CarbonMarket calls once at the end of
+ * every tick. An incoming order trades against the best resting
+ * orders of the other side (price, then time priority) at the
+ * resting order's price; whatever is left rests in the book
+ * until it is filled, cancelled or expires.
+ *
+ * Orders of the same owner never trade with each other.
+ *
+ * Every order that leaves the book, filled, cancelled or expired,
+ * is kept until drainClosed() so its owner can be told once how
+ * it went.
+ *
+ * Submitting and cancelling are thread safe, agents post orders
+ * from their own threads.
+ */
+class OrderBook {
+
+	/**
+	 * Quantities smaller than this are treated as filled
+	 */
+	static final double EPSILON = 1e-9;
+
+	static class Order {
+		final UUID id;
+		final UUID owner;
+		final TradeType side;
+		final double unitCost;
+		final double quantity;
+		final int expiryTick;
+		private final long sequence;
+		private double remaining;
+		private double value = 0;
+
+		private Order(UUID id, UUID owner, TradeType side, double quantity, double unitCost, int expiryTick, long sequence) {
+			this.id = id;
+			this.owner = owner;
+			this.side = side;
+			this.quantity = quantity;
+			this.remaining = quantity;
+			this.unitCost = unitCost;
+			this.expiryTick = expiryTick;
+			this.sequence = sequence;
+		}
+
+		double getRemaining() {
+			return remaining;
+		}
+
+		/**
+		 * @return quantity traded so far
+		 */
+		double getFilled() {
+			return quantity - remaining;
+		}
+
+		/**
+		 * @return total cost of the quantity traded so far
+		 */
+		double getValue() {
+			return value;
+		}
+
+		boolean isFilled() {
+			return remaining <= EPSILON;
+		}
+
+		@Override
+		public String toString() {
+			return "Order [" + side + " " + remaining + "/" + quantity + " @ " + unitCost + ", id=" + id + "]";
+		}
+	}
+
+	/**
+	 * Decides whether a match can be settled. It returns
+	 * null if it was settled, otherwise the order that is
+	 * cancelled: the bid if the buyer cannot pay for it any
+	 * more, the ask if the seller does not have the offset.
+	 */
+	interface Settlement {
+		Order settle(Order buy, Order sell, double quantity, double unitCost);
+	}
+
+	/**
+	 * Best (highest) bid first, earliest first on equal prices
+	 */
+	private static final Comparator<Order> BIDS = new Comparator<Order>() {
+		@Override
+		public int compare(Order a, Order b) {
+			int c = Double.compare(b.unitCost, a.unitCost);
+			return c != 0 ? c : compareSequence(a, b);
+		}
+	};
+
+	/**
+	 * Best (lowest) ask first, earliest first on equal prices
+	 */
+	private static final Comparator<Order> ASKS = new Comparator<Order>() {
+		@Override
+		public int compare(Order a, Order b) {
+			int c = Double.compare(a.unitCost, b.unitCost);
+			return c != 0 ? c : compareSequence(a, b);
+		}
+	};
+
+	private static int compareSequence(Order a, Order b) {
+		return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+	}
+
+	private final TreeSet<Order> bids = new TreeSet<Order>(BIDS);
+	private final TreeSet<Order> asks = new TreeSet<Order>(ASKS);
+
+	/**
+	 * Orders posted since the last match, in arrival order
+	 */
+	private List<Order> pending = new ArrayList<Order>();
+
+	/**
+	 * Every live order, resting or pending
+	 */
+	private final Map<UUID, Order> orders = new HashMap<UUID, Order>();
+
+	/**
+	 * expiry tick -> resting orders that expire after it
+	 */
+	private final TreeMap<Integer, List<Order>> expiries = new TreeMap<Integer, List<Order>>();
+
+	/**
+	 * Orders that left the book since the last drainClosed()
+	 */
+	private List<Order> closed = new ArrayList<Order>();
+
+	private long sequence = 0;
+
+	/**
+	 * Queues a new order, it will be matched by the next call to match(...)
+	 * @param id
+	 * @param owner
+	 * @param side BUY or SELL
+	 * @param quantity
+	 * @param unitCost
+	 * @param expiryTick last tick in which the order may trade
+	 * @return the order
+	 */
+	synchronized Order submit(UUID id, UUID owner, TradeType side, double quantity, double unitCost, int expiryTick) {
+		if (side != TradeType.BUY && side != TradeType.SELL) {
+			throw new IllegalArgumentException("Only BUY and SELL orders can be placed in the order book, got " + side);
+		}
+		if (!(quantity > 0) || !(unitCost >= 0)) {
+			throw new IllegalArgumentException("Invalid order: " + quantity + " @ " + unitCost);
+		}
+		if (orders.containsKey(id)) {
+			throw new IllegalArgumentException("Order " + id + " already exists");
+		}
+		Order o = new Order(id, owner, side, quantity, unitCost, expiryTick, sequence++);
+		orders.put(id, o);
+		pending.add(o);
+		return o;
+	}
+
+	/**
+	 * Removes a pending or resting order
+	 * @param id
+	 * @return the cancelled order, null if there is no such live order
+	 */
+	synchronized Order cancel(UUID id) {
+		Order o = orders.remove(id);
+		if (o != null) {
+			closed.add(o);
+			if (!pending.remove(o)) {
+				removeResting(o);
+			}
+		}
+		return o;
+	}
+
+	/**
+	 * @param id
+	 * @return the live order with the given id, null if it was
+	 * filled, cancelled, expired or never existed
+	 */
+	synchronized Order getOrder(UUID id) {
+		return orders.get(id);
+	}
+
+	/**
+	 * Drops orders that expired before currentTick and matches
+	 * the orders posted since the last call in arrival order.
+	 * @param currentTick
+	 * @param settlement called for every match, in order
+	 * @return number of matches that were settled
+	 */
+	synchronized int match(int currentTick, Settlement settlement) {
+		expire(currentTick);
+
+		List<Order> incoming = pending;
+		pending = new ArrayList<Order>();
+
+		int fills = 0;
+		for (Order o : incoming) {
+			if (o.side == TradeType.BUY) {
+				fills += matchAgainst(o, asks, settlement);
+			} else {
+				fills += matchAgainst(o, bids, settlement);
+			}
+			if (o.remaining > EPSILON && orders.containsKey(o.id)) {
+				rest(o);
+			}
+		}
+		return fills;
+	}
+
+	private int matchAgainst(Order incoming, TreeSet<Order> book, Settlement settlement) {
+		int fills = 0;
+		Iterator<Order> it = book.iterator();
+		while (incoming.remaining > EPSILON && it.hasNext()) {
+			Order resting = it.next();
+			if (incoming.side == TradeType.BUY ? resting.unitCost > incoming.unitCost : resting.unitCost < incoming.unitCost) {
+				break;
+			}
+			if (resting.owner.equals(incoming.owner)) {
+				continue;
+			}
+
+			double quantity = Math.min(incoming.remaining, resting.remaining);
+			Order buy = incoming.side == TradeType.BUY ? incoming : resting;
+			Order sell = incoming.side == TradeType.BUY ? resting : incoming;
+
+			Order failed = settlement.settle(buy, sell, quantity, resting.unitCost);
+			if (failed != null) {
+				close(failed);
+				if (failed == resting) {
+					it.remove();
+					removeExpiry(resting);
+					continue;
+				}
+				return fills;
+			}
+
+			fills++;
+			incoming.remaining -= quantity;
+			resting.remaining -= quantity;
+			incoming.value += quantity * resting.unitCost;
+			resting.value += quantity * resting.unitCost;
+			if (resting.isFilled()) {
+				it.remove();
+				removeExpiry(resting);
+				close(resting);
+			}
+		}
+		if (incoming.isFilled()) {
+			close(incoming);
+		}
+		return fills;
+	}
+
+	private void close(Order o) {
+		orders.remove(o.id);
+		closed.add(o);
+	}
+
+	private void rest(Order o) {
+		(o.side == TradeType.BUY ? bids : asks).add(o);
+		List<Order> l = expiries.get(o.expiryTick);
+		if (l == null) {
+			l = new ArrayList<Order>();
+			expiries.put(o.expiryTick, l);
+		}
+		l.add(o);
+	}
+
+	private void removeResting(Order o) {
+		(o.side == TradeType.BUY ? bids : asks).remove(o);
+		removeExpiry(o);
+	}
+
+	private void removeExpiry(Order o) {
+		List<Order> l = expiries.get(o.expiryTick);
+		if (l != null) {
+			l.remove(o);
+			if (l.isEmpty()) {
+				expiries.remove(o.expiryTick);
+			}
+		}
+	}
+
+	private void expire(int currentTick) {
+		Map<Integer, List<Order>> expired = expiries.headMap(currentTick);
+		for (List<Order> l : expired.values()) {
+			for (Order o : l) {
+				(o.side == TradeType.BUY ? bids : asks).remove(o);
+				close(o);
+			}
+		}
+		expired.clear();
+		// Pending orders that were posted already expired never rest
+		Iterator<Order> it = pending.iterator();
+		while (it.hasNext()) {
+			Order o = it.next();
+			if (o.expiryTick < currentTick) {
+				it.remove();
+				close(o);
+			}
+		}
+	}
+
+	/**
+	 * @return the orders that were filled, cancelled or expired since
+	 * the last call, in the order they left the book
+	 */
+	synchronized List<Order> drainClosed() {
+		List<Order> l = closed;
+		closed = new ArrayList<Order>();
+		return l;
+	}
+
+	/**
+	 * @return best bid, null if there are no resting bids
+	 */
+	synchronized Order getBestBid() {
+		return bids.isEmpty() ? null : bids.first();
+	}
+
+	/**
+	 * @return best ask, null if there are no resting asks
+	 */
+	synchronized Order getBestAsk() {
+		return asks.isEmpty() ? null : asks.first();
+	}
+
+	/**
+	 * @return number of live (pending and resting) orders
+	 */
+	synchronized int size() {
+		return orders.size();
+	}
+
+}
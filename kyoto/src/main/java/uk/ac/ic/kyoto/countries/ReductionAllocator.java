@@ -0,0 +1,225 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.Arrays;
+
+/**
+ * Splits an amount of carbon a country wants to get rid of between
+ * absorption, reduction and, optionally, shutting down energy output,
+ * at the lowest total cost.
+ *
+ * The cost of absorption and reduction is quadratic in the amount of
+ * carbon, so the cheapest split is where their marginal costs are
+ * equal. Shutting down costs no money, it is given a price per ton
+ * by the caller (the GDP it gives up) and is used once the marginal
+ * cost of investing reaches that price. Absorption is bounded by the
+ * arable land, reduction and shutting down by the carbon output.
+ *
+ * Usage:
+ *
+ * double[] carbon = new double[3];
+ * double[] investments = new double[2];
+ * double cost = allocator.allocate(1000, arableLandArea, carbonOutput,
+ * 		energyOutput, carbon, investments);
+ *
+ * The two way split is solved directly, the three way split walks
+ * the points where a channel starts or fills up.
+ *
+ * Stateless, one instance can be shared by threads. Not final so
+ * benchmarks can put other solvers in its place.
+ */
+public class ReductionAllocator {
+
+	/**
+	 * Indices in the carbon and investments arrays
+	 */
+	public static final int ABSORB = 0;
+	public static final int REDUCE = 1;
+	public static final int SHUT_DOWN = 2;
+
+	private final CarbonAbsorptionHandler absorptionHandler;
+	private final CarbonReductionHandler reductionHandler;
+	private final GameConst constants;
+
+	public ReductionAllocator(CarbonAbsorptionHandler absorptionHandler,
+			CarbonReductionHandler reductionHandler) {
+		this.absorptionHandler = absorptionHandler;
+		this.reductionHandler = reductionHandler;
+		this.constants = GameConst.current();
+	}
+
+	/**
+	 * Cheapest split of carbon between absorption and reduction
+	 * @param carbon amount of carbon to absorb or reduce
+	 * @param arableLandArea
+	 * @param carbonOutput
+	 * @param energyOutput
+	 * @param split at least double[2], returns the carbon to absorb
+	 * in [ABSORB] and to reduce in [REDUCE]
+	 * @param investments at least double[2], returns the cost of each
+	 * @return total cost
+	 */
+	public double allocate(double carbon, double arableLandArea, double carbonOutput,
+			double energyOutput, double[] split, double[] investments) {
+		double linearAbsorb = absorptionHandler.linearCoefficient(arableLandArea);
+		double quadraticAbsorb = absorptionHandler.quadraticCoefficient();
+		double linearReduce = reductionHandler.linearCoefficient(carbonOutput, energyOutput);
+		double quadraticReduce = reductionHandler.quadraticCoefficient(energyOutput);
+
+		double absorb = 0;
+		if (carbon > 0) {
+			/* linearAbsorb + 2 * quadraticAbsorb * absorb
+			 * = linearReduce + 2 * quadraticReduce * (carbon - absorb) */
+			double denominator = 2 * (quadraticAbsorb + quadraticReduce);
+			if (denominator > 0) {
+				absorb = (linearReduce - linearAbsorb + 2 * quadraticReduce * carbon) / denominator;
+			} else {
+				absorb = linearAbsorb < linearReduce ? carbon : 0;
+			}
+			/* Reduction takes what the land cannot, even past the
+			 * carbon output, so the plan gets expensive instead of failing */
+			double maxAbsorb = Math.max(0, arableLandArea / constants.forestCarbonAbsorption());
+			double lower = Math.max(0, Math.min(maxAbsorb, carbon - Math.max(0, carbonOutput)));
+			double upper = Math.min(carbon, maxAbsorb);
+			absorb = Math.min(upper, Math.max(lower, absorb));
+		}
+		double reduce = Math.max(0, carbon - absorb);
+
+		split[ABSORB] = absorb;
+		split[REDUCE] = reduce;
+		investments[ABSORB] = absorb * (linearAbsorb + quadraticAbsorb * absorb);
+		investments[REDUCE] = reduce * (linearReduce + quadraticReduce * reduce);
+		return investments[ABSORB] + investments[REDUCE];
+	}
+
+	/**
+	 * Cheapest split of carbon between absorption, reduction and
+	 * shutting down energy output
+	 * @param carbon amount of carbon to get rid of
+	 * @param shutDownPrice what shutting down a ton of carbon output is
+	 * worth to the country
+	 * @param arableLandArea
+	 * @param carbonOutput
+	 * @param energyOutput
+	 * @param split double[3], returns the carbon to absorb in [ABSORB],
+	 * to reduce in [REDUCE] and to shut down in [SHUT_DOWN]
+	 * @param investments at least double[2], returns the cost of
+	 * absorbing and reducing
+	 * @return total cost of absorbing and reducing, shutting down is free
+	 */
+	public double allocate(double carbon, double shutDownPrice, double arableLandArea,
+			double carbonOutput, double energyOutput, double[] split, double[] investments) {
+		double[] linear = new double[3];
+		double[] quadratic = new double[3];
+		double[] cap = new double[3];
+		linear[ABSORB] = absorptionHandler.linearCoefficient(arableLandArea);
+		quadratic[ABSORB] = absorptionHandler.quadraticCoefficient();
+		cap[ABSORB] = Math.max(0, arableLandArea / constants.forestCarbonAbsorption());
+		linear[REDUCE] = reductionHandler.linearCoefficient(carbonOutput, energyOutput);
+		quadratic[REDUCE] = reductionHandler.quadraticCoefficient(energyOutput);
+		/* Reduction and shutting down share the carbon output. Past the
+		 * shut down price reducing is dearer than shutting down, so
+		 * reduction stops there and shutting down gets the rest */
+		cap[REDUCE] = amount(shutDownPrice, linear[REDUCE], quadratic[REDUCE], Math.max(0, carbonOutput), true);
+		linear[SHUT_DOWN] = shutDownPrice;
+		cap[SHUT_DOWN] = Math.max(0, carbonOutput - cap[REDUCE]);
+
+		double left = fill(carbon, linear, quadratic, cap, split);
+		/* Carbon no channel can take is priced as more reduction, so
+		 * the plan gets expensive instead of failing */
+		split[REDUCE] += left;
+
+		investments[ABSORB] = split[ABSORB] * (linear[ABSORB] + quadratic[ABSORB] * split[ABSORB]);
+		investments[REDUCE] = split[REDUCE] * (linear[REDUCE] + quadratic[REDUCE] * split[REDUCE]);
+		return investments[ABSORB] + investments[REDUCE];
+	}
+
+	/**
+	 * Splits carbon between channels with cost q * (linear + quadratic * q),
+	 * 0 <= q <= cap, so that every used channel has the same marginal cost
+	 * linear + 2 * quadratic * q. The amount supplied at a marginal cost is
+	 * piecewise linear between the points where a channel starts or fills
+	 * up, so the marginal cost is found by walking those points and
+	 * interpolating.
+	 * @return carbon that did not fit in the caps
+	 */
+	static double fill(double carbon, double[] linear, double[] quadratic, double[] cap, double[] out) {
+		int n = linear.length;
+		if (!(carbon > 0)) {
+			Arrays.fill(out, 0, n, 0);
+			return 0;
+		}
+		double[] points = new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			points[2 * i] = linear[i];
+			points[2 * i + 1] = linear[i] + 2 * quadratic[i] * cap[i];
+		}
+		Arrays.sort(points);
+
+		double prev = points[0];
+		double prevHigh = supplied(prev, linear, quadratic, cap, true);
+		double price = Double.NaN;
+		if (prevHigh >= carbon) {
+			price = prev;
+		} else {
+			for (int p = 1; p < points.length; p++) {
+				double point = points[p];
+				double low = supplied(point, linear, quadratic, cap, false);
+				if (low >= carbon) {
+					price = low > prevHigh
+							? prev + (carbon - prevHigh) * (point - prev) / (low - prevHigh)
+							: point;
+					break;
+				}
+				double high = supplied(point, linear, quadratic, cap, true);
+				if (high >= carbon) {
+					price = point;
+					break;
+				}
+				prev = point;
+				prevHigh = high;
+			}
+		}
+		if (Double.isNaN(price)) {
+			System.arraycopy(cap, 0, out, 0, n);
+			return Math.max(0, carbon - supplied(points[points.length - 1], linear, quadratic, cap, true));
+		}
+
+		/* Channels that are linear and priced exactly at the marginal cost
+		 * take whatever the others leave, in order */
+		double left = carbon;
+		for (int i = 0; i < n; i++) {
+			out[i] = amount(price, linear[i], quadratic[i], cap[i], false);
+			left -= out[i];
+		}
+		for (int i = 0; i < n && left > 0; i++) {
+			if (quadratic[i] == 0 && linear[i] == price) {
+				out[i] = Math.min(left, cap[i]);
+				left -= out[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param high whether linear channels priced at exactly price are full
+	 * @return total carbon supplied at marginal cost price
+	 */
+	private static double supplied(double price, double[] linear, double[] quadratic, double[] cap, boolean high) {
+		double total = 0;
+		for (int i = 0; i < linear.length; i++) {
+			total += amount(price, linear[i], quadratic[i], cap[i], high);
+		}
+		return total;
+	}
+
+	private static double amount(double price, double linear, double quadratic, double cap, boolean high) {
+		if (price < linear || (price == linear && !high)) {
+			return 0;
+		}
+		if (quadratic <= 0) {
+			return cap;
+		}
+		return Math.min(cap, (price - linear) / (2 * quadratic));
+	}
+
+}
@@ -0,0 +1,120 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Change tracking stage between a country and its persisted
+ * per tick state. Properties are set every tick, but only those
+ * whose value differs from the last persisted one are handed out
+ * by drain(...), so constant properties such as the land area are
+ * written once instead of every tick. Every snapshotInterval ticks
+ * the full state is written again so a reader can start from the
+ * nearest snapshot instead of tick 0.
+ *
+ * Readers rebuild the full series with reconstruct(...).
+ *
+ * Not thread safe, it belongs to a single country.
+ */
+public class TickDataDelta {
+
+	private final int snapshotInterval;
+
+	/**
+	 * Values as of the last drain
+	 */
+	private final Map<String, String> persisted = new HashMap<String, String>();
+
+	/**
+	 * Values set since the last drain
+	 */
+	private final Map<String, String> current = new LinkedHashMap<String, String>();
+
+	private int lastSnapshot = Integer.MIN_VALUE;
+
+	/**
+	 * @param snapshotInterval number of ticks between two full
+	 * snapshots, 0 or less for a single snapshot at the first tick
+	 */
+	public TickDataDelta(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * Sets the value of a property for the current tick
+	 * @param key
+	 * @param value
+	 */
+	public void set(String key, String value) {
+		current.put(key, value);
+	}
+
+	/**
+	 * Returns the properties to persist for tick: all of them on
+	 * a snapshot tick, otherwise the ones that changed since the
+	 * last call.
+	 * @param tick
+	 * @return property -> value, empty if nothing changed
+	 */
+	public Map<String, String> drain(int tick) {
+		boolean snapshot = lastSnapshot == Integer.MIN_VALUE
+				|| (snapshotInterval > 0 && tick - lastSnapshot >= snapshotInterval);
+		if (snapshot) {
+			lastSnapshot = tick;
+		}
+
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		for (Entry<String, String> e : current.entrySet()) {
+			if (snapshot || !e.getValue().equals(persisted.get(e.getKey()))) {
+				changes.put(e.getKey(), e.getValue());
+				persisted.put(e.getKey(), e.getValue());
+			}
+		}
+		if (snapshot) {
+			/* Properties that were not set this tick keep their last value */
+			for (Entry<String, String> e : persisted.entrySet()) {
+				if (!changes.containsKey(e.getKey())) {
+					changes.put(e.getKey(), e.getValue());
+				}
+			}
+		}
+		current.clear();
+		return changes;
+	}
+
+	/**
+	 * Rebuilds the full state of every tick from the changes
+	 * written by drain(...): a property that was not written in
+	 * a tick keeps the value of the last tick it was.
+	 * @param deltas tick -> properties written in that tick
+	 * @param lastTick last tick of the series, ticks after the
+	 * last write have the state of the last write
+	 * @return tick -> every property known as of that tick, for every
+	 * tick from the first write to lastTick
+	 */
+	public static SortedMap<Integer, Map<String, String>> reconstruct(Map<Integer, Map<String, String>> deltas, int lastTick) {
+		SortedMap<Integer, Map<String, String>> series = new TreeMap<Integer, Map<String, String>>();
+		if (deltas.isEmpty()) {
+			return series;
+		}
+		TreeMap<Integer, Map<String, String>> sorted = new TreeMap<Integer, Map<String, String>>(deltas);
+		Map<String, String> state = Collections.emptyMap();
+		for (int tick = sorted.firstKey(); tick <= lastTick; tick++) {
+			Map<String, String> changes = sorted.get(tick);
+			if (changes != null && !changes.isEmpty()) {
+				Map<String, String> next = new HashMap<String, String>(state);
+				next.putAll(changes);
+				state = Collections.unmodifiableMap(next);
+			}
+			/* Unchanged ticks share the same map */
+			series.put(tick, state);
+		}
+		return series;
+	}
+
+}
@@ -0,0 +1,77 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.imperial.presage2.core.network.NetworkAddress;
+
+/**
+ * Nodes of the trade network of one simulation. Every
+ * TradeProtocol joins it when it is created. Joins and
+ * leaves are kept in order, so a protocol catches up with
+ * the changes it has not seen yet instead of comparing
+ * every connected node on each broadcast.
+ */
+public final class TradeNetwork {
+
+	/**
+	 * A node that joined or left
+	 */
+	static final class Change {
+		final NetworkAddress address;
+		final boolean joined;
+
+		Change(NetworkAddress address, boolean joined) {
+			this.address = address;
+			this.joined = joined;
+		}
+	}
+
+	private final Set<NetworkAddress> members = new HashSet<NetworkAddress>();
+	private final List<Change> changes = new ArrayList<Change>();
+	/* Number of changes so far, read without the lock on every broadcast */
+	private volatile int version = 0;
+
+	/**
+	 * Adds address to the network, nothing happens if it
+	 * is already in it
+	 * @param address
+	 */
+	public synchronized void join(NetworkAddress address) {
+		if (members.add(address)) {
+			changes.add(new Change(address, true));
+			version = changes.size();
+		}
+	}
+
+	/**
+	 * Removes address from the network, nothing happens if
+	 * it is not in it
+	 * @param address
+	 */
+	public synchronized void leave(NetworkAddress address) {
+		if (members.remove(address)) {
+			changes.add(new Change(address, false));
+			version = changes.size();
+		}
+	}
+
+	/**
+	 * @return number of joins and leaves so far
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param version
+	 * @return the joins and leaves after the first version ones,
+	 * in the order they happened
+	 */
+	synchronized List<Change> getChanges(int version) {
+		return new ArrayList<Change>(changes.subList(version, changes.size()));
+	}
+
+}
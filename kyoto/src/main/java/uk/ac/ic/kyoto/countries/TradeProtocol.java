@@ -1,7 +1,12 @@
 package uk.ac.ic.kyoto.countries;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
@@ -10,6 +15,7 @@ import uk.ac.ic.kyoto.countries.OfferMessage.OfferMessageType;
 import uk.ac.ic.kyoto.exceptions.NotEnoughCarbonOutputException;
 import uk.ac.ic.kyoto.exceptions.NotEnoughCashException;
 import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 import uk.ac.ic.kyoto.singletonfactory.SingletonProvider;
 import uk.ac.ic.kyoto.tokengen.Token;
 import uk.ac.ic.kyoto.trade.InvestmentType;
@@ -29,6 +35,7 @@ import uk.ac.imperial.presage2.util.fsm.Action;
 import uk.ac.imperial.presage2.util.fsm.AndCondition;
 import uk.ac.imperial.presage2.util.fsm.EventTypeCondition;
 import uk.ac.imperial.presage2.util.fsm.FSM;
+import uk.ac.imperial.presage2.util.fsm.FSMDescription;
 import uk.ac.imperial.presage2.util.fsm.FSMException;
 import uk.ac.imperial.presage2.util.fsm.OrCondition;
 import uk.ac.imperial.presage2.util.fsm.StateType;
@@ -49,6 +56,11 @@ import uk.ac.imperial.presage2.util.protocols.TimeoutCondition;
  *
  */
 public abstract class TradeProtocol extends FSMProtocol {
+	/**
+	 * Ticks a conversation waits for a reply before it times out
+	 */
+	public static final int TIMEOUT_TICKS = 3;
+
 	private final UUID id;
 	private final UUID authkey;
 	protected final EnvironmentConnector environment;
@@ -60,6 +72,25 @@ public abstract class TradeProtocol extends FSMProtocol {
 	OfferHistory offerHistory = new OfferHistory();
 	private AbstractCountry participant;
 
+	/*
+	 * Peers of the active conversations, maintained by the protocol
+	 * actions so broadcasts do not have to recompute them
+	 */
+	private final Map<UUID, NetworkAddress> conversationPeers = new HashMap<UUID, NetworkAddress>();
+	private final Map<NetworkAddress, Integer> conversationCounts = new HashMap<NetworkAddress, Integer>();
+	/* Nodes of the trade network as of version networkVersion */
+	private final TradeNetwork tradeNetwork;
+	private int networkVersion = 0;
+	private final Set<NetworkAddress> knownNodes = new HashSet<NetworkAddress>();
+	/*
+	 * Known nodes that are not in a conversation, updated in place.
+	 * eligibleIndex holds their positions in eligible
+	 */
+	private ArrayList<NetworkAddress> eligible = new ArrayList<NetworkAddress>();
+	private final Map<NetworkAddress, Integer> eligibleIndex = new HashMap<NetworkAddress, Integer>();
+	/* eligible as handed out to the broadcasts, null if it has not been handed out since it last changed */
+	private List<NetworkAddress> eligibleView = null;
+
 	public enum ResponderReplies{
 		ACCEPT,REJECT
 	};
@@ -99,7 +130,8 @@ public abstract class TradeProtocol extends FSMProtocol {
 	public TradeProtocol(final UUID id, final UUID authkey, 
 			final EnvironmentConnector environment, NetworkAdaptor network, AbstractCountry participant)
 					throws FSMException {
-		super("Trade Protocol", FSM.description(), network);
+		super("Trade Protocol", DESCRIPTION, new ProtocolNetwork(network));
+		((ProtocolNetwork) this.network).protocol = this;
 		this.participant = participant;
 		this.id = id;
 		this.authkey = authkey;
@@ -108,12 +140,73 @@ public abstract class TradeProtocol extends FSMProtocol {
 
 		logger = Logger.getLogger(TradeProtocol.class.getName() + ", " + id);
 
-		this.tradeToken = SingletonProvider.getToken();
+		this.tradeToken = SingletonProvider.getToken().partition();
 
 		this.tradeHistory = SingletonProvider.getTradeHistory();
 
+		this.tradeNetwork = SimulationContext.current().getTradeNetwork();
+		this.tradeNetwork.join(network.getAddress());
+	}
+
+	/**
+	 * The trade protocol state machine. It is built once and shared
+	 * by every TradeProtocol, it must not be modified after it
+	 * has been built. The actions are stateless, they reach the
+	 * TradeProtocol that owns the conversation through the
+	 * conversation's network adaptor and the state of the
+	 * conversation itself is kept in its entity (the OfferMessage
+	 * being traded).
+	 */
+	private static final FSMDescription DESCRIPTION = buildDescription();
+
+	/**
+	 * Network adaptor of a TradeProtocol. It forwards everything
+	 * to the agent's adaptor and carries a reference to the
+	 * protocol, so the shared actions get from a conversation
+	 * to its protocol without any lookup.
+	 */
+	private static final class ProtocolNetwork implements NetworkAdaptor {
+		private final NetworkAdaptor network;
+		private TradeProtocol protocol;
+
+		ProtocolNetwork(NetworkAdaptor network) {
+			this.network = network;
+		}
+
+		@Override
+		public void sendMessage(Message<?> m) {
+			network.sendMessage(m);
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public List<Message> getMessages() {
+			return network.getMessages();
+		}
+
+		@Override
+		public NetworkAddress getAddress() {
+			return network.getAddress();
+		}
+
+		@Override
+		public Set<NetworkAddress> getConnectedNodes() {
+			return network.getConnectedNodes();
+		}
+	}
+
+	/**
+	 * @param conv
+	 * @return the TradeProtocol that conv belongs to
+	 */
+	private static TradeProtocol protocolOf(FSMConversation conv) {
+		return ((ProtocolNetwork) conv.getNetwork()).protocol;
+	}
+
+	private static FSMDescription buildDescription() {
+		FSMDescription description = FSM.description();
 		try {
-			this.description
+			description
 			.addState(States.START, StateType.START)
 			.addState(States.TRADE_PROPOSED)
 			.addState(States.WAIT_FOR_CONFIRMATION)
@@ -124,7 +217,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 
 
 			/*==========================Initiator FSM==========================*/
-			this.description
+			description
 			.addTransition(Transitions.PROPOSE_TRADE,
 					new EventTypeCondition(TradeSpawnEvent.class), 
 					States.START,
@@ -134,19 +227,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 				@Override
 				public void processSpawn(ConversationSpawnEvent event,
 						FSMConversation conv, Transition transition) {
-					// send message offering the Exchange of tokens
-					// described in the ExchangeSpawnEvent.
-					TradeSpawnEvent e = (TradeSpawnEvent) event;
-					NetworkAddress from = conv.getNetwork().getAddress();
-					NetworkAddress to = conv.recipients.get(0);
-					logger.debug("Initiating: " + e.offerMessage);
-					conv.entity = e.offerMessage;
-					conv.getNetwork().sendMessage(
-							new UnicastMessage<OfferMessage>(
-									Performative.PROPOSE, 
-									Transitions.PROPOSE_TRADE.name(),
-									SimTime.get(), from,
-									to, e.offerMessage));
+					protocolOf(conv).proposeTrade((TradeSpawnEvent) event, conv);
 				}
 			})
 			.addTransition(Transitions.TRADE_ACCEPTED,
@@ -160,46 +241,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 							@Override
 							public void processMessage(Message<?> message,
 									FSMConversation conv, Transition transition) {
-								OfferMessage offerMessage = ((OfferMessage) message.getData());
-								//Offer trade = new Offer(offerMessage.getOfferQuantity(), offerMessage.getOfferUnitCost(), offerMessage.getOfferType(), offerMessage.getOfferInvestmentType());
-								Offer trade = offerMessage.getOffer();
-								if(handleTradeCompletion(trade.reverse())){
-									/*Everything worked out well. Its okay to end this FSM*/
-									logger.info("Trade was accepted");
-									conv.setEntity(offerMessage);
-									NetworkAddress from = conv.getNetwork()
-											.getAddress();
-									NetworkAddress to = message.getFrom();
-									Time t = SimTime.get();
-									tradeSuccessful(from, offerMessage); /*Inform initiator that trade was successful*/
-									conv.getNetwork().sendMessage(
-											new UnicastMessage<OfferMessage>(
-													Performative.CONFIRM,
-													InitiatorReplies.TRADE_SUCCESSFUL.name(), t,
-													from, to, offerMessage));
-								}else{
-									/*handleTradeCompletion for initiator did not work. Revert back
-									 * both initiator and responder.*/
-									logger.warn("Revert changes now");
-									//TODO
-									/*
-									 * 1) Send message back to responder that initiator did not handle trade completion with success
-									 * 2) Remove history from trade history that was recorded
-									 * 3) Revert change for myself (initiator)
-									 * 4) Message sent will revert change for responder*/
-									NetworkAddress from = conv.getNetwork()
-											.getAddress();
-									NetworkAddress to = message.getFrom();
-									Time t = SimTime.get();
-									conv.setEntity(offerMessage);
-									revertInitiator(trade.reverse());
-									tradeFailed(from,offerMessage); /*Inform initiator that trade failed*/
-									conv.getNetwork().sendMessage(
-											new UnicastMessage<OfferMessage>(
-													Performative.FAILURE,
-													InitiatorReplies.REVERT_NOW.name(), t,
-													from, to, offerMessage));
-								}
+								protocolOf(conv).acceptedByResponder(message, conv);
 							}
 			})
 			.addTransition(Transitions.TRADE_REJECTED,
@@ -213,24 +255,11 @@ public abstract class TradeProtocol extends FSMProtocol {
 							@Override
 							public void processMessage(Message<?> message,
 									FSMConversation conv, Transition transition) {
-								OfferMessage offerMessage = ((OfferMessage) message.getData());
-								NetworkAddress from = conv.getNetwork()
-										.getAddress();
-								NetworkAddress to = message.getFrom();
-								Time t = SimTime.get();
-								conv.setEntity(offerMessage);
-								//Offer trade = new Offer(offerMessage.getOfferQuantity(), offerMessage.getOfferUnitCost(), offerMessage.getOfferType(), offerMessage.getOfferInvestmentType());
-								tradeRejected(from,offerMessage);
-								conv.getNetwork().sendMessage(
-										new UnicastMessage<Object>(
-												Performative.INFORM,
-												InitiatorReplies.TRADE_UNSUCCESSFUL.name(), t,
-												from, to, offerMessage));
-								
+								protocolOf(conv).rejectedByResponder(message, conv);
 							}
 			})			
 			.addTransition(Transitions.TIMEOUT,
-					new TimeoutCondition(3),
+					new TimeoutCondition(TIMEOUT_TICKS),
 					States.TRADE_PROPOSED,
 					States.TIMED_OUT, 
 					new Action(){
@@ -238,8 +267,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 						@Override
 						public void execute(Object event, Object entity,
 								Transition transition) {
-								logger.warn("Initiator timed out");
-								
+								protocolOf((FSMConversation) entity).timedOut((FSMConversation) entity, "Initiator timed out");
 						}
 
 			});
@@ -247,7 +275,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 
 
 			/*==========================Responder FSM==========================*/
-			this.description
+			description
 			.addTransition(Transitions.RESPOND_TO_TRADE, 
 					new MessageTypeCondition(Transitions.PROPOSE_TRADE.name()),
 					States.START,
@@ -257,60 +285,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 				@Override
 				public void processInitialMessage(Message<?> message,
 						FSMConversation conv, Transition transition) {
-					if (message.getData() instanceof OfferMessage) {
-						OfferMessage offerMessage = ((OfferMessage) message.getData());
-						//Offer trade = new Offer(offerMessage.getOfferQuantity(), offerMessage.getOfferUnitCost(), offerMessage.getOfferType(), offerMessage.getOfferInvestmentType());
-						Offer trade = offerMessage.getOffer();
-						conv.setEntity(offerMessage);
-						NetworkAddress from = conv.getNetwork()
-								.getAddress();
-						NetworkAddress to = message.getFrom();
-						Time t = SimTime.get();
-						if (acceptExchange(to, trade)) {
-							// send accept message
-							if(!TradeProtocol.this.tradeHistory.tradeExists(offerMessage.getTradeID())){
-								if(handleTradeCompletion(trade)){
-									conv.getNetwork().sendMessage(
-											new UnicastMessage<OfferMessage>(
-													Performative.ACCEPT_PROPOSAL,
-													ResponderReplies.ACCEPT.name(), t,
-													from, to, offerMessage));
-								TradeProtocol.this.tradeHistory.addToHistory(
-										SimTime.get(), offerMessage.getTradeID(), offerMessage); /*Add to trade history*/									
-								logger.debug("Accepting exchange proposal: "
-										+ trade);
-								}else{
-									/* 1) Revert changes for responder*/
-									revertResponder(trade);
-									tradeFailed(from,offerMessage); /*Inform responder that trade failed*/
-									conv.setEntity(offerMessage);
-									conv.getNetwork().sendMessage(
-											new UnicastMessage<Object>(
-													Performative.REJECT_PROPOSAL,
-													ResponderReplies.REJECT.name(), t,
-													from, to, offerMessage));
-								}							
-							}else{
-								logger.warn("Trade already happened");
-								conv.getNetwork().sendMessage(
-										new UnicastMessage<Object>(
-												Performative.REJECT_PROPOSAL,
-												ResponderReplies.REJECT.name(), t,
-												from, to, offerMessage));
-							}
-						} else {
-							// send reject message
-							logger.debug("Rejecting exchange proposal: "
-									+ trade);
-							conv.getNetwork().sendMessage(
-									new UnicastMessage<Object>(
-											Performative.REJECT_PROPOSAL,
-											ResponderReplies.REJECT.name(), t,
-											from, to, offerMessage));
-						}
-					} else {
-						logger.warn("Message type not equal to OfferMessage");
-					}
+					protocolOf(conv).respondToTrade(message, conv);
 				}
 			})
 			.addTransition(Transitions.REVERTING,
@@ -324,14 +299,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 							@Override
 							public void processMessage(Message<?> message,
 									FSMConversation conv, Transition transition) {
-								//TODO
-								/*Revert changes*/
-								OfferMessage offerMessage = ((OfferMessage) message.getData());
-								//Offer trade = new Offer(offerMessage.getOfferQuantity(), offerMessage.getOfferUnitCost(), offerMessage.getOfferType(), offerMessage.getOfferInvestmentType());
-								Offer trade = offerMessage.getOffer();
-								revertResponderFromInitiatorFailure(trade);
-								TradeProtocol.this.tradeHistory.removeTradeHistoryWithID(offerMessage.getTradeID());
-								tradeFailed(message.getFrom(),offerMessage); /*Inform responder that trade failed*/
+								protocolOf(conv).revert(message, conv);
 							}
 			})
 			.addTransition(Transitions.CONFIRMATION,
@@ -348,15 +316,11 @@ public abstract class TradeProtocol extends FSMProtocol {
 							@Override
 							public void processMessage(Message<?> message,
 									FSMConversation conv, Transition transition) {
-								if(message.getPerformative().equals(Performative.CONFIRM)){
-									/*Inform responder that trade was successful*/
-									tradeSuccessful(message.getFrom(),(OfferMessage) message.getData());
-								}
-								logger.info("got confirmation");
+								protocolOf(conv).confirmation(message, conv);
 							}
 			})
 			.addTransition(Transitions.RESPONDER_TIME_OUT,
-					new TimeoutCondition(3),
+					new TimeoutCondition(TIMEOUT_TICKS),
 					States.WAIT_FOR_CONFIRMATION,
 					States.RESPONDER_TIMEDOUT, 
 					new Action(){
@@ -364,18 +328,179 @@ public abstract class TradeProtocol extends FSMProtocol {
 						@Override
 						public void execute(Object event, Object entity,
 								Transition transition) {
-								logger.warn("Responder timed out");
-								
+								protocolOf((FSMConversation) entity).timedOut((FSMConversation) entity, "Responder timed out");
 						}
 
 			});
 
 		} catch (FSMException e) {
-			logger.warn(e);
+			Logger.getLogger(TradeProtocol.class).warn(e);
+			throw new IllegalStateException(e);
+		}
+		return description;
+	}
+
+	/*==========================Initiator actions==========================*/
+
+	private void proposeTrade(TradeSpawnEvent e, FSMConversation conv) {
+		// send message offering the Exchange of tokens
+		// described in the ExchangeSpawnEvent.
+		NetworkAddress from = conv.getNetwork().getAddress();
+		NetworkAddress to = conv.recipients.get(0);
+		conversationStarted(conv.getID(), to);
+		logger.debug("Initiating: " + e.offerMessage);
+		conv.entity = e.offerMessage;
+		conv.getNetwork().sendMessage(
+				new UnicastMessage<OfferMessage>(
+						Performative.PROPOSE, 
+						Transitions.PROPOSE_TRADE.name(),
+						SimTime.get(), from,
+						to, e.offerMessage));
+	}
+
+	private void acceptedByResponder(Message<?> message, FSMConversation conv) {
+		conversationEnded(conv.getID());
+		OfferMessage offerMessage = ((OfferMessage) message.getData());
+		Offer trade = offerMessage.getOffer();
+		if(handleTradeCompletion(trade.reverse())){
+			/*Everything worked out well. Its okay to end this FSM*/
+			logger.info("Trade was accepted");
+			conv.setEntity(offerMessage);
+			NetworkAddress from = conv.getNetwork()
+					.getAddress();
+			NetworkAddress to = message.getFrom();
+			Time t = SimTime.get();
+			tradeSuccessful(from, offerMessage); /*Inform initiator that trade was successful*/
+			conv.getNetwork().sendMessage(
+					new UnicastMessage<OfferMessage>(
+							Performative.CONFIRM,
+							InitiatorReplies.TRADE_SUCCESSFUL.name(), t,
+							from, to, offerMessage));
+		}else{
+			/*handleTradeCompletion for initiator did not work. Revert back
+			 * both initiator and responder.*/
+			logger.warn("Revert changes now");
+			//TODO
+			/*
+			 * 1) Send message back to responder that initiator did not handle trade completion with success
+			 * 2) Remove history from trade history that was recorded
+			 * 3) Revert change for myself (initiator)
+			 * 4) Message sent will revert change for responder*/
+			NetworkAddress from = conv.getNetwork()
+					.getAddress();
+			NetworkAddress to = message.getFrom();
+			Time t = SimTime.get();
+			conv.setEntity(offerMessage);
+			revertInitiator(trade.reverse());
+			tradeFailed(from,offerMessage); /*Inform initiator that trade failed*/
+			conv.getNetwork().sendMessage(
+					new UnicastMessage<OfferMessage>(
+							Performative.FAILURE,
+							InitiatorReplies.REVERT_NOW.name(), t,
+							from, to, offerMessage));
 		}
+	}
+
+	private void rejectedByResponder(Message<?> message, FSMConversation conv) {
+		conversationEnded(conv.getID());
+		OfferMessage offerMessage = ((OfferMessage) message.getData());
+		NetworkAddress from = conv.getNetwork()
+				.getAddress();
+		NetworkAddress to = message.getFrom();
+		Time t = SimTime.get();
+		conv.setEntity(offerMessage);
+		tradeRejected(from,offerMessage);
+		conv.getNetwork().sendMessage(
+				new UnicastMessage<Object>(
+						Performative.INFORM,
+						InitiatorReplies.TRADE_UNSUCCESSFUL.name(), t,
+						from, to, offerMessage));
+	}
+
+	/*==========================Common actions==========================*/
 
+	private void timedOut(FSMConversation conv, String reason) {
+		conversationEnded(conv.getID());
+		logger.warn(reason);
+	}
+
+	/*==========================Responder actions==========================*/
+
+	private void respondToTrade(Message<?> message, FSMConversation conv) {
+		conversationStarted(conv.getID(), message.getFrom());
+		if (message.getData() instanceof OfferMessage) {
+			OfferMessage offerMessage = ((OfferMessage) message.getData());
+			Offer trade = offerMessage.getOffer();
+			conv.setEntity(offerMessage);
+			NetworkAddress from = conv.getNetwork()
+					.getAddress();
+			NetworkAddress to = message.getFrom();
+			Time t = SimTime.get();
+			if (acceptExchange(to, trade)) {
+				// send accept message
+				if(!this.tradeHistory.tradeExists(offerMessage.getTradeID())){
+					if(handleTradeCompletion(trade)){
+						conv.getNetwork().sendMessage(
+								new UnicastMessage<OfferMessage>(
+										Performative.ACCEPT_PROPOSAL,
+										ResponderReplies.ACCEPT.name(), t,
+										from, to, offerMessage));
+					this.tradeHistory.addToHistory(
+							SimTime.get(), offerMessage.getTradeID(), offerMessage); /*Add to trade history*/									
+					logger.debug("Accepting exchange proposal: "
+							+ trade);
+					}else{
+						/* 1) Revert changes for responder*/
+						revertResponder(trade);
+						tradeFailed(from,offerMessage); /*Inform responder that trade failed*/
+						conv.setEntity(offerMessage);
+						conv.getNetwork().sendMessage(
+								new UnicastMessage<Object>(
+										Performative.REJECT_PROPOSAL,
+										ResponderReplies.REJECT.name(), t,
+										from, to, offerMessage));
+					}							
+				}else{
+					logger.warn("Trade already happened");
+					conv.getNetwork().sendMessage(
+							new UnicastMessage<Object>(
+									Performative.REJECT_PROPOSAL,
+									ResponderReplies.REJECT.name(), t,
+									from, to, offerMessage));
+				}
+			} else {
+				// send reject message
+				logger.debug("Rejecting exchange proposal: "
+						+ trade);
+				conv.getNetwork().sendMessage(
+						new UnicastMessage<Object>(
+								Performative.REJECT_PROPOSAL,
+								ResponderReplies.REJECT.name(), t,
+								from, to, offerMessage));
+			}
+		} else {
+			logger.warn("Message type not equal to OfferMessage");
+		}
+	}
 
+	private void revert(Message<?> message, FSMConversation conv) {
+		conversationEnded(conv.getID());
+		//TODO
+		/*Revert changes*/
+		OfferMessage offerMessage = ((OfferMessage) message.getData());
+		Offer trade = offerMessage.getOffer();
+		revertResponderFromInitiatorFailure(trade);
+		this.tradeHistory.removeTradeHistoryWithID(offerMessage.getTradeID());
+		tradeFailed(message.getFrom(),offerMessage); /*Inform responder that trade failed*/
+	}
 
+	private void confirmation(Message<?> message, FSMConversation conv) {
+		conversationEnded(conv.getID());
+		if(message.getPerformative().equals(Performative.CONFIRM)){
+			/*Inform responder that trade was successful*/
+			tradeSuccessful(message.getFrom(),(OfferMessage) message.getData());
+		}
+		logger.info("got confirmation");
 	}
 
 	/**
@@ -384,7 +509,8 @@ public abstract class TradeProtocol extends FSMProtocol {
 	 * containing OfferMessage.class data types
 	 * Moreover it is also checked whether the
 	 * OfferMessge has a valid tradeID assigned
-	 * to it.
+	 * to it. Results of CarbonMarket orders are
+	 * handled as well.
 	 */
 	@Override
 	public boolean canHandle(Input in){
@@ -395,6 +521,8 @@ public abstract class TradeProtocol extends FSMProtocol {
 				Message<OfferMessage> message = (Message<OfferMessage>) in;
 				if(message.getData().getOfferMessageType() == OfferMessageType.TRADE_PROTOCOL)
 					return super.canHandle(in);			
+				if(message.getData().getOfferMessageType() == OfferMessageType.ORDER_BOOK)
+					return true;
 			}
 			catch(ClassCastException e){
 				logger.warn(e);
@@ -405,6 +533,31 @@ public abstract class TradeProtocol extends FSMProtocol {
 		}		
 	}
 
+	@Override
+	public void handle(Input in){
+		Message<?> m = (Message<?>) in;
+		if(m.getData() instanceof OfferMessage 
+				&& ((OfferMessage) m.getData()).getOfferMessageType() == OfferMessageType.ORDER_BOOK){
+			orderClosed(m);
+		}else{
+			super.handle(in);
+		}
+	}
+
+	/**
+	 * Reports the result of an order of this agent
+	 * that left the CarbonMarket order book
+	 * @param message
+	 */
+	private void orderClosed(Message<?> message) {
+		OfferMessage offerMessage = (OfferMessage) message.getData();
+		if (CarbonMarket.OrderResult.valueOf(message.getType()) == CarbonMarket.OrderResult.CANCELLED) {
+			tradeFailed(message.getFrom(), offerMessage);
+		} else {
+			tradeSuccessful(message.getFrom(), offerMessage);
+		}		
+	}
+
 	class TradeSpawnEvent extends ConversationSpawnEvent {
 
 		final OfferMessage offerMessage;
@@ -418,16 +571,119 @@ public abstract class TradeProtocol extends FSMProtocol {
 	}
 
 
+	/*==========================Conversation members==========================*/
+
+	/**
+	 * Records that a conversation with peer has started
+	 * @param conversationID
+	 * @param peer
+	 */
+	synchronized void conversationStarted(UUID conversationID, NetworkAddress peer) {
+		if (conversationPeers.put(conversationID, peer) != null) {
+			return;
+		}
+		Integer count = conversationCounts.get(peer);
+		conversationCounts.put(peer, count == null ? 1 : count + 1);
+		removeEligible(peer);
+	}
+
+	/**
+	 * Records that conv has ended, its peer can receive broadcasts
+	 * again once it has no other conversation with this agent
+	 * @param conversationID
+	 */
+	synchronized void conversationEnded(UUID conversationID) {
+		NetworkAddress peer = conversationPeers.remove(conversationID);
+		if (peer == null) {
+			return;
+		}
+		Integer count = conversationCounts.remove(peer);
+		if (count != null && count > 1) {
+			conversationCounts.put(peer, count - 1);
+		} else if (knownNodes.contains(peer)) {
+			addEligible(peer);
+		}
+	}
+
+	/**
+	 * @param peer
+	 * @return true if this agent is in a trade conversation with peer
+	 */
+	public synchronized boolean isInConversationWith(NetworkAddress peer) {
+		return conversationCounts.containsKey(peer);
+	}
+
 	/**
 	 * Method used to get agents which are not
 	 * in an FSMProtocol conversation with this
-	 * agent
+	 * agent. The set is maintained as conversations
+	 * start and end and nodes join and leave the
+	 * TradeNetwork, the list returned is shared
+	 * between calls until the set changes and must
+	 * not be modified.
 	 * @return
 	 */
-	public List<NetworkAddress> getAgentsNotInConversation(){
-		List<NetworkAddress> all = new ArrayList<NetworkAddress>(this.network.getConnectedNodes());
-		all.removeAll(this.getActiveConversationMembers());
-		return all;
+	public synchronized List<NetworkAddress> getAgentsNotInConversation(){
+		if (tradeNetwork.getVersion() != networkVersion) {
+			/*Agents joined or left the network*/
+			NetworkAddress self = this.network.getAddress();
+			for (TradeNetwork.Change change : tradeNetwork.getChanges(networkVersion)) {
+				networkVersion++;
+				if (change.address.equals(self)) {
+					continue;
+				}
+				if (change.joined) {
+					knownNodes.add(change.address);
+					if (!conversationCounts.containsKey(change.address)) {
+						addEligible(change.address);
+					}
+				} else {
+					knownNodes.remove(change.address);
+					removeEligible(change.address);
+				}
+			}
+		}
+		if (eligibleView == null) {
+			eligibleView = Collections.unmodifiableList(eligible);
+		}
+		return eligibleView;
+	}
+
+	private void addEligible(NetworkAddress peer) {
+		if (eligibleIndex.containsKey(peer)) {
+			return;
+		}
+		unshareEligible();
+		eligibleIndex.put(peer, eligible.size());
+		eligible.add(peer);
+	}
+
+	/**
+	 * Moves the last eligible node into the place of peer
+	 * @param peer
+	 */
+	private void removeEligible(NetworkAddress peer) {
+		Integer i = eligibleIndex.remove(peer);
+		if (i == null) {
+			return;
+		}
+		unshareEligible();
+		NetworkAddress last = eligible.remove(eligible.size() - 1);
+		if (i < eligible.size()) {
+			eligible.set(i, last);
+			eligibleIndex.put(last, i);
+		}
+	}
+
+	/**
+	 * Copies eligible before it changes if it has been handed out,
+	 * the broadcasts that have it keep the recipients they were sent to
+	 */
+	private void unshareEligible() {
+		if (eligibleView != null) {
+			eligible = new ArrayList<NetworkAddress>(eligible);
+			eligibleView = null;
+		}
 	}
 
 	public boolean offer(NetworkAddress to, double quantity, OfferMessage offerMessage)
@@ -702,7 +958,7 @@ public abstract class TradeProtocol extends FSMProtocol {
 	 * @param o
 	 */
 	public void respondToOffer(NetworkAddress from, double quantity, OfferMessage o) throws FSMException, IllegalArgumentException{
-		if(this.getActiveConversationMembers().contains(from)){
+		if(this.isInConversationWith(from)){
 			throw new IllegalArgumentException("A conversation with this agent already exists");
 		} else {
 			this.offer(
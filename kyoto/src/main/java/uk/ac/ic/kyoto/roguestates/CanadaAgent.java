@@ -88,8 +88,8 @@ public class CanadaAgent extends AbstractCountry {
 	
 	
 	
-	Random rand1= new Random();
-	Random rand2= new Random();
+	Random rand1;
+	Random rand2;
 	
 	/*This function checks the industry projects against players  */
 	/*to determine feasibility of carbon reduction */
@@ -410,6 +410,8 @@ public void behaviour() {
 	
 	@Override
 	public void initialiseCountry() {
+		rand1 = getRandom("industry players");
+		rand2 = getRandom("industry projects");
 	/*carbonOutput = 80;
 		try {
 			tradeProtocol = new TradeProtocol(getID(), authkey, environment, network) {
@@ -2,6 +2,7 @@ package uk.ac.ic.kyoto.roguestates;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 
 import uk.ac.ic.kyoto.countries.AbstractCountry;
@@ -16,7 +17,6 @@ import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
 import uk.ac.ic.kyoto.trade.TradeType;
 import uk.ac.imperial.presage2.core.network.Message;
 import uk.ac.imperial.presage2.core.network.NetworkAddress;
-import uk.ac.imperial.presage2.core.util.random.Random;
 import uk.ac.imperial.presage2.util.fsm.FSMException;
 
 public class USAgent extends AbstractCountry {
@@ -59,6 +59,8 @@ public class USAgent extends AbstractCountry {
 	private boolean debug = false;
 	private static boolean DecrementAttitude = true;
 	
+	private Random politics; // elections and public attitude
+	
 
 	
 	@Override
@@ -700,7 +702,7 @@ public class USAgent extends AbstractCountry {
 	 */
 	private void SetInitialPoliticalParty() {
 		if(debug) logger.info("SetInitialPoliticalParty: Entering");
-		int rand = Random.randomInt(100);		 
+		int rand = politics.nextInt(100);		 
 		if(debug) logger.info("SetInitialPoliticalParty: rand = " + rand);
 		if (rand < 50) {
 			setDemocratElected(true);			
@@ -976,6 +978,8 @@ public class USAgent extends AbstractCountry {
 	public void initialiseCountry() {
 		if(debug) logger.info("initialiseCountry: Entering");
 		
+		politics = getRandom("politics");
+		
 		// this function removes agent from the monitor service and sets
 		// kyotoMemberLevel = KyotoMember.ROGUE;
 		SetInitialAttitude();
@@ -1003,12 +1007,12 @@ public class USAgent extends AbstractCountry {
 			}
 		}
 		// advance attitude with probability 1/2
-		if(Random.randomInt(100) < 50) {
+		if(politics.nextInt(100) < 50) {
 			if(!DecrementAttitude) {
-				NewAttitude = Math.min(5, CurrentAttitude + Random.randomInt(2));
+				NewAttitude = Math.min(5, CurrentAttitude + politics.nextInt(2));
 			}
 			else {
-				NewAttitude = Math.max(-5, CurrentAttitude + Random.randomInt(2)-2);	
+				NewAttitude = Math.max(-5, CurrentAttitude + politics.nextInt(2)-2);	
 			}
 		}
 		
@@ -1017,7 +1021,7 @@ public class USAgent extends AbstractCountry {
 	
 	private int SetInitialAttitude() {
 		// TODO: ask about this
-		int value = Random.randomInt(10) - 5;
+		int value = politics.nextInt(10) - 5;
 		if(debug) logger.info("SetInitialAttitude: value = " + value);
 		return(value);
 	}
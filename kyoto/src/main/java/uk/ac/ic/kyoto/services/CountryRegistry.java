@@ -0,0 +1,130 @@
+package uk.ac.ic.kyoto.services;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable snapshot of the countries of a simulation.
+ * Every country gets a dense index, 0 to size() - 1, in
+ * the order it was added, so other code can keep per
+ * country data in arrays instead of maps keyed by UUID.
+ * Lookups do not lock.
+ *
+ * Obtained through Decoder.getRegistry().
+ */
+public final class CountryRegistry {
+
+	public static final CountryRegistry EMPTY = new Builder().build();
+
+	private final UUID[] ids;
+	private final String[] names;
+	private final String[] ISOs;
+
+	private final ImmutableMap<UUID, Integer> idIndex;
+	private final ImmutableMap<String, Integer> nameIndex;
+	private final ImmutableMap<String, Integer> ISOIndex;
+
+	private CountryRegistry(Map<UUID, String[]> countries) {
+		int n = countries.size();
+		ids = new UUID[n];
+		names = new String[n];
+		ISOs = new String[n];
+		ImmutableMap.Builder<UUID, Integer> byId = ImmutableMap.builder();
+		/* A name or ISO registered twice points to the last country */
+		Map<String, Integer> byName = new HashMap<String, Integer>();
+		Map<String, Integer> byISO = new HashMap<String, Integer>();
+		int i = 0;
+		for (Map.Entry<UUID, String[]> e : countries.entrySet()) {
+			ids[i] = e.getKey();
+			names[i] = e.getValue()[0];
+			ISOs[i] = e.getValue()[1];
+			byId.put(ids[i], i);
+			if (names[i] != null) {
+				byName.put(names[i], i);
+			}
+			if (ISOs[i] != null) {
+				byISO.put(ISOs[i], i);
+			}
+			i++;
+		}
+		idIndex = byId.build();
+		nameIndex = ImmutableMap.copyOf(byName);
+		ISOIndex = ImmutableMap.copyOf(byISO);
+	}
+
+	/**
+	 * Collects countries for a registry, not thread safe
+	 */
+	public static class Builder {
+
+		private final Map<UUID, String[]> countries = new LinkedHashMap<UUID, String[]>();
+
+		/**
+		 * Adds a country, or renames it if id was added before.
+		 * A renamed country keeps its index.
+		 * @param id
+		 * @param name
+		 * @param ISO
+		 * @return this builder
+		 */
+		public Builder add(UUID id, String name, String ISO) {
+			if (id == null) {
+				throw new IllegalArgumentException("A country needs an id");
+			}
+			countries.put(id, new String[]{name, ISO});
+			return this;
+		}
+
+		public CountryRegistry build() {
+			return new CountryRegistry(countries);
+		}
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @param id
+	 * @return index of the country, -1 if it is not registered
+	 */
+	public int indexOf(UUID id) {
+		Integer i = id == null ? null : idIndex.get(id);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @param ISO
+	 * @return index of the country, -1 if it is not registered
+	 */
+	public int indexOfISO(String ISO) {
+		Integer i = ISO == null ? null : ISOIndex.get(ISO);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @param name
+	 * @return index of the country, -1 if it is not registered
+	 */
+	public int indexOfName(String name) {
+		Integer i = name == null ? null : nameIndex.get(name);
+		return i == null ? -1 : i;
+	}
+
+	public UUID getID(int index) {
+		return ids[index];
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public String getISO(int index) {
+		return ISOs[index];
+	}
+
+}
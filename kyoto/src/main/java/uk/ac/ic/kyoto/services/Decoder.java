@@ -3,10 +3,10 @@
  */
 package uk.ac.ic.kyoto.services;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
 /**
  * Provides services to countries to
  * 
@@ -16,18 +16,34 @@ import java.util.UUID;
  * 2)	Decode a given country name
  * 		or ISO to a registered UUID
  * 
+ * Each simulation has its own Decoder, the static
+ * methods use the one of the current SimulationContext.
+ * 
+ * Lookups read an immutable CountryRegistry and do not
+ * lock. Countries added after the last publish() are
+ * published by the next lookup.
+ * 
  * @author farhanrahman
  *
  */
 public class Decoder {
 
-	/*NAME 2 UUID - UUID 2 NAME*/
-	private static Map<UUID,String> id2name = new HashMap<UUID,String>();
-	private static Map<String,UUID> name2id = new HashMap<String,UUID>();
+	/*Countries added since the last publish*/
+	private final CountryRegistry.Builder pending = new CountryRegistry.Builder();
+	private volatile boolean dirty = false;
+	
+	private volatile CountryRegistry registry = CountryRegistry.EMPTY;
+	
+	/**
+	 * Creates an empty decoder. Used by SimulationContext.
+	 */
+	public Decoder(){
+		
+	}
 	
-	/*ISO 2 UUID - UUID 2 ISO*/
-	private static Map<UUID,String> id2ISO = new HashMap<UUID,String>();
-	private static Map<String,UUID> ISO2id = new HashMap<String,UUID>();
+	private static Decoder get(){
+		return SimulationContext.current().getDecoder();
+	}
 	
 	/**
 	 * Package protected method that lets Simulation class
@@ -36,14 +52,38 @@ public class Decoder {
 	 * @param name
 	 * @param ISO
 	 */
-	public static synchronized void addCountry(UUID id, String name, String ISO){
-		/*Add to maps decoding id-name : name-id*/
-		Decoder.id2name.put(id, name);
-		Decoder.name2id.put(name, id);
+	public static void addCountry(UUID id, String name, String ISO){
+		Decoder d = get();
+		synchronized(d.pending){
+			d.pending.add(id, name, ISO);
+			d.dirty = true;
+		}
+	}
 		
-		/*Add to maps decoding id-ISO : ISO-id*/
-		Decoder.id2ISO.put(id, ISO);
-		Decoder.ISO2id.put(ISO, id);
+	/**
+	 * Builds the registry from every country added so far.
+	 * Simulation calls it once all the countries are added.
+	 * @return the new registry
+	 */
+	public static CountryRegistry publish(){
+		Decoder d = get();
+		synchronized(d.pending){
+			d.registry = d.pending.build();
+			d.dirty = false;
+			return d.registry;
+		}
+	}
+	
+	/**
+	 * @return the countries of the current simulation, each with
+	 * a dense index that can be used to key arrays
+	 */
+	public static CountryRegistry getRegistry(){
+		Decoder d = get();
+		if(d.dirty){
+			return publish();
+		}
+		return d.registry;
 	}
 	
 	/**
@@ -54,9 +94,9 @@ public class Decoder {
 	 * @return UUID for country
 	 */
 	public static UUID getCountryIDForName(String name){
-		synchronized(name2id){
-			return name2id.get(name);
-		}
+		CountryRegistry r = getRegistry();
+		int i = r.indexOfName(name);
+		return i < 0 ? null : r.getID(i);
 	}
 	
 	/**
@@ -67,9 +107,9 @@ public class Decoder {
 	 * @return UUID for country
 	 */
 	public static UUID getCountryIDForISO(String ISO){
-		synchronized(ISO2id){
-			return ISO2id.get(ISO);
-		}
+		CountryRegistry r = getRegistry();
+		int i = r.indexOfISO(ISO);
+		return i < 0 ? null : r.getID(i);
 	}
 	
 	/**
@@ -80,9 +120,9 @@ public class Decoder {
 	 * @return
 	 */
 	public static String getCountryNameForID(UUID id){
-		synchronized(id2name){
-			return id2name.get(id);
-		}
+		CountryRegistry r = getRegistry();
+		int i = r.indexOf(id);
+		return i < 0 ? null : r.getName(i);
 	}
 	
 	/**
@@ -93,9 +133,9 @@ public class Decoder {
 	 * @return
 	 */
 	public static String getCountryISOForID(UUID id){
-		synchronized(id2ISO){
-			return id2ISO.get(id);
-		}
+		CountryRegistry r = getRegistry();
+		int i = r.indexOf(id);
+		return i < 0 ? null : r.getISO(i);
 	}
 	
 }
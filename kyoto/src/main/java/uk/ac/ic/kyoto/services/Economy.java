@@ -1,6 +1,7 @@
 package uk.ac.ic.kyoto.services;
 
 import java.util.Random;
+import java.util.UUID;
 import org.apache.log4j.Logger;
 
 import com.google.inject.Inject;
@@ -8,7 +9,9 @@ import com.google.inject.Inject;
 import uk.ac.ic.kyoto.countries.GameConst;
 import uk.ac.imperial.presage2.core.environment.EnvironmentRegistrationRequest;
 import uk.ac.imperial.presage2.core.environment.EnvironmentService;
+import uk.ac.imperial.presage2.core.environment.EnvironmentServiceProvider;
 import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
+import uk.ac.imperial.presage2.core.environment.UnavailableServiceException;
 
 /**
  * 
@@ -17,9 +20,16 @@ import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
 public class Economy extends EnvironmentService
 {
 	@Inject
-	public Economy(EnvironmentSharedStateAccess sharedState) {
+	public Economy(EnvironmentSharedStateAccess sharedState, EnvironmentServiceProvider provider) {
 		super(sharedState);
 		currentEconomyState=State.GROWTH;
+		try {
+			randomService = provider.getEnvironmentService(RandomService.class);
+			randGenerator = randomService.getStream(Economy.class.getName());
+		} catch (UnavailableServiceException e) {
+			logger.warn(e.getMessage(), e);
+			throw new RuntimeException(e);
+		}
 	}
 
 	public enum State {
@@ -31,6 +41,10 @@ public class Economy extends EnvironmentService
 	
 	private State currentEconomyState;
 
+	private final RandomService randomService;
+	
+	private Random randGenerator;
+
 	// Values used for determining which State is defined by a given random number.
 	private final int growthNumberLimit = (int) (100 * GameConst.getGrowthMarketChance());
 	private final int stableNumberLimit = (int) (growthNumberLimit + 100 * GameConst.getStableMarketChance());
@@ -38,8 +52,25 @@ public class Economy extends EnvironmentService
 	
 	@Override
 	public void registerParticipant(EnvironmentRegistrationRequest req) {
-		// TODO Auto-generated method stub
 		super.registerParticipant(req);
+		/* Each participant's Economy draws its own states */
+		setParticipant(req.getParticipantID());
+	}
+
+	/**
+	 * Gives this Economy the stream of the country participant. It is
+	 * keyed on the ISO code of the country, as AbstractCountry.getRandom,
+	 * since participant ids are not drawn from the simulation seed
+	 * @param participant
+	 */
+	void setParticipant(UUID participant) {
+		String ISO = Decoder.getCountryISOForID(participant);
+		if (ISO == null) {
+			logger.warn("Participant " + participant + " is not a registered country, its economy states do not follow the seed");
+			randGenerator = randomService.getStream(participant.toString(), Economy.class.getName());
+		} else {
+			randGenerator = randomService.getStream(ISO, Economy.class.getName());
+		}
 	}
 	
 	/**
@@ -49,7 +80,6 @@ public class Economy extends EnvironmentService
 	public void updateEconomyState()
 	{
 		/** Generate a random number between 0 and 99*/
-		Random randGenerator = new Random();
 		int randomNumber = randGenerator.nextInt(100);
 		
 		/** Change the currentEconomyState according to the rules */
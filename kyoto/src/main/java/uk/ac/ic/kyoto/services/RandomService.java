@@ -0,0 +1,99 @@
+package uk.ac.ic.kyoto.services;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.imperial.presage2.core.environment.EnvironmentService;
+import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
+
+import com.google.inject.Inject;
+
+/**
+ * Hands out the random number streams of a simulation.
+ * Every stream is derived from the seed of the SimulationContext
+ * and a name (and for agents, the ISO code of the country), so
+ * the same seed gives the same numbers to the same consumer
+ * whatever order the agents execute in, and two consumers never
+ * share, or compete for, a stream. Running two simulations with
+ * the same seed and different parameters gives common random
+ * numbers.
+ *
+ * Each call returns a new Random at the start of its stream:
+ * callers keep the Random they were given.
+ */
+public class RandomService extends EnvironmentService {
+
+	private final Logger logger = Logger.getLogger(RandomService.class);
+
+	private final long seed;
+
+	@Inject
+	public RandomService(EnvironmentSharedStateAccess sharedState) {
+		super(sharedState);
+		this.seed = SimulationContext.current().getSeed();
+		logger.info("Random seed of this simulation: " + seed);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param name name of the consumer, e.g. the class of a service
+	 * @return the stream of name
+	 */
+	public Random getStream(String name) {
+		return getStream(seed, name);
+	}
+
+	/**
+	 * @param agent ISO code of the country, or id of the participant
+	 * @param name what the stream is used for
+	 * @return the stream of name for agent
+	 */
+	public Random getStream(String agent, String name) {
+		return getStream(seed, agent, name);
+	}
+
+	/**
+	 * Same as getStream(name) on the RandomService of the
+	 * simulation that seed belongs to, for code that has no
+	 * access to the environment services.
+	 * @param seed
+	 * @param keys
+	 * @return the stream identified by keys
+	 */
+	public static Random getStream(long seed, String... keys) {
+		long s = mix(seed);
+		for (String key : keys) {
+			s = mix(s ^ hash(key));
+		}
+		return new Random(s);
+	}
+
+	/**
+	 * SplitMix64 finaliser, spreads the bits of close seeds
+	 * (and keys) over the whole word
+	 */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * 64 bit FNV-1a, String.hashCode() would only give 32 bits
+	 */
+	private static long hash(String key) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return h;
+	}
+
+}
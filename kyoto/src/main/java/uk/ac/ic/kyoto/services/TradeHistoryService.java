@@ -5,31 +5,45 @@ package uk.ac.ic.kyoto.services;
 
 import com.google.inject.Inject;
 
+import uk.ac.ic.kyoto.countries.CarbonMarket;
 import uk.ac.ic.kyoto.singletonfactory.SingletonProvider;
 import uk.ac.ic.kyoto.tradehistory.TradeHistory;
 import uk.ac.imperial.presage2.core.environment.EnvironmentService;
+import uk.ac.imperial.presage2.core.environment.EnvironmentServiceProvider;
 import uk.ac.imperial.presage2.core.environment.EnvironmentSharedStateAccess;
+import uk.ac.imperial.presage2.core.environment.UnavailableServiceException;
 import uk.ac.imperial.presage2.core.event.EventBus;
 import uk.ac.imperial.presage2.core.event.EventListener;
 import uk.ac.imperial.presage2.core.simulator.EndOfTimeCycle;
+import uk.ac.imperial.presage2.core.simulator.FinalizeEvent;
 
 /**
  * Environment Service that invokes
  * method in TradeHistory that dumps 
  * current tick trade histories onto 
- * the database
+ * the database, and makes sure all of
+ * it has been written when the simulation
+ * finishes. The CarbonMarket is cleared
+ * first so the trades it settles in a
+ * tick are written out with that tick
  * @author farhanrahman
  *
  */
 public class TradeHistoryService extends EnvironmentService {
 
 	private TradeHistory tradeHistory = SingletonProvider.getTradeHistory();
+	
+	private final EnvironmentServiceProvider provider;
+	private CarbonMarket market = null;
+	private boolean marketLookedUp = false;
 	/**
 	 * @param sharedState
+	 * @param provider
 	 */
 	@Inject
-	public TradeHistoryService(EnvironmentSharedStateAccess sharedState) {
+	public TradeHistoryService(EnvironmentSharedStateAccess sharedState, EnvironmentServiceProvider provider) {
 		super(sharedState);
+		this.provider = provider;
 	}
 	
 	@Inject
@@ -39,8 +53,32 @@ public class TradeHistoryService extends EnvironmentService {
 	
 	@EventListener
 	public void endOfTimeUpdate(EndOfTimeCycle e){
+		CarbonMarket market = getMarket();
+		if(market != null){
+			market.clear();
+		}
 		tradeHistory.dumpData();
 	}
 	
+	/**
+	 * @return the CarbonMarket, null if the simulation does not have one
+	 */
+	private CarbonMarket getMarket(){
+		if(!marketLookedUp){
+			marketLookedUp = true;
+			try {
+				market = provider.getEnvironmentService(CarbonMarket.class);
+			} catch (UnavailableServiceException e) {
+				market = null;
+			}
+		}
+		return market;
+	}
+	
+	@EventListener
+	public void onSimulationComplete(FinalizeEvent e){
+		tradeHistory.close();
+	}
+	
 
 }
@@ -21,6 +21,7 @@ import uk.ac.ic.kyoto.services.Economy;
 import uk.ac.ic.kyoto.services.GlobalTimeService;
 import uk.ac.ic.kyoto.services.ParticipantCarbonReportingService;
 import uk.ac.ic.kyoto.services.ParticipantTimeService;
+import uk.ac.ic.kyoto.services.RandomService;
 import uk.ac.ic.kyoto.trade.TradeProtocolTestAgent;
 import uk.ac.imperial.presage2.core.simulator.InjectedSimulation;
 import uk.ac.imperial.presage2.core.simulator.Scenario;
@@ -41,6 +42,7 @@ public class AnnexOneSustainTest extends InjectedSimulation {
 		Set<AbstractModule> modules = new HashSet<AbstractModule>();
 		
 		modules.add(new AbstractEnvironmentModule()
+			.addGlobalEnvironmentService(RandomService.class)
 			.addActionHandler(SubmitCarbonEmissionReportHandler.class)
 			.addActionHandler(AddToCarbonTargetHandler.class)
 			.addActionHandler(QueryEmissionsTargetHandler.class)
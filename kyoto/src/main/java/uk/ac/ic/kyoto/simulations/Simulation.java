@@ -10,12 +10,14 @@ import uk.ac.ic.kyoto.CarbonData1990;
 import uk.ac.ic.kyoto.actions.AddRemoveFromMonitorHandler;
 import uk.ac.ic.kyoto.actions.AddToCarbonTargetHandler;
 import uk.ac.ic.kyoto.actions.ApplyMonitorTaxHandler;
+import uk.ac.ic.kyoto.actions.MarketOrderHandler;
 import uk.ac.ic.kyoto.actions.QueryEmissionsTargetHandler;
 import uk.ac.ic.kyoto.actions.RejoinKyotoHandler;
 import uk.ac.ic.kyoto.actions.SubmitCarbonEmissionReportHandler;
 import uk.ac.ic.kyoto.annex1reduce.AnnexOneReduce;
 import uk.ac.ic.kyoto.annex1sustain.AnnexOneSustain;
 import uk.ac.ic.kyoto.countries.AbstractCountry;
+import uk.ac.ic.kyoto.countries.CarbonMarket;
 import uk.ac.ic.kyoto.countries.CarbonTarget;
 import uk.ac.ic.kyoto.countries.GameConst;
 import uk.ac.ic.kyoto.countries.Monitor;
@@ -28,8 +30,13 @@ import uk.ac.ic.kyoto.services.Economy;
 import uk.ac.ic.kyoto.services.GlobalTimeService;
 import uk.ac.ic.kyoto.services.ParticipantCarbonReportingService;
 import uk.ac.ic.kyoto.services.ParticipantTimeService;
+import uk.ac.ic.kyoto.services.RandomService;
 import uk.ac.ic.kyoto.services.TradeHistoryService;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContextModule;
 import uk.ac.ic.kyoto.singletonfactory.SingletonProvider;
+import uk.ac.ic.kyoto.tradehistory.OfferHistory;
+import uk.ac.ic.kyoto.tradehistory.RetentionPolicy;
 import uk.ac.ic.kyoto.util.sim.jsonobjects.DataProvider;
 import uk.ac.ic.kyoto.util.sim.jsonobjects.JSONObjectContainer;
 import uk.ac.ic.kyoto.util.sim.jsonobjects.simulations.CountryData;
@@ -92,12 +99,25 @@ public class Simulation extends InjectedSimulation {
 	public int MINIMUM_KYOTO_MEMBERSHIP_DURATION;
 	@Parameter(name="TICK_YEAR")
 	public int TICK_YEAR;
+	@Parameter(name="SEED", optional=true)
+	public long SEED = 0; /*0 draws a seed, it is logged by the RandomService*/
+	@Parameter(name="PLANNER_MERGE_TOLERANCE", optional=true)
+	public double PLANNER_MERGE_TOLERANCE = -1; /*Negative keeps the AnnexOneReduce default, 0 turns merging off*/
 
 		
 	@Override
 	protected Set<AbstractModule> getModules() {
 		
-		new GameConst(
+		/*Give this simulation its own state. The context is made current on the
+		 * thread that runs the simulation, the agents make it current on the
+		 * simulator threads themselves, this lets several simulations share one JVM*/
+		SimulationContext context = SimulationContext.create();
+		SimulationContext.setCurrent(context);
+		if (SEED != 0) {
+			context.setSeed(SEED);
+		}
+		
+		context.setGameConst(new GameConst(
 				GROWTH_MARKET_STATE, 
 				STABLE_MARKET_STATE, 
 				RECESSION_MARKET_STATE, 
@@ -120,10 +140,12 @@ public class Simulation extends InjectedSimulation {
 				CARBON_REDUCTION_PRICE_MAX,
 				CARBON_ABSORPTION_PRICE_MIN,
 				CARBON_ABSORPTION_PRICE_MAX,
-				FOREST_CARBON_ABSORPTION);
+				FOREST_CARBON_ABSORPTION));
 
 		Set<AbstractModule> modules = new HashSet<AbstractModule>();
 		
+		modules.add(new SimulationContextModule(context));
+		
 		modules.add(new AbstractEnvironmentModule()
 			.addActionHandler(SubmitCarbonEmissionReportHandler.class)
 			.addActionHandler(AddToCarbonTargetHandler.class)
@@ -131,6 +153,8 @@ public class Simulation extends InjectedSimulation {
 			.addActionHandler(AddRemoveFromMonitorHandler.class)
 			.addActionHandler(ApplyMonitorTaxHandler.class)
 			.addActionHandler(RejoinKyotoHandler.class)
+			.addActionHandler(MarketOrderHandler.class)
+			.addGlobalEnvironmentService(RandomService.class)
 			.addGlobalEnvironmentService(CarbonReportingService.class)
 			.addGlobalEnvironmentService(Monitor.class)
 			.addParticipantEnvironmentService(ParticipantCarbonReportingService.class)
@@ -139,6 +163,7 @@ public class Simulation extends InjectedSimulation {
 			.addParticipantEnvironmentService(Economy.class)
 			.addGlobalEnvironmentService(CarbonTarget.class)
 			.addGlobalEnvironmentService(TradeHistoryService.class)
+			.addGlobalEnvironmentService(CarbonMarket.class)
 			);
 	
 		modules.add(new RuleModule());
@@ -187,7 +212,7 @@ public class Simulation extends InjectedSimulation {
 										Double.parseDouble(countryData.getEnergyOutput()), 
 										Double.parseDouble(countryData.getCarbonOutput()));
 					} else if(className.equals("AnnexOneReduce")){
-						abstractCountry = new AnnexOneReduce(
+						AnnexOneReduce annexOneReduce = new AnnexOneReduce(
 										Random.randomUUID(), 
 										countryData.getName(),
 										countryData.getISO(), 
@@ -197,6 +222,10 @@ public class Simulation extends InjectedSimulation {
 										Double.parseDouble(countryData.getGDPRate()), 
 										Double.parseDouble(countryData.getEnergyOutput()), 
 										Double.parseDouble(countryData.getCarbonOutput()));
+						if(PLANNER_MERGE_TOLERANCE >= 0){
+							annexOneReduce.setMergeTolerance(PLANNER_MERGE_TOLERANCE);
+						}
+						abstractCountry = annexOneReduce;
 					} else if(className.equals("CanadaAgent")){
 //						abstractCountry = new CanadaAgent(
 //										Random.randomUUID(), 
@@ -247,7 +276,15 @@ public class Simulation extends InjectedSimulation {
 			logger.warn(e);
 		}
 		
+		/*All the countries are known, lookups use this snapshot from now on*/
+		logger.info(Decoder.publish().size() + " countries registered");
+		
 		SingletonProvider.getTradeHistory().setSimID(this.simPersist.getID());
+		
+		/*Only keep the current session of trades and a year of offers in full,
+		 * older ticks are compacted into summaries so the heap does not keep growing*/
+		SingletonProvider.getTradeHistory().setRetentionPolicy(RetentionPolicy.keepCurrentSession().compacting());
+		OfferHistory.setRetentionPolicy(RetentionPolicy.keepLastTicks(GameConst.getTicksInYear()).compacting());
 	
 
 	}
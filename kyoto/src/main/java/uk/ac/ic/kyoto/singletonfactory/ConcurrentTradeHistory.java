@@ -0,0 +1,375 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.tradehistory.RetentionPolicy;
+import uk.ac.ic.kyoto.tradehistory.TickSummary;
+import uk.ac.ic.kyoto.tradehistory.TradeHistory;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.DataStorer;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataWriter;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.tradedata.TradeData;
+import uk.ac.imperial.presage2.core.Time;
+import uk.ac.imperial.presage2.core.simulator.SimTime;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.inject.Singleton;
+
+/**
+ * TradeHistory implementation that keeps trades in
+ * time ordered tick buckets together with a secondary
+ * index of trade id -> tick. tradeExists and
+ * removeTradeHistoryWithID therefore only touch the
+ * one bucket the trade lives in instead of walking
+ * every trade that has ever been made.
+ *
+ * It is thread safe and does not
+ * hold a global lock. Ticks are kept in a skip list and
+ * each tick bucket has its own lock, so TradeProtocol
+ * instances of many agents can record trades at the same time
+ * as long as they are not all in the same tick.
+ * A trade id -> tick index keeps tradeExists and
+ * removeTradeHistoryWithID O(1). A trade is put in the
+ * index while its tick is locked, after it is in the tick.
+ *
+ * Maps returned by getHistory and getHistoryForTime are
+ * immutable snapshots. Every tick caches its snapshot until
+ * it changes, so taking one only copies the ticks that
+ * changed since the last one.
+ *
+ * dumpData() hands the trades of the tick over to a
+ * background TradeDataWriter and returns without waiting
+ * for the database.
+ */
+@Singleton
+public class ConcurrentTradeHistory implements TradeHistory {
+	/**
+	 * tick -> (trade id -> trade), ordered by tick
+	 */
+	private final ConcurrentNavigableMap<Integer, TickBucket> history = new ConcurrentSkipListMap<Integer, TickBucket>();
+
+	/**
+	 * trade id -> tick the trade was recorded in
+	 */
+	private final ConcurrentMap<UUID, Integer> tickIndex = new ConcurrentHashMap<UUID, Integer>();
+
+	/**
+	 * period start -> summary of the trades in ticks compacted by the
+	 * retention policy. Also the lock under which the policy is applied.
+	 */
+	private final ConcurrentNavigableMap<Integer, TickSummary> summaries = new ConcurrentSkipListMap<Integer, TickSummary>();
+
+	private volatile RetentionPolicy retentionPolicy = RetentionPolicy.keepAll();
+
+	private volatile String simID = null;
+
+	private Logger logger = Logger.getLogger(ConcurrentTradeHistory.class);
+
+	private final TradeDataStore dataStore;
+
+	private TradeDataWriter writer = null;
+
+	public ConcurrentTradeHistory() {
+		this(new DataStorer());
+	}
+
+	/**
+	 * @param dataStore where dumpData() writes trades to
+	 */
+	public ConcurrentTradeHistory(TradeDataStore dataStore) {
+		this.dataStore = dataStore;
+	}
+
+	/**
+	 * @return an immutable snapshot of all the trade histories in the form of
+	 * a map simulation time -> map of trades that happened in that simulation time
+	 */
+	@Override
+	public Map<Integer, Map<UUID, OfferMessage>> getHistory() {
+		ImmutableSortedMap.Builder<Integer, Map<UUID, OfferMessage>> snapshot = ImmutableSortedMap.naturalOrder();
+		for(Map.Entry<Integer, TickBucket> e : history.entrySet()){
+			snapshot.put(e.getKey(), e.getValue().snapshot());
+		}
+		return snapshot.build();
+	}
+
+	/**
+	 * @param simTime
+	 * @return an immutable snapshot of the trades for simulation
+	 * time = simTime, or null if no trades happened in that tick
+	 */
+	@Override
+	public Map<UUID, OfferMessage> getHistoryForTime(Time simTime) {
+		return getHistoryForTime(simTime.intValue());
+	}
+
+	/**
+	 * @see #getHistoryForTime(Time)
+	 * @param tick
+	 */
+	Map<UUID, OfferMessage> getHistoryForTime(int tick) {
+		TickBucket t = history.get(tick);
+		return t == null ? null : t.snapshot();
+	}
+
+	/**
+	 * Looks the id up in the trade id index
+	 * @param id
+	 * @return true if trade of trade id = id
+	 * has been registered in the map and its tick
+	 * has not been dropped by the retention policy.
+	 */
+	@Override
+	public boolean tradeExists(UUID id) {
+		return tickIndex.containsKey(id);
+	}
+
+	/**
+	 * updates trade history with
+	 * the given information. If the trade
+	 * id was already recorded in a different
+	 * tick it is moved to the new tick.
+	 * @param simTime, tradeID, trade
+	 */
+	@Override
+	public void addToHistory(Time simTime, UUID tradeID, OfferMessage trade) {
+		addToHistory(simTime.intValue(), tradeID, trade);
+	}
+
+	/**
+	 * @see #addToHistory(Time, UUID, OfferMessage)
+	 * @param tick
+	 * @param tradeID
+	 * @param trade
+	 */
+	void addToHistory(Integer tick, UUID tradeID, OfferMessage trade) {
+		TickBucket t = getOrCreateBucket(tick);
+		Integer previous;
+		synchronized(t){
+			t.record(tradeID, trade);
+			previous = tickIndex.put(tradeID, tick);
+		}
+		if(previous != null && !previous.equals(tick)){
+			removeFromBucket(previous, tradeID);
+		}
+	}
+
+	/**
+	 * removes trade from the history with UUID = id
+	 * @param id
+	 */
+	@Override
+	public void removeTradeHistoryWithID(UUID id) {
+		Integer tick = tickIndex.get(id);
+		if(tick == null){
+			return;
+		}
+		TickBucket t = history.get(tick);
+		if(t == null){
+			tickIndex.remove(id, tick);
+			return;
+		}
+		synchronized(t){
+			t.forget(id);
+			tickIndex.remove(id, tick);
+		}
+	}
+
+	private TickBucket getOrCreateBucket(Integer tick){
+		TickBucket t = history.get(tick);
+		if(t == null){
+			TickBucket created = new TickBucket();
+			t = history.putIfAbsent(tick, created);
+			if(t == null){
+				t = created;
+				retain(tick);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Applies the retention policy, only one thread
+	 * at a time may do so.
+	 * @param currentTick
+	 */
+	private void retain(int currentTick){
+		synchronized(summaries){
+			retentionPolicy.apply(history, currentTick, summaries, tickIndex);
+		}
+	}
+
+	/**
+	 * Removes a trade that has been recorded again in a different tick
+	 * @param tick
+	 * @param id
+	 */
+	private void removeFromBucket(Integer tick, UUID id){
+		TickBucket t = history.get(tick);
+		if(t != null){
+			t.forget(id);
+		}
+	}
+
+	/**
+	 * Queues the trade data in the current tick to
+	 * be written into the database
+	 */
+	@Override
+	public void dumpData() {
+		try{
+			if(this.simID == null){
+				throw new Exception("sim id is null, please initialise it in the simulation file");
+			}
+			dumpData(SimTime.get().intValue());
+		} catch(Exception e){
+			logger.warn(e);
+		}
+	}
+
+	/**
+	 * @see #dumpData()
+	 * @param simTick
+	 */
+	void dumpData(Integer simTick) {
+		TickBucket t = history.get(simTick);
+		Map<UUID,OfferMessage> trades = t == null ? null : t.snapshot();
+		if(trades == null || trades.isEmpty()){
+			return;
+		}
+
+		List<String> jsonObjects = new ArrayList<String>(trades.size());
+		for(OfferMessage trade : trades.values()){
+			TradeData data = new TradeData(trade, simTick.toString(), this.simID);
+			jsonObjects.add(data.toString());
+			logger.debug(data);
+		}
+		getWriter().submit(jsonObjects);
+	}
+
+	/**
+	 * Waits for all the trades queued by dumpData()
+	 * to be written.
+	 */
+	@Override
+	public void flush() {
+		TradeDataWriter w;
+		synchronized(this){
+			w = this.writer;
+		}
+		if(w != null){
+			w.flush();
+			logger.info(w);
+		}
+	}
+
+	/**
+	 * Writes out the trades queued by dumpData() and
+	 * stops the thread writing them.
+	 */
+	@Override
+	public void close() {
+		TradeDataWriter w;
+		synchronized(this){
+			w = this.writer;
+		}
+		if(w != null){
+			w.close();
+			logger.info(w);
+		}
+	}
+
+	private synchronized TradeDataWriter getWriter() {
+		if(this.writer == null){
+			this.writer = new TradeDataWriter(this.dataStore);
+		}
+		return this.writer;
+	}
+
+	/**
+	 * @return the writer used by dumpData(), null if nothing has been dumped yet.
+	 * Can be used to monitor queue depth and write latency.
+	 */
+	public synchronized TradeDataWriter getTradeDataWriter() {
+		return this.writer;
+	}
+
+	@Override
+	public void setSimID(Long simID) {
+		this.simID = Long.toString(simID);
+	}
+
+	@Override
+	public void setRetentionPolicy(RetentionPolicy policy) {
+		this.retentionPolicy = policy;
+	}
+
+	@Override
+	public TickSummary getSummary(int fromTick, int toTick) {
+		/*A tick being compacted must not be counted twice, or not at all*/
+		synchronized(summaries){
+			return TickSummary.summarise(history, summaries, fromTick, toTick);
+		}
+	}
+
+	/**
+	 * @return number of trades currently held in the history
+	 */
+	public int size(){
+		return tickIndex.size();
+	}
+
+	/**
+	 * The trades of one tick, guarded by the bucket's own lock.
+	 * Seen as a map it is the immutable snapshot of the tick,
+	 * which is what the retention policy and summaries read.
+	 */
+	private static final class TickBucket extends AbstractMap<UUID, OfferMessage> {
+
+		private final Map<UUID, OfferMessage> trades = new HashMap<UUID, OfferMessage>();
+
+		/**
+		 * null when the trades changed since it was taken
+		 */
+		private ImmutableMap<UUID, OfferMessage> snapshot = ImmutableMap.of();
+
+		synchronized void record(UUID id, OfferMessage trade){
+			trades.put(id, trade);
+			snapshot = null;
+		}
+
+		synchronized void forget(UUID id){
+			if(trades.remove(id) != null){
+				snapshot = null;
+			}
+		}
+
+		synchronized ImmutableMap<UUID, OfferMessage> snapshot(){
+			if(snapshot == null){
+				snapshot = ImmutableMap.copyOf(trades);
+			}
+			return snapshot;
+		}
+
+		@Override
+		public Set<Map.Entry<UUID, OfferMessage>> entrySet() {
+			return snapshot().entrySet();
+		}
+
+	}
+
+}
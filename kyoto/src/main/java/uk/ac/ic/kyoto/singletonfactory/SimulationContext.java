@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package uk.ac.ic.kyoto.singletonfactory;
+
+import uk.ac.ic.kyoto.CarbonData1990;
+import uk.ac.ic.kyoto.countries.DataStore;
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.TradeNetwork;
+import uk.ac.ic.kyoto.services.Decoder;
+import uk.ac.ic.kyoto.tokengen.Token;
+import uk.ac.ic.kyoto.tradehistory.OfferHistory;
+import uk.ac.ic.kyoto.tradehistory.TradeHistory;
+
+import uk.ac.imperial.presage2.core.util.random.Random;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Owns all the state that used to be held in
+ * statics (trade and offer histories, the token
+ * generator, the country decoder, 1990 carbon data
+ * and the game constants) for one simulation run.
+ *
+ * A simulation creates its context with create(),
+ * makes it current with setCurrent(...) on the thread
+ * that runs it and binds it through a
+ * SimulationContextModule. Threads do not inherit the
+ * context: agents make theirs current whenever the
+ * simulator calls them, and code that hands work to
+ * its own threads passes the context along. This way
+ * several simulations can run in one JVM, and share
+ * thread pools, without seeing each other's state.
+ *
+ * The old static entry points (SingletonProvider,
+ * Decoder, CarbonData1990, OfferHistory, GameConst)
+ * delegate to current(). Code running outside of a
+ * simulation (tests, tools) gets a process wide
+ * default context.
+ */
+@Singleton
+public class SimulationContext {
+
+	private static final ThreadLocal<SimulationContext> current = new ThreadLocal<SimulationContext>();
+
+	private final Token token;
+
+	private final TradeHistory tradeHistory;
+
+	private final OfferHistory offerHistory = OfferHistory.createShared();
+
+	private final Decoder decoder = new Decoder();
+
+	private final CarbonData1990 carbonData1990 = new CarbonData1990();
+
+	private final TradeNetwork tradeNetwork = new TradeNetwork();
+
+	private volatile GameConst gameConst = new GameConst();
+
+	private volatile DataStore.Policy dataStorePolicy = DataStore.Policy.off();
+
+	private volatile long seed = Random.randomUUID().getLeastSignificantBits();
+
+	@Inject
+	public SimulationContext(Token token, TradeHistory tradeHistory) {
+		this.token = token;
+		this.tradeHistory = tradeHistory;
+	}
+
+	/**
+	 * @return a new context with its own Token and
+	 * TradeHistory as bound by SingletonModule
+	 */
+	public static SimulationContext create() {
+		return Guice.createInjector(new SingletonModule()).getInstance(SimulationContext.class);
+	}
+
+	/**
+	 * @return the context made current on the calling
+	 * thread, or the default context if there is none
+	 */
+	public static SimulationContext current() {
+		SimulationContext c = current.get();
+		return c == null ? DefaultHolder.INSTANCE : c;
+	}
+
+	/**
+	 * Makes context the current context of the calling thread.
+	 * @param context the context, or null to go back to the default context
+	 * @return the context that was current before, null if there was none
+	 */
+	public static SimulationContext setCurrent(SimulationContext context) {
+		SimulationContext previous = current.get();
+		if(context == null){
+			current.remove();
+		} else {
+			current.set(context);
+		}
+		return previous;
+	}
+
+	private static class DefaultHolder {
+		private static final SimulationContext INSTANCE = create();
+	}
+
+	public Token getToken() {
+		return token;
+	}
+
+	public TradeHistory getTradeHistory() {
+		return tradeHistory;
+	}
+
+	/**
+	 * @return the offer history shared by all OfferHistory
+	 * instances created in this simulation
+	 */
+	public OfferHistory getOfferHistory() {
+		return offerHistory;
+	}
+
+	public Decoder getDecoder() {
+		return decoder;
+	}
+
+	public CarbonData1990 getCarbonData1990() {
+		return carbonData1990;
+	}
+
+	/**
+	 * @return the nodes the TradeProtocols of this
+	 * simulation broadcast to
+	 */
+	public TradeNetwork getTradeNetwork() {
+		return tradeNetwork;
+	}
+
+	public GameConst getGameConst() {
+		return gameConst;
+	}
+
+	/**
+	 * @param gameConst the game constants of this simulation
+	 */
+	public void setGameConst(GameConst gameConst) {
+		this.gameConst = gameConst;
+	}
+
+	/**
+	 * @return seed of the random streams of this simulation,
+	 * see RandomService
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed seed of the random streams of this simulation,
+	 * must be set before the RandomService is created
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public DataStore.Policy getDataStorePolicy() {
+		return dataStorePolicy;
+	}
+
+	/**
+	 * @param dataStorePolicy history policy of the DataStores
+	 * that have not recorded anything yet
+	 */
+	public void setDataStorePolicy(DataStore.Policy dataStorePolicy) {
+		this.dataStorePolicy = dataStorePolicy;
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package uk.ac.ic.kyoto.singletonfactory;
+
+import uk.ac.ic.kyoto.tokengen.Token;
+import uk.ac.ic.kyoto.tradehistory.TradeHistory;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Binds a SimulationContext, and the Token
+ * and TradeHistory it owns, into the injector
+ * of a simulation so that environment services
+ * can have them injected.
+ */
+public class SimulationContextModule extends AbstractModule {
+
+	private final SimulationContext context;
+
+	public SimulationContextModule(SimulationContext context) {
+		this.context = context;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.google.inject.AbstractModule#configure()
+	 */
+	@Override
+	protected void configure() {
+		bind(SimulationContext.class).toInstance(context);
+		bind(Token.class).toInstance(context.getToken());
+		bind(TradeHistory.class).toInstance(context.getTradeHistory());
+	}
+
+}
@@ -7,8 +7,6 @@ package uk.ac.ic.kyoto.singletonfactory;
 import uk.ac.ic.kyoto.tokengen.Token;
 import uk.ac.ic.kyoto.tradehistory.TradeHistory;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
@@ -17,20 +15,21 @@ import com.google.inject.Singleton;
  * Singletons Token and TradeHistory
  * implementations. Need to change
  * the function name getToken() as
- * Token also has a getToken() function
+ * Token also has a getToken() function.
+ * The instances returned belong to the
+ * SimulationContext of the calling thread.
  * @author farhanrahman
  *
  */
 public class SingletonProvider {
 	
-	private static Injector inj = Guice.createInjector(new SingletonModule());
 	@Provides @Singleton
 	public static Token getToken(){
-		return SingletonProvider.inj.getInstance(Token.class);
+		return SimulationContext.current().getToken();
 	}
 	
 	@Provides @Singleton
 	public static TradeHistory getTradeHistory(){
-		return SingletonProvider.inj.getInstance(TradeHistory.class);
+		return SimulationContext.current().getTradeHistory();
 	}
 }
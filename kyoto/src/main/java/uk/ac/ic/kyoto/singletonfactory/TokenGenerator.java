@@ -3,34 +3,91 @@
  */
 package uk.ac.ic.kyoto.singletonfactory;
 
+import java.security.SecureRandom;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.inject.Singleton;
 
 import uk.ac.ic.kyoto.tokengen.Token;
-import uk.ac.imperial.presage2.core.util.random.Random;
 
 /**
- * Class that implements Token interface
- * This generates a pseudo random UUID
- * in a thread safe method. This is a
- * singleton class so implementation needs
- * to be thread safe.
+ * Class that implements Token interface.
+ * Ids are packed as
+ * (run, partition, run, sequence): the most significant
+ * bits hold 40 bits of a 64 bit random run id and a 24 bit
+ * partition number, the least significant bits the other
+ * 24 bits of the run id and a 40 bit sequence number
+ * within the partition. Ids are therefore unique
+ * without any locking, and generating one is a single
+ * atomic increment instead of a random UUID.
+ * 
+ * Partition 0 is shared by everyone calling generate()
+ * on the generator itself, agents get their own
+ * partition through partition().
  * @author farhanrahman
  *
  */
 @Singleton
 public class TokenGenerator implements Token {
 
-	private static UUID tradeID = Random.randomUUID();
+	private static final int PARTITION_BITS = 24;
+	private static final int SEQUENCE_BITS = 40;
+	private static final long PARTITION_MASK = (1L << PARTITION_BITS) - 1;
+
+	/**
+	 * Random, so ids of different runs do not collide either. It
+	 * does not come from the simulation's seeded random numbers,
+	 * runs with the same seed get different ids.
+	 */
+	private final long run = new SecureRandom().nextLong();
+
+	private final AtomicInteger partitions = new AtomicInteger(0);
+
+	private final Partition shared = new Partition(partitions.getAndIncrement());
+
 	/* (non-Javadoc)
 	 * @see uk.ac.ic.kyoto.trade.TradeToken#getToken()
 	 */
 	@Override
 	public UUID generate() {
-		synchronized(TokenGenerator.tradeID){
-			TokenGenerator.tradeID = Random.randomUUID();
+		return shared.generate();
+	}
+
+	@Override
+	public Token partition() {
+		int p = partitions.getAndIncrement();
+		if (p >>> PARTITION_BITS != 0) {
+			throw new IllegalStateException("Ran out of token partitions");
+		}
+		return new Partition(p);
+	}
+
+	private class Partition implements Token {
+
+		private final long prefix;
+		private final long runSuffix;
+		private final AtomicLong sequence = new AtomicLong(0);
+
+		Partition(int partition) {
+			/*The high 40 bits of run stay in place, the low 24 move up to the least significant bits*/
+			this.prefix = (run & ~PARTITION_MASK) | partition;
+			this.runSuffix = run << SEQUENCE_BITS;
+		}
+
+		@Override
+		public UUID generate() {
+			long s = sequence.getAndIncrement();
+			if (s >>> SEQUENCE_BITS != 0) {
+				throw new IllegalStateException("Ran out of tokens in partition " + (prefix & PARTITION_MASK));
+			}
+			return new UUID(prefix, runSuffix | s);
+		}
+
+		@Override
+		public Token partition() {
+			return TokenGenerator.this.partition();
 		}
-		return TokenGenerator.tradeID;
 	}
 }
@@ -2,11 +2,14 @@ package uk.ac.ic.kyoto.singletonfactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
 import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.tradehistory.RetentionPolicy;
+import uk.ac.ic.kyoto.tradehistory.TickSummary;
 import uk.ac.ic.kyoto.tradehistory.TradeHistory;
 import uk.ac.ic.kyoto.util.sim.jsonobjects.DataStorer;
 import uk.ac.ic.kyoto.util.sim.jsonobjects.tradedata.TradeData;
@@ -24,7 +27,11 @@ import com.google.inject.Singleton;
  */
 @Singleton
 public class TradeHistoryImplementation implements TradeHistory{
-	private static Map<Integer, Map<UUID, OfferMessage>> history = new HashMap<Integer,Map<UUID,OfferMessage>>();
+	private final TreeMap<Integer, Map<UUID, OfferMessage>> history = new TreeMap<Integer,Map<UUID,OfferMessage>>();
+	
+	private final TreeMap<Integer, TickSummary> summaries = new TreeMap<Integer, TickSummary>();
+	
+	private RetentionPolicy retentionPolicy = RetentionPolicy.keepAll();
 	
 	private String simID = null;
 	
@@ -79,9 +86,10 @@ public class TradeHistoryImplementation implements TradeHistory{
 			Map<UUID, OfferMessage> t = history.get(simTime.intValue());
 			if(t == null){
 				t = new HashMap<UUID,OfferMessage>();
+				history.put(simTime.intValue(), t);
+				retentionPolicy.apply(history, simTime.intValue(), summaries, null);
 			}
 			t.put(tradeID, trade);
-			history.put(simTime.intValue(), t);
 		}
 	}
 	
@@ -127,8 +135,36 @@ public class TradeHistoryImplementation implements TradeHistory{
 		}
 	}
 
+	/**
+	 * Nothing to do, dumpData() writes synchronously
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Nothing to do, dumpData() writes synchronously
+	 */
+	@Override
+	public void close() {
+	}
+
 	@Override
 	public void setSimID(Long simID) {
 		this.simID = Long.toString(simID);
 	}
+
+	@Override
+	public void setRetentionPolicy(RetentionPolicy policy) {
+		synchronized(history){
+			this.retentionPolicy = policy;
+		}
+	}
+
+	@Override
+	public TickSummary getSummary(int fromTick, int toTick) {
+		synchronized(history){
+			return TickSummary.summarise(history, summaries, fromTick, toTick);
+		}
+	}
 }
\ No newline at end of file
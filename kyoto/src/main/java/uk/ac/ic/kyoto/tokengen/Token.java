@@ -11,4 +11,11 @@ import java.util.UUID;
  */
 public interface Token {
 	public UUID generate();
+
+	/**
+	 * @return a Token whose ids never collide with the ids of this
+	 * Token or of any other partition of it. Meant to be held by a
+	 * single agent so its generate() calls never contend with others.
+	 */
+	public Token partition();
 }
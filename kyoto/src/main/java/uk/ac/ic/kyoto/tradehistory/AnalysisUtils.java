@@ -4,15 +4,16 @@ import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.UUID;
 
 import uk.ac.ic.kyoto.countries.GameConst;
 import uk.ac.ic.kyoto.countries.Offer;
 
 /**
- * 
+ * Statistics over SessionHistories. Range and average queries
+ * are answered from the index each SessionHistory maintains as
+ * offers are added, so they cost O(log n) per session rather than
+ * a copy of the whole history.
  * @author cs2309
  */
 public class AnalysisUtils {
@@ -36,42 +37,13 @@ public class AnalysisUtils {
 	public final static Range range(int startTick, int endTick, SessionHistory[] sessions, TradeActionType type){
 		checkTickPreconditions(startTick, endTick);
 
-		SortedMap<Integer, TickHistory> history = new TreeMap<Integer, TickHistory>();
-		
 		double low = Double.MAX_VALUE;
 		double high = Double.MIN_VALUE;
 		
-		// Putting all sessions into a single SortedMap
 		for (SessionHistory s : sessions) {
-			history.putAll(s.getSession());
-		}
-
-		history = history.headMap(startTick+1);
-		history = history.tailMap(endTick);
-		
-		for (Entry<Integer, TickHistory> tickEntry : history.entrySet()) {
-			TickHistory tick = tickEntry.getValue();
-						
-			if (type == TradeActionType.TRADE) {
-				if (tick.getTradeHigh() > high) {
-					high = tick.getTradeHigh();
-				}
-				
-				if (tick.getTradeLow() < low) {
-					low = tick.getTradeLow();
-				}
-				
-			}else if (type == TradeActionType.INVESTMENT) {
-				
-				if (tick.getInvestmentHigh() > high) {
-					high = tick.getInvestmentHigh();
-				}
-				
-				if (tick.getInvestmentLow() < low) {
-					low = tick.getInvestmentLow();
-				}
-				
-			}
+			TickIndex index = s.getIndex(type);
+			high = Math.max(high, index.high(endTick, startTick));
+			low = Math.min(low, index.low(endTick, startTick));
 		}
 		
 		return new Range(type, startTick, endTick, low, high);
@@ -85,36 +57,19 @@ public class AnalysisUtils {
 	 * @return
 	 */
 	public final static float weightedAverage(SessionHistory[] sessions, Weighting[] weightings, TradeActionType type){
-		SortedMap<Integer, TickHistory> history = new TreeMap<Integer, TickHistory>();
-		
-		float sumOfTrades = 0;
-		float numberOfTrades = 0;
-		
-		// Putting all sessions into a single SortedMap
-		for (SessionHistory s : sessions) {
-			history.putAll(s.getSession());
-		}
+		double sumOfTrades = 0;
+		double numberOfTrades = 0;
 		
 		// Weight tick averages
 		for (Weighting w : weightings) {
-			SortedMap<Integer, TickHistory> tempHistory = new TreeMap<Integer, TickHistory>();
-			tempHistory.putAll(history);
-			tempHistory = tempHistory.headMap(w.startTick+1);
-			tempHistory = tempHistory.tailMap(w.endTick);
-			
-			for ( Entry<Integer, TickHistory> e  : tempHistory.entrySet()) {
-								
-				if (type == TradeActionType.TRADE) {
-					sumOfTrades += (e.getValue().getTradeAverage() * w.weight);
-				}else if (type == TradeActionType.INVESTMENT) {
-					sumOfTrades += (e.getValue().getInvestmentAverage() * w.weight);
-				}
-				
-				numberOfTrades += w.weight;
+			for (SessionHistory s : sessions) {
+				TickIndex index = s.getIndex(type);
+				sumOfTrades += index.sum(w.endTick, w.startTick) * w.weight;
+				numberOfTrades += (double) index.count(w.endTick, w.startTick) * w.weight;
 			}
 		}
 		
-		return sumOfTrades/numberOfTrades;
+		return (float) sumOfTrades/(float) numberOfTrades;
 	}
 	
 	/**
@@ -124,28 +79,16 @@ public class AnalysisUtils {
 	 * @return
 	 */
 	public final static float average(SessionHistory[] sessions, TradeActionType type){
-		SortedMap<Integer, TickHistory> history = new TreeMap<Integer, TickHistory>();
-		
-		float sumOfTrades = 0;
+		double sumOfTrades = 0;
 		long numberOfTrades = 0;
 		
-		// Putting all sessions into a single SortedMap
 		for (SessionHistory s : sessions) {
-			history.putAll(s.getSession());
-		}
-		
-		for (Entry<Integer, TickHistory> ticks : history.entrySet()) {
-			
-			if (type == TradeActionType.TRADE){
-				sumOfTrades += ticks.getValue().getTradeAverage();
-			}else if (type == TradeActionType.INVESTMENT){
-				sumOfTrades += ticks.getValue().getInvestmentAverage();
-			}
-			
-			numberOfTrades++;
+			TickIndex index = s.getIndex(type);
+			sumOfTrades += index.sum(Integer.MIN_VALUE, Integer.MAX_VALUE);
+			numberOfTrades += index.size();
 		}
 		
-		return sumOfTrades/numberOfTrades;
+		return (float) sumOfTrades/numberOfTrades;
 	}
 	
 	/**
@@ -191,7 +134,11 @@ public class AnalysisUtils {
 	}
 	
 	/**
-	 * Calculates the standard deviation of multiple sessions.<br/>
+	 * Calculates the standard deviation of the tick averages of multiple
+	 * sessions by merging the Welford accumulators of tick averages each
+	 * session keeps, so it stays accurate when the average is large
+	 * compared to the spread.<br/>
+	 * For the spread of individual offers use SessionHistory.getTradeMoments().<br/>
 	 * This is a Beta function, and so for now will be marked Deprecated.
 	 * @param sessions
 	 * @param type
@@ -199,37 +146,13 @@ public class AnalysisUtils {
 	 */
 	@Deprecated
 	public final static double stardardDeviation(SessionHistory[] sessions, TradeActionType type){
-		SortedMap<Integer, TickHistory> history = new TreeMap<Integer, TickHistory>();
-		SortedMap<Integer, Double> m = new TreeMap<Integer, Double>();
-		
-		double sumOfVars = 0;
-		int numberOfVars = 0;
-		
-		double variance;
+		Moments tickAverages = new Moments();
 		
-		// Pull all session histories into a single history
 		for (SessionHistory s : sessions) {
-			history.putAll(s.getSession());
+			tickAverages.merge(s.getTickAverageMoments(type));
 		}
 		
-		double average = average(sessions, type);
-		
-		for (Entry<Integer, TickHistory> e : history.entrySet()) {
-			if (type == TradeActionType.TRADE) {
-				m.put(e.getKey(), (e.getValue().getTradeAverage() - average));
-			}else if (type == TradeActionType.INVESTMENT) {
-				m.put(e.getKey(), (e.getValue().getInvestmentAverage() - average));
-			}
-		}
-		
-		for (Entry<Integer, Double> e : m.entrySet()) {
-			sumOfVars += (e.getValue() * e.getValue());
-			numberOfVars++;
-		}
-		
-		variance = sumOfVars/numberOfVars;
-		
-		return Math.sqrt(variance);		
+		return tickAverages.getStandardDeviation();
 	}
 	
 	/**
@@ -0,0 +1,225 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+/**
+ * Online accumulator of the unit cost statistics of a stream of
+ * offers: count, high, low, mean and variance (Welford), the
+ * volume weighted average price and the quantity weighted variance.
+ * Every update and every read is O(1); two accumulators can be
+ * merged, which is how TickHistory statistics are rolled up into
+ * SessionHistory.
+ */
+public class Moments {
+
+	private long count;
+	private double sum;
+	private double value;
+	private double high = Double.NEGATIVE_INFINITY;
+	private double low = Double.POSITIVE_INFINITY;
+
+	/* Welford, unweighted */
+	private double mean;
+	private double m2;
+
+	/* West, weighted by quantity */
+	private double quantity;
+	private double weightedMean;
+	private double weightedM2;
+
+	public Moments() {
+	}
+
+	private Moments(Moments m) {
+		copyFrom(m);
+	}
+
+	/**
+	 * Adds an offer of quantity units at unitCost each
+	 * @param unitCost
+	 * @param quantity
+	 */
+	public void add(double unitCost, double quantity) {
+		count++;
+		sum += unitCost;
+		value += unitCost * quantity;
+		if (unitCost > high) {
+			high = unitCost;
+		}
+		if (unitCost < low) {
+			low = unitCost;
+		}
+
+		double delta = unitCost - mean;
+		mean += delta / count;
+		m2 += delta * (unitCost - mean);
+
+		if (quantity > 0) {
+			double newQuantity = this.quantity + quantity;
+			double weightedDelta = unitCost - weightedMean;
+			double r = weightedDelta * quantity / newQuantity;
+			weightedMean += r;
+			weightedM2 += this.quantity * weightedDelta * r;
+			this.quantity = newQuantity;
+		}
+	}
+
+	/**
+	 * Adds everything accumulated by other to this accumulator
+	 * @param other
+	 */
+	public void merge(Moments other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			copyFrom(other);
+			return;
+		}
+
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		m2 += other.m2 + delta * delta * count * other.count / n;
+		mean += delta * other.count / n;
+		count = n;
+		sum += other.sum;
+		value += other.value;
+
+		high = Math.max(high, other.high);
+		low = Math.min(low, other.low);
+
+		if (other.quantity > 0) {
+			double w = quantity + other.quantity;
+			double weightedDelta = other.weightedMean - weightedMean;
+			weightedM2 += other.weightedM2 + weightedDelta * weightedDelta * quantity * other.quantity / w;
+			weightedMean += weightedDelta * other.quantity / w;
+			quantity = w;
+		}
+	}
+
+	private void copyFrom(Moments m) {
+		this.count = m.count;
+		this.sum = m.sum;
+		this.value = m.value;
+		this.high = m.high;
+		this.low = m.low;
+		this.mean = m.mean;
+		this.m2 = m.m2;
+		this.quantity = m.quantity;
+		this.weightedMean = m.weightedMean;
+		this.weightedM2 = m.weightedM2;
+	}
+
+	/**
+	 * @return a snapshot of this accumulator
+	 */
+	public Moments copy() {
+		return new Moments(this);
+	}
+
+	/**
+	 * @return number of offers
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return highest unit cost, Double.NEGATIVE_INFINITY if empty
+	 */
+	public double getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return lowest unit cost, Double.POSITIVE_INFINITY if empty
+	 */
+	public double getLow() {
+		return low;
+	}
+
+	/**
+	 * @return sum of the unit costs
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return mean unit cost (sum / count), NaN if empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	/**
+	 * @return population variance of the unit cost, NaN if empty
+	 */
+	public double getVariance() {
+		return count == 0 ? Double.NaN : m2 / count;
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return total quantity offered
+	 */
+	public double getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @return total value (quantity * unit cost) offered
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * @return volume weighted average price, NaN if no quantity
+	 */
+	public double getVwap() {
+		return quantity == 0 ? Double.NaN : value / quantity;
+	}
+
+	/**
+	 * @return quantity weighted variance of the unit cost, NaN if no quantity
+	 */
+	public double getWeightedVariance() {
+		return quantity == 0 ? Double.NaN : weightedM2 / quantity;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof Moments)) {
+			return false;
+		}
+		Moments m = (Moments) obj;
+		return m.count == count && m.sum == sum && m.value == value && m.high == high && m.low == low
+				&& m.mean == mean && m.m2 == m2 && m.quantity == quantity
+				&& m.weightedMean == weightedMean && m.weightedM2 == weightedM2;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = count;
+		bits = 31 * bits + Double.doubleToLongBits(sum);
+		bits = 31 * bits + Double.doubleToLongBits(value);
+		bits = 31 * bits + Double.doubleToLongBits(high);
+		bits = 31 * bits + Double.doubleToLongBits(low);
+		bits = 31 * bits + Double.doubleToLongBits(mean);
+		bits = 31 * bits + Double.doubleToLongBits(quantity);
+		bits = 31 * bits + Double.doubleToLongBits(weightedMean);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "Moments [count=" + count + ", high=" + high + ", low=" + low + ", mean=" + getMean()
+				+ ", sd=" + getStandardDeviation() + ", quantity=" + quantity + ", vwap=" + getVwap() + "]";
+	}
+
+}
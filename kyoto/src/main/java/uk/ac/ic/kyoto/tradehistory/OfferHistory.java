@@ -3,12 +3,13 @@
  */
 package uk.ac.ic.kyoto.tradehistory;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
 import uk.ac.imperial.presage2.core.Time;
 
 /**
@@ -26,21 +27,55 @@ import uk.ac.imperial.presage2.core.Time;
  * 
  * OfferHistory offerHistory = new OfferHistory();
  * 
+ * The history is shared by all instances created in the
+ * same simulation (see SimulationContext). How much of it
+ * is kept is decided by OfferHistory.setRetentionPolicy(...),
+ * by default everything is kept.
+ * 
  * @author farhanrahman
  *
  */
 public class OfferHistory {
 	
-	private static Map<Integer, Map<UUID, OfferMessage>> history = new HashMap<Integer,Map<UUID,OfferMessage>>();
+	private final TreeMap<Integer, Map<UUID, OfferMessage>> history;
+	
+	private final TreeMap<Integer, TickSummary> summaries;
+	
 	/**
-	 * 
+	 * The instance that owns the storage and the retention policy
 	 */
+	private final OfferHistory owner;
+	
+	private RetentionPolicy retentionPolicy = RetentionPolicy.keepAll();
 	
 	/**
-	 * Public constructor.
+	 * Public constructor. The instance shares the offer
+	 * history of the current simulation.
 	 */
 	public OfferHistory(){
+		this(SimulationContext.current().getOfferHistory());
+	}
 		
+	private OfferHistory(OfferHistory owner){
+		if(owner == null){
+			this.history = new TreeMap<Integer,Map<UUID,OfferMessage>>();
+			this.summaries = new TreeMap<Integer, TickSummary>();
+			this.owner = this;
+		} else {
+			this.history = owner.history;
+			this.summaries = owner.summaries;
+			this.owner = owner;
+		}
+	}
+	
+	/**
+	 * Creates an offer history with its own, empty, storage.
+	 * Used by SimulationContext to create the history that
+	 * every OfferHistory of one simulation shares.
+	 * @return
+	 */
+	public static OfferHistory createShared(){
+		return new OfferHistory(null);
 	}
 	
 
@@ -51,7 +86,9 @@ public class OfferHistory {
 	 * @return the offer histories since tick 0.
 	 */
 	public Map<Integer, Map<UUID, OfferMessage>> getHistory() {
-		return new HashMap<Integer, Map<UUID,OfferMessage>>(history);
+		synchronized(history){
+			return new HashMap<Integer, Map<UUID,OfferMessage>>(history);
+		}
 	}
 
 	/**
@@ -61,7 +98,7 @@ public class OfferHistory {
 	 * @return the offer history for tick = simTime
 	 */
 	public Map<UUID, OfferMessage> getHistoryForTime(Time simTime) {
-		return history.get(simTime.intValue());
+		return getHistoryForTime(simTime.intValue());
 	}
 	
 	/**
@@ -72,7 +109,9 @@ public class OfferHistory {
 	 * @return the offer history for simulation tick = simTime.
 	 */
 	public Map<UUID, OfferMessage> getHistoryForTime(Integer simTime) {
-		return history.get(simTime);
+		synchronized(history){
+			return history.get(simTime);
+		}
 	}
 
 	/**
@@ -105,11 +144,38 @@ public class OfferHistory {
 			Map<UUID, OfferMessage> t = history.get(simTime.intValue());
 			if(t == null){
 				t = new HashMap<UUID,OfferMessage>();
+				history.put(simTime.intValue(), t);
+				owner.retentionPolicy.apply(history, simTime.intValue(), summaries, null);
 			}
 			t.put(tradeID, trade);
-			history.put(simTime.intValue(), t);
 		}
 		
 	}
 
+	/**
+	 * Aggregates all offers made in fromTick &#8804; tick &#8804; toTick,
+	 * including ticks that have been compacted by the retention policy.
+	 * @param fromTick
+	 * @param toTick
+	 * @return
+	 */
+	public TickSummary getSummary(int fromTick, int toTick) {
+		synchronized(history){
+			return TickSummary.summarise(history, summaries, fromTick, toTick);
+		}
+	}
+	
+	/**
+	 * Sets how much of the offer history of the current
+	 * simulation is kept in memory. The policy is applied
+	 * every time offers start being recorded for a new tick.
+	 * @param policy
+	 */
+	public static void setRetentionPolicy(RetentionPolicy policy) {
+		OfferHistory shared = SimulationContext.current().getOfferHistory();
+		synchronized(shared.history){
+			shared.retentionPolicy = policy;
+		}
+	}
+
 }
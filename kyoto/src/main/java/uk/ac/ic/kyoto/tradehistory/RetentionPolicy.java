@@ -0,0 +1,202 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.countries.TradeProtocol;
+
+/**
+ * Decides how much of OfferHistory and TradeHistory is
+ * kept in memory. Ticks older than the retention window
+ * are dropped, or when compacting, merged into one
+ * {@link TickSummary} per year (per session when keeping
+ * the current session). Once there are more summaries than
+ * allowed the two oldest are merged, so the memory used by
+ * summaries is bounded too.
+ *
+ * Summaries do not know which trades they hold, so tradeExists
+ * only finds trades in the ticks that are kept in full. The
+ * window has to be longer than the TradeProtocol timeout so a
+ * trade is known for as long as it can be reverted.
+ * 
+ * Usage:
+ * 
+ * RetentionPolicy.keepLastTicks(60).compacting();
+ */
+public class RetentionPolicy {
+
+	private enum Scope {
+		ALL, LAST_TICKS, CURRENT_SESSION
+	}
+
+	/**
+	 * Summaries kept by compacting() by default
+	 */
+	public static final int DEFAULT_MAX_SUMMARIES = 100;
+
+	private final Scope scope;
+	private final int ticks;
+	private final boolean compact;
+
+	/**
+	 * Ticks merged into one summary, 0 for a year or a session
+	 */
+	private final int period;
+	private final int maxSummaries;
+
+	private RetentionPolicy(Scope scope, int ticks, boolean compact, int period, int maxSummaries) {
+		this.scope = scope;
+		this.ticks = ticks;
+		this.compact = compact;
+		this.period = period;
+		this.maxSummaries = maxSummaries;
+	}
+
+	/**
+	 * @return policy that never drops anything. This is the default.
+	 */
+	public static RetentionPolicy keepAll() {
+		return new RetentionPolicy(Scope.ALL, 0, false, 0, 0);
+	}
+
+	/**
+	 * @param ticks number of ticks to keep, including the current one.
+	 * Should be larger than TradeProtocol.TIMEOUT_TICKS so that trades
+	 * can still be reverted.
+	 * @return policy that keeps the last ticks ticks
+	 */
+	public static RetentionPolicy keepLastTicks(int ticks) {
+		if (ticks < 1) {
+			throw new IllegalArgumentException("must keep at least one tick");
+		}
+		return new RetentionPolicy(Scope.LAST_TICKS, ticks, false, 0, 0);
+	}
+
+	/**
+	 * @return policy that keeps every tick of the current session,
+	 * and the last ticks of the previous one until the trades made
+	 * in them have timed out
+	 */
+	public static RetentionPolicy keepCurrentSession() {
+		return new RetentionPolicy(Scope.CURRENT_SESSION, 0, false, 0, 0);
+	}
+
+	/**
+	 * @return the same policy, but ticks that are dropped are
+	 * compacted into one TickSummary per year, or per session for
+	 * keepCurrentSession(), instead of being forgotten. At most
+	 * DEFAULT_MAX_SUMMARIES summaries are kept.
+	 */
+	public RetentionPolicy compacting() {
+		return new RetentionPolicy(scope, ticks, true, 0, DEFAULT_MAX_SUMMARIES);
+	}
+
+	/**
+	 * @param period number of ticks merged into one summary
+	 * @param maxSummaries number of summaries kept, the oldest are
+	 * merged together beyond that
+	 * @return the same policy, compacting dropped ticks
+	 */
+	public RetentionPolicy compacting(int period, int maxSummaries) {
+		if (period < 1 || maxSummaries < 1) {
+			throw new IllegalArgumentException("must summarise at least one tick into at least one summary");
+		}
+		return new RetentionPolicy(scope, ticks, true, period, maxSummaries);
+	}
+
+	public boolean isCompacting() {
+		return compact;
+	}
+
+	/**
+	 * @param currentTick
+	 * @return the oldest tick that is kept in full
+	 */
+	public int getOldestRetainedTick(int currentTick) {
+		switch (scope) {
+		case LAST_TICKS:
+			return currentTick - ticks + 1;
+		case CURRENT_SESSION:
+			int ticksInSession = GameConst.getYearsInSession() * GameConst.getTicksInYear();
+			return Math.min(currentTick - (currentTick % ticksInSession), currentTick - TradeProtocol.TIMEOUT_TICKS);
+		default:
+			return Integer.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * @return number of ticks merged into one summary
+	 */
+	private int getPeriod() {
+		if (period > 0) {
+			return period;
+		}
+		if (scope == Scope.CURRENT_SESSION) {
+			return GameConst.getYearsInSession() * GameConst.getTicksInYear();
+		}
+		return GameConst.getTicksInYear();
+	}
+
+	/**
+	 * Drops, or compacts into summaries, every tick of history older
+	 * than the retention window. The caller must make sure that only
+	 * one thread applies the policy to a history at a time.
+	 * @param history tick -> (id -> offer)
+	 * @param currentTick
+	 * @param summaries period start -> compacted ticks of the period, may be null if not compacting
+	 * @param tickIndex id -> tick index to keep in step with history, may be null
+	 */
+	public void apply(NavigableMap<Integer, ? extends Map<UUID, OfferMessage>> history, int currentTick,
+			NavigableMap<Integer, TickSummary> summaries, Map<UUID, Integer> tickIndex) {
+		if (scope == Scope.ALL) {
+			return;
+		}
+
+		Iterator<? extends Entry<Integer, ? extends Map<UUID, OfferMessage>>> expired = history
+				.headMap(getOldestRetainedTick(currentTick), false).entrySet().iterator();
+
+		boolean compacted = false;
+		while (expired.hasNext()) {
+			Entry<Integer, ? extends Map<UUID, OfferMessage>> tick = expired.next();
+
+			if (compact && summaries != null) {
+				int p = getPeriod();
+				int start = tick.getKey() - ((tick.getKey() % p) + p) % p;
+				TickSummary s = TickSummary.of(tick.getKey(), tick.getValue().values());
+				TickSummary previous = summaries.get(start);
+				summaries.put(start, previous == null ? s : previous.merge(s));
+				compacted = true;
+			}
+
+			if (tickIndex != null) {
+				for (UUID id : tick.getValue().keySet()) {
+					if (tick.getKey().equals(tickIndex.get(id))) {
+						tickIndex.remove(id);
+					}
+				}
+			}
+
+			expired.remove();
+		}
+
+		while (compacted && summaries.size() > maxSummaries) {
+			Entry<Integer, TickSummary> oldest = summaries.firstEntry();
+			Entry<Integer, TickSummary> next = summaries.higherEntry(oldest.getKey());
+			summaries.put(next.getKey(), oldest.getValue().merge(next.getValue()));
+			summaries.remove(oldest.getKey());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RetentionPolicy " + scope + (scope == Scope.LAST_TICKS ? " " + ticks : "")
+				+ (compact ? " compacting" + (period > 0 ? " every " + period + " ticks" : "")
+						+ " into at most " + maxSummaries + " summaries" : "");
+	}
+
+}
@@ -17,6 +17,25 @@ public class SessionHistory {
 	private final int sessionId;
 	private TreeMap<Integer, TickHistory> session;
 		
+	/**
+	 * Trade and investment average/high/low of every tick, kept up to date by add(...)
+	 */
+	private TickIndex tradeIndex;
+	private TickIndex investmentIndex;
+	
+	/**
+	 * Roll up of the statistics of all ticks in the session
+	 */
+	private Moments trade;
+	private Moments investment;
+	
+	/**
+	 * Spread of the averages of all ticks but the last, whose
+	 * averages can not change any more
+	 */
+	private Moments tradeAverages;
+	private Moments investmentAverages;
+		
 	public SessionHistory(int sessionId) {
 		this.sessionId = sessionId;
 		init();
@@ -24,6 +43,12 @@ public class SessionHistory {
 	
 	private void init(){
 		session = new TreeMap<Integer, TickHistory>();
+		tradeIndex = new TickIndex();
+		investmentIndex = new TickIndex();
+		trade = new Moments();
+		investment = new Moments();
+		tradeAverages = new Moments();
+		investmentAverages = new Moments();
 	}
 	
 	/**
@@ -35,17 +60,19 @@ public class SessionHistory {
 	 * @throws Exception 
 	 */
 	public void add(Offer m, int currentTick) throws Exception{
+		TickHistory t;
 		
 		if(session.isEmpty()){
-			TickHistory t = new TickHistory(currentTick);
+			t = new TickHistory(currentTick);
 			t.addMessage(m);
 
 			session.put(currentTick, t);
 		}else{
 			//TickHistory t = session.get(previousTickId);
-			TickHistory t = session.lastEntry().getValue();
+			t = session.lastEntry().getValue();
 
 			if(t.getTickId() != currentTick){
+				close(t);
 				t = new TickHistory(currentTick);
 				t.addMessage(m);
 				session.put(currentTick, t);
@@ -54,6 +81,44 @@ public class SessionHistory {
 				session.put(currentTick, t);
 			}
 		}
+		
+		if (TickHistory.isInvestment(m)) {
+			investment.add(m.getUnitCost(), m.getQuantity());
+			investmentIndex.put(currentTick, t.getInvestmentAverage(), t.getInvestmentHigh(), t.getInvestmentLow());
+		} else {
+			trade.add(m.getUnitCost(), m.getQuantity());
+			tradeIndex.put(currentTick, t.getTradeAverage(), t.getTradeHigh(), t.getTradeLow());
+		}
+	}
+	
+	/**
+	 * Adds the averages of a tick that is over to the spread of tick averages
+	 * @param t
+	 */
+	private void close(TickHistory t){
+		addAverage(tradeAverages, t.getTradeMoments());
+		addAverage(investmentAverages, t.getInvestmentMoments());
+	}
+	
+	private static void addAverage(Moments averages, Moments tick){
+		if (tick.getCount() > 0) {
+			averages.add(tick.getMean(), 1);
+		}
+	}
+	
+	/**
+	 * @param type
+	 * @return snapshot of the spread of the averages of the ticks
+	 * with offers of the given type, the current tick included
+	 */
+	Moments getTickAverageMoments(AnalysisUtils.TradeActionType type){
+		boolean investments = type == AnalysisUtils.TradeActionType.INVESTMENT;
+		Moments averages = (investments ? investmentAverages : tradeAverages).copy();
+		if (!session.isEmpty()) {
+			TickHistory last = session.lastEntry().getValue();
+			addAverage(averages, investments ? last.getInvestmentMoments() : last.getTradeMoments());
+		}
+		return averages;
 	}
 	
 	public TickHistory getTick(int tickId){
@@ -64,6 +129,28 @@ public class SessionHistory {
 		return Collections.unmodifiableMap(session);
 	}
 	
+	/**
+	 * @param type
+	 * @return the index AnalysisUtils queries for the given type
+	 */
+	TickIndex getIndex(AnalysisUtils.TradeActionType type){
+		return type == AnalysisUtils.TradeActionType.INVESTMENT ? investmentIndex : tradeIndex;
+	}
+	
+	/**
+	 * @return snapshot of the trade statistics of the whole session
+	 */
+	public Moments getTradeMoments(){
+		return trade.copy();
+	}
+	
+	/**
+	 * @return snapshot of the investment statistics of the whole session
+	 */
+	public Moments getInvestmentMoments(){
+		return investment.copy();
+	}
+	
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == this){
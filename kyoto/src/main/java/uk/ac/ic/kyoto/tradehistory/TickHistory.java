@@ -5,10 +5,12 @@ import java.util.Collections;
 import java.util.List;
 
 import uk.ac.ic.kyoto.countries.Offer;
+import uk.ac.ic.kyoto.trade.TradeType;
 
 /**
  * Stores all messages (trade and investment), and automagically
- * computes high, low & average.
+ * computes high, low, average, variance and VWAP of each as
+ * messages are added.
  * 
  * @author cs2309 & ovg109
  */
@@ -18,15 +20,15 @@ public class TickHistory{
 	
 	private ArrayList<Offer> messages;
 	
-	private double tradeHigh;
-	private double tradeLow;
-	private int tradeNo;
-	private double tradeSum;
+	/**
+	 * Statistics of the BUY/SELL offers
+	 */
+	private Moments trade;
 	
-	private double investmentHigh;
-	private double investmentLow;
-	private int investmentNo;
-	private double investmentSum;
+	/**
+	 * Statistics of the INVEST/RECEIVE offers
+	 */
+	private Moments investment;
 
 	/**
 	 * Constructs a TickHistory with ID of currentTick
@@ -38,67 +40,70 @@ public class TickHistory{
 	}
 	
 	/**
-	 * Creates Set to store all messages.<br>
-	 * Sets High/Low to Float.{MIN/MAX}_VALUE
+	 * Creates Set to store all messages and
+	 * the trade and investment accumulators.
 	 */
 	private void init(){
 		messages = new ArrayList<Offer>();
 		
-		tradeHigh = Double.MIN_VALUE;
-		tradeLow = Double.MAX_VALUE;
-		tradeNo = 0;
-		tradeSum = 0;
-		
-		investmentHigh = Double.MIN_VALUE;
-		investmentLow = Double.MAX_VALUE;
-		investmentNo = 0;
-		investmentSum = 0;
+		trade = new Moments();
+		investment = new Moments();
 	}
 	
 	/**
-	 * Calculates unit price, updates High/Low values and stores to Set
+	 * Updates the trade or investment statistics, depending on the
+	 * type of the offer, and stores it to Set
 	 * @param m
 	 * @return 
 	 * @throws Exception 
 	 */
 	public void addMessage(Offer m) throws Exception{
+		accumulatorFor(m).add(m.getUnitCost(), m.getQuantity());
+		messages.add(m);
+	}
 	
-		double unitCost = m.getUnitCost();
-		
-		if (unitCost > tradeHigh){
-			tradeHigh = unitCost;
-		}
-		
-		if (unitCost < tradeLow){
-			tradeLow = unitCost;
-		}
-		
-		tradeNo++;
-		tradeSum += unitCost;
+	/**
+	 * @param m
+	 * @return the accumulator offer m is added to
+	 */
+	Moments accumulatorFor(Offer m){
+		return isInvestment(m) ? investment : trade;
+	}
 		
-		messages.add(m);
+	static boolean isInvestment(Offer m){
+		return m.getType() == TradeType.INVEST || m.getType() == TradeType.RECEIVE;
 	}
 	
 	public List<Offer> getMessages() {
 		return Collections.unmodifiableList(messages);
 	}
 
+	/**
+	 * @return highest trade unit cost, Double.MIN_VALUE if there were no trades
+	 */
 	public double getTradeHigh() {
-		return tradeHigh;
+		return trade.getCount() == 0 ? Double.MIN_VALUE : trade.getHigh();
 	}
 
+	/**
+	 * @return lowest trade unit cost, Double.MAX_VALUE if there were no trades
+	 */
 	public double getTradeLow() {
-		return tradeLow;
+		return trade.getCount() == 0 ? Double.MAX_VALUE : trade.getLow();
 	}
 
-	public int getInvestmentHigh() {
-		throw new UnsupportedOperationException("Method not yet implemented");
-		//return investmentHigh;
+	/**
+	 * @return highest investment unit cost, Double.MIN_VALUE if there were no investments
+	 */
+	public double getInvestmentHigh() {
+		return investment.getCount() == 0 ? Double.MIN_VALUE : investment.getHigh();
 	}
 
-	public int getInvestmentLow() {
-		throw new UnsupportedOperationException("Method not yet implemented");
-		//return investmentLow;
+	/**
+	 * @return lowest investment unit cost, Double.MAX_VALUE if there were no investments
+	 */
+	public double getInvestmentLow() {
+		return investment.getCount() == 0 ? Double.MAX_VALUE : investment.getLow();
 	}
 
 	public int getTickId() {
@@ -106,12 +111,26 @@ public class TickHistory{
 	}
 
 	public double getTradeAverage() {
-		return tradeSum/tradeNo;
+		return trade.getMean();
 	}
 
-	public float getInvestmentAverage() {
-		throw new UnsupportedOperationException("Method not yet implemented");
-		//return investmentSum/investmentNo;
+	public double getInvestmentAverage() {
+		return investment.getMean();
+	}
+	
+	/**
+	 * @return snapshot of the trade statistics of this tick:
+	 * variance, VWAP, quantity weighted variance...
+	 */
+	public Moments getTradeMoments() {
+		return trade.copy();
+	}
+	
+	/**
+	 * @return snapshot of the investment statistics of this tick
+	 */
+	public Moments getInvestmentMoments() {
+		return investment.copy();
 	}
 	
 	@Override
@@ -125,14 +144,8 @@ public class TickHistory{
 		}
 		
 		TickHistory tick = (TickHistory) obj;
-		boolean investmentTest = (tick.investmentHigh == this.investmentHigh) &&
-									(tick.investmentLow == this.investmentLow) &&
-									(tick.investmentNo == this.investmentNo) &&
-									(tick.investmentSum == this.investmentSum);
-		boolean tradeTest = (tick.tradeHigh == this.tradeHigh) &&
-								(tick.tradeLow == this.tradeLow) &&
-								(tick.tradeNo == this.tradeNo) &&
-								(tick.tradeSum == this.tradeSum);
+		boolean investmentTest = tick.investment.equals(this.investment);
+		boolean tradeTest = tick.trade.equals(this.trade);
 		boolean messagesTest = tick.messages.equals(this.messages);
 		
 		return investmentTest && tradeTest && messagesTest && (tick.tickId == this.tickId);
@@ -142,15 +155,8 @@ public class TickHistory{
 	public int hashCode() {
 		double result = 73;
 		
-		result = 57 * result + this.investmentHigh;
-		result = 57 * result + this.investmentLow;
-		result = 57 * result + this.investmentNo;
-		result = 57 * result + this.investmentSum;
-		
-		result = 57 * result + this.tradeHigh;
-		result = 57 * result + this.tradeLow;
-		result = 57 * result + this.tradeNo;
-		result = 57 * result + this.tradeSum;
+		result = 57 * result + this.investment.hashCode();
+		result = 57 * result + this.trade.hashCode();
 		
 		result = 57 * result + this.tickId;
 		
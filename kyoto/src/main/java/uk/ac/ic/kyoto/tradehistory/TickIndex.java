@@ -0,0 +1,267 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained index over the per tick averages,
+ * highs and lows of a SessionHistory. Sums are kept in a
+ * Fenwick tree (prefix sums) and highs/lows in a min/max
+ * segment tree, so the sum, count, high and low of any
+ * window of ticks are answered in O(log n) without copying
+ * the history.
+ *
+ * Ticks are expected to arrive in increasing order, which is
+ * what SessionHistory does; updating the last tick or appending
+ * a new one is O(log n) (amortised). A tick older than the last
+ * one is still accepted but rebuilds the index.
+ *
+ * Not thread safe, SessionHistory is not either.
+ */
+class TickIndex {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Sorted ticks, position i of the other arrays belongs to ticks[i]
+	 */
+	private int[] ticks = new int[INITIAL_CAPACITY];
+	private double[] values = new double[INITIAL_CAPACITY];
+	private double[] highs = new double[INITIAL_CAPACITY];
+	private double[] lows = new double[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * 1 based Fenwick tree over values
+	 */
+	private double[] sums = new double[INITIAL_CAPACITY + 1];
+
+	/**
+	 * Segment trees with leaves at [segmentSize, 2*segmentSize)
+	 */
+	private int segmentSize = INITIAL_CAPACITY;
+	private double[] maxTree = emptyTree(INITIAL_CAPACITY, Double.NEGATIVE_INFINITY);
+	private double[] minTree = emptyTree(INITIAL_CAPACITY, Double.POSITIVE_INFINITY);
+
+	/**
+	 * Sets the value, high and low of tick, adding the tick if it
+	 * is not in the index yet.
+	 * @param tick
+	 * @param value
+	 * @param high
+	 * @param low
+	 */
+	void put(int tick, double value, double high, double low) {
+		if (size > 0 && ticks[size-1] == tick) {
+			set(size-1, value, high, low);
+		} else if (size == 0 || ticks[size-1] < tick) {
+			append(tick, value, high, low);
+		} else {
+			int pos = Arrays.binarySearch(ticks, 0, size, tick);
+			if (pos >= 0) {
+				set(pos, value, high, low);
+			} else {
+				insert(-pos - 1, tick, value, high, low);
+			}
+		}
+	}
+
+	/**
+	 * @return number of ticks in the index
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param fromTick
+	 * @param toTick
+	 * @return number of ticks in fromTick &#8804; tick &#8804; toTick
+	 */
+	int count(int fromTick, int toTick) {
+		return Math.max(0, upper(toTick) - lower(fromTick));
+	}
+
+	/**
+	 * @param fromTick
+	 * @param toTick
+	 * @return sum of the values of the ticks in fromTick &#8804; tick &#8804; toTick
+	 */
+	double sum(int fromTick, int toTick) {
+		int from = lower(fromTick);
+		int to = upper(toTick);
+		if (to <= from) {
+			return 0;
+		}
+		return prefixSum(to) - prefixSum(from);
+	}
+
+	/**
+	 * @param fromTick
+	 * @param toTick
+	 * @return highest high of the ticks in fromTick &#8804; tick &#8804; toTick,
+	 * Double.NEGATIVE_INFINITY if there are none
+	 */
+	double high(int fromTick, int toTick) {
+		return query(maxTree, lower(fromTick), upper(toTick), true);
+	}
+
+	/**
+	 * @param fromTick
+	 * @param toTick
+	 * @return lowest low of the ticks in fromTick &#8804; tick &#8804; toTick,
+	 * Double.POSITIVE_INFINITY if there are none
+	 */
+	double low(int fromTick, int toTick) {
+		return query(minTree, lower(fromTick), upper(toTick), false);
+	}
+
+	/**
+	 * @return position of the first tick &#8805; tick
+	 */
+	private int lower(int tick) {
+		int pos = Arrays.binarySearch(ticks, 0, size, tick);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+	/**
+	 * @return position after the last tick &#8804; tick
+	 */
+	private int upper(int tick) {
+		int pos = Arrays.binarySearch(ticks, 0, size, tick);
+		return pos >= 0 ? pos + 1 : -pos - 1;
+	}
+
+	private void set(int pos, double value, double high, double low) {
+		addToSums(pos, value - values[pos]);
+		values[pos] = value;
+		highs[pos] = high;
+		lows[pos] = low;
+		updateTrees(pos);
+	}
+
+	private void append(int tick, double value, double high, double low) {
+		if (size == ticks.length) {
+			grow();
+		}
+		int pos = size++;
+		ticks[pos] = tick;
+		values[pos] = value;
+		highs[pos] = high;
+		lows[pos] = low;
+
+		// Fenwick node pos+1 covers (pos+1 - lowbit, pos+1]
+		int node = pos + 1;
+		sums[node] = value + prefixSum(pos) - prefixSum(node - (node & -node));
+
+		if (size > segmentSize) {
+			rebuildTrees();
+		} else {
+			updateTrees(pos);
+		}
+	}
+
+	private void insert(int pos, int tick, double value, double high, double low) {
+		if (size == ticks.length) {
+			grow();
+		}
+		System.arraycopy(ticks, pos, ticks, pos + 1, size - pos);
+		System.arraycopy(values, pos, values, pos + 1, size - pos);
+		System.arraycopy(highs, pos, highs, pos + 1, size - pos);
+		System.arraycopy(lows, pos, lows, pos + 1, size - pos);
+		ticks[pos] = tick;
+		values[pos] = value;
+		highs[pos] = high;
+		lows[pos] = low;
+		size++;
+		rebuildSums();
+		rebuildTrees();
+	}
+
+	private void grow() {
+		int capacity = ticks.length * 2;
+		ticks = Arrays.copyOf(ticks, capacity);
+		values = Arrays.copyOf(values, capacity);
+		highs = Arrays.copyOf(highs, capacity);
+		lows = Arrays.copyOf(lows, capacity);
+		// Existing Fenwick nodes do not depend on the capacity
+		sums = Arrays.copyOf(sums, capacity + 1);
+	}
+
+	private double prefixSum(int count) {
+		double s = 0;
+		for (int i = count; i > 0; i -= i & -i) {
+			s += sums[i];
+		}
+		return s;
+	}
+
+	private void addToSums(int pos, double delta) {
+		for (int i = pos + 1; i <= size; i += i & -i) {
+			sums[i] += delta;
+		}
+	}
+
+	private void rebuildSums() {
+		Arrays.fill(sums, 0);
+		for (int i = 1; i <= size; i++) {
+			sums[i] += values[i-1];
+			int parent = i + (i & -i);
+			if (parent <= size) {
+				sums[parent] += sums[i];
+			}
+		}
+	}
+
+	private void updateTrees(int pos) {
+		int i = pos + segmentSize;
+		maxTree[i] = highs[pos];
+		minTree[i] = lows[pos];
+		for (i >>= 1; i > 0; i >>= 1) {
+			maxTree[i] = Math.max(maxTree[2*i], maxTree[2*i+1]);
+			minTree[i] = Math.min(minTree[2*i], minTree[2*i+1]);
+		}
+	}
+
+	private void rebuildTrees() {
+		while (segmentSize < size) {
+			segmentSize *= 2;
+		}
+		maxTree = emptyTree(segmentSize, Double.NEGATIVE_INFINITY);
+		minTree = emptyTree(segmentSize, Double.POSITIVE_INFINITY);
+		System.arraycopy(highs, 0, maxTree, segmentSize, size);
+		System.arraycopy(lows, 0, minTree, segmentSize, size);
+		for (int i = segmentSize - 1; i > 0; i--) {
+			maxTree[i] = Math.max(maxTree[2*i], maxTree[2*i+1]);
+			minTree[i] = Math.min(minTree[2*i], minTree[2*i+1]);
+		}
+	}
+
+	/**
+	 * @param tree
+	 * @param from first position, inclusive
+	 * @param to last position, exclusive
+	 * @param max
+	 * @return max or min of positions [from, to)
+	 */
+	private double query(double[] tree, int from, int to, boolean max) {
+		double result = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		for (int l = from + segmentSize, r = to + segmentSize; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1) {
+				result = max ? Math.max(result, tree[l]) : Math.min(result, tree[l]);
+				l++;
+			}
+			if ((r & 1) == 1) {
+				r--;
+				result = max ? Math.max(result, tree[r]) : Math.min(result, tree[r]);
+			}
+		}
+		return result;
+	}
+
+	private static double[] emptyTree(int size, double identity) {
+		double[] tree = new double[2 * size];
+		Arrays.fill(tree, identity);
+		return tree;
+	}
+
+}
@@ -0,0 +1,177 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.countries.OfferMessage;
+
+/**
+ * Immutable aggregate of the offers made over a range of
+ * ticks. Used to keep compacted history around after the
+ * offers themselves have been dropped by a {@link RetentionPolicy},
+ * so aggregate queries over old ticks can still be answered.
+ * A summary is the same size however many offers it covers,
+ * the ids of the offers are not kept.
+ */
+public class TickSummary {
+
+	private final int firstTick;
+	private final int lastTick;
+
+	private final int count;
+	private final double quantity;
+	private final double value;
+	private final double unitCostSum;
+	private final double high;
+	private final double low;
+
+	private TickSummary(int firstTick, int lastTick, int count, double quantity,
+			double value, double unitCostSum, double high, double low) {
+		this.firstTick = firstTick;
+		this.lastTick = lastTick;
+		this.count = count;
+		this.quantity = quantity;
+		this.value = value;
+		this.unitCostSum = unitCostSum;
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * @param firstTick
+	 * @param lastTick
+	 * @return a summary of no offers over the given ticks
+	 */
+	public static TickSummary empty(int firstTick, int lastTick) {
+		return new TickSummary(firstTick, lastTick, 0, 0, 0, 0, Double.NEGATIVE_INFINITY,
+				Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Summarises the offers made in a single tick
+	 * @param tick
+	 * @param offers
+	 * @return
+	 */
+	public static TickSummary of(int tick, Collection<OfferMessage> offers) {
+		int count = 0;
+		double quantity = 0;
+		double value = 0;
+		double unitCostSum = 0;
+		double high = Double.NEGATIVE_INFINITY;
+		double low = Double.POSITIVE_INFINITY;
+
+		for (OfferMessage o : offers) {
+			double q = o.getOfferQuantity();
+			double c = o.getOfferUnitCost();
+
+			count++;
+			quantity += q;
+			value += q * c;
+			unitCostSum += c;
+			if (c > high) {
+				high = c;
+			}
+			if (c < low) {
+				low = c;
+			}
+		}
+
+		return new TickSummary(tick, tick, count, quantity, value, unitCostSum, high, low);
+	}
+
+	/**
+	 * Summarises every tick in fromTick &#8804; tick &#8804; toTick, reading
+	 * compacted ticks from summaries and everything else from the
+	 * live history. Compacted ticks are only known by the summary
+	 * they were merged into, a summary that overlaps the range is
+	 * counted whole.
+	 * @param history live ticks
+	 * @param summaries compacted ticks, few enough to be read one by one
+	 * @param fromTick
+	 * @param toTick
+	 * @return
+	 */
+	public static TickSummary summarise(NavigableMap<Integer, ? extends Map<UUID, OfferMessage>> history,
+			NavigableMap<Integer, TickSummary> summaries, int fromTick, int toTick) {
+		TickSummary result = empty(fromTick, toTick);
+
+		for (TickSummary s : summaries.values()) {
+			if (s.firstTick <= toTick && s.lastTick >= fromTick) {
+				result = result.merge(s);
+			}
+		}
+
+		for (Map.Entry<Integer, ? extends Map<UUID, OfferMessage>> e : history.subMap(fromTick, true, toTick, true).entrySet()) {
+			result = result.merge(of(e.getKey(), e.getValue().values()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return a summary covering the ticks and offers of both summaries
+	 */
+	public TickSummary merge(TickSummary other) {
+		return new TickSummary(
+				Math.min(firstTick, other.firstTick),
+				Math.max(lastTick, other.lastTick),
+				count + other.count,
+				quantity + other.quantity,
+				value + other.value,
+				unitCostSum + other.unitCostSum,
+				Math.max(high, other.high),
+				Math.min(low, other.low));
+	}
+
+	public int getFirstTick() {
+		return firstTick;
+	}
+
+	public int getLastTick() {
+		return lastTick;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public double getQuantity() {
+		return quantity;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public double getHigh() {
+		return high;
+	}
+
+	public double getLow() {
+		return low;
+	}
+
+	/**
+	 * @return the unweighted average unit cost
+	 */
+	public double getAverage() {
+		return unitCostSum / count;
+	}
+
+	/**
+	 * @return the average unit cost weighted by quantity
+	 */
+	public double getWeightedAverage() {
+		return value / quantity;
+	}
+
+	@Override
+	public String toString() {
+		return "TickSummary for ticks " + firstTick + "-" + lastTick + " of " + count + " offers";
+	}
+
+}
@@ -65,6 +65,19 @@ public interface TradeHistory {
 	 */
 	public void dumpData();
 	
+	/**
+	 * Blocks until all the trade data handed over
+	 * by dumpData() has been written to the database.
+	 */
+	public void flush();
+	
+	/**
+	 * Flushes and releases what is used to write the
+	 * trade data. Must be called at the end of the
+	 * simulation, dumpData() must not be called after.
+	 */
+	public void close();
+	
 	/**
 	 * Method must be called when setting up
 	 * the simulation. The simulation id is
@@ -77,4 +90,22 @@ public interface TradeHistory {
 	 * @param simID
 	 */
 	public void setSimID(Long simID);
+	
+	/**
+	 * Sets how much of the history is kept in memory.
+	 * The policy is applied every time trades start
+	 * being recorded for a new tick. Defaults to
+	 * RetentionPolicy.keepAll().
+	 * @param policy
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy);
+	
+	/**
+	 * Aggregates all trades made in fromTick &#8804; tick &#8804; toTick,
+	 * including ticks that have been compacted by the retention policy.
+	 * @param fromTick
+	 * @param toTick
+	 * @return
+	 */
+	public TickSummary getSummary(int fromTick, int toTick);
 }
@@ -26,7 +26,7 @@ public class DataProvider {
 	private MongoConnector mongoConnector;
 	
 	public DataProvider() {
-		this.mongoConnector = new MongoConnector();
+		this.mongoConnector = MongoConnector.getInstance();
 	}
 	
 	public DataProvider(String host, String port, String dbName, String username, String password){
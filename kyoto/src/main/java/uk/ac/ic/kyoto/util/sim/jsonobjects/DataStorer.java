@@ -3,13 +3,15 @@
  */
 package uk.ac.ic.kyoto.util.sim.jsonobjects;
 
+import java.util.List;
+
 import uk.ac.ic.kyoto.util.sim.mongo.MongoConnector;
 
 /**
  * @author farhanrahman
  *
  */
-public class DataStorer {
+public class DataStorer implements TradeDataStore {
 
 
 	/**
@@ -20,7 +22,7 @@ public class DataStorer {
 	private MongoConnector mongoConnector;
 	
 	public DataStorer() {
-		this.mongoConnector = new MongoConnector();
+		this.mongoConnector = MongoConnector.getInstance();
 	}
 	
 	public DataStorer(String host, String port, String dbName, String username, String password){
@@ -38,4 +40,14 @@ public class DataStorer {
 	public void storeTradeData(String jsonObject){
 		mongoConnector.storeObject(DataStorer.collectionName, jsonObject);
 	}
+	
+	/**
+	 * Stores into the mongodb all the jsonObjects
+	 * in a single bulk insert
+	 * @param jsonObjects
+	 */
+	@Override
+	public void storeTradeData(List<String> jsonObjects){
+		mongoConnector.storeObjects(DataStorer.collectionName, jsonObjects);
+	}
 }
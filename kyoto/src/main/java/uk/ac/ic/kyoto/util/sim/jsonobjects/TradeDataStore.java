@@ -0,0 +1,20 @@
+/**
+ * 
+ */
+package uk.ac.ic.kyoto.util.sim.jsonobjects;
+
+import java.util.List;
+
+/**
+ * Somewhere trade data can be written to
+ * in bulk. Implemented by DataStorer for
+ * mongodb, tests can use an in memory store.
+ */
+public interface TradeDataStore {
+	
+	/**
+	 * Stores all the given json objects in one go
+	 * @param jsonObjects
+	 */
+	public void storeTradeData(List<String> jsonObjects);
+}
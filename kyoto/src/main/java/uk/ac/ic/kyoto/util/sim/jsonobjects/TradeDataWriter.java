@@ -0,0 +1,279 @@
+/**
+ * 
+ */
+package uk.ac.ic.kyoto.util.sim.jsonobjects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Write behind pipeline for trade data. Callers submit
+ * the trades of a tick as one batch and return straight
+ * away, a background thread merges whatever batches are
+ * waiting (up to maxBatchesPerWrite ticks) into a single
+ * bulk write to the TradeDataStore.
+ * 
+ * The queue is bounded, when the store cannot keep up
+ * submit blocks instead of letting the heap grow.
+ * 
+ * close() must be called at the end of the simulation to
+ * make sure everything has been written and to stop the
+ * background thread.
+ */
+public class TradeDataWriter {
+	
+	public final static int DEFAULT_CAPACITY = 64;
+	
+	public final static int DEFAULT_MAX_BATCHES_PER_WRITE = 8;
+	
+	private final static long POLL_INTERVAL_MS = 100;
+	
+	private final Logger logger = Logger.getLogger(TradeDataWriter.class);
+	
+	private final TradeDataStore store;
+	
+	private final BlockingQueue<Batch> queue;
+	
+	private final int maxBatchesPerWrite;
+	
+	private final Thread worker;
+	
+	private volatile boolean running = true;
+	
+	/*Set once the background thread has exited, guarded by this*/
+	private boolean stopped = false;
+	
+	/*Statistics, guarded by this*/
+	private long submittedBatches = 0;
+	private long completedBatches = 0;
+	private long writtenObjects = 0;
+	private long failedObjects = 0;
+	private long writes = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	
+	/**
+	 * Trades of one submit call
+	 */
+	private static class Batch {
+		final List<String> jsonObjects;
+		final long submitted;
+		
+		Batch(List<String> jsonObjects){
+			this.jsonObjects = jsonObjects;
+			this.submitted = System.nanoTime();
+		}
+	}
+	
+	public TradeDataWriter(TradeDataStore store) {
+		this(store, DEFAULT_CAPACITY, DEFAULT_MAX_BATCHES_PER_WRITE);
+	}
+	
+	/**
+	 * @param store where trades are written to
+	 * @param capacity number of batches that can be waiting before submit blocks
+	 * @param maxBatchesPerWrite number of batches merged into one bulk write
+	 */
+	public TradeDataWriter(TradeDataStore store, int capacity, int maxBatchesPerWrite) {
+		if(capacity < 1 || maxBatchesPerWrite < 1){
+			throw new IllegalArgumentException("capacity and maxBatchesPerWrite must be positive");
+		}
+		this.store = store;
+		this.queue = new ArrayBlockingQueue<Batch>(capacity);
+		this.maxBatchesPerWrite = maxBatchesPerWrite;
+		
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TradeDataWriter.this.run();
+			}
+		}, "TradeDataWriter");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+	
+	/**
+	 * Queues the json objects to be written. Blocks
+	 * if the queue is full.
+	 * @param jsonObjects
+	 */
+	public void submit(List<String> jsonObjects) {
+		if(jsonObjects.isEmpty()){
+			return;
+		}
+		if(!running){
+			throw new IllegalStateException("TradeDataWriter has been closed");
+		}
+		
+		synchronized(this){
+			if(stopped){
+				throw new IllegalStateException("TradeDataWriter has stopped");
+			}
+			submittedBatches++;
+		}
+		try {
+			queue.put(new Batch(jsonObjects));
+		} catch (InterruptedException e) {
+			synchronized(this){
+				submittedBatches--;
+				notifyAll();
+			}
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Blocks until everything submitted so far has been written,
+	 * or the background thread has stopped
+	 */
+	public synchronized void flush() {
+		boolean interrupted = false;
+		while(completedBatches < submittedBatches && !stopped){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(completedBatches < submittedBatches){
+			logger.error("TradeDataWriter stopped with " + (submittedBatches - completedBatches)
+					+ " batches not written");
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Flushes and stops the background thread
+	 */
+	public void close() {
+		flush();
+		running = false;
+		worker.interrupt();
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void run() {
+		try {
+			writeBatches();
+		} finally {
+			/*Nothing will take from the queue any more, release blocked submitters*/
+			queue.clear();
+			synchronized(this){
+				stopped = true;
+				notifyAll();
+			}
+		}
+	}
+	
+	private void writeBatches() {
+		List<Batch> batches = new ArrayList<Batch>(maxBatchesPerWrite);
+		List<String> jsonObjects = new ArrayList<String>();
+		
+		while(running || !queue.isEmpty()){
+			try {
+				Batch first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if(first == null){
+					continue;
+				}
+				batches.add(first);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batches, maxBatchesPerWrite - 1);
+			
+			for(Batch b : batches){
+				jsonObjects.addAll(b.jsonObjects);
+			}
+			
+			boolean failed = false;
+			try{
+				store.storeTradeData(jsonObjects);
+			}catch(Throwable e){
+				failed = true;
+				logger.warn(e);
+			}
+			
+			long now = System.nanoTime();
+			synchronized(this){
+				writes++;
+				if(failed){
+					failedObjects += jsonObjects.size();
+				}else{
+					writtenObjects += jsonObjects.size();
+				}
+				for(Batch b : batches){
+					long latency = now - b.submitted;
+					totalLatency += latency;
+					maxLatency = Math.max(maxLatency, latency);
+				}
+				completedBatches += batches.size();
+				notifyAll();
+			}
+			
+			batches.clear();
+			jsonObjects.clear();
+		}
+	}
+	
+	/**
+	 * @return number of batches waiting to be written
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return number of json objects written to the store
+	 */
+	public synchronized long getWrittenObjects() {
+		return writtenObjects;
+	}
+	
+	/**
+	 * @return number of json objects the store failed to write
+	 */
+	public synchronized long getFailedObjects() {
+		return failedObjects;
+	}
+	
+	/**
+	 * @return number of bulk writes made to the store
+	 */
+	public synchronized long getWrites() {
+		return writes;
+	}
+	
+	/**
+	 * @return average time in milliseconds between a batch being submitted and written
+	 */
+	public synchronized double getAverageLatency() {
+		return completedBatches == 0 ? 0 : (totalLatency / (double) completedBatches) / 1e6;
+	}
+	
+	/**
+	 * @return longest time in milliseconds between a batch being submitted and written
+	 */
+	public synchronized double getMaxLatency() {
+		return maxLatency / 1e6;
+	}
+	
+	@Override
+	public String toString() {
+		return "TradeDataWriter: queue depth " + getQueueDepth()
+				+ ", written " + getWrittenObjects() + " trades in " + getWrites() + " writes"
+				+ ", failed " + getFailedObjects()
+				+ ", average latency " + getAverageLatency() + "ms"
+				+ ", max latency " + getMaxLatency() + "ms";
+	}
+}
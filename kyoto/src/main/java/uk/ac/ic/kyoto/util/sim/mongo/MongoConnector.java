@@ -5,11 +5,16 @@ package uk.ac.ic.kyoto.util.sim.mongo;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
@@ -21,6 +26,14 @@ import com.mongodb.MongoException;
 import com.mongodb.util.JSON;
 
 /**
+ * Access to the mongodb. A Mongo client is a thread
+ * safe connection pool, so one client is created per
+ * host and port and shared by every MongoConnector in
+ * the process for its whole lifetime, instead of
+ * connecting and disconnecting for every operation.
+ * 
+ * Use MongoConnector.getInstance() to get the connector
+ * configured from db.properties.
  * @author farhanrahman
  *
  */
@@ -34,32 +47,51 @@ public class MongoConnector {
 	private String username = "";
 	private String password = "";
 	
-	private Mongo m;
-	private DB db;
-	
 	private boolean SHOULD_AUTHENTICATE = false;
 	private final String collectionName = "simulations";
 	
 	/**
-	 * 
+	 * Number of documents fetched per round trip
+	 * when streaming query results
+	 */
+	private final static int CURSOR_BATCH_SIZE = 500;
+	
+	private final static String DB_PROPERTIES = "db.properties";
+	
+	private final static Logger logger = Logger.getLogger(MongoConnector.class);
+	
+	/**
+	 * db.properties, read once per process
+	 */
+	private final static Properties dbProperties = loadDBProperties();
+	
+	/**
+	 * host:port -> client shared by the whole process
 	 */
+	private final static ConcurrentMap<String, Mongo> clients = new ConcurrentHashMap<String, Mongo>();
+	
+	private static class InstanceHolder {
+		private final static MongoConnector instance = new MongoConnector();
+	}
 	
 	/**
-	 * Default constructor. Use this constructor
-	 * when you want to use the default port, host
-	 * and database as listed above.
+	 * @return the connector configured from db.properties,
+	 * shared by DataProvider and DataStorer
+	 */
+	public static MongoConnector getInstance(){
+		return InstanceHolder.instance;
+	}
+	
+	/**
+	 * Default constructor. Uses the host, port and database
+	 * from db.properties (mongo.host, mongo.port, mongo.db),
+	 * falling back to the defaults listed above.
 	 */
 	public MongoConnector(){
 		this.SHOULD_AUTHENTICATE = false;
-		this.host = this.getHostFromDBProperties();
-		try {
-			this.m = new Mongo(this.host, this.port);
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
-		} catch (MongoException e) {
-			e.printStackTrace();
-		}
-		
+		this.host = dbProperties.getProperty("mongo.host", this.host);
+		this.port = Integer.parseInt(dbProperties.getProperty("mongo.port", this.port.toString()));
+		this.dbName = dbProperties.getProperty("mongo.db", this.dbName);
 	}
 	
 	/**
@@ -94,53 +126,106 @@ public class MongoConnector {
 	}
 	
 	/**
-	 * Read from db.properties file
-	 * and update the host currently
-	 * being used.
+	 * Reads db.properties from the classpath, or from
+	 * src/main/resources when running from the source tree.
 	 * @return
 	 */
-	private String getHostFromDBProperties(){
+	private static Properties loadDBProperties(){
 		Properties dbProperty = new Properties();
+		InputStream in = null;
 		try{
-			String h = "";
-			dbProperty.load(new FileInputStream("src/main/resources/db.properties"));
-			h = dbProperty.getProperty("mongo.host");
-			return h;
+			in = MongoConnector.class.getClassLoader().getResourceAsStream(DB_PROPERTIES);
+			if(in == null){
+				in = new FileInputStream("src/main/resources/" + DB_PROPERTIES);
+			}
+			dbProperty.load(in);
 		}catch(IOException e){
-			e.printStackTrace();
-			return this.host;
+			logger.warn(e);
+		}finally{
+			if(in != null){
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.warn(e);
+				}
+			}
 		}
+		return dbProperty;
 	}
 	
 	/**
-	 * Opens up a connection with the given details
-	 * returns true if connection opened successfully
-	 * @return
+	 * Gets the process wide client for this host and port,
+	 * creating it on first use.
+	 * @return null if the client could not be created
 	 */
-	private boolean openConnection(){
-		try {
-			this.m = new Mongo(this.host,this.port);
-			return true;
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
-		} catch (MongoException e) {
-			e.printStackTrace();
+	private Mongo getClient(){
+		String key = this.host + ":" + this.port;
+		Mongo m = clients.get(key);
+		if(m == null){
+			try {
+				Mongo created = new Mongo(this.host, this.port);
+				m = clients.putIfAbsent(key, created);
+				if(m == null){
+					m = created;
+				}else{
+					created.close();
+				}
+			} catch (UnknownHostException e) {
+				logger.warn(e);
+			} catch (MongoException e) {
+				logger.warn(e);
+			}
 		}
-		return false;
+		return m;
 	}
 	
-	private void closeConnection(){
-		if(this.m != null){
-			this.m.close();
+	/**
+	 * @return the database, authenticated if required,
+	 * or null if no connection could be made.
+	 */
+	private DB getDB(){
+		Mongo m = this.getClient();
+		if(m == null){
+			return null;
 		}
+		
+		DB db = m.getDB(this.dbName);
+		
+		if(this.SHOULD_AUTHENTICATE == true && !db.isAuthenticated()){
+			db.authenticate(username, this.password.toCharArray());
+		}
+		return db;
 	}
 	
-	private boolean authenticate(){
-		if(this.db != null){
-			return db.authenticate(username, this.password.toCharArray());
-		}else{
-			return false;
+	/**
+	 * Closes every shared client. Connectors can still
+	 * be used afterwards, new clients are then created.
+	 */
+	public static void closeAll(){
+		for(String key : clients.keySet()){
+			Mongo m = clients.remove(key);
+			if(m != null){
+				m.close();
+			}
+		}
+	}
+	
+	/**
+	 * Streams the documents matching the query from the given
+	 * collection. Documents are fetched from the database in
+	 * batches as the cursor is iterated, so large results are
+	 * never held in memory all at once. The caller must close
+	 * the cursor.
+	 * @param colName
+	 * @param query
+	 * @return cursor over the results, or null if no connection could be made
+	 */
+	public DBCursor find(String colName, DBObject query){
+		DB db = this.getDB();
+		if(db == null){
+			return null;
 		}
+		return db.getCollection(colName).find(query).batchSize(CURSOR_BATCH_SIZE);
 	}
 	
 	/**
@@ -154,27 +239,21 @@ public class MongoConnector {
 	public List<DBObject> getDBObjects(Long simID, String colName){
 		List<DBObject> list = new ArrayList<DBObject>();
 
-		if(this.openConnection() == false){
+		BasicDBObject query = new BasicDBObject();
+		query.put("_id", simID);
+		
+		DBCursor cur = this.find(colName, query);
+		if(cur == null){
 			return list;
 		}
 		
-		this.db = m.getDB(this.dbName);
-		
-		if(this.SHOULD_AUTHENTICATE == true){
-			this.authenticate();
+		try{
+			while(cur.hasNext()) {
+				list.add(cur.next());
+			}
+		}finally{
+			cur.close();
 		}		
-		
-		DBCollection collection = db.getCollection(colName);
-        BasicDBObject query = new BasicDBObject();
-        
-        query.put("_id", simID);
-        DBCursor cur = collection.find(query);		
-
-        while(cur.hasNext()) {
-        	list.add(cur.next());
-        }
-        
-		this.closeConnection();
         
 		return Collections.unmodifiableList(list);
 	}
@@ -186,14 +265,9 @@ public class MongoConnector {
 	 * @param jsonObject
 	 */
 	public void storeObject(String colName, String jsonObject){
-		if(this.openConnection() == false){
+		DB db = this.getDB();
+		if(db == null){
 			return;
-		}
-		
-		this.db = m.getDB(this.dbName);
-		
-		if(this.SHOULD_AUTHENTICATE == true){
-			this.authenticate();
 		}		
 		
 		DBCollection collection = db.getCollection(colName);
@@ -201,8 +275,41 @@ public class MongoConnector {
 		DBObject dbObject = (DBObject) JSON.parse(jsonObject);
 		
 		collection.insert(dbObject);
+	}
         
-		this.closeConnection();
+	/**
+	 * Stores all the json objects into the collection
+	 * name provided as an argument using a single
+	 * bulk insert.
+	 * @param colName
+	 * @param jsonObjects
+	 */
+	public void storeObjects(String colName, List<String> jsonObjects){
+		List<DBObject> dbObjects = new ArrayList<DBObject>(jsonObjects.size());
+		for(String jsonObject : jsonObjects){
+			dbObjects.add((DBObject) JSON.parse(jsonObject));
+		}
+		this.storeDBObjects(colName, dbObjects);
+	}
+	
+	/**
+	 * Stores all the given objects into the collection
+	 * name provided as an argument using a single
+	 * bulk insert.
+	 * @param colName
+	 * @param dbObjects
+	 */
+	public void storeDBObjects(String colName, List<DBObject> dbObjects){
+		if(dbObjects.isEmpty()){
+			return;
+		}
+		
+		DB db = this.getDB();
+		if(db == null){
+			return;
+		}
+		
+		db.getCollection(colName).insert(dbObjects);
 	}
 	
 	/**
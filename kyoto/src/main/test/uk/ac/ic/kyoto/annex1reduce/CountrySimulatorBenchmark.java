@@ -0,0 +1,107 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.annex1reduce.CountrySimulator.ActionList;
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.TestCountries;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+/**
+ * Compares simulations that merge equivalent states at a few tolerances
+ * against one that does not, on the AnnexOneReduceTest countries:
+ * states created, time taken and how far the plan moves.
+ */
+public class CountrySimulatorBenchmark {
+
+	private final static int RUNS = 20;
+
+	private final static double[] TOLERANCES = {0, CountrySimulator.DEFAULT_MERGE_TOLERANCE, 1e-4, 1e-3};
+
+	/* landArea, arableLandArea, GDP, GDPRate, energyOutput, carbonOutput */
+	private final static double[][] COUNTRIES = {
+		{640427, 182711, 1309583456588.0, 0.0297, 703718793, 409094000},
+		{1000000, 500000, 10000000, 0.03, 1000000, 900000},
+	};
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext().setSeed(1);
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private static AnnexOneReduce country(double[] c) {
+		AnnexOneReduce country = TestCountries.withHandlers(new AnnexOneReduce(UUID.randomUUID(), "JunitTest", "JUT",
+				c[0], c[1], c[2], c[3], c[4], c[5]));
+		country.initialiseCountry();
+		return country;
+	}
+
+	private static ActionList simulate(CountrySimulator simulator, double[] c) {
+		return simulator.simulate(c[5], c[4], c[4], 0, 0, 0.99 * c[5], c[2] * GameConst.getPercentageOfGdp(),
+				c[2], c[3], c[1], 3, 1);
+	}
+
+	/**
+	 * @return the largest difference between the fractions of two plans
+	 */
+	private static double distance(ActionList a, ActionList b) {
+		float[] x = {a.reduce.shutDownFrac, a.reduce.buyCreditFrac, a.reduce.investFrac,
+				a.maintain.industryFrac, a.maintain.investOffsetFrac, a.maintain.buyCreditOffsetFrac,
+				a.sell.shutDownFrac, a.sell.investFrac, a.sell.sellFrac};
+		float[] y = {b.reduce.shutDownFrac, b.reduce.buyCreditFrac, b.reduce.investFrac,
+				b.maintain.industryFrac, b.maintain.investOffsetFrac, b.maintain.buyCreditOffsetFrac,
+				b.sell.shutDownFrac, b.sell.investFrac, b.sell.sellFrac};
+		double distance = 0;
+		for (int i = 0; i < x.length; i++) {
+			distance = Math.max(distance, Math.abs(x[i] - y[i]));
+		}
+		return distance;
+	}
+
+	@Test
+	public void benchmarkMerging() {
+		for (double[] c : COUNTRIES) {
+			AnnexOneReduce country = country(c);
+			ActionList unmerged = null;
+			long unmergedStates = 0;
+			for (double tolerance : TOLERANCES) {
+				CountrySimulator simulator = new CountrySimulator(country);
+				simulator.setMergeTolerance(tolerance);
+
+				/*Warm up*/
+				ActionList plan = simulate(simulator, c);
+
+				long start = System.nanoTime();
+				for (int i = 0; i < RUNS; i++) {
+					simulate(simulator, c);
+				}
+				long time = (System.nanoTime() - start) / RUNS;
+
+				if (unmerged == null) {
+					unmerged = plan;
+					unmergedStates = simulator.getStatesCreated();
+				}
+				System.out.println("GDP " + c[2] + ", tolerance " + tolerance + ": "
+						+ simulator.getStatesCreated() + " states in " + time / 1000000 + " ms, "
+						+ "plan moves by " + distance(unmerged, plan));
+
+				assertTrue(simulator.getStatesCreated() <= unmergedStates);
+				/*Merging only drops states that lead to the same plan*/
+				assertEquals(0, distance(unmerged, plan), 0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.annex1reduce.CountrySimulator.ActionList;
+import uk.ac.ic.kyoto.annex1reduce.CountrySimulator.CountryState;
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.TestCountries;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class CountrySimulatorTest {
+
+	private AnnexOneReduce country;
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext().setSeed(1);
+		country = TestCountries.withHandlers(new AnnexOneReduce(UUID.randomUUID(), "France", "FRA", 640427, 182711,
+				1309583456588.0, 0.0297, 703718793, 409094000));
+		country.initialiseCountry();
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private ActionList simulate(int threads) {
+		return new CountrySimulator(country).simulate(409094000, 703718793, 703718793, 0, 0, 0.99 * 409094000,
+				1309583456588.0 * GameConst.getPercentageOfGdp(), 1309583456588.0, 0.0297, 182711, 3, threads);
+	}
+
+	@Test
+	public void testParallelSameAsSerial() {
+		ActionList serial = simulate(1);
+		for (int threads : new int[]{2, 4}) {
+			ActionList parallel = simulate(threads);
+			assertEquals(serial.reduce.shutDownFrac, parallel.reduce.shutDownFrac, 0);
+			assertEquals(serial.reduce.buyCreditFrac, parallel.reduce.buyCreditFrac, 0);
+			assertEquals(serial.reduce.investFrac, parallel.reduce.investFrac, 0);
+			assertEquals(serial.maintain.industryFrac, parallel.maintain.industryFrac, 0);
+			assertEquals(serial.maintain.investOffsetFrac, parallel.maintain.investOffsetFrac, 0);
+			assertEquals(serial.maintain.buyCreditOffsetFrac, parallel.maintain.buyCreditOffsetFrac, 0);
+			assertEquals(serial.sell.shutDownFrac, parallel.sell.shutDownFrac, 0);
+			assertEquals(serial.sell.investFrac, parallel.sell.investFrac, 0);
+			assertEquals(serial.sell.sellFrac, parallel.sell.sellFrac, 0);
+		}
+	}
+
+	/**
+	 * An offset held into the sanction year is gone in every sell
+	 * state of that year, not only in the first one
+	 */
+	@Test
+	public void testOffsetResetInSanctionYear() {
+		CountrySimulator simulator = new CountrySimulator(country);
+		simulator.simulate(409094000, 703718793, 703718793, 5000000, 0, 0.99 * 409094000,
+				1309583456588.0 * GameConst.getPercentageOfGdp(), 1309583456588.0, 0.0297, 182711, 2, 4);
+
+		boolean held = false;
+		for (CountryState state : simulator.getSellStates(1)) {
+			held |= state.carbonOffset != 0;
+		}
+		assertTrue(held);
+
+		assertFalse(simulator.getSellStates(2).size() < 2);
+		for (CountryState state : simulator.getSellStates(2)) {
+			assertEquals(0, state.carbonOffset, 0);
+		}
+	}
+
+}
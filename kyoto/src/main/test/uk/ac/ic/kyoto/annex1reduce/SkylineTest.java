@@ -0,0 +1,118 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SkylineTest {
+
+	/**
+	 * The pairwise culling CountrySimulator.cullStates used before,
+	 * on the keys directly
+	 */
+	private static List<double[]> pairwiseCull(List<double[]> states) {
+		boolean hasBeenReplaced = true;
+		while (hasBeenReplaced) {
+			hasBeenReplaced = false;
+			List<double[]> bestList = new ArrayList<double[]>(states.size());
+			bestList.add(states.get(0));
+			for (int i = 1; i < states.size(); i++) {
+				double[] testState = states.get(i);
+				boolean needsAdding = true;
+				for (int j = 0; j < bestList.size(); j++) {
+					double[] bestState = bestList.get(j);
+					boolean isBetter = true;
+					boolean isWorse = true;
+					for (int d = 0; d < testState.length; d++) {
+						if (testState[d] > bestState[d]) {
+							isWorse = false;
+						} else if (testState[d] < bestState[d]) {
+							isBetter = false;
+						}
+					}
+					if (isBetter) {
+						bestList.set(j, testState);
+						needsAdding = false;
+						hasBeenReplaced = true;
+						break;
+					} else if (isWorse) {
+						needsAdding = false;
+						break;
+					}
+				}
+				if (needsAdding) {
+					bestList.add(testState);
+				}
+			}
+			states = bestList;
+		}
+		return states;
+	}
+
+	private static Set<List<Double>> values(List<double[]> states) {
+		Set<List<Double>> values = new HashSet<List<Double>>();
+		for (double[] state : states) {
+			List<Double> v = new ArrayList<Double>();
+			for (double d : state) {
+				v.add(d);
+			}
+			values.add(v);
+		}
+		return values;
+	}
+
+	private static List<double[]> randomStates(Random random, int n, int dimensions, int levels) {
+		List<double[]> states = new ArrayList<double[]>(n);
+		for (int i = 0; i < n; i++) {
+			double[] state = new double[dimensions];
+			for (int d = 0; d < dimensions; d++) {
+				/* Few levels, so there are ties and duplicates */
+				state[d] = random.nextInt(levels);
+			}
+			states.add(state);
+		}
+		return states;
+	}
+
+	@Test
+	public void testSameFrontAsPairwise() {
+		Random random = new Random(1);
+		for (int dimensions : new int[]{3, 5}) {
+			for (int levels : new int[]{2, 5, 1000}) {
+				for (int round = 0; round < 20; round++) {
+					List<double[]> states = randomStates(random, 1 + random.nextInt(300), dimensions, levels);
+					List<double[]> front = Skyline.front(states, states.toArray(new double[0][]));
+					assertEquals(values(pairwiseCull(states)), values(front));
+					/* Duplicates collapse to one */
+					assertEquals(values(front).size(), front.size());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testKeepsInputOrderAndLastDuplicate() {
+		List<String> items = Arrays.asList("a", "b", "c", "d", "e");
+		double[][] keys = {{1, 2}, {3, 0}, {0, 0}, {1, 2}, {2, 1}};
+		assertEquals(Arrays.asList("b", "d", "e"), Skyline.front(items, keys));
+	}
+
+	@Test
+	public void testLargeFront() {
+		/* Every state on the front, the worst case of a sweep */
+		int n = 20000;
+		List<double[]> states = new ArrayList<double[]>(n);
+		for (int i = 0; i < n; i++) {
+			states.add(new double[]{i, n - i, 0});
+		}
+		assertEquals(n, Skyline.front(states, states.toArray(new double[0][])).size());
+	}
+
+}
@@ -0,0 +1,33 @@
+package uk.ac.ic.kyoto.annex1reduce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TranspositionTableTest {
+
+	private final List<String> items = Arrays.asList("a", "b", "c", "d");
+
+	@Test
+	public void testMergesWithinQuantum() {
+		TranspositionTable table = new TranspositionTable(new double[]{0, 1});
+		double[][] attributes = {{1, 10}, {1, 10.2}, {2, 10}, {1, 11}};
+		assertEquals(Arrays.asList("a", "c", "d"), table.merge(items, attributes));
+	}
+
+	@Test
+	public void testZeroQuantumIsExact() {
+		TranspositionTable table = new TranspositionTable(new double[]{0});
+		double[][] attributes = {{0.0}, {-0.0}, {1e-300}, {1e-300}};
+		assertEquals(Arrays.asList("a", "c"), table.merge(items, attributes));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeQuantum() {
+		new TranspositionTable(new double[]{1, -1});
+	}
+
+}
@@ -0,0 +1,94 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AuditStrategyTest {
+
+	private final List<String> members = new ArrayList<String>();
+	private final Map<String, Integer> sins = new HashMap<String, Integer>();
+
+	public AuditStrategyTest() {
+		for (int i = 0; i < 100; i++) {
+			members.add("C" + i);
+		}
+	}
+
+	private void assertDistinct(List<String> picked, int k) {
+		assertEquals(k, picked.size());
+		assertEquals(k, new HashSet<String>(picked).size());
+		assertTrue(members.containsAll(picked));
+	}
+
+	@Test
+	public void testUniformPicksDistinct() {
+		AuditStrategy s = AuditStrategy.uniform();
+		Random r = new Random(1);
+		for (int k : new int[]{0, 1, 50, 99, 100, 150}) {
+			assertDistinct(s.select(members, k, sins, r), Math.min(k, 100));
+		}
+	}
+
+	@Test
+	public void testUniformIsUniform() {
+		AuditStrategy s = AuditStrategy.uniform();
+		Random r = new Random(2);
+		int[] counts = new int[members.size()];
+		int rounds = 20000;
+		for (int i = 0; i < rounds; i++) {
+			for (String c : s.select(members, 10, sins, r)) {
+				counts[Integer.parseInt(c.substring(1))]++;
+			}
+		}
+		/* Each member is picked 10% of the time */
+		for (int c : counts) {
+			assertEquals(0.1, (double) c / rounds, 0.015);
+		}
+	}
+
+	@Test
+	public void testUniformFollowsMembership() {
+		AuditStrategy s = AuditStrategy.uniform();
+		Random r = new Random(3);
+		s.select(members, 10, sins, r);
+		members.remove(members.size() - 1);
+		assertDistinct(s.select(members, 99, sins, r), 99);
+	}
+
+	@Test
+	public void testRiskWeightedFavoursCheaters() {
+		AuditStrategy s = AuditStrategy.riskWeighted();
+		Random r = new Random(4);
+		sins.put("C7", 9);
+		assertDistinct(s.select(members, 100, sins, r), 100);
+		int hits = 0;
+		int rounds = 20000;
+		for (int i = 0; i < rounds; i++) {
+			assertDistinct(s.select(members, 1, sins, r), 1);
+			if (s.select(members, 1, sins, r).get(0).equals("C7")) {
+				hits++;
+			}
+		}
+		/* Weight 10 out of a total of 109 */
+		assertEquals(10.0 / 109, (double) hits / rounds, 0.01);
+	}
+
+	@Test
+	public void testSameSeedSamePicks() {
+		assertEquals(AuditStrategy.uniform().select(members, 30, sins, new Random(5)),
+				AuditStrategy.uniform().select(members, 30, sins, new Random(5)));
+		sins.put("C3", 2);
+		assertEquals(AuditStrategy.riskWeighted().select(members, 30, sins, new Random(5)),
+				AuditStrategy.riskWeighted().select(members, 30, sins, new Random(5)));
+	}
+
+}
@@ -0,0 +1,201 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.AbstractCountry.KyotoMember;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class CarbonTargetTest {
+
+	private static final int YEAR = 3;
+
+	private CarbonTarget target;
+	private final List<AbstractCountry> countries = new ArrayList<AbstractCountry>();
+	private final List<UUID> cheaters = new ArrayList<UUID>();
+	/* The last report of every country in YEAR, NaN if it has not reported */
+	private final List<Double> reports = new ArrayList<Double>();
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext();
+		target = new CarbonTarget(null, null);
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private static AbstractCountry country(String ISO, KyotoMember level) {
+		AbstractCountry country = TestCountries.country(ISO, ISO);
+		country.kyotoMemberLevel = level;
+		return country;
+	}
+
+	private AbstractCountry add(KyotoMember level) {
+		AbstractCountry country = country("C" + countries.size(), level);
+		country.carbonOutput = 1000 * (countries.size() + 1);
+		countries.add(country);
+		reports.add(Double.NaN);
+		target.addMemberState(country);
+		return country;
+	}
+
+	private void report(int i, double emission) {
+		target.reportReceived(countries.get(i).getID(), (YEAR + 1) * GameConst.getTicksInYear(), emission);
+		reports.set(i, emission);
+	}
+
+	/**
+	 * Counts every country again: the real output of the cheaters,
+	 * the last report of everyone else. A country that has not
+	 * reported counts as 0, see testCountryThatNeverReported
+	 */
+	private void assertMatchesRecount() {
+		double world = 0;
+		double members = 0;
+		for (int i = 0; i < countries.size(); i++) {
+			AbstractCountry country = countries.get(i);
+			double output;
+			if (cheaters.contains(country.getID())) {
+				output = country.getCarbonOutput() - country.getCarbonAbsorption();
+			} else {
+				output = Double.isNaN(reports.get(i)) ? 0 : reports.get(i);
+			}
+			world += output;
+			if (country.isKyotoMember() == KyotoMember.ANNEXONE) {
+				members += output;
+			}
+		}
+		assertEquals(world, target.getWorldOutput(YEAR), 1e-6);
+		assertEquals(members, target.getMemberOutput(YEAR), 1e-6);
+	}
+
+	@Test
+	public void testTotalsAfterEveryEvent() {
+		for (KyotoMember level : new KyotoMember[]{KyotoMember.ANNEXONE, KyotoMember.ANNEXONE,
+				KyotoMember.NONANNEXONE, KyotoMember.ROGUE, KyotoMember.ANNEXONE}) {
+			add(level);
+		}
+		assertMatchesRecount();
+		for (int i = 0; i < countries.size(); i++) {
+			report(i, 900 * (i + 1));
+			assertMatchesRecount();
+		}
+		/* A second report replaces the first */
+		report(1, 1234);
+		assertMatchesRecount();
+		/* Reports outside the end of a year are not counted */
+		target.reportReceived(countries.get(0).getID(), (YEAR + 1) * GameConst.getTicksInYear() - 1, 1e9);
+		assertMatchesRecount();
+		/* A member leaves and a rogue state joins */
+		countries.get(0).kyotoMemberLevel = KyotoMember.ROGUE;
+		assertMatchesRecount();
+		countries.get(3).kyotoMemberLevel = KyotoMember.ANNEXONE;
+		assertMatchesRecount();
+		/* Cheaters, among them one that left and one that joined */
+		cheaters.add(countries.get(0).getID());
+		cheaters.add(countries.get(3).getID());
+		cheaters.add(countries.get(4).getID());
+		target.setCheaters(cheaters);
+		assertMatchesRecount();
+		countries.get(4).carbonAbsorption = 300;
+		assertMatchesRecount();
+		/* Reporting again after a membership change */
+		report(0, 500);
+		report(3, 600);
+		assertMatchesRecount();
+		/* A new country that has not reported yet */
+		add(KyotoMember.ANNEXONE);
+		assertMatchesRecount();
+		cheaters.clear();
+		target.setCheaters(cheaters);
+		assertMatchesRecount();
+	}
+
+	@Test
+	public void testTotalsOnRandomEvents() {
+		Random random = new Random(7);
+		KyotoMember[] levels = KyotoMember.values();
+		for (int i = 0; i < 30; i++) {
+			add(levels[random.nextInt(levels.length)]);
+		}
+		for (int event = 0; event < 2000; event++) {
+			int i = random.nextInt(countries.size());
+			AbstractCountry country = countries.get(i);
+			switch (random.nextInt(4)) {
+			case 0:
+				report(i, random.nextInt(100000));
+				break;
+			case 1:
+				country.kyotoMemberLevel = levels[random.nextInt(levels.length)];
+				break;
+			case 2:
+				country.carbonOutput = random.nextInt(100000);
+				country.carbonAbsorption = random.nextInt(1000);
+				break;
+			default:
+				if (!cheaters.remove(country.getID())) {
+					cheaters.add(country.getID());
+				}
+				target.setCheaters(cheaters);
+			}
+			assertMatchesRecount();
+		}
+	}
+
+	@Test
+	public void testCountryThatNeverReported() {
+		AbstractCountry silent = add(KyotoMember.ANNEXONE);
+		add(KyotoMember.ANNEXONE);
+		add(KyotoMember.ROGUE);
+		assertEquals(countries, target.getMissingReports(YEAR));
+		report(1, 500);
+		report(2, 700);
+		assertEquals(Collections.singletonList(silent), target.getMissingReports(YEAR));
+		assertEquals(1200, target.getWorldOutput(YEAR), 1e-6);
+		assertEquals(500, target.getMemberOutput(YEAR), 1e-6);
+
+		/* A report for another year does not count */
+		target.reportReceived(silent.getID(), YEAR * GameConst.getTicksInYear(), 100);
+		assertEquals(Collections.singletonList(silent), target.getMissingReports(YEAR));
+
+		/* Once caught cheating its real output is counted */
+		target.setCheaters(Collections.singletonList(silent.getID()));
+		assertTrue(target.getMissingReports(YEAR).isEmpty());
+		assertEquals(2200, target.getWorldOutput(YEAR), 1e-6);
+		assertEquals(1500, target.getMemberOutput(YEAR), 1e-6);
+	}
+
+	@Test
+	public void testCountriesAreAddedOnce() {
+		AbstractCountry country = add(KyotoMember.ANNEXONE);
+		target.addMemberState(country);
+		report(0, 100);
+		assertMatchesRecount();
+		assertEquals(0, target.querySessionTarget(country.getID()), 0);
+		/* Unknown countries are neither counted nor found */
+		target.reportReceived(UUID.randomUUID(), (YEAR + 1) * GameConst.getTicksInYear(), 100);
+		assertMatchesRecount();
+		target.setCheaters(Collections.singletonList(UUID.randomUUID()));
+		assertMatchesRecount();
+		try {
+			target.querySessionTarget(UUID.randomUUID());
+			fail();
+		} catch (NullPointerException e) {
+		}
+	}
+
+}
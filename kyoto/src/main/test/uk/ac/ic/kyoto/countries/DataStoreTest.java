@@ -0,0 +1,112 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.AbstractCountry.KyotoMember;
+import uk.ac.ic.kyoto.countries.DataStore.Column;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class DataStoreTest {
+
+	private void record(DataStore store, int from, int to) {
+		for (int tick = from; tick < to; tick++) {
+			store.add(tick, Column.GDP, tick * 10);
+			store.add(tick, Column.CARBON_OUTPUT, tick + 0.5);
+			store.addIsKyotoMember(tick, KyotoMember.values()[tick % KyotoMember.values().length]);
+		}
+	}
+
+	@Test
+	public void testKeepAllGrows() {
+		DataStore store = new DataStore(DataStore.Policy.keepAll());
+		record(store, 0, 200);
+		assertEquals(200, store.size());
+		assertEquals(1990.0, store.getSeries(Column.GDP)[199], 0);
+		Map<Integer, String> gdp = store.getGdpHistory();
+		assertEquals(200, gdp.size());
+		assertEquals("50.0", gdp.get(5));
+		/* Values that were never recorded are left out */
+		assertTrue(store.getLandAreaHistory().isEmpty());
+		assertTrue(Double.isNaN(store.getSeries(Column.LAND_AREA)[0]));
+	}
+
+	@Test
+	public void testRingKeepsLastTicks() {
+		DataStore store = new DataStore(DataStore.Policy.ring(12));
+		record(store, 0, 30);
+		assertEquals(12, store.size());
+		int[] ticks = store.getTicks();
+		for (int i = 0; i < ticks.length; i++) {
+			assertEquals(18 + i, ticks[i]);
+		}
+		assertEquals(29.5, store.getSeries(Column.CARBON_OUTPUT)[11], 0);
+		assertNull(store.getGdpHistory().get(17));
+		assertEquals(KyotoMember.values()[29 % KyotoMember.values().length].name(),
+				store.getIsKyotoMemberHistory().get(29));
+	}
+
+	@Test
+	public void testSpillKeepsEverything() {
+		DataStore keep = new DataStore(DataStore.Policy.keepAll());
+		DataStore spill = new DataStore(DataStore.Policy.spillToDisk(7, null));
+		record(keep, 0, 50);
+		record(spill, 0, 50);
+		assertEquals(50, spill.size());
+		assertArrayEquals(keep.getTicks(), spill.getTicks());
+		for (Column c : Column.values()) {
+			double[] a = keep.getSeries(c);
+			double[] b = spill.getSeries(c);
+			for (int i = 0; i < a.length; i++) {
+				assertEquals(a[i], b[i], 0);
+			}
+		}
+		assertArrayEquals(keep.getKyotoMemberSeries(), spill.getKyotoMemberSeries());
+		assertEquals(keep.getCarbonOutputHistory(), spill.getCarbonOutputHistory());
+		/* Closing drops the ticks on disk, tick 49 is still in memory */
+		spill.close();
+		assertEquals(1, spill.size());
+		assertEquals(49, spill.getTicks()[0]);
+	}
+
+	@Test
+	public void testOffRecordsNothing() {
+		DataStore store = new DataStore(DataStore.Policy.off());
+		assertFalse(store.isEnabled());
+		record(store, 0, 10);
+		assertEquals(0, store.size());
+		assertTrue(store.getGdpHistory().isEmpty());
+	}
+
+	@Test
+	public void testSameTickUpdatesRow() {
+		DataStore store = new DataStore(DataStore.Policy.ring(3));
+		store.add(4, Column.GDP, 1);
+		store.add(4, Column.GDP, 2);
+		store.add(4, Column.LAND_AREA, 3);
+		assertEquals(1, store.size());
+		assertEquals(2, store.getSeries(Column.GDP)[0], 0);
+		assertEquals(3, store.getSeries(Column.LAND_AREA)[0], 0);
+	}
+
+	@Test
+	public void testOffByDefault() {
+		SimulationContext.setCurrent(new SimulationContext(null, null));
+		try {
+			DataStore store = new DataStore();
+			assertFalse(store.isEnabled());
+			store.add(0, Column.GDP, 1);
+			assertEquals(0, store.size());
+		} finally {
+			SimulationContext.setCurrent(null);
+		}
+	}
+
+}
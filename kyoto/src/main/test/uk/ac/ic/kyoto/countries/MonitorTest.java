@@ -0,0 +1,75 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class MonitorTest {
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext();
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private static void assertSortedByISO(List<AbstractCountry> members) {
+		for (int i = 1; i < members.size(); i++) {
+			assertTrue(members.get(i - 1).getISO().compareTo(members.get(i).getISO()) < 0);
+		}
+	}
+
+	/**
+	 * The audit goes through the members in ISO order whatever
+	 * the order they joined and left in
+	 */
+	@Test
+	public void testMembersInISOOrder() {
+		List<AbstractCountry> countries = new ArrayList<AbstractCountry>();
+		for (int i = 0; i < 100; i++) {
+			countries.add(TestCountries.country("C" + i, String.format("C%03d", i)));
+		}
+		Collections.shuffle(countries, new Random(3));
+		Monitor monitor = new Monitor(null, null);
+		for (AbstractCountry country : countries) {
+			monitor.addMemberState(country);
+			/* Adding twice changes nothing */
+			monitor.addMemberState(country);
+		}
+		List<AbstractCountry> members = monitor.getMemberStates();
+		assertEquals(100, members.size());
+		assertSortedByISO(members);
+		assertEquals("C000", members.get(0).getISO());
+
+		for (AbstractCountry country : countries.subList(0, 40)) {
+			monitor.removeMemberState(country);
+			monitor.removeMemberState(country);
+		}
+		members = monitor.getMemberStates();
+		assertEquals(60, members.size());
+		assertSortedByISO(members);
+		assertTrue(Collections.disjoint(members, countries.subList(0, 40)));
+
+		/* Rejoining puts a country back in its place */
+		AbstractCountry rejoining = countries.get(0);
+		monitor.addMemberState(rejoining);
+		members = monitor.getMemberStates();
+		assertEquals(61, members.size());
+		assertSortedByISO(members);
+		assertTrue(members.contains(rejoining));
+	}
+
+}
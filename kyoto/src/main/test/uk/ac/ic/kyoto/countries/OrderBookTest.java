@@ -0,0 +1,197 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.OrderBook.Order;
+import uk.ac.ic.kyoto.trade.TradeType;
+
+public class OrderBookTest {
+
+	private final OrderBook book = new OrderBook();
+	private final UUID alice = UUID.randomUUID();
+	private final UUID bob = UUID.randomUUID();
+	private final UUID carol = UUID.randomUUID();
+
+	/**
+	 * Records every match, refuses to settle for the buyers in broke
+	 * and the sellers in noOffset
+	 */
+	private class Recorder implements OrderBook.Settlement {
+		final List<Object[]> fills = new ArrayList<Object[]>();
+		final List<UUID> broke = new ArrayList<UUID>();
+		final List<UUID> noOffset = new ArrayList<UUID>();
+
+		@Override
+		public Order settle(Order buy, Order sell, double quantity, double unitCost) {
+			if (broke.contains(buy.owner)) {
+				return buy;
+			}
+			if (noOffset.contains(sell.owner)) {
+				return sell;
+			}
+			fills.add(new Object[]{buy, sell, quantity, unitCost});
+			return null;
+		}
+	}
+
+	private Order order(UUID owner, TradeType side, double quantity, double unitCost) {
+		return book.submit(UUID.randomUUID(), owner, side, quantity, unitCost, 10);
+	}
+
+	@Test
+	public void testPriceThenTimePriority() {
+		Order cheap = order(alice, TradeType.SELL, 5, 10);
+		Order early = order(bob, TradeType.SELL, 5, 8);
+		Order late = order(carol, TradeType.SELL, 5, 8);
+		Recorder r = new Recorder();
+		assertEquals(0, book.match(0, r));
+		assertSame(early, book.getBestAsk());
+
+		Order buy = order(UUID.randomUUID(), TradeType.BUY, 12, 10);
+		assertEquals(3, book.match(1, r));
+		assertSame(early, r.fills.get(0)[1]);
+		assertSame(late, r.fills.get(1)[1]);
+		assertSame(cheap, r.fills.get(2)[1]);
+		assertSame(buy, r.fills.get(0)[0]);
+		/* Trades happen at the resting price */
+		assertEquals(8.0, r.fills.get(0)[3]);
+		assertEquals(2.0, r.fills.get(2)[2]);
+		assertEquals(3, cheap.getRemaining(), 0);
+		assertNull(book.getOrder(buy.id));
+		assertEquals(1, book.size());
+	}
+
+	@Test
+	public void testNoCrossRests() {
+		order(alice, TradeType.BUY, 5, 7);
+		order(bob, TradeType.SELL, 5, 8);
+		Recorder r = new Recorder();
+		assertEquals(0, book.match(0, r));
+		assertEquals(7, book.getBestBid().unitCost, 0);
+		assertEquals(8, book.getBestAsk().unitCost, 0);
+	}
+
+	@Test
+	public void testNoSelfTrade() {
+		order(alice, TradeType.SELL, 5, 8);
+		Order other = order(bob, TradeType.SELL, 5, 9);
+		order(alice, TradeType.BUY, 5, 10);
+		Recorder r = new Recorder();
+		assertEquals(1, book.match(0, r));
+		assertSame(other, r.fills.get(0)[1]);
+	}
+
+	@Test
+	public void testCancelAndExpiry() {
+		Order a = book.submit(UUID.randomUUID(), alice, TradeType.SELL, 5, 8, 1);
+		Order b = book.submit(UUID.randomUUID(), bob, TradeType.SELL, 5, 9, 3);
+		Recorder r = new Recorder();
+		book.match(0, r);
+		assertSame(b, book.cancel(b.id));
+		assertNull(book.cancel(b.id));
+
+		book.match(2, r);
+		assertNull(book.getOrder(a.id));
+		assertNull(book.getBestAsk());
+		assertEquals(0, book.size());
+	}
+
+	@Test
+	public void testFailedSettlementCancelsBid() {
+		Order bid = order(alice, TradeType.BUY, 5, 10);
+		Recorder r = new Recorder();
+		r.broke.add(alice);
+		book.match(0, r);
+		order(bob, TradeType.SELL, 5, 9);
+		assertEquals(0, book.match(1, r));
+		assertNull(book.getOrder(bid.id));
+		assertEquals(9, book.getBestAsk().unitCost, 0);
+		assertNull(book.getBestBid());
+	}
+
+	@Test
+	public void testFailedSettlementCancelsAsk() {
+		Order ask = order(alice, TradeType.SELL, 5, 8);
+		Order other = order(bob, TradeType.SELL, 5, 9);
+		Recorder r = new Recorder();
+		r.noOffset.add(alice);
+		book.match(0, r);
+		/* The bid skips the ask that cannot be settled and trades with the next one */
+		Order bid = order(carol, TradeType.BUY, 5, 10);
+		assertEquals(1, book.match(1, r));
+		assertSame(other, r.fills.get(0)[1]);
+		assertNull(book.getOrder(ask.id));
+		assertNull(book.getOrder(bid.id));
+		assertNull(book.getBestAsk());
+
+		/* An incoming ask that cannot be settled does not rest */
+		order(carol, TradeType.BUY, 5, 10);
+		book.match(2, r);
+		Order incoming = order(alice, TradeType.SELL, 5, 8);
+		assertEquals(0, book.match(3, r));
+		assertNull(book.getOrder(incoming.id));
+		assertNull(book.getBestAsk());
+		assertEquals(10, book.getBestBid().unitCost, 0);
+	}
+
+	@Test
+	public void testEveryOrderClosedOnce() {
+		Order partly = book.submit(UUID.randomUUID(), alice, TradeType.SELL, 10, 8, 1);
+		Order cancelled = order(bob, TradeType.SELL, 5, 20);
+		Recorder r = new Recorder();
+		book.match(0, r);
+		assertTrue(book.drainClosed().isEmpty());
+
+		Order first = order(carol, TradeType.BUY, 3, 9);
+		Order second = order(carol, TradeType.BUY, 3, 10);
+		assertEquals(2, book.match(1, r));
+		List<Order> closed = book.drainClosed();
+		assertEquals(2, closed.size());
+		assertSame(first, closed.get(0));
+		assertSame(second, closed.get(1));
+		assertTrue(second.isFilled());
+		assertEquals(24, second.getValue(), 1e-9);
+
+		book.cancel(cancelled.id);
+		book.match(2, r);
+		closed = book.drainClosed();
+		assertEquals(2, closed.size());
+		assertSame(cancelled, closed.get(0));
+		assertEquals(0, cancelled.getFilled(), 0);
+		assertSame(partly, closed.get(1));
+		assertFalse(partly.isFilled());
+		assertEquals(6, partly.getFilled(), 1e-9);
+		assertEquals(48, partly.getValue(), 1e-9);
+
+		book.match(3, r);
+		assertTrue(book.drainClosed().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOnlyBuyAndSell() {
+		order(alice, TradeType.INVEST, 5, 10);
+	}
+
+	@Test
+	public void testDuplicateIdRejected() {
+		Order o = order(alice, TradeType.BUY, 5, 10);
+		try {
+			book.submit(o.id, bob, TradeType.SELL, 1, 1, 10);
+		} catch (IllegalArgumentException e) {
+			assertEquals(1, book.size());
+			return;
+		}
+		assertFalse("duplicate order id accepted", true);
+	}
+
+}
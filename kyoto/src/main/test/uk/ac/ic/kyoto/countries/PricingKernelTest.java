@@ -0,0 +1,134 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class PricingKernelTest {
+
+	private static final double[] INVESTMENTS = {0, 1, 1e3, 1e6, 1e8, 1e9, 5e9};
+
+	private AbstractCountry country;
+	private CarbonReductionHandler reduction;
+	private CarbonAbsorptionHandler absorption;
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext();
+		country = TestCountries.france();
+		reduction = new CarbonReductionHandler(country);
+		absorption = new CarbonAbsorptionHandler(country);
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	/**
+	 * The binary search CarbonReductionHandler used before
+	 */
+	private double bisectReduction(double investmentAmount) {
+		double carbonDiff = country.carbonOutput / 2;
+		double carbonOutputChange = carbonDiff;
+		double tempInvestmentAmount = reduction.getInvestmentRequired(carbonOutputChange);
+		for (int i = 0; i < 30; i++) {
+			carbonDiff /= 2;
+			if (tempInvestmentAmount < investmentAmount) {
+				carbonOutputChange += carbonDiff;
+			}
+			else if (tempInvestmentAmount > investmentAmount) {
+				carbonOutputChange -= carbonDiff;
+			}
+			tempInvestmentAmount = reduction.getInvestmentRequired(carbonOutputChange);
+		}
+		return carbonOutputChange;
+	}
+
+	@Test
+	public void testReductionMatchesBinarySearch() {
+		/* Inside the range the search could reach */
+		for (double investment : new double[]{1e3, 1e6, 1e7, 1e8}) {
+			double expected = bisectReduction(investment);
+			assertEquals(expected, reduction.getCarbonOutputChange(investment), 1e-6 * country.carbonOutput);
+		}
+	}
+
+	/**
+	 * The binary search CarbonAbsorptionHandler used before
+	 */
+	private double bisectAbsorption(double investmentAmount) throws NotEnoughLandException {
+		double carbonDiff = (country.carbonOutput - country.carbonAbsorption) / 2;
+		while (absorption.getForestAreaRequired(carbonDiff) > country.arableLandArea) {
+			carbonDiff *= 0.9;
+		}
+		double carbonAbsorptionChange = carbonDiff;
+		double tempInvestmentAmount = absorption.getInvestmentRequired(carbonAbsorptionChange);
+		for (int i = 0; i < 30; i++) {
+			carbonDiff /= 2;
+			if (tempInvestmentAmount < investmentAmount) {
+				carbonAbsorptionChange += carbonDiff;
+			}
+			else if (tempInvestmentAmount > investmentAmount) {
+				carbonAbsorptionChange -= carbonDiff;
+			}
+			tempInvestmentAmount = absorption.getInvestmentRequired(carbonAbsorptionChange);
+		}
+		return carbonAbsorptionChange;
+	}
+
+	@Test
+	public void testAbsorptionMatchesBinarySearch() throws NotEnoughLandException {
+		/* Inside the range the search could reach */
+		for (double investment : new double[]{1e3, 1e6, 1e7, 1e8}) {
+			double expected = bisectAbsorption(investment);
+			assertEquals(expected, absorption.getCarbonAbsorptionChange(investment), 1e-6 * country.carbonOutput);
+		}
+	}
+
+	@Test
+	public void testReductionRoundTrip() {
+		for (double change : new double[]{0, 1, 100, 1e4, 2e5, country.carbonOutput}) {
+			double investment = reduction.getInvestmentRequired(change);
+			assertEquals(change, reduction.getCarbonOutputChange(investment), 1e-9 * country.carbonOutput);
+		}
+		assertEquals(0, reduction.getCarbonOutputChange(-5), 0);
+		assertEquals(country.carbonOutput, reduction.getCarbonOutputChange(1e15), 0);
+	}
+
+	@Test
+	public void testAbsorptionRoundTrip() throws NotEnoughLandException {
+		for (double change : new double[]{0, 1, 100, 1e4, 2e5}) {
+			double investment = absorption.getInvestmentRequired(change);
+			assertEquals(change, absorption.getCarbonAbsorptionChange(investment), 1e-9 * country.carbonOutput);
+		}
+		/* Never more than the net carbon output */
+		assertEquals(country.carbonOutput, absorption.getCarbonAbsorptionChange(1e15), 0);
+		country.arableLandArea = 10;
+		assertEquals(10 / GameConst.getForestCarbonAbsorption(), absorption.getCarbonAbsorptionChange(1e15), 1e-9);
+	}
+
+	@Test
+	public void testBatchMatchesScalar() throws NotEnoughLandException {
+		double[] reductions = reduction.getCarbonOutputChange(INVESTMENTS);
+		double[] absorptions = absorption.getCarbonAbsorptionChange(INVESTMENTS);
+		double[] reductionCosts = new double[INVESTMENTS.length];
+		double[] absorptionCosts = new double[INVESTMENTS.length];
+		for (int i = 0; i < INVESTMENTS.length; i++) {
+			assertEquals(reduction.getCarbonOutputChange(INVESTMENTS[i]), reductions[i], 0);
+			assertEquals(absorption.getCarbonAbsorptionChange(INVESTMENTS[i]), absorptions[i], 0);
+			reductionCosts[i] = reduction.getInvestmentRequired(reductions[i]);
+			absorptionCosts[i] = absorption.getInvestmentRequired(absorptions[i]);
+		}
+		/* Same polynomial, evaluated in a different order */
+		assertArrayEquals(reductionCosts, reduction.getInvestmentRequired(reductions), 1e-3);
+		assertArrayEquals(absorptionCosts, absorption.getInvestmentRequired(absorptions), 1e-3);
+	}
+
+}
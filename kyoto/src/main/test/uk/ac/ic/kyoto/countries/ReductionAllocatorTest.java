@@ -0,0 +1,133 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.exceptions.NotEnoughLandException;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+
+public class ReductionAllocatorTest {
+
+	private AbstractCountry country;
+	private CarbonReductionHandler reduction;
+	private CarbonAbsorptionHandler absorption;
+	private ReductionAllocator allocator;
+
+	@Before
+	public void setUp() {
+		TestCountries.setUpContext();
+		country = TestCountries.france();
+		reduction = new CarbonReductionHandler(country);
+		absorption = new CarbonAbsorptionHandler(country);
+		allocator = new ReductionAllocator(absorption, reduction);
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private double cost(double absorb, double reduce, double arableLandArea) {
+		try {
+			return absorption.getInvestmentRequired(absorb, arableLandArea)
+					+ reduction.getInvestmentRequired(reduce, country.carbonOutput, country.energyOutput);
+		} catch (NotEnoughLandException e) {
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	@Test
+	public void testTwoWayIsCheapest() {
+		double[] split = new double[2];
+		double[] investments = new double[2];
+		for (double carbon : new double[]{1, 1e3, 1e5, 3e5}) {
+			double total = allocator.allocate(carbon, country.arableLandArea, country.carbonOutput,
+					country.energyOutput, split, investments);
+			assertEquals(carbon, split[ReductionAllocator.ABSORB] + split[ReductionAllocator.REDUCE], 1e-6 * carbon);
+			assertEquals(cost(split[0], split[1], country.arableLandArea), total, 1e-6 * total);
+			assertEquals(investments[0] + investments[1], total, 0);
+			/* No split on a fine grid is cheaper */
+			for (int i = 0; i <= 10000; i++) {
+				double absorb = carbon * i / 10000;
+				assertTrue(cost(absorb, carbon - absorb, country.arableLandArea) >= total * (1 - 1e-9));
+			}
+		}
+	}
+
+	@Test
+	public void testLandBound() {
+		double[] split = new double[2];
+		double[] investments = new double[2];
+		double arableLandArea = 100;
+		double maxAbsorb = arableLandArea / GameConst.getForestCarbonAbsorption();
+		allocator.allocate(3e5, arableLandArea, country.carbonOutput, country.energyOutput, split, investments);
+		assertEquals(maxAbsorb, split[ReductionAllocator.ABSORB], 1e-6);
+		assertEquals(3e5 - maxAbsorb, split[ReductionAllocator.REDUCE], 1e-6);
+
+		allocator.allocate(1e5, 0, country.carbonOutput, country.energyOutput, split, investments);
+		assertEquals(0, split[ReductionAllocator.ABSORB], 0);
+		assertEquals(0, investments[ReductionAllocator.ABSORB], 0);
+		assertEquals(1e5, split[ReductionAllocator.REDUCE], 1e-6);
+	}
+
+	@Test
+	public void testNothingToReduce() {
+		double[] split = {1, 2, 3};
+		double[] investments = {1, 2};
+		assertEquals(0, allocator.allocate(0, 1, country.arableLandArea, country.carbonOutput,
+				country.energyOutput, split, investments), 0);
+		for (double s : split) {
+			assertEquals(0, s, 0);
+		}
+	}
+
+	@Test
+	public void testShutDown() {
+		double[] split = new double[3];
+		double[] investments = new double[2];
+		double carbon = 2e5;
+
+		/* Cheaper than any investment: only shut down */
+		assertEquals(0, allocator.allocate(carbon, 1, country.arableLandArea, country.carbonOutput,
+				country.energyOutput, split, investments), 0);
+		assertEquals(carbon, split[ReductionAllocator.SHUT_DOWN], 0);
+
+		/* Dearer than any investment: never shut down */
+		double total = allocator.allocate(carbon, 1e9, country.arableLandArea, country.carbonOutput,
+				country.energyOutput, split, investments);
+		assertEquals(0, split[ReductionAllocator.SHUT_DOWN], 0);
+		double[] twoWay = new double[2];
+		assertEquals(allocator.allocate(carbon, country.arableLandArea, country.carbonOutput,
+				country.energyOutput, twoWay, investments), total, 1e-6 * total);
+		assertEquals(twoWay[ReductionAllocator.ABSORB], split[ReductionAllocator.ABSORB], 1e-6 * carbon);
+
+		/* In between, investing stops where a ton costs the shut down price */
+		double price = 540;
+		allocator.allocate(carbon, price, country.arableLandArea, country.carbonOutput,
+				country.energyOutput, split, investments);
+		assertEquals(carbon, split[0] + split[1] + split[2], 1e-6 * carbon);
+		assertTrue(split[ReductionAllocator.SHUT_DOWN] > 0);
+		double h = 1e-2;
+		double absorbMarginal = (cost(split[0] + h, 0, country.arableLandArea) - cost(split[0], 0, country.arableLandArea)) / h;
+		double reduceMarginal = (cost(0, split[1] + h, country.arableLandArea) - cost(0, split[1], country.arableLandArea)) / h;
+		assertEquals(price, absorbMarginal, 1e-3 * price);
+		assertEquals(price, reduceMarginal, 1e-3 * price);
+	}
+
+	@Test
+	public void testShutDownBoundByOutput() {
+		double[] split = new double[3];
+		double[] investments = new double[2];
+		/* More than the land and output can take */
+		allocator.allocate(2 * country.carbonOutput, 1, 0, country.carbonOutput,
+				country.energyOutput, split, investments);
+		assertEquals(0, split[ReductionAllocator.ABSORB], 0);
+		assertEquals(country.carbonOutput, split[ReductionAllocator.SHUT_DOWN], 0);
+		assertEquals(country.carbonOutput, split[ReductionAllocator.REDUCE], 1e-6);
+	}
+
+}
@@ -0,0 +1,121 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.List;
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.singletonfactory.ConcurrentTradeHistory;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.TokenGenerator;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+import uk.ac.imperial.presage2.core.messaging.Input;
+import uk.ac.imperial.presage2.core.network.NetworkAddress;
+
+/**
+ * Builds simulation contexts and countries that do
+ * nothing on their own for tests.
+ */
+public final class TestCountries {
+
+	private TestCountries() {}
+
+	/**
+	 * @return the game constants of the simulation
+	 * configuration, with ticksInYear ticks in a year
+	 */
+	public static GameConst gameConst(int ticksInYear) {
+		return new GameConst(1, 0.5, 0.1, 0.1, 0.8, 0.1, 7, 0.00025, 0.0025, 847, 10, 0.95, 4, 10, ticksInYear,
+				200, 0.25, 0.005, 60, 1200, 10, 750, 0.0156);
+	}
+
+	/**
+	 * @return a context that does not store trades,
+	 * with its own Token and TradeHistory
+	 */
+	public static SimulationContext newContext() {
+		return new SimulationContext(new TokenGenerator(), new ConcurrentTradeHistory(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+			}
+		}));
+	}
+
+	/**
+	 * Makes a new context with the game constants of
+	 * gameConst(12) current, undo with
+	 * SimulationContext.setCurrent(null)
+	 * @return the context
+	 */
+	public static SimulationContext setUpContext() {
+		SimulationContext context = newContext();
+		context.setGameConst(gameConst(12));
+		SimulationContext.setCurrent(context);
+		return context;
+	}
+
+	/**
+	 * @return a country without land, GDP or emissions
+	 */
+	public static AbstractCountry country(String name, String ISO) {
+		return new AbstractCountry(UUID.randomUUID(), name, ISO) {
+			@Override
+			protected void behaviour() {
+			}
+			@Override
+			protected void processInput(Input input) {
+			}
+			@Override
+			protected void yearlyFunction() {
+			}
+			@Override
+			protected void sessionFunction() {
+			}
+			@Override
+			protected void initialiseCountry() {
+			}
+			@Override
+			protected boolean acceptTrade(NetworkAddress from, Offer trade) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return France as it was in the 1990 data
+	 */
+	public static AbstractCountry france() {
+		return new AbstractCountry(UUID.randomUUID(), "France", "FRA", 640427, 182711, 1113056, 0.02, 686403, 399028) {
+			@Override
+			protected void behaviour() {
+			}
+			@Override
+			protected void processInput(Input input) {
+			}
+			@Override
+			protected void yearlyFunction() {
+			}
+			@Override
+			protected void sessionFunction() {
+			}
+			@Override
+			protected void initialiseCountry() {
+			}
+			@Override
+			protected boolean acceptTrade(NetworkAddress from, Offer trade) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gives country the handlers AbstractCountry.initialise
+	 * would create, without registering it anywhere
+	 * @return country
+	 */
+	public static <T extends AbstractCountry> T withHandlers(T country) {
+		country.carbonAbsorptionHandler = new CarbonAbsorptionHandler(country);
+		country.carbonReductionHandler = new CarbonReductionHandler(country);
+		country.energyUsageHandler = new EnergyUsageHandler(country);
+		return country;
+	}
+
+}
@@ -0,0 +1,60 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import uk.ac.imperial.presage2.core.network.Message;
+import uk.ac.imperial.presage2.core.network.NetworkAdaptor;
+import uk.ac.imperial.presage2.core.network.NetworkAddress;
+
+/**
+ * NetworkAdaptor for tests. It keeps the messages it is asked
+ * to send and reports every node of a network, a set shared
+ * by all the adaptors of a test, as connected except itself.
+ */
+public final class TestNetworkAdaptor implements NetworkAdaptor {
+
+	private final NetworkAddress address = new NetworkAddress(UUID.randomUUID());
+	private final Set<NetworkAddress> network;
+	private final List<Message<?>> sent = new ArrayList<Message<?>>();
+
+	/**
+	 * Adds a new node to network
+	 * @param network
+	 */
+	public TestNetworkAdaptor(Set<NetworkAddress> network) {
+		this.network = network;
+		network.add(address);
+	}
+
+	@Override
+	public void sendMessage(Message<?> m) {
+		sent.add(m);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List<Message> getMessages() {
+		return new ArrayList<Message>();
+	}
+
+	@Override
+	public NetworkAddress getAddress() {
+		return address;
+	}
+
+	@Override
+	public Set<NetworkAddress> getConnectedNodes() {
+		Set<NetworkAddress> connected = new LinkedHashSet<NetworkAddress>(network);
+		connected.remove(address);
+		return connected;
+	}
+
+	public List<Message<?>> getSentMessages() {
+		return sent;
+	}
+
+}
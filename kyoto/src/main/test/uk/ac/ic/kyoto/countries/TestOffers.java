@@ -0,0 +1,24 @@
+package uk.ac.ic.kyoto.countries;
+
+import java.util.UUID;
+
+import uk.ac.ic.kyoto.countries.OfferMessage.OfferMessageType;
+import uk.ac.ic.kyoto.trade.TradeType;
+
+/**
+ * Builds Offers and OfferMessages for tests outside
+ * of the countries package.
+ */
+public final class TestOffers {
+
+	private TestOffers() {}
+
+	public static Offer offer(double quantity, double unitCost, TradeType type) {
+		return new Offer(quantity, unitCost, type);
+	}
+
+	public static OfferMessage offerMessage(double quantity, double unitCost, TradeType type) {
+		return new OfferMessage(offer(quantity, unitCost, type), UUID.randomUUID(), OfferMessageType.TRADE_PROTOCOL, null);
+	}
+
+}
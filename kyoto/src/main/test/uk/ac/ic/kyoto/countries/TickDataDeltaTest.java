@@ -0,0 +1,75 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TickDataDeltaTest {
+
+	@Test
+	public void testOnlyChangesAreWritten() {
+		TickDataDelta delta = new TickDataDelta(0);
+		delta.set("land_area", "100.0");
+		delta.set("gdp", "1.0");
+		assertEquals(2, delta.drain(0).size());
+
+		delta.set("land_area", "100.0");
+		delta.set("gdp", "1.0");
+		assertTrue(delta.drain(1).isEmpty());
+
+		delta.set("land_area", "100.0");
+		delta.set("gdp", "2.0");
+		Map<String, String> changes = delta.drain(2);
+		assertEquals(1, changes.size());
+		assertEquals("2.0", changes.get("gdp"));
+	}
+
+	@Test
+	public void testSnapshots() {
+		TickDataDelta delta = new TickDataDelta(10);
+		for (int tick = 0; tick < 25; tick++) {
+			delta.set("land_area", "100.0");
+			delta.set("gdp", Integer.toString(tick / 5));
+			Map<String, String> changes = delta.drain(tick);
+			if (tick % 10 == 0) {
+				assertEquals(2, changes.size());
+			} else if (tick % 5 == 0) {
+				assertEquals(1, changes.size());
+			} else {
+				assertTrue(changes.isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void testReconstructMatchesFullSeries() {
+		java.util.Random r = new java.util.Random(3);
+		TickDataDelta delta = new TickDataDelta(20);
+		Map<Integer, Map<String, String>> written = new HashMap<Integer, Map<String, String>>();
+		Map<Integer, Map<String, String>> expected = new TreeMap<Integer, Map<String, String>>();
+		for (int tick = 0; tick < 100; tick++) {
+			Map<String, String> state = new HashMap<String, String>();
+			state.put("land_area", "100.0");
+			state.put("gdp", Integer.toString(r.nextInt(3)));
+			state.put("kyoto", tick < 50 ? "ANNEXONE" : "ROGUE");
+			for (Map.Entry<String, String> e : state.entrySet()) {
+				delta.set(e.getKey(), e.getValue());
+			}
+			expected.put(tick, state);
+			Map<String, String> changes = delta.drain(tick);
+			if (!changes.isEmpty()) {
+				written.put(tick, changes);
+			}
+		}
+
+		SortedMap<Integer, Map<String, String>> series = TickDataDelta.reconstruct(written, 99);
+		assertEquals(expected, series);
+	}
+
+}
@@ -0,0 +1,110 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.singletonfactory.ConcurrentTradeHistory;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.TokenGenerator;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+import uk.ac.imperial.presage2.core.network.NetworkAdaptor;
+import uk.ac.imperial.presage2.core.network.NetworkAddress;
+import uk.ac.imperial.presage2.util.fsm.FSMDescription;
+import uk.ac.imperial.presage2.util.fsm.FSMException;
+
+/**
+ * Measures the startup time and heap footprint of the
+ * TradeProtocols of 10k agents on one network. Every
+ * protocol shares one FSM description, only the per
+ * agent fields are allocated.
+ */
+public class TradeProtocolBenchmark {
+
+	private final static int AGENTS = 10000;
+
+	private static class BenchmarkProtocol extends TradeProtocol {
+
+		BenchmarkProtocol(UUID id, NetworkAdaptor network) throws FSMException {
+			super(id, null, null, network, null);
+		}
+
+		FSMDescription getDescription() {
+			return description;
+		}
+
+		@Override
+		protected boolean acceptExchange(NetworkAddress from, Offer trade) {
+			return false;
+		}
+
+		@Override
+		protected void tradeSuccessful(NetworkAddress from, OfferMessage offerMessage) {
+		}
+
+		@Override
+		protected void tradeRejected(NetworkAddress from, OfferMessage offerMessage) {
+		}
+
+		@Override
+		protected void tradeFailed(NetworkAddress from, OfferMessage offerMessage) {
+		}
+	}
+
+	@Before
+	public void setUp() {
+		SimulationContext.setCurrent(new SimulationContext(new TokenGenerator(), new ConcurrentTradeHistory(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+			}
+		})));
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	@Test
+	public void benchmarkStartup() throws FSMException {
+		/*Warm up*/
+		new BenchmarkProtocol(UUID.randomUUID(), new TestNetworkAdaptor(new HashSet<NetworkAddress>()));
+
+		Set<NetworkAddress> network = new HashSet<NetworkAddress>();
+		UUID[] ids = new UUID[AGENTS];
+		TestNetworkAdaptor[] adaptors = new TestNetworkAdaptor[AGENTS];
+		for(int i = 0; i < AGENTS; i++){
+			ids[i] = UUID.randomUUID();
+			adaptors[i] = new TestNetworkAdaptor(network);
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+		long start = System.nanoTime();
+
+		BenchmarkProtocol[] protocols = new BenchmarkProtocol[AGENTS];
+		for(int i = 0; i < AGENTS; i++){
+			protocols[i] = new BenchmarkProtocol(ids[i], adaptors[i]);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		System.gc();
+		long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+		System.out.println("TradeProtocol: " + AGENTS + " agents in " + elapsed / 1000000 + " ms, "
+				+ (heapAfter - heapBefore) / AGENTS + " bytes per agent");
+
+		for(int i = 1; i < AGENTS; i++){
+			assertSame(protocols[0].getDescription(), protocols[i].getDescription());
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package uk.ac.ic.kyoto.countries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.singletonfactory.ConcurrentTradeHistory;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.TokenGenerator;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+import uk.ac.imperial.presage2.core.network.NetworkAdaptor;
+import uk.ac.imperial.presage2.core.network.NetworkAddress;
+import uk.ac.imperial.presage2.util.fsm.FSMException;
+
+/**
+ * Checks the broadcast recipients TradeProtocol keeps
+ * as conversations start and end and nodes join and
+ * leave the network.
+ */
+public class TradeProtocolConversationsTest {
+
+	private static class Protocol extends TradeProtocol {
+
+		Protocol(NetworkAdaptor network) throws FSMException {
+			super(UUID.randomUUID(), null, null, network, null);
+		}
+
+		@Override
+		protected boolean acceptExchange(NetworkAddress from, Offer trade) {
+			return false;
+		}
+
+		@Override
+		protected void tradeSuccessful(NetworkAddress from, OfferMessage offerMessage) {
+		}
+
+		@Override
+		protected void tradeRejected(NetworkAddress from, OfferMessage offerMessage) {
+		}
+
+		@Override
+		protected void tradeFailed(NetworkAddress from, OfferMessage offerMessage) {
+		}
+	}
+
+	private Set<NetworkAddress> network;
+	private TradeNetwork tradeNetwork;
+	private NetworkAddress a;
+	private NetworkAddress b;
+	private NetworkAddress self;
+	private Protocol protocol;
+
+	@Before
+	public void setUp() throws FSMException {
+		SimulationContext context = new SimulationContext(new TokenGenerator(), new ConcurrentTradeHistory(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+			}
+		}));
+		SimulationContext.setCurrent(context);
+		network = new HashSet<NetworkAddress>();
+		tradeNetwork = context.getTradeNetwork();
+		TestNetworkAdaptor adaptor = new TestNetworkAdaptor(network);
+		self = adaptor.getAddress();
+		protocol = new Protocol(adaptor);
+		a = join();
+		b = join();
+	}
+
+	/**
+	 * @return a new node of the trade network
+	 */
+	private NetworkAddress join() {
+		NetworkAddress node = new TestNetworkAdaptor(network).getAddress();
+		tradeNetwork.join(node);
+		return node;
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	private void assertRecipients(NetworkAddress... expected) {
+		assertEquals(new HashSet<NetworkAddress>(Arrays.asList(expected)),
+				new HashSet<NetworkAddress>(protocol.getAgentsNotInConversation()));
+	}
+
+	@Test
+	public void testJoinAndLeave() {
+		assertRecipients(a, b);
+
+		/* One node leaves and another joins, the number of nodes stays the same */
+		tradeNetwork.leave(a);
+		NetworkAddress c = join();
+		assertRecipients(b, c);
+
+		tradeNetwork.leave(b);
+		assertRecipients(c);
+
+		/* Joining twice changes nothing, a node can rejoin */
+		tradeNetwork.join(c);
+		tradeNetwork.join(a);
+		assertRecipients(a, c);
+		assertEquals(2, protocol.getAgentsNotInConversation().size());
+	}
+
+	@Test
+	public void testProtocolsJoinTheNetwork() throws FSMException {
+		TestNetworkAdaptor adaptor = new TestNetworkAdaptor(network);
+		Protocol other = new Protocol(adaptor);
+		assertRecipients(a, b, adaptor.getAddress());
+		assertEquals(new HashSet<NetworkAddress>(Arrays.asList(a, b, self)),
+				new HashSet<NetworkAddress>(other.getAgentsNotInConversation()));
+	}
+
+	@Test
+	public void testConversationPeersAreSkipped() {
+		assertRecipients(a, b);
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+
+		protocol.conversationStarted(first, a);
+		protocol.conversationStarted(second, a);
+		assertTrue(protocol.isInConversationWith(a));
+		assertRecipients(b);
+
+		protocol.conversationEnded(first);
+		assertTrue(protocol.isInConversationWith(a));
+		assertRecipients(b);
+
+		protocol.conversationEnded(second);
+		assertFalse(protocol.isInConversationWith(a));
+		assertRecipients(a, b);
+
+		/* Ending a conversation twice or one that never started changes nothing */
+		protocol.conversationEnded(second);
+		protocol.conversationEnded(UUID.randomUUID());
+		assertRecipients(a, b);
+	}
+
+	@Test
+	public void testPeerLeavesDuringConversation() {
+		assertRecipients(a, b);
+		UUID conversation = UUID.randomUUID();
+		protocol.conversationStarted(conversation, a);
+
+		tradeNetwork.leave(a);
+		protocol.conversationEnded(conversation);
+		assertRecipients(b);
+
+		/* A node that joined during a conversation is skipped until it ends */
+		NetworkAddress c = join();
+		protocol.conversationStarted(conversation, c);
+		assertRecipients(b);
+		protocol.conversationEnded(conversation);
+		assertRecipients(b, c);
+	}
+
+	@Test
+	public void testRecipientsAreSharedUntilChanged() {
+		List<NetworkAddress> recipients = protocol.getAgentsNotInConversation();
+		assertSame(recipients, protocol.getAgentsNotInConversation());
+
+		UUID conversation = UUID.randomUUID();
+		protocol.conversationStarted(conversation, b);
+		List<NetworkAddress> changed = protocol.getAgentsNotInConversation();
+		assertNotSame(recipients, changed);
+		assertEquals(2, recipients.size());
+		assertEquals(1, changed.size());
+
+		join();
+		assertNotSame(changed, protocol.getAgentsNotInConversation());
+		assertEquals(1, changed.size());
+	}
+
+}
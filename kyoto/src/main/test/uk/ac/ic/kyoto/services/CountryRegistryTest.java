@@ -0,0 +1,85 @@
+package uk.ac.ic.kyoto.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.singletonfactory.ConcurrentTradeHistory;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.singletonfactory.TokenGenerator;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+
+public class CountryRegistryTest {
+
+	private final UUID uk = UUID.randomUUID();
+	private final UUID fr = UUID.randomUUID();
+
+	@Before
+	public void setUp() {
+		SimulationContext.setCurrent(new SimulationContext(new TokenGenerator(), new ConcurrentTradeHistory(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+			}
+		})));
+	}
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	@Test
+	public void testDenseIndices() {
+		CountryRegistry r = new CountryRegistry.Builder()
+				.add(uk, "United Kingdom", "GB")
+				.add(fr, "France", "FR")
+				.build();
+		assertEquals(2, r.size());
+		assertEquals(0, r.indexOf(uk));
+		assertEquals(1, r.indexOfISO("FR"));
+		assertEquals(1, r.indexOfName("France"));
+		assertEquals("GB", r.getISO(0));
+		assertSame(fr, r.getID(1));
+		assertEquals(-1, r.indexOf(UUID.randomUUID()));
+		assertEquals(-1, r.indexOf(null));
+		assertEquals(-1, r.indexOfISO("DE"));
+	}
+
+	@Test
+	public void testRenameKeepsIndex() {
+		CountryRegistry r = new CountryRegistry.Builder()
+				.add(uk, "Britain", "UK")
+				.add(fr, "France", "FR")
+				.add(uk, "United Kingdom", "GB")
+				.build();
+		assertEquals(2, r.size());
+		assertEquals(0, r.indexOfISO("GB"));
+		assertEquals("United Kingdom", r.getName(0));
+	}
+
+	@Test
+	public void testDecoderPublishes() {
+		assertEquals(0, Decoder.getRegistry().size());
+		Decoder.addCountry(uk, "United Kingdom", "GB");
+		/* Published by the first lookup */
+		assertEquals("GB", Decoder.getCountryISOForID(uk));
+		CountryRegistry before = Decoder.getRegistry();
+		Decoder.addCountry(fr, "France", "FR");
+		CountryRegistry after = Decoder.publish();
+		assertEquals(1, before.size());
+		assertEquals(2, after.size());
+		assertSame(after, Decoder.getRegistry());
+		assertEquals(fr, Decoder.getCountryIDForISO("FR"));
+		assertEquals(uk, Decoder.getCountryIDForName("United Kingdom"));
+		assertEquals("France", Decoder.getCountryNameForID(fr));
+		assertNull(Decoder.getCountryIDForISO("DE"));
+	}
+
+}
@@ -0,0 +1,62 @@
+package uk.ac.ic.kyoto.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.TestCountries;
+import uk.ac.ic.kyoto.services.Economy.State;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.imperial.presage2.core.environment.EnvironmentService;
+import uk.ac.imperial.presage2.core.environment.EnvironmentServiceProvider;
+
+public class EconomyTest {
+
+	@After
+	public void tearDown() {
+		SimulationContext.setCurrent(null);
+	}
+
+	/**
+	 * Draws the economy states of the country ISO in a new
+	 * simulation with the given seed. The country gets a
+	 * fresh id every time.
+	 */
+	private static List<State> states(long seed, String ISO) {
+		SimulationContext context = TestCountries.setUpContext();
+		context.setSeed(seed);
+		UUID id = UUID.randomUUID();
+		Decoder.addCountry(id, ISO, ISO);
+
+		final RandomService randomService = new RandomService(null);
+		Economy economy = new Economy(null, new EnvironmentServiceProvider() {
+			@Override
+			public <T extends EnvironmentService> T getEnvironmentService(Class<T> type) {
+				return type.cast(randomService);
+			}
+		});
+		economy.setParticipant(id);
+
+		List<State> states = new ArrayList<State>();
+		for (int i = 0; i < 50; i++) {
+			economy.updateEconomyState();
+			states.add(economy.getEconomyState());
+		}
+		return states;
+	}
+
+	@Test
+	public void testSameSeedSameStates() {
+		List<State> france = states(42, "FRA");
+		assertEquals(france, states(42, "FRA"));
+		assertFalse(france.equals(states(42, "DEU")));
+		assertFalse(france.equals(states(43, "FRA")));
+	}
+
+}
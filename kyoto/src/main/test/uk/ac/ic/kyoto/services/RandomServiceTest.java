@@ -0,0 +1,75 @@
+package uk.ac.ic.kyoto.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class RandomServiceTest {
+
+	private static final String[] AGENTS = {"UK", "DE", "FR", "US", "CN", "IN", "JP", "BR"};
+
+	private static long[] draw(Random r, int n) {
+		long[] values = new long[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = r.nextLong();
+		}
+		return values;
+	}
+
+	@Test
+	public void testSameSeedSameStream() {
+		assertArrayEquals(draw(RandomService.getStream(42, "Monitor"), 100),
+				draw(RandomService.getStream(42, "Monitor"), 100));
+		assertArrayEquals(draw(RandomService.getStream(42, "UK", "cheater"), 100),
+				draw(RandomService.getStream(42, "UK", "cheater"), 100));
+	}
+
+	@Test
+	public void testStreamsDiffer() {
+		long[] base = draw(RandomService.getStream(42, "Monitor"), 4);
+		assertFalse(base[0] == draw(RandomService.getStream(43, "Monitor"), 1)[0]);
+		assertFalse(base[0] == draw(RandomService.getStream(42, "Economy"), 1)[0]);
+		assertFalse(draw(RandomService.getStream(42, "UK", "cheater"), 1)[0]
+				== draw(RandomService.getStream(42, "DE", "cheater"), 1)[0]);
+		/* The keys are not just concatenated */
+		assertFalse(draw(RandomService.getStream(42, "AB", "C"), 1)[0]
+				== draw(RandomService.getStream(42, "A", "BC"), 1)[0]);
+	}
+
+	@Test
+	public void testParallelAgentsReproducible() throws Exception {
+		long[][] sequential = new long[AGENTS.length][];
+		for (int i = 0; i < AGENTS.length; i++) {
+			sequential[i] = draw(RandomService.getStream(7, AGENTS[i], "behaviour"), 1000);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			@SuppressWarnings("unchecked")
+			Future<long[]>[] futures = new Future[AGENTS.length];
+			/* Reverse order, the streams must not depend on who asks first */
+			for (int i = AGENTS.length - 1; i >= 0; i--) {
+				final String agent = AGENTS[i];
+				futures[i] = pool.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() {
+						return draw(RandomService.getStream(7, agent, "behaviour"), 1000);
+					}
+				});
+			}
+			for (int i = 0; i < AGENTS.length; i++) {
+				assertArrayEquals(sequential[i], futures[i].get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.countries.TestOffers;
+import uk.ac.ic.kyoto.trade.TradeType;
+import uk.ac.ic.kyoto.tradehistory.RetentionPolicy;
+import uk.ac.ic.kyoto.tradehistory.TickSummary;
+import uk.ac.ic.kyoto.util.sim.jsonobjects.TradeDataStore;
+
+public class ConcurrentTradeHistoryTest {
+
+	private final static int THREADS = 8;
+	private final static int TRADES_PER_THREAD = 10000;
+
+	private ConcurrentTradeHistory history;
+
+	@Before
+	public void setUp(){
+		history = new ConcurrentTradeHistory();
+	}
+
+	private OfferMessage trade(UUID id){
+		return new OfferMessage(null, id, null, null);
+	}
+
+	@Test
+	public void testAddAndRemove() {
+		UUID id1 = UUID.randomUUID();
+		UUID id2 = UUID.randomUUID();
+
+		history.addToHistory(1, id1, trade(id1));
+		history.addToHistory(2, id2, trade(id2));
+		assertTrue(history.tradeExists(id1));
+		assertTrue(history.tradeExists(id2));
+
+		history.removeTradeHistoryWithID(id1);
+		assertFalse(history.tradeExists(id1));
+		assertTrue(history.getHistory().get(1).isEmpty());
+		assertEquals(1, history.size());
+	}
+
+	@Test
+	public void testReAddMovesTick() {
+		UUID id = UUID.randomUUID();
+
+		history.addToHistory(1, id, trade(id));
+		history.addToHistory(2, id, trade(id));
+
+		assertTrue(history.getHistory().get(1).isEmpty());
+		assertTrue(history.getHistory().get(2).containsKey(id));
+		assertEquals(1, history.size());
+
+		/*Removing an unknown id must be harmless*/
+		history.removeTradeHistoryWithID(UUID.randomUUID());
+		assertEquals(1, history.size());
+	}
+
+	@Test
+	public void testRetention() {
+		history.setRetentionPolicy(RetentionPolicy.keepLastTicks(2).compacting(1, 10));
+		UUID old = null;
+		for(int tick = 0; tick < 5; tick++){
+			OfferMessage o = TestOffers.offerMessage(2, 10, TradeType.SELL);
+			history.addToHistory(tick, o.getTradeID(), o);
+			if(tick == 0){
+				old = o.getTradeID();
+			}
+		}
+
+		assertEquals(2, history.getHistory().size());
+		assertEquals(2, history.size());
+		/*Compacted trades are only counted*/
+		assertFalse(history.tradeExists(old));
+		assertFalse(history.tradeExists(UUID.randomUUID()));
+
+		TickSummary s = history.getSummary(0, 4);
+		assertEquals(5, s.getCount());
+		assertEquals(10, s.getQuantity(), 0);
+		assertEquals(100, s.getValue(), 0);
+	}
+
+	@Test
+	public void testDumpData() {
+		final List<String> stored = new ArrayList<String>();
+		history = new ConcurrentTradeHistory(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+				stored.addAll(jsonObjects);
+			}
+		});
+		history.setSimID(7L);
+
+		for(int tick = 0; tick < 3; tick++){
+			for(int i = 0; i < 4; i++){
+				OfferMessage o = TestOffers.offerMessage(1, 1, TradeType.BUY);
+				history.addToHistory(tick, o.getTradeID(), o);
+			}
+			history.dumpData(tick);
+		}
+		history.close();
+
+		assertEquals(12, stored.size());
+		assertTrue(stored.get(0).contains("\"simID\" : \"7\""));
+		assertEquals(12, history.getTradeDataWriter().getWrittenObjects());
+	}
+
+	@Test
+	public void testHistoryIsSnapshot() {
+		UUID id1 = UUID.randomUUID();
+		UUID id2 = UUID.randomUUID();
+		history.addToHistory(4, id1, trade(id1));
+		Map<Integer, Map<UUID, OfferMessage>> before = history.getHistory();
+		Map<UUID, OfferMessage> tick = history.getHistoryForTime(4);
+
+		history.addToHistory(4, id2, trade(id2));
+		history.addToHistory(5, id2, trade(id2));
+		assertEquals(1, before.size());
+		assertEquals(1, before.get(4).size());
+		assertEquals(1, tick.size());
+		assertTrue(history.getHistory().get(5).containsKey(id2));
+		assertFalse(history.getHistory().get(4).containsKey(id2));
+
+		/*Unchanged ticks are not copied again*/
+		assertSame(history.getHistory().get(5), history.getHistoryForTime(5));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testHistoryIsReadOnly() {
+		history.getHistory().clear();
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<UUID> ids = new ArrayList<UUID>();
+		for(int i = 0; i < THREADS * TRADES_PER_THREAD; i++){
+			ids.add(UUID.randomUUID());
+		}
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < THREADS; t++){
+			final int offset = t * TRADES_PER_THREAD;
+			Thread thread = new Thread(){
+				@Override
+				public void run(){
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for(int i = 0; i < TRADES_PER_THREAD; i++){
+						UUID id = ids.get(offset + i);
+						history.addToHistory(i % 10, id, trade(id));
+						/*Iterating while others write must not throw*/
+						if(i % 1000 == 0){
+							for(Map<UUID, OfferMessage> tick : history.getHistory().values()){
+								tick.size();
+							}
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for(Thread thread : threads){
+			thread.join();
+		}
+
+		assertEquals(THREADS * TRADES_PER_THREAD, history.size());
+		int total = 0;
+		for(Map<UUID, OfferMessage> tick : history.getHistory().values()){
+			total += tick.size();
+		}
+		assertEquals(THREADS * TRADES_PER_THREAD, total);
+		for(UUID id : ids){
+			assertTrue(history.tradeExists(id));
+		}
+	}
+
+}
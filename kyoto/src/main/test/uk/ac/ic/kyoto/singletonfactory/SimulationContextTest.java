@@ -0,0 +1,83 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.CarbonData1990;
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.TestCountries;
+import uk.ac.ic.kyoto.services.Decoder;
+
+public class SimulationContextTest {
+
+	@After
+	public void tearDown(){
+		SimulationContext.setCurrent(null);
+	}
+
+	@Test
+	public void testContextsAreIsolated() {
+		SimulationContext first = TestCountries.newContext();
+		SimulationContext second = TestCountries.newContext();
+		first.setGameConst(TestCountries.gameConst(20));
+		second.setGameConst(TestCountries.gameConst(12));
+		UUID id = UUID.randomUUID();
+
+		SimulationContext.setCurrent(first);
+		Decoder.addCountry(id, "United Kingdom", "GB");
+		CarbonData1990.addCountry("GB", 100);
+		assertEquals(20, GameConst.getTicksInYear());
+		assertSame(first.getTradeHistory(), SingletonProvider.getTradeHistory());
+
+		SimulationContext.setCurrent(second);
+		assertNull(Decoder.getCountryIDForISO("GB"));
+		CarbonData1990.addCountry("GB", 200);
+		assertEquals(200, CarbonData1990.get("GB"), 0);
+		assertEquals(12, GameConst.getTicksInYear());
+		assertSame(second.getToken(), SingletonProvider.getToken());
+		assertNotSame(first.getOfferHistory(), second.getOfferHistory());
+
+		SimulationContext.setCurrent(first);
+		assertEquals(id, Decoder.getCountryIDForISO("GB"));
+		assertEquals("United Kingdom", Decoder.getCountryNameForID(id));
+		assertEquals(100, CarbonData1990.get("GB"), 0);
+	}
+
+	@Test
+	public void testContextIsSetPerThread() throws InterruptedException {
+		final SimulationContext first = TestCountries.newContext();
+		final SimulationContext second = TestCountries.newContext();
+		first.setGameConst(TestCountries.gameConst(7));
+		second.setGameConst(TestCountries.gameConst(12));
+		assertNull(SimulationContext.setCurrent(first));
+
+		/* Another thread makes its own context current and restores what it had */
+		final SimulationContext[] seen = new SimulationContext[2];
+		final int[] ticks = new int[1];
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				seen[0] = SimulationContext.setCurrent(second);
+				ticks[0] = GameConst.getTicksInYear();
+				seen[1] = SimulationContext.setCurrent(seen[0]);
+			}
+		});
+		t.start();
+		t.join();
+
+		assertNull(seen[0]);
+		assertSame(second, seen[1]);
+		assertEquals(12, ticks[0]);
+		assertSame(first, SimulationContext.current());
+		assertSame(first.getGameConst(), GameConst.current());
+		assertSame(first, SimulationContext.setCurrent(null));
+	}
+
+}
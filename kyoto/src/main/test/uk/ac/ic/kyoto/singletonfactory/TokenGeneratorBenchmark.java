@@ -0,0 +1,86 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.tokengen.Token;
+import uk.ac.imperial.presage2.core.util.random.Random;
+
+/**
+ * Compares the throughput of TokenGenerator with the
+ * previous generator (a random UUID per id behind a lock),
+ * with every thread using the shared generator and with
+ * every thread using its own partition, the way agents do.
+ */
+public class TokenGeneratorBenchmark {
+
+	private final static int THREADS = 8;
+	private final static int IDS_PER_THREAD = 200000;
+
+	/**
+	 * The generator TokenGenerator replaced
+	 */
+	private static class LockingRandomToken implements Token {
+		private UUID tradeID = Random.randomUUID();
+
+		@Override
+		public synchronized UUID generate() {
+			this.tradeID = Random.randomUUID();
+			return this.tradeID;
+		}
+
+		@Override
+		public Token partition() {
+			return this;
+		}
+	}
+
+	@Test
+	public void benchmarkThroughput() throws InterruptedException {
+		/*Warm up*/
+		throughput(new LockingRandomToken(), false);
+		throughput(new TokenGenerator(), true);
+
+		double locking = throughput(new LockingRandomToken(), false);
+		double shared = throughput(new TokenGenerator(), false);
+		double partitioned = throughput(new TokenGenerator(), true);
+
+		System.out.println("Locking random UUIDs: " + (long) locking + " ids/s");
+		System.out.println("TokenGenerator, shared: " + (long) shared + " ids/s");
+		System.out.println("TokenGenerator, partition per thread: " + (long) partitioned + " ids/s");
+	}
+
+	/**
+	 * @return ids generated per second by THREADS threads
+	 */
+	private double throughput(final Token token, final boolean partitioned) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for(int t = 0; t < THREADS; t++){
+			final Token mine = partitioned ? token.partition() : token;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int i = 0; i < IDS_PER_THREAD; i++){
+							mine.generate();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		return (double) THREADS * IDS_PER_THREAD * 1e9 / elapsed;
+	}
+
+}
@@ -0,0 +1,80 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.tokengen.Token;
+import uk.ac.imperial.presage2.core.util.random.Random;
+
+/**
+ * Stress test: many threads generating ids from the shared
+ * partition and from their own partitions at the same time
+ * must never see the same id twice.
+ */
+public class TokenGeneratorTest {
+
+	private final static int THREADS = 16;
+	private final static int IDS_PER_THREAD = 50000;
+
+	@Test
+	public void testNoCollisionsUnderContention() throws InterruptedException {
+		final TokenGenerator generator = new TokenGenerator();
+		final Set<UUID> seen = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+
+		for(int t = 0; t < THREADS; t++){
+			final boolean ownPartition = t % 2 == 0;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						Token token = ownPartition ? generator.partition() : generator;
+						for(int i = 0; i < IDS_PER_THREAD; i++){
+							seen.add(token.generate());
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		start.countDown();
+		done.await();
+
+		assertEquals(THREADS * IDS_PER_THREAD, seen.size());
+	}
+
+	@Test
+	public void testGeneratorsDoNotCollide() {
+		Token first = new TokenGenerator().partition();
+		Token second = new TokenGenerator().partition();
+		Set<UUID> seen = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+		for(int i = 0; i < 1000; i++){
+			seen.add(first.generate());
+			seen.add(second.generate());
+		}
+		assertEquals(2000, seen.size());
+	}
+
+	@Test
+	public void testSameSeedDifferentRuns() {
+		Random.setSeed(1);
+		UUID first = new TokenGenerator().generate();
+		Random.setSeed(1);
+		UUID second = new TokenGenerator().generate();
+		assertFalse(first.equals(second));
+	}
+
+}
@@ -0,0 +1,61 @@
+package uk.ac.ic.kyoto.singletonfactory;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.OfferMessage;
+
+/**
+ * Measures the cost of a trade acceptance (one tradeExists
+ * followed by one addToHistory, as done by TradeProtocol)
+ * against the number of trades already in the history.
+ * The cost should stay flat as the history grows past 1M trades.
+ */
+public class TradeHistoryBenchmark {
+
+	private final static int TRADES_PER_TICK = 100;
+	private final static int SAMPLES = 100000;
+	private final static int[] HISTORY_SIZES = {1000, 10000, 100000, 1000000, 2000000};
+
+	@Test
+	public void benchmarkAcceptance() {
+		ConcurrentTradeHistory history = new ConcurrentTradeHistory();
+		int size = 0;
+
+		/*Warm up*/
+		acceptanceCost(history, 0, SAMPLES);
+
+		for(int i = 0; i < HISTORY_SIZES.length; i++){
+			for(; size < HISTORY_SIZES[i]; size++){
+				UUID id = UUID.randomUUID();
+				history.addToHistory(size / TRADES_PER_TICK, id, new OfferMessage(null, id, null, null));
+			}
+			double cost = acceptanceCost(history, size / TRADES_PER_TICK, SAMPLES);
+			System.out.println("ConcurrentTradeHistory: " + history.size() + " trades, " + cost + " ns per acceptance");
+		}
+	}
+
+	private double acceptanceCost(ConcurrentTradeHistory history, int tick, int samples){
+		UUID[] ids = new UUID[samples];
+		OfferMessage[] trades = new OfferMessage[samples];
+		for(int i = 0; i < samples; i++){
+			ids[i] = UUID.randomUUID();
+			trades[i] = new OfferMessage(null, ids[i], null, null);
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < samples; i++){
+			if(!history.tradeExists(ids[i])){
+				history.addToHistory(tick, ids[i], trades[i]);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		for(int i = 0; i < samples; i++){
+			history.removeTradeHistoryWithID(ids[i]);
+		}
+		return (double) elapsed / samples;
+	}
+
+}
@@ -0,0 +1,111 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.TestOffers;
+import uk.ac.ic.kyoto.trade.TradeType;
+
+public class MomentsTest {
+
+	private static final double[] PRICES = {12.5, 7, 31, 18.25, 9, 22, 15.5, 40, 3, 11};
+	private static final double[] QUANTITIES = {4, 1, 2, 8, 3, 5, 1, 6, 2, 9};
+
+	@Test
+	public void testEmpty() {
+		Moments m = new Moments();
+		assertEquals(0, m.getCount());
+		assertTrue(Double.isNaN(m.getMean()));
+		assertTrue(Double.isNaN(m.getVwap()));
+		assertEquals(Double.NEGATIVE_INFINITY, m.getHigh(), 0);
+		assertEquals(Double.POSITIVE_INFINITY, m.getLow(), 0);
+	}
+
+	@Test
+	public void testAgainstTwoPass() {
+		Moments m = new Moments();
+		double sum = 0, value = 0, quantity = 0;
+		for (int i = 0; i < PRICES.length; i++) {
+			m.add(PRICES[i], QUANTITIES[i]);
+			sum += PRICES[i];
+			value += PRICES[i] * QUANTITIES[i];
+			quantity += QUANTITIES[i];
+		}
+		double mean = sum / PRICES.length;
+		double vwap = value / quantity;
+		double variance = 0, weightedVariance = 0;
+		for (int i = 0; i < PRICES.length; i++) {
+			variance += (PRICES[i] - mean) * (PRICES[i] - mean);
+			weightedVariance += QUANTITIES[i] * (PRICES[i] - vwap) * (PRICES[i] - vwap);
+		}
+		variance /= PRICES.length;
+		weightedVariance /= quantity;
+
+		assertEquals(PRICES.length, m.getCount());
+		assertEquals(mean, m.getMean(), 1e-9);
+		assertEquals(variance, m.getVariance(), 1e-9);
+		assertEquals(vwap, m.getVwap(), 1e-9);
+		assertEquals(weightedVariance, m.getWeightedVariance(), 1e-9);
+		assertEquals(quantity, m.getQuantity(), 0);
+		assertEquals(40, m.getHigh(), 0);
+		assertEquals(3, m.getLow(), 0);
+	}
+
+	@Test
+	public void testMergeEqualsSingleStream() {
+		Moments all = new Moments();
+		Moments first = new Moments();
+		Moments second = new Moments();
+		for (int i = 0; i < PRICES.length; i++) {
+			all.add(PRICES[i], QUANTITIES[i]);
+			(i < 4 ? first : second).add(PRICES[i], QUANTITIES[i]);
+		}
+		Moments merged = new Moments();
+		merged.merge(first);
+		merged.merge(second);
+
+		assertEquals(all.getCount(), merged.getCount());
+		assertEquals(all.getMean(), merged.getMean(), 1e-9);
+		assertEquals(all.getVariance(), merged.getVariance(), 1e-9);
+		assertEquals(all.getVwap(), merged.getVwap(), 1e-9);
+		assertEquals(all.getWeightedVariance(), merged.getWeightedVariance(), 1e-9);
+		assertEquals(all.getHigh(), merged.getHigh(), 0);
+		assertEquals(all.getLow(), merged.getLow(), 0);
+	}
+
+	@Test
+	public void testStandardDeviationOfTickAverages() throws Exception {
+		// large prices with a small spread, where sum of squares minus
+		// squared mean loses every significant digit
+		double base = 1e9;
+		SessionHistory[] sessions = new SessionHistory[3];
+		double[] averages = new double[sessions.length * PRICES.length / 2];
+		int ticks = 0;
+		for (int s = 0; s < sessions.length; s++) {
+			sessions[s] = new SessionHistory(s);
+			for (int i = 0; i + 1 < PRICES.length; i += 2) {
+				int tick = s * PRICES.length + i;
+				sessions[s].add(TestOffers.offer(1, base + PRICES[i] + s, TradeType.BUY), tick);
+				sessions[s].add(TestOffers.offer(1, base + PRICES[i + 1] + s, TradeType.SELL), tick);
+				sessions[s].add(TestOffers.offer(1, PRICES[i], TradeType.INVEST), tick);
+				averages[ticks++] = base + s + (PRICES[i] + PRICES[i + 1]) / 2;
+			}
+		}
+		double mean = 0;
+		for (double a : averages) {
+			mean += a;
+		}
+		mean /= averages.length;
+		double variance = 0;
+		for (double a : averages) {
+			variance += (a - mean) * (a - mean);
+		}
+		variance /= averages.length;
+
+		assertEquals(Math.sqrt(variance),
+				AnalysisUtils.stardardDeviation(sessions, AnalysisUtils.TradeActionType.TRADE), 1e-6);
+	}
+
+}
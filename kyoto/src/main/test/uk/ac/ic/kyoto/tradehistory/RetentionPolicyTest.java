@@ -0,0 +1,158 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import uk.ac.ic.kyoto.countries.GameConst;
+import uk.ac.ic.kyoto.countries.OfferMessage;
+import uk.ac.ic.kyoto.countries.TestCountries;
+import uk.ac.ic.kyoto.countries.TestOffers;
+import uk.ac.ic.kyoto.countries.TradeProtocol;
+import uk.ac.ic.kyoto.singletonfactory.SimulationContext;
+import uk.ac.ic.kyoto.trade.TradeType;
+
+public class RetentionPolicyTest {
+
+	private final TreeMap<Integer, Map<UUID, OfferMessage>> history = new TreeMap<Integer, Map<UUID, OfferMessage>>();
+	private final TreeMap<Integer, TickSummary> summaries = new TreeMap<Integer, TickSummary>();
+	private final Map<UUID, Integer> tickIndex = new HashMap<UUID, Integer>();
+
+	/**
+	 * Adds offers with unit costs tick, 2*tick and 3*tick and quantity 1
+	 * @param tick
+	 */
+	private void fillTick(int tick) {
+		Map<UUID, OfferMessage> t = new HashMap<UUID, OfferMessage>();
+		for (int i = 1; i <= 3; i++) {
+			OfferMessage o = TestOffers.offerMessage(1, i * tick, TradeType.BUY);
+			t.put(o.getTradeID(), o);
+			tickIndex.put(o.getTradeID(), tick);
+		}
+		history.put(tick, t);
+	}
+
+	@Test
+	public void testKeepAll() {
+		for (int i = 1; i <= 10; i++) {
+			fillTick(i);
+			RetentionPolicy.keepAll().apply(history, i, summaries, tickIndex);
+		}
+		assertEquals(10, history.size());
+		assertTrue(summaries.isEmpty());
+	}
+
+	@Test
+	public void testKeepLastTicks() {
+		RetentionPolicy policy = RetentionPolicy.keepLastTicks(3);
+		for (int i = 1; i <= 10; i++) {
+			fillTick(i);
+			policy.apply(history, i, summaries, tickIndex);
+		}
+		assertEquals(3, history.size());
+		assertEquals(8, (int) history.firstKey());
+		assertEquals(9, tickIndex.size());
+		assertTrue(summaries.isEmpty());
+	}
+
+	@Test
+	public void testCompacting() {
+		RetentionPolicy policy = RetentionPolicy.keepLastTicks(2).compacting(1, 100);
+		for (int i = 1; i <= 10; i++) {
+			fillTick(i);
+			policy.apply(history, i, summaries, tickIndex);
+		}
+		assertEquals(2, history.size());
+		assertEquals(8, summaries.size());
+		assertFalse(summaries.containsKey(9));
+
+		/*Range covering both compacted and live ticks*/
+		TickSummary s = TickSummary.summarise(history, summaries, 5, 10);
+		assertEquals(18, s.getCount());
+		assertEquals(18, s.getQuantity(), 0);
+		assertEquals(30, s.getHigh(), 0);
+		assertEquals(5, s.getLow(), 0);
+		/*(5+...+10)*(1+2+3)/18*/
+		assertEquals(15, s.getAverage(), 1e-9);
+		assertEquals(15, s.getWeightedAverage(), 1e-9);
+	}
+
+	@Test
+	public void testCompactingPerPeriod() {
+		RetentionPolicy policy = RetentionPolicy.keepLastTicks(2).compacting(4, 100);
+		for (int i = 1; i <= 10; i++) {
+			fillTick(i);
+			policy.apply(history, i, summaries, tickIndex);
+		}
+		/*Ticks 1-3, 4-7 and 8*/
+		assertEquals(3, summaries.size());
+		assertEquals(4, summaries.get(4).getFirstTick());
+		assertEquals(7, summaries.get(4).getLastTick());
+		assertEquals(12, summaries.get(4).getCount());
+		assertEquals(24, TickSummary.summarise(history, summaries, 1, 8).getCount());
+	}
+
+	@Test
+	public void testSummariesAreBounded() {
+		RetentionPolicy policy = RetentionPolicy.keepLastTicks(2).compacting(1, 3);
+		for (int i = 1; i <= 100; i++) {
+			fillTick(i);
+			policy.apply(history, i, summaries, tickIndex);
+			assertTrue(summaries.size() <= 3);
+		}
+		/*Everything is still counted once*/
+		assertEquals(300, TickSummary.summarise(history, summaries, 1, 100).getCount());
+		assertEquals(6, tickIndex.size());
+	}
+
+	@Test
+	public void testCurrentSessionKeepsTimeout() {
+		TestCountries.setUpContext();
+		try {
+			int ticksInSession = GameConst.getYearsInSession() * GameConst.getTicksInYear();
+			RetentionPolicy policy = RetentionPolicy.keepCurrentSession().compacting();
+			for (int i = 1; i <= ticksInSession + 1; i++) {
+				fillTick(i);
+				policy.apply(history, i, summaries, tickIndex);
+			}
+			/*The trades of the previous session that can still time out are kept*/
+			int oldest = ticksInSession + 1 - TradeProtocol.TIMEOUT_TICKS;
+			assertEquals(oldest, (int) history.firstKey());
+			assertEquals(3 * (TradeProtocol.TIMEOUT_TICKS + 1), tickIndex.size());
+			assertEquals(3 * (oldest - 1), TickSummary.summarise(history, summaries, 1, oldest - 1).getCount());
+
+			/*Once they have timed out only the session is kept*/
+			for (int i = ticksInSession + 2; i <= ticksInSession + TradeProtocol.TIMEOUT_TICKS + 1; i++) {
+				fillTick(i);
+				policy.apply(history, i, summaries, tickIndex);
+			}
+			assertEquals(ticksInSession, (int) history.firstKey());
+		} finally {
+			SimulationContext.setCurrent(null);
+		}
+	}
+
+	@Test
+	public void testFreeOffers() {
+		Map<UUID, OfferMessage> t = new HashMap<UUID, OfferMessage>();
+		OfferMessage o = TestOffers.offerMessage(1, 0, TradeType.BUY);
+		t.put(o.getTradeID(), o);
+		history.put(1, t);
+		TickSummary s = TickSummary.summarise(history, summaries, 0, 1);
+		assertEquals(0, s.getHigh(), 0);
+		assertEquals(0, s.getLow(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeepNoTicks() {
+		RetentionPolicy.keepLastTicks(0);
+	}
+
+}
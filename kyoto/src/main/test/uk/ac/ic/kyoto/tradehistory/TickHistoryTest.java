@@ -98,12 +98,42 @@ public class TickHistoryTest {
 
 	@Test
 	public void testGetInvestmentHigh() {
-		fail("Investment message object not yet implemented: Cannot test.");
+		TickHistory			t	= new TickHistory(0);
+		
+		Offer				m1	= new Offer(1, 1, TradeType.INVEST);
+		Offer				m2	= new Offer(1, 100, TradeType.RECEIVE);
+		Offer				m3	= new Offer(1, 500, TradeType.BUY);
+		
+		try {
+			t.addMessage(m1);
+			t.addMessage(m2);
+			t.addMessage(m3);
+		} catch (Exception e) {
+			fail("Exception while adding messages");
+		}
+		
+		assertTrue("Incorrect InvestmentHigh value", t.getInvestmentHigh() == 100);
+		assertTrue("Incorrect TradeHigh value", t.getTradeHigh() == 500);
 	}
 
 	@Test
 	public void testGetInvestmentLow() {
-		fail("Investment message object not yet implemented: Cannot test.");
+		TickHistory			t	= new TickHistory(0);
+		
+		Offer				m1	= new Offer(1, 10, TradeType.INVEST);
+		Offer				m2	= new Offer(1, 100, TradeType.RECEIVE);
+		Offer				m3	= new Offer(1, 1, TradeType.SELL);
+		
+		try {
+			t.addMessage(m1);
+			t.addMessage(m2);
+			t.addMessage(m3);
+		} catch (Exception e) {
+			fail("Exception while adding messages");
+		}
+		
+		assertTrue("Incorrect InvestmentLow value", t.getInvestmentLow() == 10);
+		assertTrue("Incorrect TradeLow value", t.getTradeLow() == 1);
 	}
 
 	@Test
@@ -133,7 +163,22 @@ public class TickHistoryTest {
 
 	@Test
 	public void testGetInvestmentAverage() {
-		fail("Investment message object not yet implemented: Cannot test.");
+		TickHistory	t	= new TickHistory(0);
+		
+		Offer		m1	= new Offer(1, 2, TradeType.INVEST);
+		Offer		m2	= new Offer(3, 4, TradeType.INVEST);
+		Offer		m3	= new Offer(1, 1000, TradeType.BUY);
+		
+		try {
+			t.addMessage(m1);
+			t.addMessage(m2);
+			t.addMessage(m3);
+		} catch (Exception e) {
+			fail("Exception while adding messages");
+		}
+		
+		assertTrue("Incorrect InvestmentAverage value", t.getInvestmentAverage() == 3);
+		assertTrue("Incorrect investment VWAP", t.getInvestmentMoments().getVwap() == 3.5);
 	}
 	
 	@Test
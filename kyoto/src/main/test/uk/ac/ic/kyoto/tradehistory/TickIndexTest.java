@@ -0,0 +1,82 @@
+package uk.ac.ic.kyoto.tradehistory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Checks TickIndex against a brute force scan of a TreeMap
+ */
+public class TickIndexTest {
+
+	private final TickIndex index = new TickIndex();
+	private final TreeMap<Integer, double[]> expected = new TreeMap<Integer, double[]>();
+
+	private void put(int tick, double value, double high, double low) {
+		index.put(tick, value, high, low);
+		expected.put(tick, new double[]{value, high, low});
+	}
+
+	private void check(int from, int to) {
+		double sum = 0;
+		double high = Double.NEGATIVE_INFINITY;
+		double low = Double.POSITIVE_INFINITY;
+		int count = 0;
+		for (Entry<Integer, double[]> e : expected.subMap(from, true, to, true).entrySet()) {
+			sum += e.getValue()[0];
+			high = Math.max(high, e.getValue()[1]);
+			low = Math.min(low, e.getValue()[2]);
+			count++;
+		}
+		assertEquals(count, index.count(from, to));
+		assertEquals(sum, index.sum(from, to), 1e-6);
+		assertEquals(high, index.high(from, to), 0);
+		assertEquals(low, index.low(from, to), 0);
+	}
+
+	private void checkAllWindows(int maxTick) {
+		for (int from = -1; from <= maxTick + 1; from += 3) {
+			for (int to = from; to <= maxTick + 1; to += 5) {
+				check(from, to);
+			}
+		}
+	}
+
+	@Test
+	public void testAppendAndUpdateLastTick() {
+		java.util.Random r = new java.util.Random(42);
+		for (int tick = 0; tick < 300; tick += 2) {
+			for (int update = 0; update < 3; update++) {
+				double v = r.nextDouble() * 100;
+				put(tick, v, v + r.nextDouble(), v - r.nextDouble());
+			}
+		}
+		assertEquals(expected.size(), index.size());
+		checkAllWindows(300);
+	}
+
+	@Test
+	public void testOutOfOrderTicks() {
+		java.util.Random r = new java.util.Random(7);
+		for (int i = 0; i < 200; i++) {
+			int tick = r.nextInt(150);
+			double v = r.nextDouble() * 100;
+			put(tick, v, v + 1, v - 1);
+		}
+		assertEquals(expected.size(), index.size());
+		checkAllWindows(150);
+	}
+
+	@Test
+	public void testEmptyWindow() {
+		put(10, 5, 6, 4);
+		assertEquals(0, index.count(11, 20));
+		assertEquals(0, index.sum(0, 9), 0);
+		assertEquals(Double.NEGATIVE_INFINITY, index.high(11, 20), 0);
+		assertEquals(Double.POSITIVE_INFINITY, index.low(0, 9), 0);
+	}
+
+}
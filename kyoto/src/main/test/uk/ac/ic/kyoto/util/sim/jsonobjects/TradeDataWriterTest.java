@@ -0,0 +1,132 @@
+package uk.ac.ic.kyoto.util.sim.jsonobjects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TradeDataWriterTest {
+
+	/**
+	 * In memory stand in for the mongodb store
+	 */
+	static class InMemoryStore implements TradeDataStore {
+		final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+		final List<Integer> writeSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		@Override
+		public void storeTradeData(List<String> jsonObjects) {
+			stored.addAll(jsonObjects);
+			writeSizes.add(jsonObjects.size());
+		}
+	}
+
+	/**
+	 * Store that blocks until released, to let batches pile up
+	 */
+	static class BlockingStore extends InMemoryStore {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void storeTradeData(List<String> jsonObjects) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.storeTradeData(jsonObjects);
+		}
+	}
+
+	@Test
+	public void testFlushWritesEverything() {
+		InMemoryStore store = new InMemoryStore();
+		TradeDataWriter writer = new TradeDataWriter(store);
+
+		for (int tick = 0; tick < 100; tick++) {
+			writer.submit(Arrays.asList("a" + tick, "b" + tick));
+		}
+		writer.flush();
+
+		assertEquals(200, store.stored.size());
+		assertEquals(200, writer.getWrittenObjects());
+		assertEquals(0, writer.getQueueDepth());
+		/*Order of submission is kept*/
+		assertEquals("a0", store.stored.get(0));
+		assertEquals("b99", store.stored.get(199));
+		writer.close();
+	}
+
+	@Test
+	public void testBatchesAreMerged() {
+		BlockingStore store = new BlockingStore();
+		TradeDataWriter writer = new TradeDataWriter(store, 16, 4);
+
+		/*First batch is taken by the worker which then blocks in the store*/
+		writer.submit(Arrays.asList("first"));
+		for (int tick = 0; tick < 8; tick++) {
+			writer.submit(Arrays.asList("x" + tick));
+		}
+		assertTrue(writer.getQueueDepth() > 0);
+
+		store.release.countDown();
+		writer.flush();
+
+		assertEquals(9, store.stored.size());
+		/*Queued ticks are written 4 at a time*/
+		assertTrue("Writes: " + store.writeSizes, store.writeSizes.size() <= 4);
+		assertTrue(writer.getAverageLatency() > 0);
+		assertTrue(writer.getMaxLatency() >= writer.getAverageLatency());
+		writer.close();
+	}
+
+	@Test
+	public void testFailedWritesAreCounted() {
+		TradeDataWriter writer = new TradeDataWriter(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+				throw new RuntimeException("store unavailable");
+			}
+		});
+
+		writer.submit(Arrays.asList("a", "b", "c"));
+		writer.flush();
+
+		assertEquals(3, writer.getFailedObjects());
+		assertEquals(0, writer.getWrittenObjects());
+		writer.close();
+	}
+
+	@Test
+	public void testErrorsAreCounted() {
+		TradeDataWriter writer = new TradeDataWriter(new TradeDataStore() {
+			@Override
+			public void storeTradeData(List<String> jsonObjects) {
+				throw new Error("store crashed");
+			}
+		});
+
+		/*The worker survives the error, so flush returns*/
+		writer.submit(Arrays.asList("a", "b"));
+		writer.flush();
+		writer.submit(Arrays.asList("c"));
+		writer.flush();
+
+		assertEquals(3, writer.getFailedObjects());
+		writer.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSubmitAfterClose() {
+		TradeDataWriter writer = new TradeDataWriter(new InMemoryStore());
+		writer.close();
+		writer.submit(Arrays.asList("a"));
+	}
+
+}